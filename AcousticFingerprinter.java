@@ -0,0 +1,284 @@
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javazoom.jl.decoder.Bitstream;
+import javazoom.jl.decoder.BitstreamException;
+import javazoom.jl.decoder.Decoder;
+import javazoom.jl.decoder.DecoderException;
+import javazoom.jl.decoder.Header;
+import javazoom.jl.decoder.SampleBuffer;
+
+/**
+ * Acoustic Fingerprinter Component
+ * Computes a compact acoustic fingerprint from a short decoded window of a
+ * track: a sequence of 32-bit sub-fingerprints, one per 23 ms hop, where
+ * each bit encodes the sign of the energy difference between neighbouring
+ * frequency bands and consecutive frames (Haitsma-Kalker style, the same
+ * family of features Chromaprint uses). The bits survive re-encoding at a
+ * different bitrate or a different rip of the same recording, so equal
+ * songs yield fingerprints with a low bit error rate.
+ */
+public class AcousticFingerprinter {
+    private static final int WINDOW_SECONDS = 10;
+    private static final int TARGET_RATE = 11025;
+    private static final int FRAME_SIZE = 2048;
+    private static final int HOP_SIZE = 256;
+    private static final int BAND_COUNT = 33;
+    private static final double MIN_FREQUENCY = 300.0;
+    private static final double MAX_FREQUENCY = 2000.0;
+
+    /**
+     * Fingerprint a single file
+     * Precondition: file must be a readable MP3 file
+     * @return sub-fingerprints, or null if the file could not be decoded
+     */
+    public int[] fingerprint(File file) {
+        try {
+            DecodedAudio audio = decode(file);
+            if (audio == null || audio.length < FRAME_SIZE * 2) {
+                return null;
+            }
+            return computeFingerprint(audio.samples, audio.length, audio.sampleRate);
+        } catch (IOException e) {
+            System.err.println("Error fingerprinting file: " + file + " - " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Fingerprint files that are not yet in the index, in parallel
+     * Precondition: files and index must not be null
+     * Postcondition: every decodable file is present in the index
+     * @return number of newly fingerprinted files
+     */
+    public int fingerprintAll(Collection<MediaFile> files, FingerprintIndex index) {
+        if (files == null || index == null) {
+            throw new IllegalArgumentException("Files and index cannot be null");
+        }
+
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (final MediaFile file : files) {
+            if (file == null || index.contains(file.getFilePath()) || !"mp3".equals(file.getFormat())) {
+                continue;
+            }
+            tasks.add(() -> {
+                int[] fingerprint = fingerprint(new File(file.getFilePath()));
+                if (fingerprint == null) {
+                    return false;
+                }
+                index.add(file.getFilePath(), fingerprint);
+                return true;
+            });
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        int added = 0;
+        try {
+            for (Future<Boolean> future : pool.invokeAll(tasks)) {
+                if (future.get()) {
+                    added++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("Error fingerprinting files: " + e.getCause().getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+        return added;
+    }
+
+    /**
+     * Decode the first seconds of an MP3 file to mono PCM near TARGET_RATE
+     */
+    private DecodedAudio decode(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            Bitstream bitstream = new Bitstream(in);
+            Decoder decoder = new Decoder();
+            float[] samples = null;
+            int length = 0;
+            int decimation = 1;
+            int sampleRate = 0;
+            double accumulator = 0;
+            int accumulated = 0;
+
+            try {
+                Header header;
+                while ((header = bitstream.readFrame()) != null) {
+                    SampleBuffer output = (SampleBuffer) decoder.decodeFrame(header, bitstream);
+                    bitstream.closeFrame();
+
+                    if (samples == null) {
+                        // Average groups of input samples down to roughly TARGET_RATE
+                        decimation = Math.max(1, Math.round(output.getSampleFrequency() / (float) TARGET_RATE));
+                        sampleRate = output.getSampleFrequency() / decimation;
+                        samples = new float[sampleRate * WINDOW_SECONDS];
+                    }
+
+                    short[] buffer = output.getBuffer();
+                    int channels = output.getChannelCount();
+                    int count = output.getBufferLength();
+                    for (int i = 0; i + channels <= count && length < samples.length; i += channels) {
+                        float mono = 0;
+                        for (int c = 0; c < channels; c++) {
+                            mono += buffer[i + c];
+                        }
+                        accumulator += mono / channels;
+                        if (++accumulated == decimation) {
+                            samples[length++] = (float) (accumulator / decimation);
+                            accumulator = 0;
+                            accumulated = 0;
+                        }
+                    }
+
+                    if (length == samples.length) {
+                        break;
+                    }
+                }
+            } catch (BitstreamException | DecoderException | ArrayIndexOutOfBoundsException e) {
+                // Damaged stream: fingerprint whatever was decoded so far
+            } finally {
+                try {
+                    bitstream.close();
+                } catch (BitstreamException e) {
+                    // Ignore cleanup errors
+                }
+            }
+
+            if (samples == null) {
+                return null;
+            }
+            return new DecodedAudio(samples, length, sampleRate);
+        }
+    }
+
+    private static int[] computeFingerprint(float[] samples, int length, int sampleRate) {
+        int frameCount = (length - FRAME_SIZE) / HOP_SIZE + 1;
+        int[] bandEdges = bandEdges(sampleRate);
+        double[] window = hannWindow();
+        double[] real = new double[FRAME_SIZE];
+        double[] imaginary = new double[FRAME_SIZE];
+        double[] previous = null;
+        int[] result = new int[frameCount - 1];
+
+        for (int frame = 0; frame < frameCount; frame++) {
+            int offset = frame * HOP_SIZE;
+            for (int i = 0; i < FRAME_SIZE; i++) {
+                real[i] = samples[offset + i] * window[i];
+                imaginary[i] = 0;
+            }
+            fft(real, imaginary);
+
+            double[] energies = new double[BAND_COUNT];
+            for (int band = 0; band < BAND_COUNT; band++) {
+                double energy = 0;
+                for (int bin = bandEdges[band]; bin < bandEdges[band + 1]; bin++) {
+                    energy += real[bin] * real[bin] + imaginary[bin] * imaginary[bin];
+                }
+                energies[band] = energy;
+            }
+
+            if (previous != null) {
+                int bits = 0;
+                for (int band = 0; band < BAND_COUNT - 1; band++) {
+                    double difference = (energies[band] - energies[band + 1])
+                        - (previous[band] - previous[band + 1]);
+                    if (difference > 0) {
+                        bits |= 1 << band;
+                    }
+                }
+                result[frame - 1] = bits;
+            }
+            previous = energies;
+        }
+        return result;
+    }
+
+    /**
+     * FFT bin boundaries of logarithmically spaced bands
+     */
+    private static int[] bandEdges(int sampleRate) {
+        int[] edges = new int[BAND_COUNT + 1];
+        double ratio = Math.pow(MAX_FREQUENCY / MIN_FREQUENCY, 1.0 / BAND_COUNT);
+        for (int i = 0; i <= BAND_COUNT; i++) {
+            double frequency = MIN_FREQUENCY * Math.pow(ratio, i);
+            edges[i] = (int) Math.round(frequency * FRAME_SIZE / sampleRate);
+        }
+        for (int i = 1; i <= BAND_COUNT; i++) {
+            edges[i] = Math.max(edges[i], edges[i - 1] + 1); // At least one bin per band
+        }
+        return edges;
+    }
+
+    private static double[] hannWindow() {
+        double[] window = new double[FRAME_SIZE];
+        for (int i = 0; i < FRAME_SIZE; i++) {
+            window[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / (FRAME_SIZE - 1));
+        }
+        return window;
+    }
+
+    /**
+     * In-place iterative radix-2 FFT
+     */
+    private static void fft(double[] real, double[] imaginary) {
+        int n = real.length;
+        for (int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j) {
+                double t = real[i]; real[i] = real[j]; real[j] = t;
+                t = imaginary[i]; imaginary[i] = imaginary[j]; imaginary[j] = t;
+            }
+        }
+
+        for (int size = 2; size <= n; size <<= 1) {
+            double angle = -2 * Math.PI / size;
+            double stepReal = Math.cos(angle);
+            double stepImaginary = Math.sin(angle);
+            for (int start = 0; start < n; start += size) {
+                double wReal = 1;
+                double wImaginary = 0;
+                for (int k = 0; k < size / 2; k++) {
+                    int even = start + k;
+                    int odd = even + size / 2;
+                    double oddReal = real[odd] * wReal - imaginary[odd] * wImaginary;
+                    double oddImaginary = real[odd] * wImaginary + imaginary[odd] * wReal;
+                    real[odd] = real[even] - oddReal;
+                    imaginary[odd] = imaginary[even] - oddImaginary;
+                    real[even] += oddReal;
+                    imaginary[even] += oddImaginary;
+                    double nextReal = wReal * stepReal - wImaginary * stepImaginary;
+                    wImaginary = wReal * stepImaginary + wImaginary * stepReal;
+                    wReal = nextReal;
+                }
+            }
+        }
+    }
+
+    private static class DecodedAudio {
+        final float[] samples;
+        final int length;
+        final int sampleRate;
+
+        DecodedAudio(float[] samples, int length, int sampleRate) {
+            this.samples = samples;
+            this.length = length;
+            this.sampleRate = sampleRate;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Artwork Cache Component
+ * Provides downscaled album art from embedded ID3 pictures. Thumbnails are
+ * kept in a memory LRU bounded by pixel bytes and in a disk store keyed by
+ * the hash of the original picture, so art shared by a whole album is
+ * decoded and stored once. Lookups never block: misses are loaded on a
+ * background pool that serves the most recent request first, which keeps
+ * the rows currently on screen ahead of rows scrolled past.
+ */
+public class ArtworkCache {
+    private static final int THREAD_COUNT = 2;
+    private static final int MAX_PICTURE_SIZE = 8 * 1024 * 1024;
+    private static final String NO_ARTWORK = "";
+
+    private final File diskDirectory;
+    private final long memoryBudget;
+    private final LinkedHashMap<String, BufferedImage> memory = new LinkedHashMap<>(256, 0.75f, true);
+    private long memoryUsage;
+
+    // File path -> picture hash, NO_ARTWORK when the file has none
+    private final Map<String, String> pictureHashes = new ConcurrentHashMap<>();
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Create cache
+     * @param diskDirectory directory for thumbnail files, created on demand; null disables the disk store
+     * @param memoryBudget maximum bytes of decoded thumbnails kept in memory
+     */
+    public ArtworkCache(File diskDirectory, long memoryBudget) {
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive");
+        }
+        this.diskDirectory = diskDirectory;
+        this.memoryBudget = memoryBudget;
+
+        // Newest request first: a deque used as a stack
+        LinkedBlockingDeque<Runnable> queue = new LinkedBlockingDeque<Runnable>() {
+            @Override
+            public boolean offer(Runnable task) {
+                return offerFirst(task);
+            }
+        };
+        AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, 0L, TimeUnit.MILLISECONDS, queue, task -> {
+            Thread thread = new Thread(task, "ArtworkCache-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Get a thumbnail without blocking
+     * Precondition: filePath must not be null, size must be positive
+     * Postcondition: returns the cached thumbnail, or null and schedules
+     * a background load that calls onLoaded (from a pool thread) if art was found
+     * @param size edge length of the square box the thumbnail fits in
+     */
+    public BufferedImage getThumbnail(String filePath, int size, Runnable onLoaded) {
+        if (filePath == null || size <= 0) {
+            throw new IllegalArgumentException("Invalid file path or size");
+        }
+
+        String hash = pictureHashes.get(filePath);
+        if (hash != null) {
+            if (hash.equals(NO_ARTWORK)) {
+                return null;
+            }
+            BufferedImage image = getFromMemory(thumbnailKey(hash, size));
+            if (image != null) {
+                return image;
+            }
+        }
+
+        String request = filePath + '\n' + size;
+        if (pending.add(request)) {
+            executor.execute(() -> {
+                try {
+                    if (loadThumbnail(filePath, size) != null && onLoaded != null) {
+                        onLoaded.run();
+                    }
+                } catch (Exception e) {
+                    System.err.println("Error loading artwork: " + filePath + " - " + e.getMessage());
+                } finally {
+                    pending.remove(request);
+                }
+            });
+        }
+        return null;
+    }
+
+    /**
+     * Forget what is known about a file, e.g. after its tags changed
+     */
+    public void invalidate(String filePath) {
+        pictureHashes.remove(filePath);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private BufferedImage loadThumbnail(String filePath, int size) throws IOException {
+        String hash = pictureHashes.get(filePath);
+        byte[] picture = null;
+        if (hash == null) {
+            picture = Id3Tag.readPicture(new File(filePath), MAX_PICTURE_SIZE);
+            hash = picture == null ? NO_ARTWORK : hashOf(picture);
+            pictureHashes.put(filePath, hash);
+        }
+        if (hash.equals(NO_ARTWORK)) {
+            return null;
+        }
+
+        String key = thumbnailKey(hash, size);
+        BufferedImage image = getFromMemory(key);
+        if (image != null) {
+            return image;
+        }
+
+        File stored = diskDirectory == null ? null : new File(diskDirectory, key + ".png");
+        if (stored != null && stored.isFile()) {
+            image = ImageIO.read(stored);
+        }
+        if (image == null) {
+            if (picture == null) {
+                picture = Id3Tag.readPicture(new File(filePath), MAX_PICTURE_SIZE);
+                if (picture == null) {
+                    return null;
+                }
+            }
+            image = scale(decode(picture, size), size);
+            if (image == null) {
+                return null;
+            }
+            if (stored != null) {
+                store(image, stored);
+            }
+        }
+
+        putInMemory(key, image);
+        return image;
+    }
+
+    /**
+     * Decode an image, subsampling large pictures while reading
+     */
+    private static BufferedImage decode(byte[] picture, int size) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(picture))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int edge = Math.min(reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, edge / (size * 2)); // Keep 2x for smooth downscaling
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage scale(BufferedImage source, int size) {
+        if (source == null) {
+            return null;
+        }
+
+        double ratio = Math.min((double) size / source.getWidth(), (double) size / source.getHeight());
+        int width = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = result.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return result;
+    }
+
+    private void store(BufferedImage image, File target) {
+        try {
+            Files.createDirectories(diskDirectory.toPath());
+            File temp = File.createTempFile("thumb", ".tmp", diskDirectory);
+            try {
+                ImageIO.write(image, "png", temp);
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp.toPath());
+            }
+        } catch (IOException e) {
+            System.err.println("Error storing thumbnail: " + target + " - " + e.getMessage());
+        }
+    }
+
+    private synchronized BufferedImage getFromMemory(String key) {
+        return memory.get(key);
+    }
+
+    private synchronized void putInMemory(String key, BufferedImage image) {
+        BufferedImage previous = memory.put(key, image);
+        if (previous != null) {
+            memoryUsage -= sizeOf(previous);
+        }
+        memoryUsage += sizeOf(image);
+
+        // Evict least recently used thumbnails until within budget
+        Iterator<BufferedImage> eldest = memory.values().iterator();
+        while (memoryUsage > memoryBudget && eldest.hasNext()) {
+            BufferedImage evicted = eldest.next();
+            if (evicted == image) {
+                break;
+            }
+            memoryUsage -= sizeOf(evicted);
+            eldest.remove();
+        }
+    }
+
+    private static long sizeOf(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
+
+    private static String thumbnailKey(String hash, int size) {
+        return hash + "_" + size;
+    }
+
+    private static String hashOf(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available");
+        }
+    }
+}
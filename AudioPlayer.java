@@ -59,9 +59,12 @@ public class AudioPlayer implements IAudioPlayer {
         try {
             stop(); // Ensure clean state
             
+            final MediaFile file = currentFile;
             playerThread = new Thread(() -> {
                 try {
-                    FileInputStream fis = new FileInputStream(currentFile.getFilePath());
+                    // Normally done by MediaFileEnricher; if not, the duration is read here rather than on the EDT
+                    file.enrich();
+                    FileInputStream fis = new FileInputStream(file.getFilePath());
                     BufferedInputStream bis = new BufferedInputStream(fis);
                     player = new Player(bis);
                     
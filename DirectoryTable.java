@@ -0,0 +1,191 @@
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Directory Table
+ * Assigns compact int ids to directories so tracks can store a parent
+ * directory id plus a short leaf name instead of their full path.
+ * Every directory is stored once together with its parent id, which
+ * makes the table a trie over path components; ancestors are added
+ * automatically so whole subtrees can be walked for folder browsing.
+ *
+ * MediaFile and LibraryStore use the shared() table, so a directory has
+ * the same id everywhere in the application and (id, leaf name) pairs can
+ * serve as keys. Ids are only meaningful within one run.
+ *
+ * Thread-safe. Adding a directory takes a lock; getPath() and getParent()
+ * do not, so rebuilding a path costs no synchronization.
+ */
+public class DirectoryTable {
+    public static final int NO_DIRECTORY = -1;
+
+    private static final DirectoryTable SHARED = new DirectoryTable();
+
+    private final Map<String, Integer> ids;
+    // Replaced, never resized in place; entries are written before size is raised
+    private volatile String[] paths;
+    private volatile int[] parentIds;
+    private IntList[] children;
+    private volatile int size;
+
+    public DirectoryTable() {
+        ids = new HashMap<>();
+        paths = new String[64];
+        parentIds = new int[64];
+        children = new IntList[64];
+        size = 0;
+    }
+
+    /**
+     * Table shared by every MediaFile and LibraryStore
+     */
+    public static DirectoryTable shared() {
+        return SHARED;
+    }
+
+    /**
+     * Position where a path splits into directory and leaf name
+     * Only splits that join() reverses exactly are reported.
+     * @return index of the leaf name's first character, or 0 if the path
+     * must be kept whole (no separator, trailing or doubled separator)
+     */
+    public static int leafStart(String path) {
+        int split = path.lastIndexOf(File.separatorChar);
+        if (split < 0 || split == path.length() - 1) {
+            return 0;
+        }
+        if (split > 0 && path.charAt(split - 1) == File.separatorChar) {
+            return 0;
+        }
+        return split + 1;
+    }
+
+    /**
+     * Directory part of a path split at leafStart
+     * Precondition: leafStart(path) > 0
+     */
+    public static String directoryOf(String path, int leafStart) {
+        // A root keeps its separator: "/a.mp3" lies in "/"
+        return path.substring(0, leafStart == 1 ? 1 : leafStart - 1);
+    }
+
+    /**
+     * Rebuild a full path from a directory id and a leaf name
+     * Precondition: id must be valid or NO_DIRECTORY, leafName not null
+     */
+    public String join(int id, String leafName) {
+        if (id == NO_DIRECTORY) {
+            return leafName;
+        }
+        String directory = getPath(id);
+        return directory.endsWith(File.separator)
+            ? directory + leafName : directory + File.separator + leafName;
+    }
+
+    /**
+     * Get id for a directory, adding it and any missing ancestors
+     * Precondition: directoryPath must not be null
+     * @return directory id
+     */
+    public synchronized int intern(String directoryPath) {
+        if (directoryPath == null) {
+            throw new IllegalArgumentException("Directory path cannot be null");
+        }
+
+        Integer id = ids.get(directoryPath);
+        if (id != null) {
+            return id;
+        }
+
+        String parentPath = new File(directoryPath).getParent();
+        int parentId = parentPath != null ? intern(parentPath) : NO_DIRECTORY;
+
+        String[] currentPaths = paths;
+        int[] currentParents = parentIds;
+        if (size == currentPaths.length) {
+            int capacity = size * 2;
+            currentPaths = Arrays.copyOf(currentPaths, capacity);
+            currentParents = Arrays.copyOf(currentParents, capacity);
+            children = Arrays.copyOf(children, capacity);
+        }
+
+        int newId = size;
+        currentPaths[newId] = directoryPath;
+        currentParents[newId] = parentId;
+        paths = currentPaths;
+        parentIds = currentParents;
+        size = newId + 1;
+        ids.put(directoryPath, newId);
+        if (parentId != NO_DIRECTORY) {
+            if (children[parentId] == null) {
+                children[parentId] = new IntList(4);
+            }
+            children[parentId].add(newId);
+        }
+        return newId;
+    }
+
+    /**
+     * Get id of a known directory
+     * @return directory id or NO_DIRECTORY if unknown
+     */
+    public synchronized int lookup(String directoryPath) {
+        Integer id = directoryPath != null ? ids.get(directoryPath) : null;
+        return id != null ? id : NO_DIRECTORY;
+    }
+
+    /**
+     * Get full path of a directory
+     * Precondition: id must be valid (0 <= id < size)
+     */
+    public String getPath(int id) {
+        checkId(id);
+        return paths[id];
+    }
+
+    /**
+     * Get parent directory id
+     * @return parent id or NO_DIRECTORY for a root
+     */
+    public int getParent(int id) {
+        checkId(id);
+        return parentIds[id];
+    }
+
+    /**
+     * Get ids of the direct subdirectories
+     * @return array of child ids (empty if none)
+     */
+    public synchronized int[] getChildren(int id) {
+        checkId(id);
+        return children[id] != null ? children[id].toArray() : new int[0];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Approximate heap used by the table
+     * @return size in bytes
+     */
+    public synchronized long getHeapUsage() {
+        // Per directory: map entry and boxed id, path string, array slots
+        long bytes = 4L * paths.length + 4L * parentIds.length + 4L * children.length;
+        for (int id = 0; id < size; id++) {
+            bytes += 48 + 16 + 40 + paths[id].length();
+            if (children[id] != null) {
+                bytes += 16 + 4L * children[id].size();
+            }
+        }
+        return bytes;
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("Invalid directory id: " + id);
+        }
+    }
+}
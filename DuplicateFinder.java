@@ -0,0 +1,222 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Duplicate Finder Component
+ * Finds files with byte-identical audio payloads regardless of file name
+ * or ID3 tags. Candidates are first grouped by payload length, so only
+ * files whose length collides with another file are hashed at all.
+ * Hashing reads memory-mapped windows of the payload on a parallel pool,
+ * and results are kept in the MetadataCache for incremental reruns.
+ */
+public class DuplicateFinder {
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final long MAP_WINDOW_SIZE = 64L * 1024 * 1024;
+
+    private final IFileManager fileManager;
+    private final MetadataCache metadataCache;
+
+    public DuplicateFinder(IFileManager fileManager, MetadataCache metadataCache) {
+        if (fileManager == null || metadataCache == null) {
+            throw new IllegalArgumentException("File manager and metadata cache cannot be null");
+        }
+        this.fileManager = fileManager;
+        this.metadataCache = metadataCache;
+    }
+
+    /**
+     * Find groups of files with identical audio payloads
+     * Precondition: files must not be null
+     * Postcondition: returns groups of two or more files, largest waste first
+     */
+    public List<DuplicateGroup> findDuplicates(Collection<MediaFile> files) {
+        if (files == null) {
+            throw new IllegalArgumentException("Files cannot be null");
+        }
+
+        // The same path listed twice is not a duplicate
+        Map<String, MediaFile> byPath = new LinkedHashMap<>();
+        for (MediaFile file : files) {
+            if (file != null) {
+                byPath.putIfAbsent(file.getFilePath(), file);
+            }
+        }
+
+        List<String> paths = new ArrayList<>(byPath.keySet());
+        List<FileMetadata> metadata = fileManager.getQuickMetadata(paths);
+
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            // Phase 1: locate payloads (cheap header reads), reusing cached results
+            Map<String, MetadataCache.ContentHash> hashes = locatePayloads(paths, metadata, pool);
+
+            // Phase 2: prune on payload length, only collisions get hashed
+            Map<Long, List<String>> byLength = new HashMap<>();
+            for (Map.Entry<String, MetadataCache.ContentHash> entry : hashes.entrySet()) {
+                long length = entry.getValue().getAudioLength();
+                if (length > 0) {
+                    byLength.computeIfAbsent(length, k -> new ArrayList<>()).add(entry.getKey());
+                }
+            }
+
+            List<String> candidates = new ArrayList<>();
+            for (List<String> group : byLength.values()) {
+                if (group.size() > 1) {
+                    candidates.addAll(group);
+                }
+            }
+            hashPayloads(candidates, hashes, pool);
+
+            // Phase 3: group candidates by digest
+            Map<String, List<MediaFile>> byDigest = new LinkedHashMap<>();
+            for (String path : candidates) {
+                String digest = hashes.get(path).getDigest();
+                if (digest != null) {
+                    byDigest.computeIfAbsent(digest, k -> new ArrayList<>()).add(byPath.get(path));
+                }
+            }
+
+            List<DuplicateGroup> result = new ArrayList<>();
+            for (Map.Entry<String, List<MediaFile>> entry : byDigest.entrySet()) {
+                if (entry.getValue().size() > 1) {
+                    long length = hashes.get(entry.getValue().get(0).getFilePath()).getAudioLength();
+                    result.add(new DuplicateGroup(entry.getKey(), length, entry.getValue()));
+                }
+            }
+            result.sort((a, b) -> Long.compare(b.getWastedBytes(), a.getWastedBytes()));
+            return result;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Map<String, MetadataCache.ContentHash> locatePayloads(List<String> paths,
+            List<FileMetadata> metadata, ExecutorService pool) {
+        Map<String, MetadataCache.ContentHash> hashes = new HashMap<>();
+        List<Callable<MetadataCache.ContentHash>> tasks = new ArrayList<>();
+        List<String> taskPaths = new ArrayList<>();
+
+        for (int i = 0; i < paths.size(); i++) {
+            final String path = paths.get(i);
+            final FileMetadata attributes = metadata.get(i);
+            if (!attributes.exists() || attributes.getFileSize() == 0) {
+                continue;
+            }
+
+            MetadataCache.ContentHash cached = metadataCache.getContentHash(
+                path, attributes.getFileSize(), attributes.getLastModified());
+            if (cached != null) {
+                hashes.put(path, cached);
+            } else {
+                taskPaths.add(path);
+                tasks.add(() -> locatePayload(path, attributes));
+            }
+        }
+
+        List<MetadataCache.ContentHash> located = runAll(tasks, pool);
+        for (int i = 0; i < located.size(); i++) {
+            if (located.get(i) != null) {
+                hashes.put(taskPaths.get(i), located.get(i));
+                metadataCache.putContentHash(taskPaths.get(i), located.get(i));
+            }
+        }
+        return hashes;
+    }
+
+    private void hashPayloads(List<String> candidates,
+            Map<String, MetadataCache.ContentHash> hashes, ExecutorService pool) {
+        List<Callable<MetadataCache.ContentHash>> tasks = new ArrayList<>();
+        List<String> taskPaths = new ArrayList<>();
+
+        for (final String path : candidates) {
+            final MetadataCache.ContentHash hash = hashes.get(path);
+            if (hash.getDigest() == null) {
+                taskPaths.add(path);
+                tasks.add(() -> hash.withDigest(digestPayload(path, hash)));
+            }
+        }
+
+        List<MetadataCache.ContentHash> hashed = runAll(tasks, pool);
+        for (int i = 0; i < hashed.size(); i++) {
+            MetadataCache.ContentHash hash = hashed.get(i);
+            if (hash != null && hash.getDigest() != null) {
+                hashes.put(taskPaths.get(i), hash);
+                metadataCache.putContentHash(taskPaths.get(i), hash);
+            }
+        }
+    }
+
+    private static MetadataCache.ContentHash locatePayload(String path, FileMetadata attributes) {
+        try (RandomAccessFile in = new RandomAccessFile(path, "r")) {
+            long length = in.length();
+            long audioStart = Math.min(Id3Tag.readV2Size(in), length);
+            long audioEnd = Id3Tag.hasV1(in) ? Math.max(length - 128, audioStart) : length;
+            return new MetadataCache.ContentHash(attributes.getFileSize(),
+                attributes.getLastModified(), audioStart, audioEnd, null);
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + path + " - " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static String digestPayload(String path, MetadataCache.ContentHash hash) {
+        try (RandomAccessFile file = new RandomAccessFile(new File(path), "r");
+             FileChannel channel = file.getChannel()) {
+            MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+
+            long position = hash.getAudioStart();
+            long end = Math.min(hash.getAudioEnd(), channel.size());
+            while (position < end) {
+                long window = Math.min(MAP_WINDOW_SIZE, end - position);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, window);
+                digest.update(buffer);
+                position += window;
+            }
+            return toHex(digest.digest());
+        } catch (IOException e) {
+            System.err.println("Error hashing file: " + path + " - " + e.getMessage());
+            return null;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(DIGEST_ALGORITHM + " not available");
+        }
+    }
+
+    private static <T> List<T> runAll(List<Callable<T>> tasks, ExecutorService pool) {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while scanning for duplicates");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Error scanning for duplicates: " + e.getCause().getMessage());
+        }
+        return results;
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,38 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Duplicate Group value object
+ * Files whose audio payload (ID3 tags excluded) is byte-identical
+ */
+public class DuplicateGroup {
+    private final String digest;
+    private final long audioLength;
+    private final List<MediaFile> files;
+
+    public DuplicateGroup(String digest, long audioLength, List<MediaFile> files) {
+        this.digest = digest;
+        this.audioLength = audioLength;
+        this.files = Collections.unmodifiableList(new ArrayList<>(files));
+    }
+
+    // Getters
+    public String getDigest() { return digest; }
+    public long getAudioLength() { return audioLength; }
+    public List<MediaFile> getFiles() { return files; }
+
+    /**
+     * Get bytes that could be reclaimed by keeping a single copy
+     * @return redundant audio bytes
+     */
+    public long getWastedBytes() {
+        return audioLength * (files.size() - 1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d copies of %s [%s]", files.size(),
+            files.get(0).getTitle(), files.get(0).getFormattedFileSize());
+    }
+}
@@ -1,13 +1,65 @@
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * File Manager Component Implementation
  * Implements IFileManager interface with concrete file operations
  */
 public class FileManager implements IFileManager {
+    private static final int IO_THREAD_COUNT = 16;
+    private static final int STAT_BATCH_SIZE = 64;
+    private static final int LIBRARY_PAGE_SIZE = 4096;
+    
     private final String[] SUPPORTED_FORMATS = {"mp3", "wav", "aiff", "au", "mp4", "flac", "ogg"};
+    private final MetadataCache metadataCache = new MetadataCache();
+    private final MediaFileEnricher enricher = new MediaFileEnricher();
+    private final LibraryStore library = new LibraryStore();
+    private LibraryWatcher libraryWatcher;
+    private ExecutorService ioPool;
+    private volatile LibraryDatabase libraryDatabase;
+    
+    // Keeps the library store and database in step with watched folders
+    private final ILibraryListener libraryRecorder = new ILibraryListener() {
+        @Override
+        public void onFilesAdded(List<MediaFile> files) {
+            storeFiles(files);
+        }
+        
+        @Override
+        public void onFilesChanged(List<MediaFile> files) {
+            storeFiles(files);
+        }
+        
+        @Override
+        public void onFilesRemoved(List<String> filePaths) {
+            library.removeAll(filePaths);
+            LibraryDatabase database = libraryDatabase;
+            if (database == null) {
+                return;
+            }
+            try {
+                database.deleteAll(filePaths);
+            } catch (IOException e) {
+                System.err.println("Error updating library: " + e.getMessage());
+            }
+        }
+    };
     
     @Override
     public List<MediaFile> scanDirectory(String path) {
@@ -19,24 +71,32 @@ public class FileManager implements IFileManager {
         List<MediaFile> result = new ArrayList<>();
         File directory = new File(path);
         
-        if (directory.exists() && directory.isDirectory()) {
-            File[] files = directory.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isFile() && isSupportedFormat(file.getName())) {
-                        try {
-                            MediaFile mediaFile = new MediaFile(file.getAbsolutePath());
-                            if (!mediaFile.isCorrupted()) {
-                                result.add(mediaFile);
-                            }
-                        } catch (Exception e) {
-                            System.err.println("Error processing file: " + file.getName() + " - " + e.getMessage());
+        if (directory.isDirectory()) {
+            // One attribute read per supported file; MediaFile reuses it instead of stat'ing again
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory.getAbsoluteFile().toPath())) {
+                for (Path entry : entries) {
+                    String fileName = entry.getFileName().toString();
+                    if (!isSupportedFormat(fileName)) {
+                        continue;
+                    }
+                    try {
+                        BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                        if (attributes.isRegularFile()) {
+                            FileMetadata metadata = createMetadata(entry.toFile(), attributes);
+                            MediaFile mediaFile = new MediaFile(entry.toString(), metadata);
+                            result.add(mediaFile);
+                            metadataCache.put(mediaFile.getFilePath(), metadata);
                         }
+                    } catch (Exception e) {
+                        System.err.println("Error processing file: " + fileName + " - " + e.getMessage());
                     }
                 }
+            } catch (IOException e) {
+                System.err.println("Error scanning directory: " + path + " - " + e.getMessage());
             }
         }
         
+        storeNewFiles(result);
         return result;
     }
     
@@ -48,16 +108,22 @@ public class FileManager implements IFileManager {
         }
         
         File file = new File(path);
-        if (!file.exists() || !file.isFile()) {
+        if (!isSupportedFormat(file.getName())) {
             return null;
         }
         
-        if (!isSupportedFormat(file.getName())) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null; // Does not exist or cannot be accessed
+        }
+        if (!attributes.isRegularFile()) {
             return null;
         }
         
         try {
-            return new MediaFile(path);
+            return new MediaFile(path, createMetadata(file, attributes));
         } catch (Exception e) {
             System.err.println("Error opening file: " + path + " - " + e.getMessage());
             return null;
@@ -92,8 +158,8 @@ public class FileManager implements IFileManager {
             return false;
         }
         
-        File file = new File(filePath);
-        return file.exists() && file.isFile() && file.canRead() && file.length() > 0;
+        FileMetadata metadata = readMetadata(filePath);
+        return metadata.exists() && metadata.isReadable() && metadata.getFileSize() > 0;
     }
     
     @Override
@@ -103,22 +169,275 @@ public class FileManager implements IFileManager {
             throw new IllegalArgumentException("File path cannot be null or empty");
         }
         
-        File file = new File(filePath);
-        String fileName = file.getName();
-        String format = "";
+        return readMetadata(filePath);
+    }
+    
+    @Override
+    public List<FileMetadata> getQuickMetadata(List<String> filePaths) {
+        // Precondition check
+        if (filePaths == null) {
+            throw new IllegalArgumentException("File paths cannot be null");
+        }
         
-        int dotIndex = fileName.lastIndexOf('.');
-        if (dotIndex > 0 && dotIndex < fileName.length() - 1) {
-            format = fileName.substring(dotIndex + 1).toLowerCase();
+        final String[] paths = filePaths.toArray(new String[0]);
+        final FileMetadata[] results = new FileMetadata[paths.length];
+        
+        if (paths.length <= STAT_BATCH_SIZE) {
+            for (int i = 0; i < paths.length; i++) {
+                results[i] = readMetadata(paths[i]);
+            }
+            return Arrays.asList(results);
+        }
+        
+        // Stat calls are latency bound (especially on network shares), so
+        // batches run concurrently on a bounded pool
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int start = 0; start < paths.length; start += STAT_BATCH_SIZE) {
+            final int from = start;
+            final int to = Math.min(paths.length, start + STAT_BATCH_SIZE);
+            tasks.add(() -> {
+                for (int i = from; i < to; i++) {
+                    results[i] = readMetadata(paths[i]);
+                }
+                return null;
+            });
         }
         
+        try {
+            for (Future<Void> future : getIoPool().invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading file metadata");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Error reading file metadata: " + e.getCause().getMessage());
+        }
+        
+        return Arrays.asList(results);
+    }
+    
+    /**
+     * Read metadata with a single attribute syscall
+     * Missing or inaccessible files yield metadata with exists() == false
+     */
+    private FileMetadata readMetadata(String filePath) {
+        File file = new File(filePath != null ? filePath : "");
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            return createMetadata(file, attributes);
+        } catch (IOException | InvalidPathException e) {
+            return new FileMetadata(file.getName(), formatOf(file.getName()), 0, 0, false, false);
+        }
+    }
+    
+    private synchronized ExecutorService getIoPool() {
+        if (ioPool == null) {
+            ioPool = Executors.newFixedThreadPool(IO_THREAD_COUNT, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+                
+                @Override
+                public Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task, "FileManager-IO-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return ioPool;
+    }
+    
+    @Override
+    public boolean watchDirectory(String path) {
+        // Precondition check
+        if (path == null || path.trim().isEmpty()) {
+            throw new IllegalArgumentException("Directory path cannot be null or empty");
+        }
+        
+        File directory = new File(path);
+        if (!directory.isDirectory()) {
+            return false;
+        }
+        
+        try {
+            getLibraryWatcher().watch(directory.getAbsolutePath());
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error watching directory: " + path + " - " + e.getMessage());
+            return false;
+        }
+    }
+    
+    @Override
+    public synchronized void stopWatching() {
+        if (libraryWatcher != null) {
+            libraryWatcher.close();
+        }
+    }
+    
+    @Override
+    public void addLibraryListener(ILibraryListener listener) {
+        getLibraryWatcher().addListener(listener);
+    }
+    
+    @Override
+    public void removeLibraryListener(ILibraryListener listener) {
+        getLibraryWatcher().removeListener(listener);
+    }
+    
+    @Override
+    public void enrichMetadata(List<MediaFile> files, Consumer<List<MediaFile>> onBatch) {
+        // Precondition check
+        if (files == null) {
+            throw new IllegalArgumentException("Files cannot be null");
+        }
+        
+        enricher.enrichAll(files, batch -> {
+            storeFiles(batch);
+            if (onBatch != null) {
+                onBatch.accept(batch);
+            }
+        });
+    }
+    
+    @Override
+    public synchronized LibraryDatabase openLibrary(String directory) {
+        // Precondition check
+        if (directory == null || directory.trim().isEmpty()) {
+            throw new IllegalArgumentException("Library directory cannot be null or empty");
+        }
+        
+        if (libraryDatabase != null) {
+            return libraryDatabase;
+        }
+        try {
+            libraryDatabase = LibraryDatabase.open(new File(directory));
+        } catch (IOException e) {
+            System.err.println("Error opening library: " + directory + " - " + e.getMessage());
+            return null;
+        }
+        loadLibrary(libraryDatabase);
+        return libraryDatabase;
+    }
+    
+    @Override
+    public synchronized void closeLibrary() {
+        if (libraryDatabase == null) {
+            return;
+        }
+        try {
+            libraryDatabase.close();
+        } catch (IOException e) {
+            System.err.println("Error closing library: " + e.getMessage());
+        }
+        libraryDatabase = null;
+    }
+    
+    @Override
+    public LibraryStore getLibrary() {
+        return library;
+    }
+    
+    /**
+     * Fill the library store from the database in the background
+     * Opening stays fast since the indexes are mapped; tracks scanned
+     * meanwhile are kept, the database only adds the ones still missing.
+     */
+    private void loadLibrary(final LibraryDatabase database) {
+        Thread loader = new Thread(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                LibraryCursor cursor = database.all(LIBRARY_PAGE_SIZE);
+                while (cursor.hasNext()) {
+                    library.addAll(cursor.nextPage());
+                }
+                System.out.println("Library loaded: " + library.getTrackCount() + " tracks in "
+                    + (System.currentTimeMillis() - start) + " ms");
+            } catch (IOException e) {
+                System.err.println("Error loading library: " + e.getMessage());
+            }
+        }, "LibraryLoader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+    
+    /**
+     * Store files, replacing what the library store and database hold for them
+     */
+    private void storeFiles(List<MediaFile> files) {
+        library.putAll(files);
+        LibraryDatabase database = libraryDatabase;
+        if (database == null || files.isEmpty()) {
+            return;
+        }
+        try {
+            database.putAll(files);
+        } catch (IOException e) {
+            System.err.println("Error updating library: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Store files the library store and database do not know yet
+     * Known files keep their stored tags; changes arrive through the watcher
+     */
+    private void storeNewFiles(List<MediaFile> files) {
+        library.addAll(files);
+        LibraryDatabase database = libraryDatabase;
+        if (database == null || files.isEmpty()) {
+            return;
+        }
+        List<MediaFile> unknown = new ArrayList<>();
+        for (MediaFile file : files) {
+            if (!database.contains(file.getFilePath())) {
+                unknown.add(file);
+            }
+        }
+        storeFiles(unknown);
+    }
+    
+    /**
+     * Get cache of last known metadata for scanned and watched files
+     * @return shared metadata cache
+     */
+    public MetadataCache getMetadataCache() {
+        return metadataCache;
+    }
+    
+    private synchronized LibraryWatcher getLibraryWatcher() {
+        if (libraryWatcher == null) {
+            libraryWatcher = new LibraryWatcher(this, metadataCache);
+            // Registered first, so other listeners find watched files in the library
+            libraryWatcher.addListener(libraryRecorder);
+        }
+        return libraryWatcher;
+    }
+    
+    /**
+     * Build FileMetadata from attributes that were already read.
+     * Readability is not probed with a separate syscall: a regular file
+     * that could be stat'ed is reported readable and confirmed on open.
+     * @param file file the attributes belong to
+     * @param attributes attributes read with Files.readAttributes
+     * @return metadata value object
+     */
+    static FileMetadata createMetadata(File file, BasicFileAttributes attributes) {
+        String fileName = file.getName();
         return new FileMetadata(
             fileName,
-            format,
-            file.exists() ? file.length() : 0,
-            file.exists() ? file.lastModified() : 0,
-            file.exists(),
-            file.exists() && file.canRead()
+            formatOf(fileName),
+            attributes.size(),
+            attributes.lastModifiedTime().toMillis(),
+            true,
+            attributes.isRegularFile()
         );
     }
-}
\ No newline at end of file
+    
+    private static String formatOf(String fileName) {
+        int dotIndex = fileName.lastIndexOf('.');
+        if (dotIndex > 0 && dotIndex < fileName.length() - 1) {
+            return fileName.substring(dotIndex + 1).toLowerCase();
+        }
+        return "";
+    }
+}
@@ -0,0 +1,314 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fingerprint Index Component
+ * Inverted index from 32-bit sub-fingerprint values to the tracks and
+ * positions where they occur. A lookup only touches the posting lists of
+ * the query's own sub-fingerprints, so its cost depends on the query and
+ * not on the library size. Candidates gather votes per (track, time
+ * offset) and the best ones are verified by bit error rate.
+ *
+ * Postings are packed into longs (value, track ordinal, position) and kept
+ * in a sorted array; new tracks go to a small hash-based delta that is
+ * merged into the array once it grows, so incremental adds stay cheap.
+ */
+public class FingerprintIndex {
+    private static final int POSITION_BITS = 10;
+    private static final int MAX_POSITIONS = 1 << POSITION_BITS;
+    private static final int MAX_ORDINALS = 1 << (32 - POSITION_BITS);
+    private static final int INDEX_STRIDE = 4;
+    private static final int DELTA_MERGE_THRESHOLD = 1 << 20;
+    private static final int MAX_POSTINGS_PER_VALUE = 1000;
+    private static final int MAX_CANDIDATES = 16;
+    private static final int MIN_OVERLAP = 50;
+    private static final double MAX_BIT_ERROR_RATE = 0.35;
+
+    private final List<String> paths = new ArrayList<>();
+    private final List<int[]> fingerprints = new ArrayList<>();
+    private final Map<String, Integer> ordinalsByPath = new HashMap<>();
+    private final BitSet removed = new BitSet();
+
+    private long[] postings = new long[0];
+    private final Map<Integer, IntList> delta = new HashMap<>();
+    private int deltaSize;
+
+    /**
+     * Add or replace the fingerprint of a file
+     * Precondition: path and fingerprint must not be null
+     */
+    public synchronized void add(String path, int[] fingerprint) {
+        if (path == null || fingerprint == null) {
+            throw new IllegalArgumentException("Path and fingerprint cannot be null");
+        }
+        remove(path);
+        if (paths.size() == MAX_ORDINALS) {
+            compact();
+            if (paths.size() == MAX_ORDINALS) {
+                throw new IllegalStateException("Fingerprint index is full");
+            }
+        }
+
+        int ordinal = paths.size();
+        paths.add(path);
+        fingerprints.add(fingerprint);
+        ordinalsByPath.put(path, ordinal);
+
+        int limit = Math.min(fingerprint.length, MAX_POSITIONS);
+        for (int position = 0; position < limit; position += INDEX_STRIDE) {
+            delta.computeIfAbsent(fingerprint[position], k -> new IntList())
+                .add(ordinal << POSITION_BITS | position);
+            deltaSize++;
+        }
+        if (deltaSize >= DELTA_MERGE_THRESHOLD) {
+            mergeDelta();
+        }
+    }
+
+    /**
+     * Remove a file from the index
+     * Its postings are dropped lazily on the next merge.
+     */
+    public synchronized void remove(String path) {
+        Integer ordinal = ordinalsByPath.remove(path);
+        if (ordinal != null) {
+            removed.set(ordinal);
+            fingerprints.set(ordinal, null);
+        }
+    }
+
+    public synchronized boolean contains(String path) {
+        return ordinalsByPath.containsKey(path);
+    }
+
+    public synchronized int size() {
+        return ordinalsByPath.size();
+    }
+
+    /**
+     * Find indexed files that sound like the given fingerprint
+     * Precondition: fingerprint must not be null
+     * Postcondition: returns matches ordered by similarity, best first
+     * @param excludePath path to leave out of the results (the query itself), may be null
+     */
+    public synchronized List<FingerprintMatch> findSimilar(int[] fingerprint, String excludePath) {
+        if (fingerprint == null) {
+            throw new IllegalArgumentException("Fingerprint cannot be null");
+        }
+
+        Integer excluded = excludePath == null ? null : ordinalsByPath.get(excludePath);
+        Map<Long, int[]> votes = new HashMap<>();
+        for (int position = 0; position < fingerprint.length; position++) {
+            // Re-encoding flips a few unreliable bits, so also probe every one-bit neighbour
+            for (int flip = -1; flip < 32; flip++) {
+                int value = flip < 0 ? fingerprint[position] : fingerprint[position] ^ (1 << flip);
+                collectVotes(votes, value, position, excluded);
+            }
+        }
+
+        // Best offset per track, strongest tracks first
+        Map<Integer, long[]> best = new HashMap<>();
+        for (Map.Entry<Long, int[]> entry : votes.entrySet()) {
+            int ordinal = (int) (entry.getKey() >>> 32);
+            int count = entry.getValue()[0];
+            long[] current = best.get(ordinal);
+            if (current == null || count > current[1]) {
+                best.put(ordinal, new long[] {entry.getKey(), count});
+            }
+        }
+        List<long[]> candidates = new ArrayList<>(best.values());
+        candidates.sort((a, b) -> Long.compare(b[1], a[1]));
+
+        List<FingerprintMatch> matches = new ArrayList<>();
+        for (int i = 0; i < candidates.size() && i < MAX_CANDIDATES; i++) {
+            int ordinal = (int) (candidates.get(i)[0] >>> 32);
+            int offset = (int) candidates.get(i)[0];
+            FingerprintMatch match = verify(fingerprint, ordinal, offset);
+            if (match != null) {
+                matches.add(match);
+            }
+        }
+        matches.sort((a, b) -> Double.compare(b.getSimilarity(), a.getSimilarity()));
+        return matches;
+    }
+
+    /**
+     * Drop postings of removed files and free the delta
+     */
+    public synchronized void compact() {
+        mergeDelta();
+        if (removed.isEmpty()) {
+            return;
+        }
+
+        // Renumber surviving files so ordinals stay dense
+        int[] remap = new int[paths.size()];
+        List<String> keptPaths = new ArrayList<>();
+        List<int[]> keptFingerprints = new ArrayList<>();
+        for (int ordinal = 0; ordinal < paths.size(); ordinal++) {
+            if (removed.get(ordinal)) {
+                remap[ordinal] = -1;
+            } else {
+                remap[ordinal] = keptPaths.size();
+                keptPaths.add(paths.get(ordinal));
+                keptFingerprints.add(fingerprints.get(ordinal));
+            }
+        }
+
+        int kept = 0;
+        for (long posting : postings) {
+            int ordinal = (int) posting >>> POSITION_BITS;
+            if (remap[ordinal] >= 0) {
+                int value = remap[ordinal] << POSITION_BITS | ((int) posting & (MAX_POSITIONS - 1));
+                postings[kept++] = (posting & 0xFFFFFFFF00000000L) | (value & 0xFFFFFFFFL);
+            }
+        }
+        postings = Arrays.copyOf(postings, kept);
+
+        paths.clear();
+        paths.addAll(keptPaths);
+        fingerprints.clear();
+        fingerprints.addAll(keptFingerprints);
+        ordinalsByPath.clear();
+        for (int ordinal = 0; ordinal < paths.size(); ordinal++) {
+            ordinalsByPath.put(paths.get(ordinal), ordinal);
+        }
+        removed.clear();
+    }
+
+    private void collectVotes(Map<Long, int[]> votes, int value, int position, Integer excluded) {
+        int from = lowerBound(postings, (long) value << 32);
+        int to = value == Integer.MAX_VALUE
+            ? postings.length : lowerBound(postings, (long) (value + 1) << 32);
+        IntList pending = delta.get(value);
+        if (to - from + (pending == null ? 0 : pending.size()) > MAX_POSTINGS_PER_VALUE) {
+            return; // Silence and other common frames say nothing about identity
+        }
+
+        for (int i = from; i < to; i++) {
+            vote(votes, (int) postings[i], position, excluded);
+        }
+        if (pending != null) {
+            for (int i = 0; i < pending.size(); i++) {
+                vote(votes, pending.get(i), position, excluded);
+            }
+        }
+    }
+
+    private void vote(Map<Long, int[]> votes, int posting, int queryPosition, Integer excluded) {
+        int ordinal = posting >>> POSITION_BITS;
+        if (removed.get(ordinal) || (excluded != null && excluded == ordinal)) {
+            return;
+        }
+        int offset = (posting & (MAX_POSITIONS - 1)) - queryPosition;
+        long key = (long) ordinal << 32 | (offset & 0xFFFFFFFFL);
+        int[] count = votes.get(key);
+        if (count == null) {
+            votes.put(key, new int[] {1});
+        } else {
+            count[0]++;
+        }
+    }
+
+    /**
+     * Compare a candidate bit by bit around the voted offset
+     */
+    private FingerprintMatch verify(int[] query, int ordinal, int offset) {
+        int[] candidate = fingerprints.get(ordinal);
+        FingerprintMatch best = null;
+        for (int shift = offset - 1; shift <= offset + 1; shift++) {
+            int start = Math.max(0, -shift);
+            int end = Math.min(query.length, candidate.length - shift);
+            int overlap = end - start;
+            if (overlap < MIN_OVERLAP) {
+                continue;
+            }
+
+            long errors = 0;
+            for (int i = start; i < end; i++) {
+                errors += Integer.bitCount(query[i] ^ candidate[i + shift]);
+            }
+            double bitErrorRate = errors / (32.0 * overlap);
+            if (bitErrorRate < MAX_BIT_ERROR_RATE
+                    && (best == null || 1.0 - bitErrorRate > best.getSimilarity())) {
+                best = new FingerprintMatch(paths.get(ordinal), 1.0 - bitErrorRate, shift);
+            }
+        }
+        return best;
+    }
+
+    private void mergeDelta() {
+        if (deltaSize == 0) {
+            return;
+        }
+
+        long[] added = new long[deltaSize];
+        int count = 0;
+        for (Map.Entry<Integer, IntList> entry : delta.entrySet()) {
+            long value = (long) entry.getKey() << 32;
+            IntList list = entry.getValue();
+            for (int i = 0; i < list.size(); i++) {
+                added[count++] = value | (list.get(i) & 0xFFFFFFFFL);
+            }
+        }
+        Arrays.sort(added);
+
+        long[] merged = new long[postings.length + added.length];
+        int i = 0, j = 0, k = 0;
+        while (i < postings.length && j < added.length) {
+            merged[k++] = postings[i] <= added[j] ? postings[i++] : added[j++];
+        }
+        while (i < postings.length) merged[k++] = postings[i++];
+        while (j < added.length) merged[k++] = added[j++];
+
+        postings = merged;
+        delta.clear();
+        deltaSize = 0;
+    }
+
+    /**
+     * First index whose posting is at least the given packed value
+     */
+    private static int lowerBound(long[] postings, long target) {
+        int low = 0;
+        int high = postings.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (postings[mid] < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Fingerprint Match value object
+     */
+    public static class FingerprintMatch {
+        private final String filePath;
+        private final double similarity;
+        private final int offset;
+
+        public FingerprintMatch(String filePath, double similarity, int offset) {
+            this.filePath = filePath;
+            this.similarity = similarity;
+            this.offset = offset;
+        }
+
+        // Getters
+        public String getFilePath() { return filePath; }
+        public double getSimilarity() { return similarity; }
+        public int getOffset() { return offset; }
+
+        @Override
+        public String toString() {
+            return String.format("%.0f%% %s", similarity * 100, filePath);
+        }
+    }
+}
@@ -1,4 +1,5 @@
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * File Management Interface - System Interface
@@ -37,7 +38,7 @@ public interface IFileManager {
     /**
      * Validate file integrity
      * Precondition: file must exist
-     * Postcondition: returns true if file is not corrupted
+     * Postcondition: returns true if file is a non-empty regular file
      */
     boolean validateFile(String filePath);
     
@@ -47,4 +48,71 @@ public interface IFileManager {
      * Postcondition: returns basic file information
      */
     FileMetadata getQuickMetadata(String filePath);
-}
\ No newline at end of file
+    
+    /**
+     * Get metadata for many files at once
+     * Precondition: filePaths must not be null
+     * Postcondition: returns one FileMetadata per path, in the same order;
+     * each file costs a single attribute read, performed on a bounded I/O pool
+     */
+    List<FileMetadata> getQuickMetadata(List<String> filePaths);
+    
+    /**
+     * Watch directory tree for library changes
+     * Precondition: path must be valid directory path
+     * Postcondition: files created, modified or deleted below path are
+     * reported to library listeners in coalesced batches
+     */
+    boolean watchDirectory(String path);
+    
+    /**
+     * Stop watching all directories
+     * Postcondition: no further library events are delivered
+     */
+    void stopWatching();
+    
+    /**
+     * Add library change listener
+     * Precondition: listener must not be null
+     * Postcondition: listener receives incremental library updates
+     */
+    void addLibraryListener(ILibraryListener listener);
+    
+    /**
+     * Remove library change listener
+     * Postcondition: listener no longer receives library updates
+     */
+    void removeLibraryListener(ILibraryListener listener);
+    
+    /**
+     * Load tags and duration of files in the background
+     * Precondition: files must not be null
+     * Postcondition: files are enriched asynchronously; onBatch (may be null)
+     * is called from a background thread with each completed batch
+     */
+    void enrichMetadata(List<MediaFile> files, Consumer<List<MediaFile>> onBatch);
+    
+    /**
+     * Open the persistent library database
+     * Precondition: directory must be a writable directory path
+     * Postcondition: the database's tracks are loaded into getLibrary() in
+     * the background; scanned, watched and enriched files are also stored in
+     * the database until closeLibrary() is called
+     * @return opened database, or null if it could not be opened
+     */
+    LibraryDatabase openLibrary(String directory);
+    
+    /**
+     * Checkpoint and close the library database
+     * Postcondition: files are no longer stored in the database
+     */
+    void closeLibrary();
+    
+    /**
+     * Get the in-memory library
+     * Postcondition: holds every scanned, watched and enriched file, whether
+     * or not a library database is open
+     * @return library store shared with the track pool
+     */
+    LibraryStore getLibrary();
+}
@@ -0,0 +1,27 @@
+import java.util.List;
+
+/**
+ * Library Listener Interface - Observer Interface
+ * Receives incremental changes detected in watched library folders
+ * Events are delivered in coalesced batches from a background thread
+ */
+public interface ILibraryListener {
+
+    /**
+     * Called when new media files appear in a watched folder
+     * @param files newly detected media files
+     */
+    void onFilesAdded(List<MediaFile> files);
+
+    /**
+     * Called when known media files are modified on disk
+     * @param files media files with refreshed information
+     */
+    void onFilesChanged(List<MediaFile> files);
+
+    /**
+     * Called when media files disappear from a watched folder
+     * @param filePaths absolute paths of the removed files
+     */
+    void onFilesRemoved(List<String> filePaths);
+}
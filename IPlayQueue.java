@@ -0,0 +1,66 @@
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Play Queue Interface - Business Interface
+ * Provides contract for the "up next" queue played before the playlist continues
+ * Follows Design by Contract principles
+ */
+public interface IPlayQueue {
+
+    /**
+     * Queue files to play right after the current track, in the given order
+     * Precondition: files must not be null or contain null
+     * Postcondition: files are at the front of the queue, with one notification
+     * @return number of files queued
+     */
+    int playNext(Collection<MediaFile> files);
+
+    /**
+     * Queue files after everything already queued
+     * Precondition: files must not be null or contain null
+     * Postcondition: files are at the back of the queue, with one notification
+     * @return number of files queued
+     */
+    int playLater(Collection<MediaFile> files);
+
+    /**
+     * Take the next file off the queue
+     * @return the next queued file, or null if the queue is empty
+     */
+    MediaFile poll();
+
+    /**
+     * Get the next file without taking it
+     * @return the next queued file, or null if the queue is empty
+     */
+    MediaFile peek();
+
+    /**
+     * Remove every queued file
+     * Postcondition: queue is empty
+     */
+    void clear();
+
+    int size();
+
+    boolean isEmpty();
+
+    /**
+     * Get the queued files in play order
+     * Postcondition: returns a copy; later changes to the queue do not show in it
+     */
+    List<MediaFile> getAll();
+
+    /**
+     * Add queue change listener
+     * Precondition: listener must not be null
+     * Postcondition: listener is notified once per queue operation
+     */
+    void addQueueListener(IPlayQueueListener listener);
+
+    /**
+     * Remove queue change listener
+     */
+    void removeQueueListener(IPlayQueueListener listener);
+}
@@ -0,0 +1,13 @@
+/**
+ * Play Queue Listener Interface - Observer Interface
+ * Receives one notification per queue operation, including bulk ones
+ * Notifications are delivered on the thread that changed the queue
+ */
+public interface IPlayQueueListener {
+
+    /**
+     * Called after files were queued, taken from the queue or cleared
+     * @param queue the queue that changed
+     */
+    void onQueueChanged(IPlayQueue queue);
+}
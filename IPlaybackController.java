@@ -33,9 +33,10 @@ public interface IPlaybackController {
     void stop();
     
     /**
-     * Move to next track in playlist
-     * Precondition: playlist must not be empty
-     * Postcondition: next track is loaded and played
+     * Move to next track: the head of the play queue, else the next in playlist
+     * Precondition: play queue or playlist must not be empty
+     * Postcondition: next track is loaded and played; a queued track is
+     * taken off the queue and leaves the playlist position unchanged
      */
     void next();
     
@@ -97,6 +98,26 @@ public interface IPlaybackController {
      */
     IPlaylistManager getPlaylistManager();
     
+    /**
+     * Get the "up next" queue played before the playlist continues
+     * Postcondition: returns the play queue instance
+     */
+    IPlayQueue getPlayQueue();
+    
+    /**
+     * Replace the play queue, e.g. with one restored from disk
+     * Precondition: playQueue must not be null
+     */
+    void setPlayQueue(IPlayQueue playQueue);
+    
+    /**
+     * Switch to another playlist
+     * Precondition: playlistManager must not be null
+     * Postcondition: next, previous and completion handling use the new
+     * playlist; the playing track continues until it ends
+     */
+    void setPlaylistManager(IPlaylistManager playlistManager);
+    
     /**
      * Set repeat mode
      * Postcondition: repeat mode is updated
@@ -111,7 +132,8 @@ public interface IPlaybackController {
     
     /**
      * Set shuffle mode
-     * Postcondition: shuffle mode is updated
+     * Postcondition: shuffle mode is updated; the playlist order is unchanged,
+     * next() and previous() follow a shuffled order instead
      */
     void setShuffleMode(boolean shuffle);
     
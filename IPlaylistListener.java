@@ -0,0 +1,13 @@
+/**
+ * Playlist Listener Interface - Observer Interface
+ * Receives one event per playlist mutation, including bulk operations
+ * Events are delivered on the thread that changed the playlist
+ */
+public interface IPlaylistListener {
+    
+    /**
+     * Called after the playlist content or order changed
+     * @param event what changed
+     */
+    void onPlaylistChanged(PlaylistChangeEvent event);
+}
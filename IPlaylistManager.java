@@ -1,3 +1,4 @@
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -14,6 +15,15 @@ public interface IPlaylistManager {
      */
     void addFile(MediaFile file);
     
+    /**
+     * Insert media files at a position
+     * Precondition: files must not be null or contain null, 0 <= index <= size
+     * Postcondition: files not yet in the playlist are inserted in order
+     * starting at index, in one pass with a single INSERTED event
+     * @return number of files inserted
+     */
+    int addAll(int index, Collection<MediaFile> files);
+    
     /**
      * Remove media file from playlist
      * Precondition: file must exist in playlist
@@ -21,6 +31,34 @@ public interface IPlaylistManager {
      */
     boolean removeFile(MediaFile file);
     
+    /**
+     * Remove media files
+     * Precondition: files must not be null
+     * Postcondition: files are removed in one pass with a single REMOVED event;
+     * files not in the playlist are ignored
+     * @return number of files removed
+     */
+    int removeAll(Collection<MediaFile> files);
+    
+    /**
+     * Remove files in a range
+     * Precondition: 0 <= fromIndex <= toIndex <= size
+     * Postcondition: files fromIndex (inclusive) to toIndex (exclusive) are
+     * removed with a single REMOVED event
+     */
+    void removeRange(int fromIndex, int toIndex);
+    
+    /**
+     * Move a range of files
+     * Precondition: 0 <= fromIndex < toIndex <= size, 0 <= destination <= size,
+     * destination not inside the range
+     * Postcondition: files fromIndex (inclusive) to toIndex (exclusive) are
+     * placed before the file that was at destination (or at the end),
+     * with a single MOVED event; the current file stays current
+     * @return false if the files were already there
+     */
+    boolean moveRange(int fromIndex, int toIndex, int destination);
+    
     /**
      * Get next file in playlist
      * Precondition: playlist must not be empty
@@ -48,6 +86,13 @@ public interface IPlaylistManager {
      */
     MediaFile getFileAt(int index);
     
+    /**
+     * Get position of a file
+     * Postcondition: returns index of file, or -1 if not in playlist;
+     * runs in constant time
+     */
+    int indexOf(MediaFile file);
+    
     /**
      * Move file up in playlist order
      * Precondition: file must exist and not be at top
@@ -82,7 +127,8 @@ public interface IPlaylistManager {
     
     /**
      * Get all files in playlist
-     * Postcondition: returns immutable list of all files
+     * Postcondition: returns immutable list of all files; later changes to
+     * the playlist do not show in it
      */
     List<MediaFile> getAllFiles();
     
@@ -105,6 +151,58 @@ public interface IPlaylistManager {
      */
     void shuffle();
     
+    /**
+     * Sort playlist by one or more fields
+     * Precondition: fields must not be null or empty
+     * Postcondition: files are ordered by the first field, ties by the next;
+     * files with equal keys keep their order, current file stays current
+     */
+    void sort(List<SortField> fields, boolean ascending);
+    
+    /**
+     * Undo the last edit of the playlist's contents or order
+     * Postcondition: playlist holds the files it held before that edit, in
+     * the same order, and listeners receive events as for any edit;
+     * returns false if there was nothing to undo
+     */
+    boolean undo();
+    
+    /**
+     * Redo the last undone edit
+     * Postcondition: returns false if there was nothing to redo; any other
+     * edit since the undo discards what could be redone
+     */
+    boolean redo();
+    
+    /**
+     * Check whether there is an edit to undo
+     */
+    boolean canUndo();
+    
+    /**
+     * Check whether there is an undone edit to redo
+     */
+    boolean canRedo();
+    
+    /**
+     * Forget all edits; the current contents become the start of the history
+     * Postcondition: canUndo() and canRedo() return false
+     */
+    void clearHistory();
+    
+    /**
+     * Add playlist change listener
+     * Precondition: listener must not be null
+     * Postcondition: listener receives one event per mutation
+     */
+    void addPlaylistListener(IPlaylistListener listener);
+    
+    /**
+     * Remove playlist change listener
+     * Postcondition: listener no longer receives events
+     */
+    void removePlaylistListener(IPlaylistListener listener);
+    
     /**
      * Save playlist to file
      * Precondition: filename must not be null or empty
@@ -0,0 +1,40 @@
+import java.util.Collection;
+
+/**
+ * Track Predicate Interface - Business Interface
+ * A compiled smart playlist rule, or one node of it
+ * Each predicate declares the fields it reads so that a metadata change
+ * only re-evaluates the rules that depend on the changed fields
+ */
+public interface ITrackPredicate {
+    
+    int FIELD_TITLE = 1;
+    int FIELD_ARTIST = 1 << 1;
+    int FIELD_ALBUM = 1 << 2;
+    int FIELD_GENRE = 1 << 3;
+    int FIELD_FORMAT = 1 << 4;
+    int FIELD_YEAR = 1 << 5;
+    int FIELD_DURATION = 1 << 6;
+    int FIELD_LAST_PLAYED = 1 << 7;
+    
+    /**
+     * Evaluate the predicate
+     * Precondition: file must not be null
+     * @param now current time in milliseconds, for rules about play history
+     * @return true if the file matches
+     */
+    boolean test(MediaFile file, long now);
+    
+    /**
+     * Get fields read by this predicate
+     * Postcondition: returns a combination of FIELD_ constants
+     */
+    int getFields();
+    
+    /**
+     * Collect the time windows this predicate compares last-played times against
+     * Postcondition: windows holds each window length in milliseconds;
+     * results change as these windows slide, without any metadata change
+     */
+    void collectTimeWindows(Collection<Long> windows);
+}
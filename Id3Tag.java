@@ -0,0 +1,399 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * ID3 Tag value object and reader
+ * Reads ID3v2 (2.2, 2.3, 2.4) text frames and ID3v1 tags with bounded reads:
+ * frame headers are walked with seeks and large frames such as embedded
+ * pictures are skipped without being loaded. Pictures are read on request.
+ */
+public class Id3Tag {
+    private static final int MAX_TEXT_FRAME_SIZE = 4096;
+    private static final int ID3V1_SIZE = 128;
+    private static final int PICTURE_TYPE_FRONT_COVER = 3;
+
+    private String title;
+    private String artist;
+    private String album;
+    private String genre;
+    private int year;
+    private long v2Size;
+    private boolean hasV1;
+
+    private Id3Tag() {
+    }
+
+    /**
+     * Read ID3 tags of a file
+     * Precondition: file must not be null
+     * Postcondition: returns tag (fields are null/0 when absent)
+     */
+    public static Id3Tag read(File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("File cannot be null");
+        }
+
+        Id3Tag tag = new Id3Tag();
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            tag.readV2(in);
+            tag.readV1(in);
+        }
+        return tag;
+    }
+
+    /**
+     * Get size of the ID3v2 tag at the start of a file, header and footer included
+     * @return tag size in bytes or 0 when the file has no ID3v2 tag
+     */
+    public static long readV2Size(RandomAccessFile in) throws IOException {
+        if (in.length() < 10) {
+            return 0;
+        }
+
+        byte[] header = new byte[10];
+        in.seek(0);
+        in.readFully(header);
+        if (header[0] != 'I' || header[1] != 'D' || header[2] != '3') {
+            return 0;
+        }
+
+        boolean hasFooter = (header[5] & 0x10) != 0;
+        return 10L + syncSafe(header, 6) + (hasFooter ? 10 : 0);
+    }
+
+    /**
+     * Check whether a file ends with an ID3v1 tag
+     */
+    public static boolean hasV1(RandomAccessFile in) throws IOException {
+        long length = in.length();
+        if (length < ID3V1_SIZE) {
+            return false;
+        }
+
+        byte[] marker = new byte[3];
+        in.seek(length - ID3V1_SIZE);
+        in.readFully(marker);
+        return marker[0] == 'T' && marker[1] == 'A' && marker[2] == 'G';
+    }
+
+    // Getters
+    public String getTitle() { return title; }
+    public String getArtist() { return artist; }
+    public String getAlbum() { return album; }
+    public String getGenre() { return genre; }
+    public int getYear() { return year; }
+    public boolean hasV1() { return hasV1; }
+
+    /**
+     * Get offset of the first byte after the ID3v2 tag
+     * @return audio start offset (0 without ID3v2 tag)
+     */
+    public long getAudioStart() {
+        return v2Size;
+    }
+
+    /**
+     * Get offset just past the last audio byte
+     * @param fileLength total file length
+     * @return audio end offset, excluding a trailing ID3v1 tag
+     */
+    public long getAudioEnd(long fileLength) {
+        return hasV1 ? fileLength - ID3V1_SIZE : fileLength;
+    }
+
+    /**
+     * Read the embedded picture of a file, preferring the front cover
+     * Only the picture frame itself is read; it is skipped when larger than maxBytes.
+     * @return image bytes (JPEG/PNG) or null when the file has no usable picture
+     */
+    public static byte[] readPicture(File file, int maxBytes) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("File cannot be null");
+        }
+
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            final byte[][] best = new byte[1][];
+            final boolean[] front = new boolean[1];
+            walkFrames(in, (frameId, majorVersion, frameSize, unsynchronized) -> {
+                if (!frameId.equals("APIC") && !frameId.equals("PIC")) {
+                    return true;
+                }
+                if (frameSize > maxBytes) {
+                    return true;
+                }
+
+                byte[] content = new byte[(int) frameSize];
+                in.readFully(content);
+                if (unsynchronized) {
+                    content = removeUnsynchronization(content);
+                }
+                int[] type = new int[1];
+                byte[] image = pictureData(content, majorVersion, type);
+                if (image != null && (best[0] == null || type[0] == PICTURE_TYPE_FRONT_COVER)) {
+                    best[0] = image;
+                    front[0] = type[0] == PICTURE_TYPE_FRONT_COVER;
+                }
+                return !front[0];
+            });
+            return best[0];
+        }
+    }
+
+    private void readV2(RandomAccessFile in) throws IOException {
+        v2Size = readV2Size(in);
+        if (v2Size == 0) {
+            return;
+        }
+
+        walkFrames(in, (frameId, majorVersion, frameSize, unsynchronized) -> {
+            if (frameSize <= MAX_TEXT_FRAME_SIZE && isTextFrame(frameId)) {
+                byte[] content = new byte[(int) frameSize];
+                in.readFully(content);
+                if (unsynchronized) {
+                    content = removeUnsynchronization(content);
+                }
+                applyTextFrame(frameId, decodeText(content));
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Visit the frames of an ID3v2 tag with seeks, without loading frame contents
+     * The file is positioned at the start of each frame's content before the visitor runs.
+     */
+    private static void walkFrames(RandomAccessFile in, FrameVisitor visitor) throws IOException {
+        if (readV2Size(in) == 0) {
+            return;
+        }
+
+        byte[] header = new byte[10];
+        in.seek(0);
+        in.readFully(header);
+        int majorVersion = header[3];
+        int flags = header[5];
+        boolean tagUnsynchronized = (flags & 0x80) != 0 && majorVersion < 4;
+        long end = Math.min(10L + syncSafe(header, 6), in.length());
+        long position = 10;
+
+        if ((flags & 0x40) != 0 && majorVersion >= 3) {
+            // Skip extended header
+            byte[] sizeBytes = new byte[4];
+            in.seek(position);
+            in.readFully(sizeBytes);
+            position += majorVersion == 4 ? syncSafe(sizeBytes, 0) : 4 + bigEndian(sizeBytes, 0, 4);
+        }
+
+        int frameHeaderSize = majorVersion == 2 ? 6 : 10;
+        byte[] frameHeader = new byte[frameHeaderSize];
+
+        while (position + frameHeaderSize <= end) {
+            in.seek(position);
+            in.readFully(frameHeader);
+            if (frameHeader[0] == 0) {
+                break; // Padding
+            }
+
+            String frameId;
+            long frameSize;
+            boolean unsynchronized = tagUnsynchronized;
+            long contentOffset = position + frameHeaderSize;
+            if (majorVersion == 2) {
+                frameId = new String(frameHeader, 0, 3, StandardCharsets.ISO_8859_1);
+                frameSize = bigEndian(frameHeader, 3, 3);
+            } else {
+                frameId = new String(frameHeader, 0, 4, StandardCharsets.ISO_8859_1);
+                frameSize = majorVersion == 4 ? syncSafe(frameHeader, 4) : bigEndian(frameHeader, 4, 4);
+            }
+
+            long frameEnd = contentOffset + frameSize;
+            if (frameSize <= 0 || frameEnd > end) {
+                break;
+            }
+
+            long contentSize = frameSize;
+            if (majorVersion == 4) {
+                unsynchronized = (frameHeader[9] & 0x02) != 0;
+                if ((frameHeader[9] & 0x01) != 0) {
+                    // Skip data length indicator
+                    contentOffset += 4;
+                    contentSize -= 4;
+                }
+            }
+
+            if (contentSize > 0) {
+                in.seek(contentOffset);
+                if (!visitor.visit(frameId, majorVersion, contentSize, unsynchronized)) {
+                    break;
+                }
+            }
+
+            position = frameEnd;
+        }
+    }
+
+    private void readV1(RandomAccessFile in) throws IOException {
+        long length = in.length();
+        if (length - ID3V1_SIZE < v2Size || !hasV1(in)) {
+            return;
+        }
+
+        byte[] data = new byte[ID3V1_SIZE];
+        in.seek(length - ID3V1_SIZE);
+        in.readFully(data);
+        hasV1 = true;
+
+        // ID3v2 values take precedence
+        if (title == null) title = v1Field(data, 3, 30);
+        if (artist == null) artist = v1Field(data, 33, 30);
+        if (album == null) album = v1Field(data, 63, 30);
+        if (year == 0) year = parseYear(v1Field(data, 93, 4));
+    }
+
+    private static boolean isTextFrame(String frameId) {
+        switch (frameId) {
+            case "TIT2": case "TPE1": case "TALB": case "TCON": case "TYER": case "TDRC":
+            case "TT2": case "TP1": case "TAL": case "TCO": case "TYE":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void applyTextFrame(String frameId, String value) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+
+        switch (frameId) {
+            case "TIT2": case "TT2": title = value; break;
+            case "TPE1": case "TP1": artist = value; break;
+            case "TALB": case "TAL": album = value; break;
+            case "TCON": case "TCO": genre = value; break;
+            case "TYER": case "TDRC": case "TYE": year = parseYear(value); break;
+            default: break;
+        }
+    }
+
+    private static String decodeText(byte[] content) {
+        if (content.length < 2) {
+            return null;
+        }
+
+        Charset charset;
+        switch (content[0]) {
+            case 1: charset = StandardCharsets.UTF_16; break;
+            case 2: charset = StandardCharsets.UTF_16BE; break;
+            case 3: charset = StandardCharsets.UTF_8; break;
+            default: charset = StandardCharsets.ISO_8859_1; break;
+        }
+
+        String text = new String(content, 1, content.length - 1, charset);
+        int terminator = text.indexOf('\0');
+        if (terminator >= 0) {
+            text = text.substring(0, terminator); // Keep the first value only
+        }
+        return text.trim();
+    }
+
+    /**
+     * Extract image bytes from APIC (v2.3/2.4) or PIC (v2.2) frame content
+     */
+    private static byte[] pictureData(byte[] content, int majorVersion, int[] pictureType) {
+        if (content.length < 4) {
+            return null;
+        }
+
+        int encoding = content[0];
+        int position = 1;
+        if (majorVersion == 2) {
+            position += 3; // Image format, e.g. "JPG"
+        } else {
+            while (position < content.length && content[position] != 0) {
+                position++; // MIME type
+            }
+            position++;
+        }
+        if (position >= content.length) {
+            return null;
+        }
+        pictureType[0] = content[position++] & 0xFF;
+
+        // Description, terminated by one or two zero bytes depending on encoding
+        boolean wide = encoding == 1 || encoding == 2;
+        if (wide) {
+            while (position + 1 < content.length && (content[position] != 0 || content[position + 1] != 0)) {
+                position += 2;
+            }
+            position += 2;
+        } else {
+            while (position < content.length && content[position] != 0) {
+                position++;
+            }
+            position++;
+        }
+        if (position >= content.length) {
+            return null;
+        }
+        return Arrays.copyOfRange(content, position, content.length);
+    }
+
+    /**
+     * Undo ID3 unsynchronization (0xFF 0x00 becomes 0xFF)
+     */
+    private static byte[] removeUnsynchronization(byte[] data) {
+        byte[] result = new byte[data.length];
+        int length = 0;
+        for (int i = 0; i < data.length; i++) {
+            result[length++] = data[i];
+            if ((data[i] & 0xFF) == 0xFF && i + 1 < data.length && data[i + 1] == 0) {
+                i++;
+            }
+        }
+        return length == data.length ? result : Arrays.copyOf(result, length);
+    }
+
+    private static String v1Field(byte[] data, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && data[end] != 0) {
+            end++;
+        }
+        String value = new String(data, offset, end - offset, StandardCharsets.ISO_8859_1).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static int parseYear(String value) {
+        if (value == null || value.length() < 4) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value.substring(0, 4));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    static int syncSafe(byte[] data, int offset) {
+        return (data[offset] & 0x7F) << 21 | (data[offset + 1] & 0x7F) << 14
+            | (data[offset + 2] & 0x7F) << 7 | (data[offset + 3] & 0x7F);
+    }
+
+    static long bigEndian(byte[] data, int offset, int length) {
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            value = value << 8 | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private interface FrameVisitor {
+        /**
+         * @return false to stop walking
+         */
+        boolean visit(String frameId, int majorVersion, long size, boolean unsynchronized) throws IOException;
+    }
+}
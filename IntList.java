@@ -0,0 +1,121 @@
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints
+ * Avoids boxing for id lists, posting lists and permutations.
+ * Not thread-safe.
+ */
+public class IntList {
+    private int[] values;
+    private int size;
+
+    public IntList() {
+        this(8);
+    }
+
+    public IntList(int initialCapacity) {
+        values = new int[Math.max(initialCapacity, 1)];
+        size = 0;
+    }
+
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * Get value at index
+     * Precondition: index must be valid (0 <= index < size)
+     */
+    public int get(int index) {
+        checkIndex(index);
+        return values[index];
+    }
+
+    /**
+     * Replace value at index
+     * Precondition: index must be valid (0 <= index < size)
+     */
+    public void set(int index, int value) {
+        checkIndex(index);
+        values[index] = value;
+    }
+
+    /**
+     * Remove value at index, shifting later values down
+     * @return removed value
+     */
+    public int removeAt(int index) {
+        checkIndex(index);
+        int value = values[index];
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+        return value;
+    }
+
+    /**
+     * Remove the first occurrence of a value
+     * @return true if the value was found
+     */
+    public boolean removeValue(int value) {
+        int index = indexOf(value);
+        if (index == -1) {
+            return false;
+        }
+        removeAt(index);
+        return true;
+    }
+
+    public int indexOf(int value) {
+        for (int i = 0; i < size; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(int value) {
+        return indexOf(value) != -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Copy values into a new array
+     * @return array of length size()
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Approximate heap used by the list
+     * @return size in bytes
+     */
+    public long getHeapUsage() {
+        return 16L + 16L + 4L * values.length;
+    }
+
+    public void trimToSize() {
+        values = Arrays.copyOf(values, Math.max(size, 1));
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index out of bounds: " + index);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Library Cursor Component
+ * Pages through the result of a LibraryDatabase query in index order.
+ * Records are decoded only when their page is requested, so a query over
+ * a large range costs nothing until it is read. The persisted index range
+ * is merged with the records added since the last checkpoint.
+ *
+ * A cursor is weakly consistent: tracks changed while it is open may be
+ * returned in their old or new state. Run the query again after writes
+ * for an exact view. A checkpoint that compacts the log moves every
+ * record, after which nextPage() fails and the query must be run again.
+ */
+public class LibraryCursor {
+    private final LibraryDatabase database;
+    private final LibraryDatabase.Index index;
+    private final LongBuffer persisted;
+    private final int end;
+    private final long[] pending;
+    private final int pageSize;
+    private final int compactions;
+    private int position;
+    private int pendingPosition;
+
+    LibraryCursor(LibraryDatabase database, LibraryDatabase.Index index, LongBuffer persisted,
+                  int start, int end, long[] pending, int pageSize, int compactions) {
+        this.database = database;
+        this.index = index;
+        this.persisted = persisted;
+        this.position = start;
+        this.end = end;
+        this.pending = pending;
+        this.pageSize = pageSize;
+        this.compactions = compactions;
+    }
+
+    /**
+     * Check whether another page may follow
+     * Deleted tracks are skipped while reading, so the last page can be empty.
+     */
+    public boolean hasNext() {
+        return position < end || pendingPosition < pending.length;
+    }
+
+    /**
+     * Read the next page
+     * Postcondition: returns at most pageSize tracks, empty when exhausted
+     * @throws IOException if the log was compacted since the query
+     */
+    public List<MediaFile> nextPage() throws IOException {
+        database.checkCompactions(compactions);
+        List<MediaFile> page = new ArrayList<>(pageSize);
+        while (page.size() < pageSize && hasNext()) {
+            long offset;
+            if (position >= end) {
+                offset = pending[pendingPosition++];
+            } else if (!database.isLive(persisted.get(position))) {
+                position++;
+                continue;
+            } else if (pendingPosition < pending.length
+                    && database.compareRecords(index, pending[pendingPosition], persisted.get(position)) < 0) {
+                offset = pending[pendingPosition++];
+            } else {
+                offset = persisted.get(position++);
+            }
+            page.add(database.readMediaFile(offset));
+        }
+        return page;
+    }
+
+    /**
+     * Read all remaining tracks
+     * Intended for small results such as a single album.
+     */
+    public List<MediaFile> toList() throws IOException {
+        List<MediaFile> result = new ArrayList<>();
+        while (hasNext()) {
+            result.addAll(nextPage());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,906 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Library Database Component
+ * Persistent store of library tracks in a directory:
+ *
+ *   records.GEN.log     append-only log of put/delete records
+ *                       (records.log in generation 0)
+ *   NAME.GEN.idx        one sorted array of record offsets per secondary index
+ *   library.meta        manifest naming the index and log generations and
+ *                       the log length the indexes cover
+ *
+ * Index files are memory-mapped on open, so opening a large library only
+ * replays records appended since the last checkpoint. Records appended
+ * since then live in a small in-memory tail that queries merge in, and a
+ * checkpoint folds the tail into new index files, which become visible
+ * atomically by rewriting the manifest. Queries return paged cursors that
+ * decode records only as pages are requested.
+ *
+ * Once superseded records outweigh the live ones, a checkpoint copies the
+ * live records into the next log generation and re-points the indexes at
+ * them, so the log stays within twice the size of the library.
+ */
+public class LibraryDatabase implements Closeable {
+    /**
+     * Secondary indexes; PATH doubles as the primary key
+     */
+    public enum Index {
+        PATH, ARTIST, ALBUM, GENRE, YEAR, ADDED
+    }
+
+    private static final int MANIFEST_MAGIC = 0x4C49424D; // "LIBM"
+    private static final int INDEX_MAGIC = 0x4C494458; // "LIDX"
+    private static final int FORMAT_VERSION = 1;
+    // Version 2 adds the log generation; version 1 manifests use records.log
+    private static final int MANIFEST_VERSION = 2;
+    private static final int INDEX_HEADER_SIZE = 16;
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_DELETE = 2;
+    private static final byte FLAG_ENRICHED = 1;
+    private static final byte FLAG_CORRUPTED = 2;
+    private static final int MAX_STRING_BYTES = 0xFFFF;
+    // [int length][type][flags][long added][long size][int year][int duration] then strings
+    private static final int PUT_STRINGS_START = 4 + 1 + 1 + 8 + 8 + 4 + 4;
+    private static final int AUTO_CHECKPOINT_RECORDS = 65536;
+    private static final long MIN_COMPACTION_BYTES = 1 << 20;
+    private static final String LOG_FILE = "records";
+    private static final String MANIFEST_FILE = "library.meta";
+    private static final Index[] INDEXES = Index.values();
+
+    private final File directory;
+    private FileChannel log;
+    private long logLength;
+    private MappedByteBuffer logMap;
+    private long generation;
+    private long logGeneration;
+    // Raised when compaction moves records, which invalidates open cursors
+    private int compactions;
+    private final LongBuffer[] indexes = new LongBuffer[INDEXES.length];
+
+    // Changes since the last checkpoint
+    private final Map<String, Long> tail = new LinkedHashMap<>();
+    private final Set<Long> deleted = new HashSet<>();
+    private boolean closed;
+
+    private LibraryDatabase(File directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory.toPath());
+    }
+
+    /**
+     * Open or create a library database
+     * Precondition: directory must not be null
+     * Postcondition: database reflects every record in the log
+     */
+    public static LibraryDatabase open(File directory) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("Directory cannot be null");
+        }
+
+        LibraryDatabase database = new LibraryDatabase(directory);
+        try {
+            long covered = database.loadIndexes();
+            database.replay(covered);
+            return database;
+        } catch (IOException | RuntimeException e) {
+            if (database.log != null) {
+                database.log.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Add or update a track
+     * Precondition: file must not be null
+     */
+    public void put(MediaFile file) throws IOException {
+        putAll(Collections.singletonList(file));
+    }
+
+    /**
+     * Add or update tracks with a single append
+     * The added date of tracks already in the library is kept.
+     */
+    public synchronized void putAll(Collection<MediaFile> files) throws IOException {
+        if (files == null) {
+            throw new IllegalArgumentException("Files cannot be null");
+        }
+        checkOpen();
+
+        long now = System.currentTimeMillis();
+        ByteBuffer batch = ByteBuffer.allocate((int) Math.min(1 << 24, Math.max(256L, files.size() * 192L)));
+        List<String> paths = new ArrayList<>(files.size());
+        List<Long> offsets = new ArrayList<>(files.size());
+        Map<String, Long> batchAdded = new LinkedHashMap<>();
+
+        for (MediaFile file : files) {
+            if (file == null) {
+                continue;
+            }
+            String path = file.getFilePath();
+            Long added = batchAdded.get(path);
+            if (added == null) {
+                long existing = lookup(path);
+                added = existing >= 0 ? readRecord(existing).added : now;
+                batchAdded.put(path, added);
+            }
+
+            byte[] record = encodePut(file, added);
+            batch = ensureCapacity(batch, record.length);
+            paths.add(path);
+            offsets.add(logLength + batch.position());
+            batch.put(record);
+        }
+
+        append(batch);
+        for (int i = 0; i < paths.size(); i++) {
+            supersede(paths.get(i));
+            tail.put(paths.get(i), offsets.get(i));
+        }
+        checkpointIfNeeded();
+    }
+
+    /**
+     * Remove a track
+     * @return true if the track was in the library
+     */
+    public boolean delete(String path) throws IOException {
+        return deleteAll(Collections.singletonList(path)) > 0;
+    }
+
+    /**
+     * Remove tracks with a single append
+     * @return number of tracks that were in the library
+     */
+    public synchronized int deleteAll(Collection<String> paths) throws IOException {
+        if (paths == null) {
+            throw new IllegalArgumentException("Paths cannot be null");
+        }
+        checkOpen();
+
+        ByteBuffer batch = ByteBuffer.allocate(256);
+        Set<String> removed = new LinkedHashSet<>();
+        for (String path : paths) {
+            if (path != null && !removed.contains(path) && lookup(path) >= 0) {
+                byte[] pathBytes = utf8(path);
+                batch = ensureCapacity(batch, 7 + pathBytes.length);
+                batch.putInt(3 + pathBytes.length).put(RECORD_DELETE);
+                putString(batch, pathBytes);
+                removed.add(path);
+            }
+        }
+
+        append(batch);
+        for (String path : removed) {
+            supersede(path);
+        }
+        checkpointIfNeeded();
+        return removed.size();
+    }
+
+    /**
+     * Get a track by path
+     * @return track or null if not in the library
+     */
+    public synchronized MediaFile get(String path) throws IOException {
+        checkOpen();
+        long offset = lookup(path);
+        return offset >= 0 ? readRecord(offset).toMediaFile() : null;
+    }
+
+    /**
+     * Check whether a track is in the library
+     */
+    public synchronized boolean contains(String path) {
+        if (path == null || closed) {
+            return false;
+        }
+        try {
+            return lookup(path) >= 0;
+        } catch (IOException e) {
+            System.err.println("Error reading library: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Number of tracks in the library
+     */
+    public synchronized int size() {
+        return indexes[Index.PATH.ordinal()].limit() - deleted.size() + tail.size();
+    }
+
+    /**
+     * All tracks in path order
+     */
+    public LibraryCursor all(int pageSize) throws IOException {
+        return query(Index.PATH, null, null, pageSize);
+    }
+
+    public LibraryCursor findByArtist(String artist, int pageSize) throws IOException {
+        return query(Index.ARTIST, artist, artist, pageSize);
+    }
+
+    public LibraryCursor findByAlbum(String album, int pageSize) throws IOException {
+        return query(Index.ALBUM, album, album, pageSize);
+    }
+
+    public LibraryCursor findByGenre(String genre, int pageSize) throws IOException {
+        return query(Index.GENRE, genre, genre, pageSize);
+    }
+
+    public LibraryCursor findByYear(int fromYear, int toYear, int pageSize) throws IOException {
+        return query(Index.YEAR, (long) fromYear, (long) toYear, pageSize);
+    }
+
+    /**
+     * Tracks added to the library within a time range
+     * @param from start time in milliseconds, inclusive
+     * @param to end time in milliseconds, inclusive
+     */
+    public LibraryCursor findByAddedDate(long from, long to, int pageSize) throws IOException {
+        return query(Index.ADDED, from, to, pageSize);
+    }
+
+    /**
+     * Range query over an index
+     * String keys compare case-insensitively; YEAR and ADDED take Long keys.
+     * @param from lowest key, inclusive, or null for no lower bound
+     * @param to highest key, inclusive, or null for no upper bound
+     * @param pageSize number of tracks per page
+     * @return cursor over matching tracks in index order
+     */
+    public synchronized LibraryCursor query(Index index, Object from, Object to, int pageSize) throws IOException {
+        if (index == null || pageSize <= 0) {
+            throw new IllegalArgumentException("Invalid index or page size");
+        }
+        checkOpen();
+        Object low = normalizeKey(index, from);
+        Object high = normalizeKey(index, to);
+
+        LongBuffer sorted = indexes[index.ordinal()].duplicate();
+        int start = low == null ? 0 : lowerBound(index, sorted, low, false);
+        int end = high == null ? sorted.limit() : lowerBound(index, sorted, high, true);
+
+        // Tail records in range, sorted like the index
+        List<KeyedOffset> pending = new ArrayList<>();
+        for (long offset : tail.values()) {
+            Object key = readKey(index, offset);
+            if ((low == null || compareKeys(key, low) >= 0) && (high == null || compareKeys(key, high) <= 0)) {
+                pending.add(new KeyedOffset(key, offset));
+            }
+        }
+        pending.sort(KeyedOffset.ORDER);
+        long[] tailOffsets = new long[pending.size()];
+        for (int i = 0; i < tailOffsets.length; i++) {
+            tailOffsets[i] = pending.get(i).offset;
+        }
+
+        return new LibraryCursor(this, index, sorted, start, Math.max(start, end), tailOffsets, pageSize, compactions);
+    }
+
+    /**
+     * Fold changes since the last checkpoint into new index files
+     * The log is compacted as well once most of it is superseded records.
+     * Postcondition: reopening replays no records
+     */
+    public synchronized void checkpoint() throws IOException {
+        checkOpen();
+        if (tail.isEmpty() && deleted.isEmpty()) {
+            return;
+        }
+        log.force(false);
+
+        long[][] offsets = new long[INDEXES.length][];
+        for (Index index : INDEXES) {
+            offsets[index.ordinal()] = mergeIndex(index);
+        }
+
+        long nextGeneration = generation + 1;
+        long nextLogGeneration = logGeneration;
+        long covered = logLength;
+        long[] live = offsets[Index.PATH.ordinal()].clone();
+        Arrays.sort(live);
+        long liveBytes = liveBytes(live);
+        if (logLength - liveBytes > Math.max(liveBytes, MIN_COMPACTION_BYTES)) {
+            nextLogGeneration = logGeneration + 1;
+            covered = compactLog(live, nextLogGeneration, offsets);
+        }
+
+        for (Index index : INDEXES) {
+            writeIndex(index, nextGeneration, offsets[index.ordinal()]);
+        }
+        writeManifest(nextGeneration, nextLogGeneration, covered);
+
+        LongBuffer[] merged = new LongBuffer[INDEXES.length];
+        for (Index index : INDEXES) {
+            merged[index.ordinal()] = mapIndex(index, nextGeneration);
+            // Best effort: open cursors may still map the old file
+            indexFile(index, generation).delete();
+        }
+        if (nextLogGeneration != logGeneration) {
+            switchLog(nextLogGeneration);
+        }
+        System.arraycopy(merged, 0, indexes, 0, merged.length);
+        generation = nextGeneration;
+        tail.clear();
+        deleted.clear();
+    }
+
+    /**
+     * Checkpoint and release the files
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            checkpoint();
+        } finally {
+            closed = true;
+            log.close();
+        }
+    }
+
+    // ---- Cursor support ----
+
+    /**
+     * Fail a cursor whose offsets were moved by a compaction
+     */
+    synchronized void checkCompactions(int seen) throws IOException {
+        checkOpen();
+        if (seen != compactions) {
+            throw new IOException("Library log was compacted; run the query again");
+        }
+    }
+
+    synchronized boolean isLive(long offset) {
+        return !deleted.contains(offset);
+    }
+
+    synchronized MediaFile readMediaFile(long offset) throws IOException {
+        checkOpen();
+        return readRecord(offset).toMediaFile();
+    }
+
+    synchronized int compareRecords(Index index, long a, long b) throws IOException {
+        int result = compareKeys(readKey(index, a), readKey(index, b));
+        return result != 0 ? result : Long.compare(a, b);
+    }
+
+    // ---- Opening ----
+
+    private long loadIndexes() throws IOException {
+        File manifest = new File(directory, MANIFEST_FILE);
+        long covered = 0;
+        if (manifest.isFile()) {
+            ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(manifest.toPath()));
+            int version = header.remaining() >= 24 && header.getInt() == MANIFEST_MAGIC ? header.getInt() : 0;
+            if ((version != 1 && version != MANIFEST_VERSION) || (version == MANIFEST_VERSION && header.remaining() < 24)) {
+                throw new IOException("Unsupported library manifest: " + manifest);
+            }
+            generation = header.getLong();
+            covered = header.getLong();
+            logGeneration = version == MANIFEST_VERSION ? header.getLong() : 0;
+        }
+
+        log = openLog(logGeneration);
+        logLength = log.size();
+        if (covered > logLength) {
+            throw new IOException("Library log is shorter than its indexes: " + directory);
+        }
+        if (logGeneration > 0) {
+            // Left behind if the last compaction was interrupted before cleaning up
+            logFile(logGeneration - 1).delete();
+        }
+
+        for (Index index : INDEXES) {
+            indexes[index.ordinal()] = generation == 0
+                ? LongBuffer.allocate(0) : mapIndex(index, generation);
+        }
+        return covered;
+    }
+
+    /**
+     * Re-apply records appended after the last checkpoint
+     */
+    private void replay(long from) throws IOException {
+        long offset = from;
+        while (offset < logLength) {
+            if (offset + 5 > logLength) {
+                break;
+            }
+            ByteBuffer map = mapLog(offset + 5);
+            int length = map.getInt((int) offset);
+            if (length <= 0 || offset + 4 + length > logLength) {
+                break;
+            }
+
+            byte type = map.get((int) offset + 4);
+            String path = readPath(offset);
+            supersede(path);
+            if (type == RECORD_PUT) {
+                tail.put(path, offset);
+            }
+            offset += 4 + length;
+        }
+
+        if (offset < logLength) {
+            // Incomplete record from an interrupted write
+            System.err.println("Error reading library log: truncating at " + offset);
+            log.truncate(offset);
+            logLength = offset;
+            logMap = null;
+        }
+    }
+
+    // ---- Records ----
+
+    /**
+     * Locate the live record of a path
+     * @return record offset or -1
+     */
+    private long lookup(String path) throws IOException {
+        Long pending = tail.get(path);
+        if (pending != null) {
+            return pending;
+        }
+
+        LongBuffer byPath = indexes[Index.PATH.ordinal()];
+        int position = lowerBound(Index.PATH, byPath, path, false);
+        if (position < byPath.limit()) {
+            long offset = byPath.get(position);
+            if (!deleted.contains(offset) && readPath(offset).equals(path)) {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Mark the current record of a path as replaced
+     */
+    private void supersede(String path) throws IOException {
+        if (tail.remove(path) != null) {
+            return;
+        }
+        LongBuffer byPath = indexes[Index.PATH.ordinal()];
+        int position = lowerBound(Index.PATH, byPath, path, false);
+        if (position < byPath.limit()) {
+            long offset = byPath.get(position);
+            if (readPath(offset).equals(path)) {
+                deleted.add(offset);
+            }
+        }
+    }
+
+    private byte[] encodePut(MediaFile file, long added) {
+        byte[][] strings = {
+            utf8(file.getFilePath()), utf8(file.getTitle()), utf8(file.getArtist()),
+            utf8(file.getAlbum()), utf8(file.getGenre()), utf8(file.getFormat())
+        };
+        int length = 1 + 1 + 8 + 8 + 4 + 4;
+        for (byte[] string : strings) {
+            length += 2 + string.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(4 + length);
+        buffer.putInt(length).put(RECORD_PUT);
+        byte flags = 0;
+        if (file.isEnriched()) flags |= FLAG_ENRICHED;
+        if (file.isCorrupted()) flags |= FLAG_CORRUPTED;
+        buffer.put(flags).putLong(added).putLong(file.getFileSize());
+        buffer.putInt(file.getYear()).putInt(file.getDuration());
+        for (byte[] string : strings) {
+            putString(buffer, string);
+        }
+        return buffer.array();
+    }
+
+    private Record readRecord(long offset) throws IOException {
+        ByteBuffer map = mapLog(offset + 5);
+        int length = map.getInt((int) offset);
+        map = mapLog(offset + 4 + length);
+        ByteBuffer in = map.duplicate();
+        in.position((int) offset + 4);
+        if (in.get() != RECORD_PUT) {
+            throw new IOException("Not a track record at offset " + offset);
+        }
+
+        Record record = new Record();
+        byte flags = in.get();
+        record.enriched = (flags & FLAG_ENRICHED) != 0;
+        record.corrupted = (flags & FLAG_CORRUPTED) != 0;
+        record.added = in.getLong();
+        record.fileSize = in.getLong();
+        record.year = in.getInt();
+        record.duration = in.getInt();
+        record.path = getString(in);
+        record.title = getString(in);
+        record.artist = getString(in);
+        record.album = getString(in);
+        record.genre = getString(in);
+        record.format = getString(in);
+        return record;
+    }
+
+    /**
+     * Decode only the field an index is ordered by
+     */
+    private Object readKey(Index index, long offset) throws IOException {
+        switch (index) {
+            case PATH:
+                return readPath(offset);
+            case YEAR:
+                return (long) mapLog(offset + 26).getInt((int) offset + 22);
+            case ADDED:
+                return mapLog(offset + 14).getLong((int) offset + 6);
+            default:
+                break;
+        }
+
+        ByteBuffer map = mapLog(offset + 5);
+        int length = map.getInt((int) offset);
+        ByteBuffer in = mapLog(offset + 4 + length).duplicate();
+        int position = (int) offset + PUT_STRINGS_START;
+        int skip = index == Index.ARTIST ? 2 : index == Index.ALBUM ? 3 : 4; // path, title, artist, album, genre
+        for (int i = 0; i < skip; i++) {
+            position += 2 + (in.getShort(position) & 0xFFFF);
+        }
+        in.position(position);
+        return getString(in).toLowerCase(Locale.ROOT);
+    }
+
+    private String readPath(long offset) throws IOException {
+        ByteBuffer map = mapLog(offset + 5);
+        int length = map.getInt((int) offset);
+        ByteBuffer in = mapLog(offset + 4 + length).duplicate();
+        byte type = in.get((int) offset + 4);
+        in.position((int) offset + (type == RECORD_PUT ? PUT_STRINGS_START : 5));
+        return getString(in);
+    }
+
+    private void append(ByteBuffer batch) throws IOException {
+        batch.flip();
+        while (batch.hasRemaining()) {
+            logLength += log.write(batch, logLength);
+        }
+    }
+
+    /**
+     * Read-only view of the log covering at least the given length
+     */
+    private ByteBuffer mapLog(long end) throws IOException {
+        if (logMap == null || logMap.capacity() < end) {
+            if (logLength > Integer.MAX_VALUE) {
+                throw new IOException("Library log exceeds 2 GB: " + directory);
+            }
+            logMap = log.map(FileChannel.MapMode.READ_ONLY, 0, logLength);
+        }
+        return logMap;
+    }
+
+    // ---- Compaction ----
+
+    /**
+     * Bytes taken by the records at the given offsets
+     */
+    private long liveBytes(long[] offsets) throws IOException {
+        long bytes = 0;
+        for (long offset : offsets) {
+            bytes += 4 + mapLog(offset + 4).getInt((int) offset);
+        }
+        return bytes;
+    }
+
+    /**
+     * Copy the live records into a new log and re-point the indexes at them
+     * Records keep their relative order, so the log still replays correctly.
+     * Precondition: live holds the offsets of every live record, ascending
+     * Postcondition: offsets holds positions in the new log
+     * @return length of the new log
+     */
+    private long compactLog(long[] live, long nextLogGeneration, long[][] offsets) throws IOException {
+        long[] moved = new long[live.length];
+        long length = 0;
+        try (FileChannel out = FileChannel.open(logFile(nextLogGeneration).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer map = mapLog(logLength);
+            for (int i = 0; i < live.length; i++) {
+                int recordLength = 4 + map.getInt((int) live[i]);
+                ByteBuffer record = map.duplicate();
+                record.limit((int) live[i] + recordLength).position((int) live[i]);
+                moved[i] = length;
+                while (record.hasRemaining()) {
+                    length += out.write(record, length);
+                }
+            }
+            out.force(false);
+        }
+
+        for (long[] indexOffsets : offsets) {
+            for (int i = 0; i < indexOffsets.length; i++) {
+                indexOffsets[i] = moved[Arrays.binarySearch(live, indexOffsets[i])];
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Continue in a compacted log once the manifest names it
+     */
+    private void switchLog(long nextLogGeneration) throws IOException {
+        FileChannel next = openLog(nextLogGeneration);
+        log.close();
+        logMap = null;
+        // Best effort: the old log is only read by cursors, which now fail
+        logFile(logGeneration).delete();
+        log = next;
+        logLength = log.size();
+        logGeneration = nextLogGeneration;
+        compactions++;
+    }
+
+    private FileChannel openLog(long logFileGeneration) throws IOException {
+        return FileChannel.open(logFile(logFileGeneration).toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private File logFile(long logFileGeneration) {
+        return new File(directory, logFileGeneration == 0
+            ? LOG_FILE + ".log" : LOG_FILE + "." + logFileGeneration + ".log");
+    }
+
+    // ---- Indexes ----
+
+    /**
+     * First position whose key is at least (or, if after is set, greater than) the given key
+     */
+    private int lowerBound(Index index, LongBuffer sorted, Object key, boolean after) throws IOException {
+        return lowerBound(index, sorted, 0, sorted.limit(), key, after);
+    }
+
+    private int lowerBound(Index index, LongBuffer sorted, int low, int high, Object key, boolean after)
+            throws IOException {
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int comparison = compareKeys(readKey(index, sorted.get(mid)), key);
+            if (comparison < 0 || (after && comparison == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Insert position of a key at or after from, probing 1, 2, 4... entries ahead
+     * Costs O(log gap), so merging a sorted batch is cheap when keys are close.
+     */
+    private int gallop(Index index, LongBuffer sorted, int from, Object key) throws IOException {
+        int low = from;
+        int step = 1;
+        int probe = from;
+        while (probe < sorted.limit() && compareKeys(readKey(index, sorted.get(probe)), key) <= 0) {
+            low = probe + 1;
+            probe = from + step;
+            step <<= 1;
+        }
+        return lowerBound(index, sorted, low, Math.min(probe, sorted.limit()), key, true);
+    }
+
+    /**
+     * Current index without deleted offsets, plus the tail, in key order
+     * Tail entries are placed by binary search so the index is copied in runs.
+     */
+    private long[] mergeIndex(Index index) throws IOException {
+        LongBuffer current = indexes[index.ordinal()];
+        List<KeyedOffset> pending = new ArrayList<>(tail.size());
+        for (long offset : tail.values()) {
+            pending.add(new KeyedOffset(readKey(index, offset), offset));
+        }
+        pending.sort(KeyedOffset.ORDER);
+
+        long[] merged = new long[current.limit() - deleted.size() + pending.size()];
+        int count = 0;
+        int position = 0;
+        for (KeyedOffset entry : pending) {
+            int insert = gallop(index, current, position, entry.key);
+            count = copyLive(current, position, insert, merged, count);
+            position = insert;
+            merged[count++] = entry.offset;
+        }
+        count = copyLive(current, position, current.limit(), merged, count);
+        return count == merged.length ? merged : Arrays.copyOf(merged, count);
+    }
+
+    private int copyLive(LongBuffer source, int from, int to, long[] target, int count) {
+        for (int i = from; i < to; i++) {
+            long offset = source.get(i);
+            if (deleted.isEmpty() || !deleted.contains(offset)) {
+                target[count++] = offset;
+            }
+        }
+        return count;
+    }
+
+    private void writeIndex(Index index, long indexGeneration, long[] offsets) throws IOException {
+        File file = indexFile(index, indexGeneration);
+        try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(INDEX_HEADER_SIZE + offsets.length * 8);
+            buffer.putInt(INDEX_MAGIC).putInt(FORMAT_VERSION).putInt(offsets.length).putInt(0);
+            buffer.asLongBuffer().put(offsets);
+            buffer.rewind();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(false);
+        }
+    }
+
+    private LongBuffer mapIndex(Index index, long indexGeneration) throws IOException {
+        File file = indexFile(index, indexGeneration);
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer map = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            if (map.limit() < INDEX_HEADER_SIZE || map.getInt(0) != INDEX_MAGIC || map.getInt(4) != FORMAT_VERSION) {
+                throw new IOException("Unsupported library index: " + file);
+            }
+            int count = map.getInt(8);
+            map.position(INDEX_HEADER_SIZE);
+            LongBuffer offsets = map.slice().asLongBuffer();
+            if (offsets.limit() < count) {
+                throw new IOException("Truncated library index: " + file);
+            }
+            offsets.limit(count);
+            return offsets;
+        }
+    }
+
+    private void writeManifest(long manifestGeneration, long manifestLogGeneration, long covered) throws IOException {
+        File manifest = new File(directory, MANIFEST_FILE);
+        File temp = new File(directory, MANIFEST_FILE + ".tmp");
+        ByteBuffer buffer = ByteBuffer.allocate(32);
+        buffer.putInt(MANIFEST_MAGIC).putInt(MANIFEST_VERSION).putLong(manifestGeneration).putLong(covered);
+        buffer.putLong(manifestLogGeneration);
+        buffer.flip();
+        try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(false);
+        }
+        Files.move(temp.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private File indexFile(Index index, long indexGeneration) {
+        return new File(directory, index.name().toLowerCase(Locale.ROOT) + "." + indexGeneration + ".idx");
+    }
+
+    private void checkpointIfNeeded() throws IOException {
+        if (tail.size() + deleted.size() >= AUTO_CHECKPOINT_RECORDS) {
+            checkpoint();
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Library database is closed");
+        }
+    }
+
+    // ---- Keys ----
+
+    private static Object normalizeKey(Index index, Object key) {
+        if (key == null) {
+            return null;
+        }
+        switch (index) {
+            case PATH:
+                return key.toString();
+            case YEAR:
+            case ADDED:
+                if (!(key instanceof Number)) {
+                    throw new IllegalArgumentException(index + " keys must be numbers");
+                }
+                return ((Number) key).longValue();
+            default:
+                return key.toString().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static int compareKeys(Object a, Object b) {
+        if (a instanceof Long) {
+            return Long.compare((Long) a, (Long) b);
+        }
+        return ((String) a).compareTo((String) b);
+    }
+
+    // ---- Encoding ----
+
+    private static byte[] utf8(String value) {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        return bytes.length <= MAX_STRING_BYTES ? bytes : Arrays.copyOf(bytes, MAX_STRING_BYTES);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer ensureCapacity(ByteBuffer buffer, int needed) {
+        if (buffer.remaining() >= needed) {
+            return buffer;
+        }
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + needed));
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+
+    private static class Record {
+        String path, title, artist, album, genre, format;
+        long added, fileSize;
+        int year, duration;
+        boolean enriched, corrupted;
+
+        MediaFile toMediaFile() {
+            String fileName = new File(path).getName();
+            FileMetadata attributes = new FileMetadata(fileName, format, fileSize, 0, !corrupted, !corrupted);
+            MediaFile file = MediaFile.restore(path, attributes, title, artist, album, genre, year, duration);
+            if (enriched) {
+                file.markEnriched();
+            }
+            return file;
+        }
+    }
+
+    private static class KeyedOffset {
+        static final Comparator<KeyedOffset> ORDER = (a, b) -> {
+            int result = compareKeys(a.key, b.key);
+            return result != 0 ? result : Long.compare(a.offset, b.offset);
+        };
+
+        final Object key;
+        final long offset;
+
+        KeyedOffset(Object key, long offset) {
+            this.key = key;
+            this.offset = offset;
+        }
+    }
+}
@@ -0,0 +1,650 @@
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Library Store Component
+ * Column-oriented in-memory store for large track collections.
+ * Repeated values (artist, album, genre, format) are kept as int ids into
+ * StringDictionary instances, numeric fields live in primitive arrays and
+ * the mostly-unique strings are packed into StringColumns. Paths are split
+ * into an id in DirectoryTable.shared() plus the leaf file name, the same
+ * key MediaFile uses, and titles that simply repeat the file name are not
+ * stored at all.
+ * get() hands out lightweight MediaFile views that read and write the
+ * columns directly, so nothing per track is retained besides array slots.
+ *
+ * FileManager keeps the whole library in one store and TrackPool hands
+ * out its views, so playlist entries for library tracks share the columns.
+ * LibraryStoreBenchmark measures 1M tracks (1,000 artists x 10 albums,
+ * ~65 character paths, after trimToSize) at about 94 bytes per track here,
+ * matching getHeapUsage(), against about 324 for a List of MediaFiles.
+ *
+ * Thread-safe; views lock the store for each access. Removed tracks keep
+ * their row until the store is discarded.
+ */
+public class LibraryStore {
+    private static final byte FLAG_CORRUPTED = 1;
+    private static final byte FLAG_TITLE_FROM_NAME = 2;
+    private static final byte FLAG_ENRICHED = 4;
+    private static final byte FLAG_REMOVED = 8;
+
+    private final StringDictionary artists;
+    private final StringDictionary albums;
+    private final StringDictionary genres;
+    private final StringDictionary formats;
+    private final DirectoryTable directories;
+    private final StringColumn leafNames;
+    private final StringColumn titles;
+    // Paths that cannot be split into directory and leaf name
+    private final Map<String, Integer> undividedPaths;
+
+    private int[] directoryIds;
+    private int[] keyHashes;
+    private IntList[] tracksByDirectory;
+    private int[] tracksUnderDirectory;
+    private int[] artistIds;
+    private int[] albumIds;
+    private int[] genreIds;
+    private int[] formatIds;
+    private int[] durations;
+    private int[] years;
+    private long[] fileSizes;
+    private long[] lastPlayedTimes;
+    private byte[] flags;
+    private int size;
+    private int trackCount;
+
+    public LibraryStore() {
+        this(1024);
+    }
+
+    public LibraryStore(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 16);
+        artists = new StringDictionary();
+        albums = new StringDictionary();
+        genres = new StringDictionary();
+        formats = new StringDictionary();
+        directories = DirectoryTable.shared();
+        leafNames = new StringColumn(capacity);
+        titles = new StringColumn(capacity);
+        undividedPaths = new HashMap<>();
+        directoryIds = new int[capacity];
+        keyHashes = new int[capacity];
+        tracksByDirectory = new IntList[64];
+        tracksUnderDirectory = new int[64];
+
+        artistIds = new int[capacity];
+        albumIds = new int[capacity];
+        genreIds = new int[capacity];
+        formatIds = new int[capacity];
+        durations = new int[capacity];
+        years = new int[capacity];
+        fileSizes = new long[capacity];
+        lastPlayedTimes = new long[capacity];
+        flags = new byte[capacity];
+        size = 0;
+        trackCount = 0;
+    }
+
+    /**
+     * Copy a media file into the store
+     * Precondition: file must not be null
+     * Postcondition: the store contains the file's path exactly once
+     * @return track id of the stored file, or of the existing track with the same path
+     */
+    public int add(MediaFile file) {
+        if (file == null) {
+            throw new IllegalArgumentException("MediaFile cannot be null");
+        }
+
+        int existing = indexOf(file);
+        if (existing != -1) {
+            return existing;
+        }
+
+        // Read the file outside the lock; its getters may parse or stat
+        Row row = new Row(file);
+        synchronized (this) {
+            existing = indexOf(row.filePath);
+            return existing != -1 ? existing : insert(row);
+        }
+    }
+
+    /**
+     * Copy a media file into the store, replacing the values stored for its path
+     * Precondition: file must not be null
+     * Postcondition: the track for the file's path holds the file's values
+     * @return track id of the stored file
+     */
+    public int put(MediaFile file) {
+        if (file == null) {
+            throw new IllegalArgumentException("MediaFile cannot be null");
+        }
+
+        if (file instanceof TrackView && ((TrackView) file).store() == this) {
+            return ((TrackView) file).trackId; // Already writes through to the columns
+        }
+
+        Row row = new Row(file);
+        synchronized (this) {
+            int trackId = indexOf(row.filePath);
+            if (trackId == -1) {
+                return insert(row);
+            }
+            write(trackId, row, leafNames.get(trackId), false);
+            return trackId;
+        }
+    }
+
+    /**
+     * Remove the track stored for a path
+     * Views of the track stay readable but are no longer found by path.
+     * @return true if a track was removed
+     */
+    public synchronized boolean remove(String filePath) {
+        int trackId = indexOf(filePath);
+        if (trackId == -1) {
+            return false;
+        }
+
+        int directoryId = directoryIds[trackId];
+        if (directoryId == DirectoryTable.NO_DIRECTORY) {
+            undividedPaths.remove(filePath);
+        } else {
+            tracksByDirectory[directoryId].removeValue(trackId);
+            for (int id = directoryId; id != DirectoryTable.NO_DIRECTORY; id = directories.getParent(id)) {
+                tracksUnderDirectory[id]--;
+            }
+        }
+        flags[trackId] |= FLAG_REMOVED;
+        trackCount--;
+        return true;
+    }
+
+    /**
+     * Find the track stored for a path
+     * Only the tracks of the path's parent directory are compared.
+     * @return track id or -1 if the path is not stored
+     */
+    public synchronized int indexOf(String filePath) {
+        if (filePath == null) {
+            return -1;
+        }
+
+        int leafStart = DirectoryTable.leafStart(filePath);
+        if (leafStart == 0) {
+            Integer trackId = undividedPaths.get(filePath);
+            return trackId != null ? trackId : -1;
+        }
+
+        int directoryId = directories.lookup(DirectoryTable.directoryOf(filePath, leafStart));
+        IntList tracks = tracksIn(directoryId);
+        if (tracks == null) {
+            return -1;
+        }
+
+        String leafName = filePath.substring(leafStart);
+        int hash = MediaFile.keyHash(directoryId, leafName);
+        for (int i = 0; i < tracks.size(); i++) {
+            int trackId = tracks.get(i);
+            if (keyHashes[trackId] == hash && leafNames.get(trackId).equals(leafName)) {
+                return trackId;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the track stored for a media file's path
+     * @return track id or -1 if the path is not stored
+     */
+    public int indexOf(MediaFile file) {
+        if (file instanceof TrackView && ((TrackView) file).store() == this) {
+            TrackView view = (TrackView) file;
+            synchronized (this) {
+                return (flags[view.trackId] & FLAG_REMOVED) == 0 ? view.trackId : -1;
+            }
+        }
+        return file != null ? indexOf(file.getFilePath()) : -1;
+    }
+
+    /**
+     * Get tracks stored directly in a folder
+     * The folder's track list is found with one hash lookup.
+     * @return track ids (empty if the folder is unknown)
+     */
+    public synchronized int[] getTracksInDirectory(String directoryPath) {
+        IntList tracks = tracksIn(directories.lookup(directoryPath));
+        return tracks != null ? tracks.toArray() : new int[0];
+    }
+
+    /**
+     * Get all tracks in a folder and its subfolders
+     * @return track ids, cost proportional to the result
+     */
+    public synchronized int[] getTracksUnder(String directoryPath) {
+        int directoryId = directories.lookup(directoryPath);
+        if (countUnder(directoryId) == 0) {
+            return new int[0];
+        }
+
+        IntList result = new IntList(countUnder(directoryId));
+        IntList pending = new IntList();
+        pending.add(directoryId);
+        while (!pending.isEmpty()) {
+            int current = pending.removeAt(pending.size() - 1);
+            if (countUnder(current) == 0) {
+                continue; // Nothing stored in this subtree
+            }
+            IntList tracks = tracksIn(current);
+            if (tracks != null) {
+                for (int i = 0; i < tracks.size(); i++) {
+                    result.add(tracks.get(i));
+                }
+            }
+            for (int child : directories.getChildren(current)) {
+                pending.add(child);
+            }
+        }
+        return result.toArray();
+    }
+
+    /**
+     * Count tracks in a folder and its subfolders in constant time
+     * @return number of tracks (0 if the folder is unknown)
+     */
+    public synchronized int getTrackCountUnder(String directoryPath) {
+        return countUnder(directories.lookup(directoryPath));
+    }
+
+    public DirectoryTable getDirectories() {
+        return directories;
+    }
+
+    /**
+     * Copy several media files into the store, keeping tracks already stored
+     * Precondition: files must not be null or contain null
+     */
+    public void addAll(Collection<MediaFile> files) {
+        if (files == null) {
+            throw new IllegalArgumentException("Files cannot be null");
+        }
+
+        synchronized (this) {
+            ensureCapacity(size + files.size());
+        }
+        for (MediaFile file : files) {
+            add(file);
+        }
+    }
+
+    /**
+     * Copy several media files into the store, replacing stored values
+     * Precondition: files must not be null or contain null
+     */
+    public void putAll(Collection<MediaFile> files) {
+        if (files == null) {
+            throw new IllegalArgumentException("Files cannot be null");
+        }
+
+        for (MediaFile file : files) {
+            put(file);
+        }
+    }
+
+    /**
+     * Remove the tracks stored for several paths
+     * Precondition: filePaths must not be null
+     */
+    public synchronized void removeAll(Collection<String> filePaths) {
+        if (filePaths == null) {
+            throw new IllegalArgumentException("File paths cannot be null");
+        }
+
+        for (String filePath : filePaths) {
+            remove(filePath);
+        }
+    }
+
+    /**
+     * Get a flyweight view of a stored track
+     * Precondition: trackId must be valid (0 <= trackId < size)
+     * Postcondition: returned MediaFile reads and writes this store
+     */
+    public synchronized MediaFile get(int trackId) {
+        checkTrackId(trackId);
+        return new TrackView(trackId);
+    }
+
+    /**
+     * Number of track ids handed out, including removed tracks
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Number of tracks currently stored
+     */
+    public synchronized int getTrackCount() {
+        return trackCount;
+    }
+
+    // Column accessors for scans that should not create views
+    public synchronized boolean isRemoved(int trackId) { checkTrackId(trackId); return (flags[trackId] & FLAG_REMOVED) != 0; }
+    public synchronized String getFilePath(int trackId) { checkTrackId(trackId); return filePathOf(trackId); }
+    public synchronized String getTitle(int trackId) { checkTrackId(trackId); return titleOf(trackId); }
+    public synchronized int getArtistId(int trackId) { checkTrackId(trackId); return artistIds[trackId]; }
+    public synchronized int getAlbumId(int trackId) { checkTrackId(trackId); return albumIds[trackId]; }
+    public synchronized int getGenreId(int trackId) { checkTrackId(trackId); return genreIds[trackId]; }
+    public synchronized int getDuration(int trackId) { checkTrackId(trackId); return durations[trackId]; }
+    public synchronized int getYear(int trackId) { checkTrackId(trackId); return years[trackId]; }
+    public synchronized long getFileSize(int trackId) { checkTrackId(trackId); return fileSizes[trackId]; }
+
+    // Dictionaries are not thread-safe; read them while holding the store's lock
+    public StringDictionary getArtists() { return artists; }
+    public StringDictionary getAlbums() { return albums; }
+    public StringDictionary getGenres() { return genres; }
+
+    /**
+     * Release spare array capacity and bytes orphaned by updates
+     */
+    public synchronized void trimToSize() {
+        int capacity = Math.max(size, 16);
+        artistIds = Arrays.copyOf(artistIds, capacity);
+        albumIds = Arrays.copyOf(albumIds, capacity);
+        genreIds = Arrays.copyOf(genreIds, capacity);
+        formatIds = Arrays.copyOf(formatIds, capacity);
+        durations = Arrays.copyOf(durations, capacity);
+        years = Arrays.copyOf(years, capacity);
+        fileSizes = Arrays.copyOf(fileSizes, capacity);
+        lastPlayedTimes = Arrays.copyOf(lastPlayedTimes, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        directoryIds = Arrays.copyOf(directoryIds, capacity);
+        keyHashes = Arrays.copyOf(keyHashes, capacity);
+        for (IntList tracks : tracksByDirectory) {
+            if (tracks != null) {
+                tracks.trimToSize();
+            }
+        }
+        leafNames.compact();
+        titles.compact();
+    }
+
+    /**
+     * Approximate heap used by everything the store holds
+     * Includes the shared DirectoryTable in full, since the library's
+     * directories make up nearly all of it.
+     * @return size in bytes
+     */
+    public synchronized long getHeapUsage() {
+        // Array headers: 8 int columns, 2 long columns, flags and the directory arrays
+        long bytes = 13 * 16L + 8L * 4 * artistIds.length + 2L * 8 * fileSizes.length + flags.length;
+        bytes += 4L * tracksByDirectory.length + 4L * tracksUnderDirectory.length;
+        for (IntList tracks : tracksByDirectory) {
+            if (tracks != null) {
+                bytes += tracks.getHeapUsage();
+            }
+        }
+        for (String path : undividedPaths.keySet()) {
+            bytes += 32 + 16 + 40 + path.length(); // Map entry, boxed id, string
+        }
+        bytes += leafNames.getHeapUsage() + titles.getHeapUsage();
+        bytes += artists.getHeapUsage() + albums.getHeapUsage() + genres.getHeapUsage() + formats.getHeapUsage();
+        return bytes + directories.getHeapUsage();
+    }
+
+    private int insert(Row row) {
+        ensureCapacity(size + 1);
+        int trackId = size;
+
+        String filePath = row.filePath;
+        int directoryId = DirectoryTable.NO_DIRECTORY;
+        String leafName = filePath;
+        int leafStart = DirectoryTable.leafStart(filePath);
+        if (leafStart > 0) {
+            directoryId = directories.intern(DirectoryTable.directoryOf(filePath, leafStart));
+            leafName = filePath.substring(leafStart);
+        }
+
+        directoryIds[trackId] = directoryId;
+        keyHashes[trackId] = MediaFile.keyHash(directoryId, leafName);
+        leafNames.add(leafName);
+        write(trackId, row, leafName, true);
+
+        size++;
+        trackCount++;
+        if (directoryId == DirectoryTable.NO_DIRECTORY) {
+            undividedPaths.put(filePath, trackId);
+        } else {
+            addToDirectory(directoryId, trackId);
+        }
+        return trackId;
+    }
+
+    private void write(int trackId, Row row, String leafName, boolean newRow) {
+        boolean titleFromName = row.title != null
+            && row.title.equals(MediaFile.titleFromFileName(new File(leafName).getName()));
+        if (newRow) {
+            titles.add(titleFromName ? "" : row.title);
+        } else if (!titleFromName) {
+            titles.set(trackId, row.title);
+        }
+        artistIds[trackId] = artists.intern(nonNull(row.artist));
+        albumIds[trackId] = albums.intern(nonNull(row.album));
+        genreIds[trackId] = genres.intern(nonNull(row.genre));
+        formatIds[trackId] = formats.intern(nonNull(row.format));
+        durations[trackId] = row.duration;
+        years[trackId] = row.year;
+        fileSizes[trackId] = row.fileSize;
+        lastPlayedTimes[trackId] = row.lastPlayed;
+        flags[trackId] = (byte) ((row.corrupted ? FLAG_CORRUPTED : 0)
+            | (titleFromName ? FLAG_TITLE_FROM_NAME : 0)
+            | (row.enriched ? FLAG_ENRICHED : 0));
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= artistIds.length) {
+            return;
+        }
+
+        int capacity = Math.max(required, artistIds.length * 2);
+        artistIds = Arrays.copyOf(artistIds, capacity);
+        albumIds = Arrays.copyOf(albumIds, capacity);
+        genreIds = Arrays.copyOf(genreIds, capacity);
+        formatIds = Arrays.copyOf(formatIds, capacity);
+        durations = Arrays.copyOf(durations, capacity);
+        years = Arrays.copyOf(years, capacity);
+        fileSizes = Arrays.copyOf(fileSizes, capacity);
+        lastPlayedTimes = Arrays.copyOf(lastPlayedTimes, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        directoryIds = Arrays.copyOf(directoryIds, capacity);
+        keyHashes = Arrays.copyOf(keyHashes, capacity);
+    }
+
+    private void addToDirectory(int directoryId, int trackId) {
+        if (directoryId >= tracksByDirectory.length) {
+            int capacity = Math.max(directoryId + 1, tracksByDirectory.length * 2);
+            tracksByDirectory = Arrays.copyOf(tracksByDirectory, capacity);
+            tracksUnderDirectory = Arrays.copyOf(tracksUnderDirectory, capacity);
+        }
+        if (tracksByDirectory[directoryId] == null) {
+            tracksByDirectory[directoryId] = new IntList(4);
+        }
+        tracksByDirectory[directoryId].add(trackId);
+
+        for (int id = directoryId; id != DirectoryTable.NO_DIRECTORY; id = directories.getParent(id)) {
+            tracksUnderDirectory[id]++;
+        }
+    }
+
+    /**
+     * Tracks stored directly in a directory; the shared table also holds
+     * directories this store has no tracks in
+     */
+    private IntList tracksIn(int directoryId) {
+        return directoryId >= 0 && directoryId < tracksByDirectory.length ? tracksByDirectory[directoryId] : null;
+    }
+
+    private int countUnder(int directoryId) {
+        return directoryId >= 0 && directoryId < tracksUnderDirectory.length ? tracksUnderDirectory[directoryId] : 0;
+    }
+
+    private String filePathOf(int trackId) {
+        return directories.join(directoryIds[trackId], leafNames.get(trackId));
+    }
+
+    private String titleOf(int trackId) {
+        if ((flags[trackId] & FLAG_TITLE_FROM_NAME) != 0) {
+            return MediaFile.titleFromFileName(new File(leafNames.get(trackId)).getName());
+        }
+        return titles.get(trackId);
+    }
+
+    private void checkTrackId(int trackId) {
+        if (trackId < 0 || trackId >= size) {
+            throw new IndexOutOfBoundsException("Invalid track id: " + trackId);
+        }
+    }
+
+    private static String nonNull(String value) {
+        return value != null ? value : "";
+    }
+
+    /**
+     * Values of a media file, read before the store is locked
+     */
+    private static class Row {
+        final String filePath;
+        final String title;
+        final String artist;
+        final String album;
+        final String genre;
+        final String format;
+        final int duration;
+        final int year;
+        final long fileSize;
+        final long lastPlayed;
+        final boolean corrupted;
+        final boolean enriched;
+
+        Row(MediaFile file) {
+            filePath = file.getFilePath();
+            title = file.getTitle();
+            artist = file.getArtist();
+            album = file.getAlbum();
+            genre = file.getGenre();
+            format = file.getFormat();
+            duration = file.getDuration();
+            year = file.getYear();
+            fileSize = file.getFileSize();
+            lastPlayed = file.getLastPlayed();
+            corrupted = file.isCorrupted();
+            enriched = file.isEnriched();
+        }
+    }
+
+    /**
+     * Flyweight MediaFile backed by the store columns
+     */
+    private class TrackView extends MediaFile {
+        private static final long serialVersionUID = 1L;
+
+        private final int trackId;
+
+        TrackView(int trackId) {
+            this.trackId = trackId;
+        }
+
+        @Override public String getFilePath() { synchronized (LibraryStore.this) { return filePathOf(trackId); } }
+        @Override int getDirectoryId() { synchronized (LibraryStore.this) { return directoryIds[trackId]; } }
+        @Override String getLeafName() { synchronized (LibraryStore.this) { return leafNames.get(trackId); } }
+
+        @Override public String getTitle() { synchronized (LibraryStore.this) { return titleOf(trackId); } }
+        @Override public void setTitle(String title) {
+            synchronized (LibraryStore.this) {
+                titles.set(trackId, title);
+                flags[trackId] &= ~FLAG_TITLE_FROM_NAME;
+            }
+        }
+
+        @Override public String getArtist() { synchronized (LibraryStore.this) { return artists.get(artistIds[trackId]); } }
+        @Override public void setArtist(String artist) { synchronized (LibraryStore.this) { artistIds[trackId] = artists.intern(nonNull(artist)); } }
+
+        @Override public String getAlbum() { synchronized (LibraryStore.this) { return albums.get(albumIds[trackId]); } }
+        @Override public void setAlbum(String album) { synchronized (LibraryStore.this) { albumIds[trackId] = albums.intern(nonNull(album)); } }
+
+        @Override public String getGenre() { synchronized (LibraryStore.this) { return genres.get(genreIds[trackId]); } }
+        @Override public void setGenre(String genre) { synchronized (LibraryStore.this) { genreIds[trackId] = genres.intern(nonNull(genre)); } }
+
+        @Override public int getDuration() { synchronized (LibraryStore.this) { return durations[trackId]; } }
+        @Override public void setDuration(int duration) { synchronized (LibraryStore.this) { durations[trackId] = duration; } }
+
+        @Override public long getFileSize() { synchronized (LibraryStore.this) { return fileSizes[trackId]; } }
+
+        @Override public String getFormat() { synchronized (LibraryStore.this) { return formats.get(formatIds[trackId]); } }
+
+        @Override public void updateAttributes(FileMetadata attributes) {
+            if (attributes == null) {
+                throw new IllegalArgumentException("Attributes cannot be null");
+            }
+            synchronized (LibraryStore.this) {
+                fileSizes[trackId] = attributes.exists() ? attributes.getFileSize() : 0;
+                setCorrupted(!attributes.exists() || !attributes.isReadable());
+            }
+        }
+
+        @Override public int getYear() { synchronized (LibraryStore.this) { return years[trackId]; } }
+        @Override public void setYear(int year) { synchronized (LibraryStore.this) { years[trackId] = year; } }
+
+        @Override public long getLastPlayed() { synchronized (LibraryStore.this) { return lastPlayedTimes[trackId]; } }
+        @Override public void setLastPlayed(long lastPlayed) { synchronized (LibraryStore.this) { lastPlayedTimes[trackId] = lastPlayed; } }
+
+        @Override public boolean isCorrupted() { synchronized (LibraryStore.this) { return (flags[trackId] & FLAG_CORRUPTED) != 0; } }
+        @Override public void setCorrupted(boolean corrupted) { setFlag(FLAG_CORRUPTED, corrupted); }
+
+        @Override public boolean isEnriched() { synchronized (LibraryStore.this) { return (flags[trackId] & FLAG_ENRICHED) != 0; } }
+        @Override void markEnriched() { setFlag(FLAG_ENRICHED, true); }
+
+        /**
+         * Size and names are kept current by put(); only the tags are read again
+         */
+        @Override public void invalidate() { setFlag(FLAG_ENRICHED, false); }
+
+        private void setFlag(byte flag, boolean value) {
+            synchronized (LibraryStore.this) {
+                flags[trackId] = (byte) (value ? flags[trackId] | flag : flags[trackId] & ~flag);
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof TrackView && ((TrackView) obj).store() == LibraryStore.this) {
+                // Paths are unique within a store, so ids decide equality
+                return ((TrackView) obj).trackId == trackId;
+            }
+            return super.equals(obj);
+        }
+
+        @Override
+        public int hashCode() {
+            synchronized (LibraryStore.this) {
+                return keyHashes[trackId];
+            }
+        }
+
+        private LibraryStore store() {
+            return LibraryStore.this;
+        }
+
+        /**
+         * Serialize as a detached MediaFile rather than dragging the store along
+         */
+        private Object writeReplace() {
+            return MediaFile.copyOf(this);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Library Store Benchmark
+ * Measures the heap of a LibraryStore against its getHeapUsage() estimate
+ * and against a List of MediaFile objects holding the same tracks.
+ * Tracks are synthetic: ARTISTS artists with ALBUMS_PER_ARTIST albums each,
+ * paths of about 60 characters and titles that repeat the file name.
+ *
+ * Run next to run.sh, optionally with a track count:
+ *   javac -cp ".:lib/*" *.java
+ *   java -Xmx2g -cp ".:lib/*" LibraryStoreBenchmark 1000000
+ */
+public class LibraryStoreBenchmark {
+    private static final int ARTISTS = 1000;
+    private static final int ALBUMS_PER_ARTIST = 10;
+
+    public static void main(String[] args) {
+        int trackCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        if (trackCount <= 0) {
+            throw new IllegalArgumentException("Track count must be positive");
+        }
+
+        // The store goes first, so its measurement includes filling the shared DirectoryTable
+        long before = usedHeap();
+        LibraryStore store = new LibraryStore();
+        for (int i = 0; i < trackCount; i++) {
+            store.add(createTrack(i, trackCount));
+        }
+        store.trimToSize();
+        long storeBytes = usedHeap() - before;
+        long estimate = store.getHeapUsage();
+        long directoryBytes = store.getDirectories().getHeapUsage();
+        int storedTracks = store.size();
+        store = null;
+
+        before = usedHeap();
+        List<MediaFile> list = new ArrayList<>(trackCount);
+        for (int i = 0; i < trackCount; i++) {
+            list.add(createTrack(i, trackCount));
+        }
+        long listBytes = usedHeap() - before;
+
+        System.out.println("Tracks:                  " + storedTracks);
+        System.out.printf("LibraryStore, measured:  %.1f bytes per track%n", perTrack(storeBytes, trackCount));
+        System.out.printf("LibraryStore, estimated: %.1f bytes per track%n", perTrack(estimate, trackCount));
+        // The list's tracks use the directory ids the store already created
+        System.out.printf("List<MediaFile>:         %.1f bytes per track (%.1f with the directory table)%n",
+            perTrack(listBytes, trackCount), perTrack(listBytes + directoryBytes, list.size()));
+    }
+
+    private static MediaFile createTrack(int index, int trackCount) {
+        int tracksPerAlbum = Math.max(1, trackCount / (ARTISTS * ALBUMS_PER_ARTIST));
+        int album = index / tracksPerAlbum;
+        int artist = album / ALBUMS_PER_ARTIST % ARTISTS;
+        String title = "Track title " + index;
+        String fileName = String.format("%02d - %s.mp3", index % tracksPerAlbum + 1, title);
+        String path = String.format("/home/user/Music/Artist %04d/Album %05d/%s", artist, album, fileName);
+
+        FileMetadata attributes = new FileMetadata(fileName, "mp3", 4_000_000L + index, 0L, true, true);
+        MediaFile file = MediaFile.restore(path, attributes, title, "Artist " + artist, "Album " + album,
+            "Rock", 1970 + album % 50, 180 + index % 240);
+        file.markEnriched();
+        return file;
+    }
+
+    private static double perTrack(long bytes, int trackCount) {
+        return bytes / (double) trackCount;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
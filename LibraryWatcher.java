@@ -0,0 +1,412 @@
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Library Watcher Component
+ * Watches library folders recursively with a WatchService and reports
+ * created, modified and deleted media files as incremental batches.
+ * Events are coalesced over a short window so that a burst of changes
+ * (e.g. an ingest job copying an album) produces a single notification.
+ */
+public class LibraryWatcher {
+    private static final long COALESCE_WINDOW_MS = 500;
+    private static final long MAX_COALESCE_DELAY_MS = 5000;
+
+    private final IFileManager fileManager;
+    private final MetadataCache metadataCache;
+    private final List<ILibraryListener> listeners;
+    private final Map<WatchKey, Path> watchedDirectories;
+    private final Set<Path> watchedPaths;
+
+    // Only touched by the watcher thread
+    private final Set<Path> pendingChanges;
+    private final Set<Path> pendingRescans;
+    private final Set<String> vanishedPaths; // Deleted paths the cache has no file for
+
+    private volatile WatchService watchService;
+    private Thread watcherThread;
+    private volatile boolean running;
+
+    public LibraryWatcher(IFileManager fileManager, MetadataCache metadataCache) {
+        this.fileManager = fileManager;
+        this.metadataCache = metadataCache;
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.watchedDirectories = new ConcurrentHashMap<>();
+        this.watchedPaths = ConcurrentHashMap.newKeySet();
+        this.pendingChanges = new LinkedHashSet<>();
+        this.pendingRescans = new LinkedHashSet<>();
+        this.vanishedPaths = new TreeSet<>();
+    }
+
+    /**
+     * Start watching a directory tree
+     * Precondition: rootPath must be an existing directory
+     * Postcondition: rootPath and all its subdirectories are watched
+     */
+    public synchronized void watch(String rootPath) throws IOException {
+        if (rootPath == null || rootPath.trim().isEmpty()) {
+            throw new IllegalArgumentException("Directory path cannot be null or empty");
+        }
+
+        Path root = Paths.get(rootPath).toAbsolutePath().normalize();
+        if (!Files.isDirectory(root)) {
+            throw new IllegalArgumentException("Not a directory: " + rootPath);
+        }
+
+        if (watchService == null) {
+            watchService = FileSystems.getDefault().newWatchService();
+            running = true;
+            watcherThread = new Thread(this::processEvents, "LibraryWatcher");
+            watcherThread.setDaemon(true);
+            watcherThread.start();
+        }
+
+        registerAll(root, null);
+    }
+
+    /**
+     * Stop watching all directories and release the watch service
+     */
+    public synchronized void close() {
+        running = false;
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                // Ignore cleanup errors
+            }
+            watchService = null;
+        }
+        if (watcherThread != null) {
+            watcherThread.interrupt();
+            watcherThread = null;
+        }
+        watchedDirectories.clear();
+        watchedPaths.clear();
+    }
+
+    public boolean isWatching() {
+        return running && !watchedDirectories.isEmpty();
+    }
+
+    public void addListener(ILibraryListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener cannot be null");
+        }
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    public void removeListener(ILibraryListener listener) {
+        if (listener != null) {
+            listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Register a directory and all of its subdirectories.
+     * When discovered is not null, files found during the walk are queued
+     * as changes, since they may have been written before the watch existed.
+     * Otherwise media files the cache does not know yet are recorded in it,
+     * so later events on them in subdirectories are seen as changes.
+     */
+    private void registerAll(Path start, final Set<Path> discovered) throws IOException {
+        // The watcher thread walks without the lock, so close() may run meanwhile
+        final WatchService service = watchService;
+        if (service == null) {
+            return;
+        }
+
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                synchronized (LibraryWatcher.this) {
+                    if (watchService != service) {
+                        return FileVisitResult.TERMINATE; // Closed
+                    }
+                    if (watchedPaths.add(dir)) {
+                        WatchKey key = dir.register(service,
+                            StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY,
+                            StandardWatchEventKinds.ENTRY_DELETE);
+                        watchedDirectories.put(key, dir);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (!attrs.isRegularFile()) {
+                    return FileVisitResult.CONTINUE;
+                }
+                if (discovered != null) {
+                    discovered.add(file);
+                } else {
+                    String filePath = file.toString();
+                    if (fileManager.isSupportedFormat(filePath) && !metadataCache.contains(filePath)) {
+                        metadataCache.put(filePath, FileManager.createMetadata(file.toFile(), attrs));
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                System.err.println("Cannot watch: " + file + " - " + e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void processEvents() {
+        long firstEventTime = 0;
+        long deadline = 0;
+
+        while (running) {
+            WatchKey key;
+            try {
+                WatchService service = watchService;
+                if (service == null) {
+                    break;
+                }
+
+                if (pendingChanges.isEmpty() && pendingRescans.isEmpty()) {
+                    key = service.take();
+                } else {
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        flushPendingChanges();
+                        continue;
+                    }
+                    key = service.poll(wait, TimeUnit.MILLISECONDS);
+                    if (key == null) {
+                        flushPendingChanges();
+                        continue;
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            }
+
+            boolean wasIdle = pendingChanges.isEmpty() && pendingRescans.isEmpty();
+            Path dir = watchedDirectories.get(key);
+            if (dir != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    handleEvent(dir, event);
+                }
+            }
+
+            if (!key.reset()) {
+                // Directory is no longer accessible (deleted or unmounted)
+                Path gone = watchedDirectories.remove(key);
+                if (gone != null) {
+                    watchedPaths.remove(gone);
+                }
+            }
+
+            // Sliding window, capped so a continuous stream still gets flushed
+            long now = System.currentTimeMillis();
+            if (wasIdle) {
+                firstEventTime = now;
+            }
+            deadline = Math.min(now + COALESCE_WINDOW_MS, firstEventTime + MAX_COALESCE_DELAY_MS);
+        }
+    }
+
+    private void handleEvent(Path dir, WatchEvent<?> event) {
+        WatchEvent.Kind<?> kind = event.kind();
+
+        if (kind == StandardWatchEventKinds.OVERFLOW) {
+            // Events were lost; only this directory needs to be reconciled
+            pendingRescans.add(dir);
+            return;
+        }
+
+        Path child = dir.resolve((Path) event.context());
+        if (kind == StandardWatchEventKinds.ENTRY_CREATE
+                && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+            try {
+                registerAll(child, pendingChanges);
+            } catch (IOException e) {
+                System.err.println("Cannot watch: " + child + " - " + e.getMessage());
+            }
+            return;
+        }
+
+        pendingChanges.add(child);
+    }
+
+    private void flushPendingChanges() {
+        List<MediaFile> added = new ArrayList<>();
+        List<MediaFile> changed = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+
+        for (Path dir : pendingRescans) {
+            rescanDirectory(dir, added, changed, removed);
+        }
+        for (Path path : pendingChanges) {
+            applyChange(path, added, changed, removed);
+        }
+        removeVanishedDirectories(removed);
+        pendingRescans.clear();
+        pendingChanges.clear();
+
+        if (!removed.isEmpty()) {
+            notifyFilesRemoved(removed);
+        }
+        if (!added.isEmpty()) {
+            notifyFilesAdded(added);
+        }
+        if (!changed.isEmpty()) {
+            notifyFilesChanged(changed);
+        }
+    }
+
+    /**
+     * Reconcile a single directory with the metadata cache after an overflow
+     */
+    private void rescanDirectory(Path dir, List<MediaFile> added,
+                                 List<MediaFile> changed, List<String> removed) {
+        Set<String> known = new LinkedHashSet<>(metadataCache.getFilesIn(dir.toString()));
+
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+            for (Path child : children) {
+                if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                    if (!watchedPaths.contains(child)) {
+                        Set<Path> discovered = new LinkedHashSet<>();
+                        registerAll(child, discovered);
+                        for (Path file : discovered) {
+                            applyChange(file, added, changed, removed);
+                        }
+                    }
+                    continue;
+                }
+                known.remove(child.toString());
+                applyChange(child, added, changed, removed);
+            }
+        } catch (IOException e) {
+            System.err.println("Error rescanning directory: " + dir + " - " + e.getMessage());
+        }
+
+        // Whatever is still known but no longer listed has been deleted
+        for (String path : known) {
+            if (metadataCache.remove(path)) {
+                removed.add(path);
+            }
+        }
+    }
+
+    private void applyChange(Path path, List<MediaFile> added,
+                             List<MediaFile> changed, List<String> removed) {
+        String filePath = path.toString();
+
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            attributes = null;
+        }
+
+        if (attributes == null) {
+            if (metadataCache.remove(filePath)) {
+                removed.add(filePath);
+            } else {
+                vanishedPaths.add(filePath); // Maybe a directory; resolved once per batch
+            }
+            return;
+        }
+
+        if (!attributes.isRegularFile() || !fileManager.isSupportedFormat(filePath)) {
+            return;
+        }
+
+        FileMetadata metadata = FileManager.createMetadata(path.toFile(), attributes);
+        FileMetadata previous = metadataCache.get(filePath);
+        metadataCache.put(filePath, metadata);
+
+        try {
+            if (previous == null) {
+                added.add(new MediaFile(filePath, metadata));
+            } else if (previous.getLastModified() != metadata.getLastModified()
+                    || previous.getFileSize() != metadata.getFileSize()) {
+                changed.add(new MediaFile(filePath, metadata));
+            }
+        } catch (Exception e) {
+            System.err.println("Error processing file: " + filePath + " - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Drop everything that was below deleted directories
+     * Paths are sorted, so a directory comes before its subdirectories and
+     * those find nothing left; each lookup uses the cache's directory index.
+     */
+    private void removeVanishedDirectories(List<String> removed) {
+        for (String path : vanishedPaths) {
+            if (!metadataCache.hasFilesUnder(path)) {
+                continue; // An ignored file, or below a directory already dropped
+            }
+            for (String child : metadataCache.getFilesUnder(path)) {
+                if (metadataCache.remove(child)) {
+                    removed.add(child);
+                }
+            }
+        }
+        vanishedPaths.clear();
+    }
+
+    // Notification methods
+    private void notifyFilesAdded(List<MediaFile> files) {
+        for (ILibraryListener listener : listeners) {
+            try {
+                listener.onFilesAdded(files);
+            } catch (Exception e) {
+                System.err.println("Error notifying listener: " + e.getMessage());
+            }
+        }
+    }
+
+    private void notifyFilesChanged(List<MediaFile> files) {
+        for (ILibraryListener listener : listeners) {
+            try {
+                listener.onFilesChanged(files);
+            } catch (Exception e) {
+                System.err.println("Error notifying listener: " + e.getMessage());
+            }
+        }
+    }
+
+    private void notifyFilesRemoved(List<String> filePaths) {
+        for (ILibraryListener listener : listeners) {
+            try {
+                listener.onFilesRemoved(filePaths);
+            } catch (Exception e) {
+                System.err.println("Error notifying listener: " + e.getMessage());
+            }
+        }
+    }
+}
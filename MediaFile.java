@@ -1,14 +1,59 @@
-import java.io.Serializable;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.io.Serializable;
+import javazoom.jl.decoder.Bitstream;
+import javazoom.jl.decoder.BitstreamException;
+import javazoom.jl.decoder.Header;
 
 /**
  * Media File entity representing audio files with metadata
  * Based on Business Type Model for media management
+ *
+ * Construction performs no file system access. The file name is parsed on
+ * first access to a metadata field, size and existence are read on first
+ * access unless pre-fetched attributes were supplied, and tags and duration
+ * are loaded by enrich(), which runs on first playback or from a background
+ * enricher (see IFileManager.enrichMetadata).
+ *
+ * The path is kept as the id of its directory in DirectoryTable.shared()
+ * plus the file name, so the directories of a large library are stored
+ * once rather than in every track. equals() and hashCode() use that pair;
+ * getFilePath() joins it back into the full path for I/O. The serialized
+ * form still holds the full path.
  */
 public class MediaFile implements Serializable {
     private static final long serialVersionUID = 1L;
     
-    private String filePath;
+    // Placeholders for tags that could not be read
+    public static final String UNKNOWN_ARTIST = "Unknown Artist";
+    public static final String UNKNOWN_ALBUM = "Unknown Album";
+    
+    // Serialized as before this class split its path
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("filePath", String.class),
+        new ObjectStreamField("title", String.class),
+        new ObjectStreamField("artist", String.class),
+        new ObjectStreamField("album", String.class),
+        new ObjectStreamField("genre", String.class),
+        new ObjectStreamField("duration", int.class),
+        new ObjectStreamField("fileSize", long.class),
+        new ObjectStreamField("format", String.class),
+        new ObjectStreamField("year", int.class),
+        new ObjectStreamField("isCorrupted", boolean.class),
+        new ObjectStreamField("lastPlayed", long.class),
+        new ObjectStreamField("namesPending", boolean.class),
+        new ObjectStreamField("statPending", boolean.class),
+        new ObjectStreamField("tagsRead", boolean.class)
+    };
+    
+    private int directoryId = DirectoryTable.NO_DIRECTORY;
+    private String leafName; // Whole path when directoryId is NO_DIRECTORY
     private String title;
     private String artist;
     private String album;
@@ -18,12 +63,108 @@ public class MediaFile implements Serializable {
     private String format;
     private int year;
     private boolean isCorrupted;
+    private volatile long lastPlayed;
+    
+    // Lazy loading state
+    private volatile boolean namesPending;
+    private volatile boolean statPending;
+    private volatile boolean tagsRead;
     
     public MediaFile(String filePath) {
-        this.filePath = filePath;
+        this(filePath, null);
+    }
+    
+    /**
+     * Create media file without touching the file system
+     * @param filePath path of the audio file
+     * @param attributes pre-fetched attributes, or null to read them on first access
+     */
+    public MediaFile(String filePath, FileMetadata attributes) {
+        // Precondition check
+        if (filePath == null) {
+            throw new IllegalArgumentException("File path cannot be null");
+        }
+        
+        setPath(filePath);
         this.isCorrupted = false;
-        extractMetadata();
-        calculateFileSize();
+        this.namesPending = true;
+        
+        if (attributes != null) {
+            this.fileSize = attributes.exists() ? attributes.getFileSize() : 0;
+            this.isCorrupted = !attributes.exists();
+            this.statPending = false;
+        } else {
+            this.statPending = true;
+        }
+    }
+    
+    /**
+     * Constructor for subclasses that keep their values elsewhere
+     * (e.g. LibraryStore views); performs no file system access
+     */
+    protected MediaFile() {
+    }
+    
+    /**
+     * Create a detached copy holding the current values of a media file
+     * Performs no file system access
+     * @param source file to copy
+     * @return independent MediaFile with the same values
+     */
+    public static MediaFile copyOf(MediaFile source) {
+        MediaFile copy = new MediaFile();
+        copy.directoryId = source.getDirectoryId();
+        copy.leafName = source.getLeafName();
+        copy.title = source.getTitle();
+        copy.artist = source.getArtist();
+        copy.album = source.getAlbum();
+        copy.genre = source.getGenre();
+        copy.duration = source.getDuration();
+        copy.fileSize = source.getFileSize();
+        copy.format = source.getFormat();
+        copy.year = source.getYear();
+        copy.isCorrupted = source.isCorrupted();
+        copy.tagsRead = source.isEnriched();
+        copy.lastPlayed = source.getLastPlayed();
+        return copy;
+    }
+    
+    /**
+     * Create a media file from values saved earlier, e.g. in a playlist file
+     * Performs no file system access and parses nothing from the path
+     * @param attributes saved attributes, or null to read them on first access
+     * @return media file holding the given names
+     */
+    static MediaFile restore(String filePath, FileMetadata attributes, String title, String artist,
+            String album, String genre, int year, int duration) {
+        MediaFile file = new MediaFile(filePath, attributes);
+        file.title = title;
+        file.artist = artist;
+        file.album = album;
+        file.genre = genre;
+        file.year = year;
+        file.duration = duration;
+        file.namesPending = false; // Format is derived from the path on first use
+        return file;
+    }
+    
+    private void setPath(String filePath) {
+        int leafStart = DirectoryTable.leafStart(filePath);
+        if (leafStart > 0) {
+            directoryId = DirectoryTable.shared().intern(DirectoryTable.directoryOf(filePath, leafStart));
+            leafName = filePath.substring(leafStart);
+        } else {
+            directoryId = DirectoryTable.NO_DIRECTORY;
+            leafName = filePath;
+        }
+    }
+    
+    /**
+     * File name without the directory, taken from the leaf without rebuilding the path
+     */
+    private String fileName() {
+        String leaf = getLeafName();
+        return getDirectoryId() != DirectoryTable.NO_DIRECTORY ? leaf : new File(leaf).getName();
     }
     
     /**
@@ -31,16 +172,13 @@ public class MediaFile implements Serializable {
      * In real system, would use JAudioTagger library
      */
     private void extractMetadata() {
-        File file = new File(filePath);
-        String fileName = file.getName();
+        String fileName = fileName();
         
         // Extract format
+        format = formatFromFileName(fileName);
         int dotIndex = fileName.lastIndexOf('.');
         if (dotIndex > 0) {
-            format = fileName.substring(dotIndex + 1).toLowerCase();
             fileName = fileName.substring(0, dotIndex);
-        } else {
-            format = "unknown";
         }
         
         // Try to parse artist - title format
@@ -50,64 +188,269 @@ public class MediaFile implements Serializable {
             title = fileName.substring(dashIndex + 1).trim();
         } else {
             title = fileName;
-            artist = "Unknown Artist";
+            artist = UNKNOWN_ARTIST;
         }
         
-        album = "Unknown Album";
+        album = UNKNOWN_ALBUM;
         genre = "Unknown Genre";
         year = 0;
         duration = 0; // Would be set after file analysis
     }
     
+    /**
+     * Derive the title from a file name the same way extractMetadata does
+     * @param fileName file name including extension
+     * @return parsed title
+     */
+    static String titleFromFileName(String fileName) {
+        int dotIndex = fileName.lastIndexOf('.');
+        String baseName = dotIndex > 0 ? fileName.substring(0, dotIndex) : fileName;
+        int dashIndex = baseName.indexOf('-');
+        return dashIndex > 0 ? baseName.substring(dashIndex + 1).trim() : baseName;
+    }
+    
+    /**
+     * Derive the format from a file name's extension
+     * @param fileName file name including extension
+     * @return lower-case extension, or "unknown" without one
+     */
+    static String formatFromFileName(String fileName) {
+        int dotIndex = fileName.lastIndexOf('.');
+        return dotIndex > 0 ? fileName.substring(dotIndex + 1).toLowerCase() : "unknown";
+    }
+    
     private void calculateFileSize() {
-        File file = new File(filePath);
-        if (file.exists()) {
-            fileSize = file.length();
+        File file = new File(getFilePath());
+        long length = file.length(); // 0 when the file does not exist
+        if (length > 0 || file.exists()) {
+            fileSize = length;
         } else {
             fileSize = 0;
             isCorrupted = true;
         }
     }
     
+    private void ensureNamesParsed() {
+        if (namesPending) {
+            synchronized (this) {
+                if (namesPending) {
+                    extractMetadata();
+                    namesPending = false;
+                }
+            }
+        }
+    }
+    
+    private void ensureStat() {
+        if (statPending) {
+            synchronized (this) {
+                if (statPending) {
+                    calculateFileSize();
+                    statPending = false;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Replace size and existence with freshly read attributes
+     * Precondition: attributes must not be null
+     * Postcondition: no further stat is needed for this file
+     */
+    public void updateAttributes(FileMetadata attributes) {
+        if (attributes == null) {
+            throw new IllegalArgumentException("Attributes cannot be null");
+        }
+        
+        synchronized (this) {
+            fileSize = attributes.exists() ? attributes.getFileSize() : 0;
+            isCorrupted = !attributes.exists() || !attributes.isReadable();
+            statPending = false;
+        }
+    }
+    
+    /**
+     * Load tags and duration from the file
+     * Idempotent; performs bounded reads on the calling thread
+     * Postcondition: isEnriched() returns true
+     * @return true if the file could be read
+     */
+    public boolean enrich() {
+        if (isEnriched()) {
+            return !isCorrupted();
+        }
+        
+        synchronized (this) {
+            if (isEnriched()) {
+                return !isCorrupted();
+            }
+            
+            File file = new File(getFilePath());
+            if (isCorrupted()) {
+                markEnriched();
+                return false;
+            }
+            
+            try {
+                Id3Tag tag = Id3Tag.read(file);
+                if (tag.getTitle() != null) setTitle(tag.getTitle());
+                if (tag.getArtist() != null) setArtist(tag.getArtist());
+                if (tag.getAlbum() != null) setAlbum(tag.getAlbum());
+                if (tag.getGenre() != null) setGenre(tag.getGenre());
+                if (tag.getYear() > 0) setYear(tag.getYear());
+                
+                if ("mp3".equals(getFormat())) {
+                    long audioBytes = tag.getAudioEnd(getFileSize()) - tag.getAudioStart();
+                    setDuration(readMp3Duration(file, tag.getAudioStart(), audioBytes));
+                }
+                markEnriched();
+                return true;
+            } catch (IOException e) {
+                System.err.println("Error reading tags: " + getFilePath() + " - " + e.getMessage());
+                setCorrupted(true);
+                markEnriched();
+                return false;
+            }
+        }
+    }
+    
+    /**
+     * Forget what was read from the file, e.g. after it was rewritten
+     * Names and size are read again on next access; enrich() reads the tags again.
+     */
+    public void invalidate() {
+        synchronized (this) {
+            isCorrupted = false;
+            namesPending = true;
+            statPending = true;
+            tagsRead = false;
+        }
+    }
+    
+    /**
+     * Check whether tags and duration have been loaded
+     * @return true after enrich() has run
+     */
+    public boolean isEnriched() {
+        return tagsRead;
+    }
+    
+    /**
+     * Record that tags were already loaded, e.g. when restored from LibraryDatabase
+     */
+    void markEnriched() {
+        tagsRead = true;
+    }
+    
+    /**
+     * Check whether size and existence are still unread, so savers need not stat the file
+     */
+    boolean isStatPending() {
+        return statPending;
+    }
+    
+    /**
+     * Check whether fields are still to be parsed from the file name, so savers can skip them
+     */
+    boolean isNamesPending() {
+        return namesPending;
+    }
+    
+    private static int readMp3Duration(File file, long audioStart, long audioBytes) {
+        if (audioBytes <= 0) {
+            return 0;
+        }
+        
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            long skipped = 0;
+            while (skipped < audioStart) {
+                long n = in.skip(audioStart - skipped);
+                if (n <= 0) {
+                    return 0;
+                }
+                skipped += n;
+            }
+            
+            Bitstream bitstream = new Bitstream(in);
+            try {
+                Header header = bitstream.readFrame();
+                if (header == null) {
+                    return 0;
+                }
+                // Uses the Xing frame count for VBR files, bitrate otherwise
+                return (int) (header.total_ms((int) Math.min(audioBytes, Integer.MAX_VALUE)) / 1000);
+            } finally {
+                bitstream.close();
+            }
+        } catch (IOException | BitstreamException e) {
+            return 0;
+        }
+    }
+    
     // Getters and Setters
-    public String getFilePath() { return filePath; }
+    public String getFilePath() { return DirectoryTable.shared().join(directoryId, leafName); }
     
-    public String getTitle() { return title; }
-    public void setTitle(String title) { this.title = title; }
+    /**
+     * Id of the file's directory in DirectoryTable.shared(), or NO_DIRECTORY
+     * if the path is kept whole
+     */
+    int getDirectoryId() { return directoryId; }
     
-    public String getArtist() { return artist; }
-    public void setArtist(String artist) { this.artist = artist; }
+    /**
+     * File name, or the whole path if getDirectoryId() is NO_DIRECTORY
+     */
+    String getLeafName() { return leafName; }
     
-    public String getAlbum() { return album; }
-    public void setAlbum(String album) { this.album = album; }
+    public String getTitle() { ensureNamesParsed(); return title; }
+    public void setTitle(String title) { ensureNamesParsed(); this.title = title; }
     
-    public String getGenre() { return genre; }
-    public void setGenre(String genre) { this.genre = genre; }
+    public String getArtist() { ensureNamesParsed(); return artist; }
+    public void setArtist(String artist) { ensureNamesParsed(); this.artist = artist; }
     
-    public int getDuration() { return duration; }
-    public void setDuration(int duration) { this.duration = duration; }
+    public String getAlbum() { ensureNamesParsed(); return album; }
+    public void setAlbum(String album) { ensureNamesParsed(); this.album = album; }
     
-    public long getFileSize() { return fileSize; }
+    public String getGenre() { ensureNamesParsed(); return genre; }
+    public void setGenre(String genre) { ensureNamesParsed(); this.genre = genre; }
     
-    public String getFormat() { return format; }
+    public int getDuration() { ensureNamesParsed(); return duration; }
+    public void setDuration(int duration) { ensureNamesParsed(); this.duration = duration; }
     
-    public int getYear() { return year; }
-    public void setYear(int year) { this.year = year; }
+    public long getFileSize() { ensureStat(); return fileSize; }
     
-    public boolean isCorrupted() { return isCorrupted; }
-    public void setCorrupted(boolean corrupted) { isCorrupted = corrupted; }
+    public String getFormat() {
+        ensureNamesParsed();
+        String known = format;
+        if (known == null) {
+            known = formatFromFileName(fileName());
+            format = known;
+        }
+        return known;
+    }
+    
+    public int getYear() { ensureNamesParsed(); return year; }
+    public void setYear(int year) { ensureNamesParsed(); this.year = year; }
+    
+    public boolean isCorrupted() { ensureStat(); return isCorrupted; }
+    public void setCorrupted(boolean corrupted) { ensureStat(); isCorrupted = corrupted; }
+    
+    /** Time playback last started in milliseconds, 0 if never played */
+    public long getLastPlayed() { return lastPlayed; }
+    public void setLastPlayed(long lastPlayed) { this.lastPlayed = lastPlayed; }
     
     public String getMetadata() {
-        return String.format("%s - %s (%s) [%s]", artist, title, album, format.toUpperCase());
+        return String.format("%s - %s (%s) [%s]", getArtist(), getTitle(), getAlbum(), getFormat().toUpperCase());
     }
     
     public String getFormattedFileSize() {
+        long fileSize = getFileSize();
         if (fileSize < 1024) return fileSize + " B";
         if (fileSize < 1024 * 1024) return String.format("%.1f KB", fileSize / 1024.0);
         return String.format("%.1f MB", fileSize / (1024.0 * 1024.0));
     }
     
     public String getFormattedDuration() {
+        int duration = getDuration();
         int minutes = duration / 60;
         int seconds = duration % 60;
         return String.format("%02d:%02d", minutes, seconds);
@@ -115,19 +458,67 @@ public class MediaFile implements Serializable {
     
     @Override
     public String toString() {
-        return String.format("%s - %s [%s]", artist, title, getFormattedDuration());
+        return String.format("%s - %s [%s]", getArtist(), getTitle(), getFormattedDuration());
     }
     
     @Override
     public boolean equals(Object obj) {
         if (this == obj) return true;
-        if (obj == null || getClass() != obj.getClass()) return false;
+        if (!(obj instanceof MediaFile)) return false;
         MediaFile mediaFile = (MediaFile) obj;
-        return filePath.equals(mediaFile.filePath);
+        return getDirectoryId() == mediaFile.getDirectoryId() && getLeafName().equals(mediaFile.getLeafName());
     }
     
     @Override
     public int hashCode() {
-        return filePath.hashCode();
+        return keyHash(getDirectoryId(), getLeafName());
+    }
+    
+    /**
+     * Hash of a (directory id, leaf name) key, as used by hashCode()
+     */
+    static int keyHash(int directoryId, String leafName) {
+        return 31 * directoryId + leafName.hashCode();
+    }
+    
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("filePath", getFilePath());
+        fields.put("title", title);
+        fields.put("artist", artist);
+        fields.put("album", album);
+        fields.put("genre", genre);
+        fields.put("duration", duration);
+        fields.put("fileSize", fileSize);
+        fields.put("format", format);
+        fields.put("year", year);
+        fields.put("isCorrupted", isCorrupted);
+        fields.put("lastPlayed", lastPlayed);
+        fields.put("namesPending", namesPending);
+        fields.put("statPending", statPending);
+        fields.put("tagsRead", tagsRead);
+        out.writeFields();
+    }
+    
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        String path = (String) fields.get("filePath", null);
+        if (path == null) {
+            throw new IOException("Serialized media file without a path");
+        }
+        setPath(path);
+        title = (String) fields.get("title", null);
+        artist = (String) fields.get("artist", null);
+        album = (String) fields.get("album", null);
+        genre = (String) fields.get("genre", null);
+        duration = fields.get("duration", 0);
+        fileSize = fields.get("fileSize", 0L);
+        format = (String) fields.get("format", null);
+        year = fields.get("year", 0);
+        isCorrupted = fields.get("isCorrupted", false);
+        lastPlayed = fields.get("lastPlayed", 0L);
+        namesPending = fields.get("namesPending", false);
+        statPending = fields.get("statPending", false);
+        tagsRead = fields.get("tagsRead", false);
     }
 }
\ No newline at end of file
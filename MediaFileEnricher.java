@@ -0,0 +1,83 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Media File Enricher Component
+ * Loads tags and duration of lazily created MediaFiles on a small
+ * background pool, so adding large numbers of files never blocks on I/O.
+ */
+public class MediaFileEnricher {
+    private static final int THREAD_COUNT = 2;
+    private static final int BATCH_SIZE = 256;
+
+    private final ExecutorService executor;
+
+    public MediaFileEnricher() {
+        executor = Executors.newFixedThreadPool(THREAD_COUNT, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "MediaFileEnricher-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Enrich files in the background
+     * Files that are already enriched are skipped.
+     * @param files files to enrich
+     * @param onBatch called from a pool thread with each enriched batch, may be null
+     */
+    public void enrichAll(Collection<MediaFile> files, Consumer<List<MediaFile>> onBatch) {
+        if (files == null) {
+            throw new IllegalArgumentException("Files cannot be null");
+        }
+
+        List<MediaFile> batch = new ArrayList<>(BATCH_SIZE);
+        for (MediaFile file : files) {
+            if (file != null && !file.isEnriched()) {
+                batch.add(file);
+                if (batch.size() == BATCH_SIZE) {
+                    submit(batch, onBatch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            submit(batch, onBatch);
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void submit(final List<MediaFile> batch, final Consumer<List<MediaFile>> onBatch) {
+        executor.execute(() -> {
+            for (MediaFile file : batch) {
+                try {
+                    file.enrich();
+                } catch (Exception e) {
+                    System.err.println("Error enriching file: " + file.getFilePath() + " - " + e.getMessage());
+                }
+            }
+            if (onBatch != null) {
+                try {
+                    onBatch.accept(batch);
+                } catch (Exception e) {
+                    System.err.println("Error notifying listener: " + e.getMessage());
+                }
+            }
+        });
+    }
+}
@@ -1,3 +1,5 @@
+import java.io.File;
+import java.io.IOException;
 import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 
@@ -11,6 +13,9 @@ public class MediaPlayerApp {
     private IUserInterface userInterface;
     private IPlaybackController playbackController;
     private IFileManager fileManager;
+    private PlaylistJournal playlistJournal;
+    private PlayQueue playQueue;
+    private PlaylistRegistry playlistRegistry;
     
     public static void main(String[] args) {
         // Set system look and feel - Compatible version
@@ -73,20 +78,43 @@ public class MediaPlayerApp {
         // Create core business components
         System.out.println("Creating FileManager component...");
         fileManager = new FileManager();
+        fileManager.openLibrary(new File(System.getProperty("user.home"),
+            ".mediaplayer" + File.separator + "library").getPath());
         
         // Create playback controller with its dependencies
         System.out.println("Creating AudioPlayer component...");
         IAudioPlayer audioPlayer = new AudioPlayer();
         
         System.out.println("Creating PlaylistManager component...");
-        IPlaylistManager playlistManager = new PlaylistManager();
+        // Library tracks in playlists share the library store's columns
+        playlistRegistry = new PlaylistRegistry(new TrackPool(fileManager.getLibrary()));
+        IPlaylistManager playlistManager = playlistRegistry.create("Main");
+        
+        // Restore the autosaved playlist and journal further changes
+        File autosave = new File(System.getProperty("user.home"), ".mediaplayer" + File.separator + "autosave");
+        try {
+            playlistJournal = PlaylistJournal.open(playlistManager, autosave,
+                PlaylistJournal.DEFAULT_COMMIT_INTERVAL, false);
+            playlistManager.clearHistory(); // Restored edits are not for this session to undo
+        } catch (IOException e) {
+            System.err.println("Error opening playlist autosave: " + e.getMessage());
+        }
+        try {
+            playQueue = PlayQueue.open(new File(autosave, "queue.log"), playlistRegistry.getTrackPool());
+        } catch (IOException e) {
+            System.err.println("Error opening play queue: " + e.getMessage());
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::closeAutosave, "AutosaveShutdown"));
         
         System.out.println("Creating PlaybackController component...");
         playbackController = new PlaybackController(audioPlayer, playlistManager);
+        if (playQueue != null) {
+            playbackController.setPlayQueue(playQueue);
+        }
         
         // Create user interface with its dependencies
         System.out.println("Creating UserInterface component...");
-        userInterface = new PlayerUI(playbackController, fileManager);
+        userInterface = new PlayerUI(playbackController, fileManager, playlistRegistry);
         
         System.out.println("========================================");
         System.out.println("Components initialized successfully!");
@@ -134,6 +162,25 @@ public class MediaPlayerApp {
         return userInterface;
     }
     
+    private synchronized void closeAutosave() {
+        if (playlistJournal != null) {
+            try {
+                playlistJournal.close();
+            } catch (IOException e) {
+                System.err.println("Error closing playlist autosave: " + e.getMessage());
+            }
+            playlistJournal = null;
+        }
+        if (playQueue != null) {
+            try {
+                playQueue.close();
+            } catch (IOException e) {
+                System.err.println("Error closing play queue: " + e.getMessage());
+            }
+            playQueue = null;
+        }
+    }
+    
     /**
      * Shutdown application gracefully
      */
@@ -150,6 +197,8 @@ public class MediaPlayerApp {
             userInterface.hide();
         }
         
+        closeAutosave();
+        
         System.out.println("Application shutdown complete.");
     }
 }
\ No newline at end of file
@@ -0,0 +1,229 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Metadata Cache Component
+ * Keeps the last known FileMetadata of every file in the library so that
+ * incremental updates can be applied without rescanning whole directories,
+ * plus content hashes so duplicate detection only rehashes changed files.
+ * Files are also indexed by directory in a sorted map, so the files in a
+ * directory, or anywhere below one, are found without scanning the cache.
+ * Safe for use from scanner, watcher and UI threads.
+ */
+public class MetadataCache {
+    private final Map<String, FileMetadata> entries;
+    private final Map<String, ContentHash> contentHashes;
+    // Directory path to the cached files directly in it; guarded by itself,
+    // which writers of entries also hold so both maps change together
+    private final TreeMap<String, Set<String>> filesByDirectory;
+
+    public MetadataCache() {
+        entries = new ConcurrentHashMap<>();
+        contentHashes = new ConcurrentHashMap<>();
+        filesByDirectory = new TreeMap<>();
+    }
+
+    /**
+     * Store metadata for a file, replacing any previous entry
+     * Precondition: filePath and metadata must not be null
+     */
+    public void put(String filePath, FileMetadata metadata) {
+        if (filePath == null || metadata == null) {
+            throw new IllegalArgumentException("File path and metadata cannot be null");
+        }
+        synchronized (filesByDirectory) {
+            if (entries.put(filePath, metadata) == null) {
+                String directory = parentOf(filePath);
+                Set<String> files = filesByDirectory.get(directory);
+                if (files == null) {
+                    files = new HashSet<>();
+                    filesByDirectory.put(directory, files);
+                }
+                files.add(filePath);
+            }
+        }
+    }
+
+    /**
+     * Get cached metadata
+     * @return cached metadata or null if the file is unknown
+     */
+    public FileMetadata get(String filePath) {
+        return filePath != null ? entries.get(filePath) : null;
+    }
+
+    public boolean contains(String filePath) {
+        return filePath != null && entries.containsKey(filePath);
+    }
+
+    /**
+     * Remove a file from the cache
+     * @return true if an entry was removed
+     */
+    public boolean remove(String filePath) {
+        if (filePath == null) {
+            return false;
+        }
+        contentHashes.remove(filePath);
+        String directory = parentOf(filePath);
+        synchronized (filesByDirectory) {
+            if (entries.remove(filePath) == null) {
+                return false;
+            }
+            Set<String> files = filesByDirectory.get(directory);
+            if (files != null && files.remove(filePath) && files.isEmpty()) {
+                filesByDirectory.remove(directory);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Store audio payload information computed for a file
+     * Precondition: filePath and hash must not be null
+     */
+    public void putContentHash(String filePath, ContentHash hash) {
+        if (filePath == null || hash == null) {
+            throw new IllegalArgumentException("File path and hash cannot be null");
+        }
+        contentHashes.put(filePath, hash);
+    }
+
+    /**
+     * Get payload information if it is still valid for the file's current state
+     * @return cached entry, or null if unknown or the file changed since
+     */
+    public ContentHash getContentHash(String filePath, long fileSize, long lastModified) {
+        ContentHash hash = filePath != null ? contentHashes.get(filePath) : null;
+        if (hash == null || hash.getFileSize() != fileSize || hash.getLastModified() != lastModified) {
+            return null;
+        }
+        return hash;
+    }
+
+    /**
+     * Get paths of cached files located directly in the given directory
+     * @param directoryPath absolute directory path
+     * @return list of file paths (never null)
+     */
+    public List<String> getFilesIn(String directoryPath) {
+        List<String> result = new ArrayList<>();
+        if (directoryPath == null) {
+            return result;
+        }
+
+        synchronized (filesByDirectory) {
+            Set<String> files = filesByDirectory.get(directoryPath);
+            if (files != null) {
+                result.addAll(files);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get paths of cached files located anywhere below the given directory
+     * @param directoryPath absolute directory path
+     * @return list of file paths (never null)
+     */
+    public List<String> getFilesUnder(String directoryPath) {
+        List<String> result = new ArrayList<>();
+        if (directoryPath == null) {
+            return result;
+        }
+
+        String prefix = directoryPath.endsWith(File.separator)
+            ? directoryPath : directoryPath + File.separator;
+        synchronized (filesByDirectory) {
+            Set<String> direct = filesByDirectory.get(directoryPath);
+            if (direct != null) {
+                result.addAll(direct);
+            }
+            // Subdirectories sort right after the prefix
+            for (Map.Entry<String, Set<String>> entry : filesByDirectory.tailMap(prefix, true).entrySet()) {
+                if (!entry.getKey().startsWith(prefix)) {
+                    break;
+                }
+                result.addAll(entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Check whether any cached file lies below the given directory
+     * O(log d) for d directories.
+     */
+    public boolean hasFilesUnder(String directoryPath) {
+        if (directoryPath == null) {
+            return false;
+        }
+
+        String prefix = directoryPath.endsWith(File.separator)
+            ? directoryPath : directoryPath + File.separator;
+        synchronized (filesByDirectory) {
+            if (filesByDirectory.containsKey(directoryPath)) {
+                return true;
+            }
+            String next = filesByDirectory.ceilingKey(prefix);
+            return next != null && next.startsWith(prefix);
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        synchronized (filesByDirectory) {
+            entries.clear();
+            filesByDirectory.clear();
+        }
+        contentHashes.clear();
+    }
+
+    private static String parentOf(String filePath) {
+        String parent = new File(filePath).getParent();
+        return parent != null ? parent : "";
+    }
+
+    /**
+     * Audio payload location and digest of a file, valid for one size/mtime
+     */
+    public static class ContentHash {
+        private final long fileSize;
+        private final long lastModified;
+        private final long audioStart;
+        private final long audioEnd;
+        private final String digest;
+
+        public ContentHash(long fileSize, long lastModified, long audioStart, long audioEnd, String digest) {
+            this.fileSize = fileSize;
+            this.lastModified = lastModified;
+            this.audioStart = audioStart;
+            this.audioEnd = audioEnd;
+            this.digest = digest;
+        }
+
+        public long getFileSize() { return fileSize; }
+        public long getLastModified() { return lastModified; }
+        public long getAudioStart() { return audioStart; }
+        public long getAudioEnd() { return audioEnd; }
+        public long getAudioLength() { return audioEnd - audioStart; }
+
+        /**
+         * @return hex digest of the audio payload, or null if not hashed yet
+         */
+        public String getDigest() { return digest; }
+
+        public ContentHash withDigest(String newDigest) {
+            return new ContentHash(fileSize, lastModified, audioStart, audioEnd, newDigest);
+        }
+    }
+}
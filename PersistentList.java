@@ -0,0 +1,364 @@
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * Persistent List Component
+ * Immutable list held in a height-balanced tree of small array leaves.
+ * Every update returns a new list that shares all untouched subtrees
+ * with the old one, so a version costs O(log n) new nodes rather than a
+ * copy, and a reader keeps a consistent version for as long as it holds
+ * the reference. Indexing, insertion, removal and slicing are O(log n)
+ * plus the size of the leaves touched; building from a collection is
+ * O(n). The mutators inherited from List throw
+ * UnsupportedOperationException.
+ */
+public final class PersistentList<E> extends AbstractList<E> implements RandomAccess {
+    private static final int LEAF_SIZE = 32;
+    private static final PersistentList<Object> EMPTY = new PersistentList<>(null);
+
+    private final Node root;
+
+    private PersistentList(Node root) {
+        this.root = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentList<E> empty() {
+        return (PersistentList<E>) EMPTY;
+    }
+
+    /**
+     * List holding the elements of a collection in iteration order
+     * Precondition: elements must not be null
+     */
+    public static <E> PersistentList<E> of(Collection<? extends E> elements) {
+        if (elements == null) {
+            throw new IllegalArgumentException("Elements cannot be null");
+        }
+        if (elements instanceof PersistentList) {
+            @SuppressWarnings("unchecked")
+            PersistentList<E> list = (PersistentList<E>) elements;
+            return list;
+        }
+        return wrap(build(elements.toArray()));
+    }
+
+    private static <E> PersistentList<E> wrap(Node root) {
+        return root == null ? PersistentList.<E>empty() : new PersistentList<E>(root);
+    }
+
+    @Override
+    public int size() {
+        return root == null ? 0 : root.size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index out of bounds: " + index);
+        }
+
+        Node node = root;
+        while (node instanceof Branch) {
+            Branch branch = (Branch) node;
+            if (index < branch.left.size) {
+                node = branch.left;
+            } else {
+                index -= branch.left.size;
+                node = branch.right;
+            }
+        }
+        return (E) ((Leaf) node).items[index];
+    }
+
+    /**
+     * List with one element replaced
+     * Precondition: 0 <= index < size()
+     */
+    public PersistentList<E> with(int index, E element) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index out of bounds: " + index);
+        }
+        return new PersistentList<>(replace(root, index, element));
+    }
+
+    /**
+     * List with an element appended
+     */
+    public PersistentList<E> plus(E element) {
+        return wrap(concat(root, new Leaf(new Object[] {element})));
+    }
+
+    /**
+     * List with the elements of a collection inserted at index
+     * Inserting another PersistentList shares its nodes instead of copying them.
+     * Precondition: 0 <= index <= size(), elements must not be null
+     */
+    public PersistentList<E> insertAll(int index, Collection<? extends E> elements) {
+        if (elements == null) {
+            throw new IllegalArgumentException("Elements cannot be null");
+        }
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Invalid index: " + index);
+        }
+
+        Node inserted = elements instanceof PersistentList
+            ? ((PersistentList<?>) elements).root : build(elements.toArray());
+        if (inserted == null) {
+            return this;
+        }
+        Node[] parts = split(root, index);
+        return wrap(concat(concat(parts[0], inserted), parts[1]));
+    }
+
+    /**
+     * List without the elements from fromIndex (inclusive) to toIndex (exclusive)
+     * Precondition: 0 <= fromIndex <= toIndex <= size()
+     */
+    public PersistentList<E> without(int fromIndex, int toIndex) {
+        checkRange(fromIndex, toIndex);
+        if (fromIndex == toIndex) {
+            return this;
+        }
+
+        Node[] tail = split(root, toIndex);
+        Node[] head = split(tail[0], fromIndex);
+        return wrap(concat(head[0], tail[1]));
+    }
+
+    /**
+     * Elements from fromIndex (inclusive) to toIndex (exclusive) as a list of their own
+     * Unlike subList(), the result does not refer back to this list.
+     * Precondition: 0 <= fromIndex <= toIndex <= size()
+     */
+    public PersistentList<E> slice(int fromIndex, int toIndex) {
+        checkRange(fromIndex, toIndex);
+        if (fromIndex == 0 && toIndex == size()) {
+            return this;
+        }
+        return wrap(split(split(root, toIndex)[0], fromIndex)[1]);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new LeafIterator<>(root);
+    }
+
+    @Override
+    public Object[] toArray() {
+        Object[] result = new Object[size()];
+        copyInto(root, result, 0);
+        return result;
+    }
+
+    private void checkRange(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("Invalid range: " + fromIndex + ".." + toIndex);
+        }
+    }
+
+    private static Node build(Object[] items) {
+        if (items.length == 0) {
+            return null;
+        }
+        int leafCount = (items.length + LEAF_SIZE - 1) / LEAF_SIZE;
+        Node[] leaves = new Node[leafCount];
+        for (int i = 0; i < leafCount; i++) {
+            int from = (int) ((long) i * items.length / leafCount);
+            int to = (int) ((long) (i + 1) * items.length / leafCount);
+            leaves[i] = new Leaf(Arrays.copyOfRange(items, from, to));
+        }
+        return build(leaves, 0, leafCount);
+    }
+
+    /**
+     * Perfectly balanced tree over leaves[from, to)
+     */
+    private static Node build(Node[] leaves, int from, int to) {
+        if (to - from == 1) {
+            return leaves[from];
+        }
+        int middle = (from + to) >>> 1;
+        return new Branch(build(leaves, from, middle), build(leaves, middle, to));
+    }
+
+    private static Node replace(Node node, int index, Object element) {
+        if (node instanceof Leaf) {
+            Object[] items = ((Leaf) node).items.clone();
+            items[index] = element;
+            return new Leaf(items);
+        }
+        Branch branch = (Branch) node;
+        if (index < branch.left.size) {
+            return new Branch(replace(branch.left, index, element), branch.right);
+        }
+        return new Branch(branch.left, replace(branch.right, index - branch.left.size, element));
+    }
+
+    /**
+     * Split into the first index elements and the rest; either part may be null
+     */
+    private static Node[] split(Node node, int index) {
+        if (node == null || index == 0) {
+            return new Node[] {null, node};
+        }
+        if (index == node.size) {
+            return new Node[] {node, null};
+        }
+        if (node instanceof Leaf) {
+            Object[] items = ((Leaf) node).items;
+            return new Node[] {
+                new Leaf(Arrays.copyOfRange(items, 0, index)),
+                new Leaf(Arrays.copyOfRange(items, index, items.length))
+            };
+        }
+        Branch branch = (Branch) node;
+        if (index < branch.left.size) {
+            Node[] parts = split(branch.left, index);
+            return new Node[] {parts[0], concat(parts[1], branch.right)};
+        }
+        Node[] parts = split(branch.right, index - branch.left.size);
+        return new Node[] {concat(branch.left, parts[0]), parts[1]};
+    }
+
+    /**
+     * Join two trees, descending the taller one to where the heights meet
+     * Precondition: both trees are balanced
+     * Postcondition: result is balanced and at most one level taller than the taller tree
+     */
+    private static Node concat(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left instanceof Leaf && right instanceof Leaf && left.size + right.size <= LEAF_SIZE) {
+            Object[] items = Arrays.copyOf(((Leaf) left).items, left.size + right.size);
+            System.arraycopy(((Leaf) right).items, 0, items, left.size, right.size);
+            return new Leaf(items);
+        }
+        if (left.height > right.height + 1) {
+            Branch branch = (Branch) left;
+            return balance(branch.left, concat(branch.right, right));
+        }
+        if (right.height > left.height + 1) {
+            Branch branch = (Branch) right;
+            return balance(concat(left, branch.left), branch.right);
+        }
+        return new Branch(left, right);
+    }
+
+    /**
+     * Branch over two balanced trees whose heights differ by at most two
+     */
+    private static Node balance(Node left, Node right) {
+        if (left.height > right.height + 1) {
+            Branch heavy = (Branch) left;
+            if (heavy.left.height >= heavy.right.height) {
+                return new Branch(heavy.left, new Branch(heavy.right, right));
+            }
+            Branch inner = (Branch) heavy.right;
+            return new Branch(new Branch(heavy.left, inner.left), new Branch(inner.right, right));
+        }
+        if (right.height > left.height + 1) {
+            Branch heavy = (Branch) right;
+            if (heavy.right.height >= heavy.left.height) {
+                return new Branch(new Branch(left, heavy.left), heavy.right);
+            }
+            Branch inner = (Branch) heavy.left;
+            return new Branch(new Branch(left, inner.left), new Branch(inner.right, heavy.right));
+        }
+        return new Branch(left, right);
+    }
+
+    private static int copyInto(Node node, Object[] target, int offset) {
+        if (node == null) {
+            return offset;
+        }
+        if (node instanceof Leaf) {
+            System.arraycopy(((Leaf) node).items, 0, target, offset, node.size);
+            return offset + node.size;
+        }
+        Branch branch = (Branch) node;
+        return copyInto(branch.right, target, copyInto(branch.left, target, offset));
+    }
+
+    private abstract static class Node {
+        final int size;
+        final int height;
+
+        Node(int size, int height) {
+            this.size = size;
+            this.height = height;
+        }
+    }
+
+    private static final class Leaf extends Node {
+        final Object[] items;
+
+        Leaf(Object[] items) {
+            super(items.length, 0);
+            this.items = items;
+        }
+    }
+
+    private static final class Branch extends Node {
+        final Node left;
+        final Node right;
+
+        Branch(Node left, Node right) {
+            super(left.size + right.size, Math.max(left.height, right.height) + 1);
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    /**
+     * In-order walk over the leaves, keeping the pending right subtrees on a stack
+     */
+    private static final class LeafIterator<E> implements Iterator<E> {
+        private final Deque<Node> pending = new ArrayDeque<>();
+        private Object[] items = new Object[0];
+        private int position;
+
+        LeafIterator(Node root) {
+            if (root != null) {
+                pending.push(root);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (position == items.length) {
+                if (pending.isEmpty()) {
+                    return false;
+                }
+                Node node = pending.pop();
+                while (node instanceof Branch) {
+                    pending.push(((Branch) node).right);
+                    node = ((Branch) node).left;
+                }
+                items = ((Leaf) node).items;
+                position = 0;
+            }
+            return true;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return (E) items[position++];
+        }
+    }
+}
@@ -0,0 +1,437 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * Play Queue Component
+ * "Up next" queue of files to play before the playlist continues, held
+ * in a deque: play-next puts files at the front, play-later at the back.
+ * Queuing a batch (e.g. an album) is one operation with one listener
+ * notification.
+ *
+ * A queue opened on a file is persisted through an append-only log of
+ * small records, [int length][int crc][type][payload]:
+ *
+ *   FRONT / BACK   paths queued at the front or back
+ *   TAKE           one file taken from the front
+ *
+ * Each operation appends one record, so playing a track costs a few
+ * bytes. The log is rewritten as a single BACK record when it grows well
+ * past the queue it describes, and cut back to its header on clear().
+ * Opening replays the log up to the last intact record. Records are
+ * written straight to the file without fsync; a crash may lose the last
+ * few operations but never corrupts earlier ones.
+ */
+public class PlayQueue implements IPlayQueue, Closeable {
+    private static final int MAGIC = 0x524C5051; // "RLPQ"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final byte RECORD_FRONT = 1;
+    private static final byte RECORD_BACK = 2;
+    private static final byte RECORD_TAKE = 3;
+    private static final long MIN_COMPACTION_BYTES = 64 * 1024;
+    private static final long LOG_BYTES_PER_FILE = 512;
+
+    private final Deque<MediaFile> queue = new ArrayDeque<>();
+    private final List<IPlayQueueListener> listeners = new CopyOnWriteArrayList<>();
+    private final File logFile;
+    private final TrackPool trackPool;
+    private FileChannel log;
+    private long logBytes;
+
+    /**
+     * In-memory queue that is not persisted
+     */
+    public PlayQueue() {
+        this.logFile = null;
+        this.trackPool = null;
+    }
+
+    private PlayQueue(File logFile, TrackPool trackPool) {
+        this.logFile = logFile;
+        this.trackPool = trackPool;
+    }
+
+    /**
+     * Restore a queue from its log and keep logging changes to it
+     * Precondition: file must not be null
+     * Postcondition: queue holds the files of the last intact record
+     * @throws IOException if the log cannot be read or created
+     */
+    public static PlayQueue open(File file) throws IOException {
+        return open(file, null);
+    }
+
+    /**
+     * Restore a queue whose files are shared with the playlists through a pool
+     * Precondition: file must not be null
+     * @param trackPool pool the restored files are taken from, or null for none
+     * @throws IOException if the log cannot be read or created
+     */
+    public static PlayQueue open(File file, TrackPool trackPool) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("File cannot be null");
+        }
+
+        PlayQueue playQueue = new PlayQueue(file, trackPool);
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            Files.createDirectories(parent.toPath());
+        }
+        if (file.isFile()) {
+            playQueue.log = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                long end = playQueue.replay();
+                playQueue.log.truncate(end);
+                playQueue.log.position(end);
+                playQueue.logBytes = end - HEADER_SIZE;
+            } catch (IOException | RuntimeException e) {
+                playQueue.log.close();
+                throw e;
+            }
+        } else {
+            playQueue.log = createLog(file);
+        }
+        return playQueue;
+    }
+
+    /**
+     * Queue files to play right after the current track, in the given order
+     * Precondition: files must not be null or contain null
+     * @return number of files queued
+     */
+    @Override
+    public synchronized int playNext(Collection<MediaFile> files) {
+        checkFiles(files);
+        if (files.isEmpty()) {
+            return 0;
+        }
+
+        List<MediaFile> batch = new ArrayList<>(files);
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            queue.addFirst(batch.get(i));
+        }
+        record(RECORD_FRONT, batch);
+        notifyChanged();
+        return batch.size();
+    }
+
+    /**
+     * Queue files after everything already queued
+     * Precondition: files must not be null or contain null
+     * @return number of files queued
+     */
+    @Override
+    public synchronized int playLater(Collection<MediaFile> files) {
+        checkFiles(files);
+        if (files.isEmpty()) {
+            return 0;
+        }
+
+        List<MediaFile> batch = new ArrayList<>(files);
+        queue.addAll(batch);
+        record(RECORD_BACK, batch);
+        notifyChanged();
+        return batch.size();
+    }
+
+    /**
+     * Take the next file off the queue
+     * @return the next queued file, or null if the queue is empty
+     */
+    @Override
+    public synchronized MediaFile poll() {
+        MediaFile file = queue.pollFirst();
+        if (file != null) {
+            record(RECORD_TAKE, null);
+            notifyChanged();
+        }
+        return file;
+    }
+
+    @Override
+    public synchronized MediaFile peek() {
+        return queue.peekFirst();
+    }
+
+    /**
+     * Remove every queued file
+     */
+    @Override
+    public synchronized void clear() {
+        if (queue.isEmpty()) {
+            return;
+        }
+        queue.clear();
+        truncateLog();
+        notifyChanged();
+    }
+
+    @Override
+    public synchronized int size() {
+        return queue.size();
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    /**
+     * Get the queued files in play order
+     * Postcondition: returns a copy; later changes to the queue do not show in it
+     */
+    @Override
+    public synchronized List<MediaFile> getAll() {
+        return new ArrayList<>(queue);
+    }
+
+    @Override
+    public void addQueueListener(IPlayQueueListener listener) {
+        // Precondition check
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener cannot be null");
+        }
+
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    @Override
+    public void removeQueueListener(IPlayQueueListener listener) {
+        if (listener != null) {
+            listeners.remove(listener);
+        }
+    }
+
+    private void notifyChanged() {
+        for (IPlayQueueListener listener : listeners) {
+            try {
+                listener.onQueueChanged(this);
+            } catch (Exception e) {
+                System.err.println("Error notifying listener: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void checkFiles(Collection<MediaFile> files) {
+        if (files == null || files.contains(null)) {
+            throw new IllegalArgumentException("Files cannot be null or contain null");
+        }
+    }
+
+    /**
+     * Close the log; the queue stays usable in memory
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (log != null) {
+            log.force(true);
+            log.close();
+            log = null;
+        }
+    }
+
+    // ---- Log ----
+
+    private void record(byte type, List<MediaFile> files) {
+        if (log == null) {
+            return;
+        }
+
+        try {
+            logBytes += write(log, type, files);
+            if (logBytes > Math.max(MIN_COMPACTION_BYTES, queue.size() * LOG_BYTES_PER_FILE)) {
+                compact();
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing play queue: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Drop every record; nothing before a clear matters any more
+     */
+    private void truncateLog() {
+        if (log == null) {
+            return;
+        }
+
+        try {
+            log.truncate(HEADER_SIZE);
+            log.position(HEADER_SIZE);
+            logBytes = 0;
+        } catch (IOException e) {
+            System.err.println("Error writing play queue: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Rewrite the log as one record holding the whole queue
+     */
+    private void compact() throws IOException {
+        File temp = new File(logFile.getPath() + ".tmp");
+        FileChannel compacted = createLog(temp);
+        long bytes = 0;
+        try {
+            if (!queue.isEmpty()) {
+                bytes = write(compacted, RECORD_BACK, new ArrayList<>(queue));
+            }
+            compacted.force(true);
+        } finally {
+            compacted.close();
+        }
+
+        // Windows cannot replace a file that is still open
+        log.close();
+        log = null;
+        try {
+            Files.move(temp.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Keep appending to the old log; compaction is retried on a later record
+            temp.delete();
+            log = openForAppend(logFile);
+            throw e;
+        }
+        log = openForAppend(logFile);
+        logBytes = bytes;
+    }
+
+    private static FileChannel openForAppend(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+        try {
+            channel.position(channel.size());
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static FileChannel createLog(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Append one record
+     * @return number of bytes written
+     */
+    private static int write(FileChannel channel, byte type, List<MediaFile> files) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(type);
+        if (files != null) {
+            out.writeInt(files.size());
+            for (MediaFile file : files) {
+                byte[] path = file.getFilePath().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(path.length);
+                out.write(path);
+            }
+        }
+        byte[] record = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(record);
+
+        ByteBuffer buffer = ByteBuffer.allocate(record.length + 8);
+        buffer.putInt(record.length).putInt((int) crc.getValue()).put(record).flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        return record.length + 8;
+    }
+
+    /**
+     * Apply intact records to the queue
+     * @return offset just past the last intact record
+     */
+    private long replay() throws IOException {
+        ByteBuffer data = ByteBuffer.allocate((int) Math.min(log.size(), Integer.MAX_VALUE));
+        log.read(data, 0);
+        data.flip();
+        if (data.remaining() < HEADER_SIZE || data.getInt() != MAGIC || data.getInt() != FORMAT_VERSION) {
+            throw new IOException("Not a play queue: " + logFile);
+        }
+
+        while (data.remaining() >= 8) {
+            int start = data.position();
+            int length = data.getInt();
+            int checksum = data.getInt();
+            if (length <= 0 || length > data.remaining()) {
+                return start; // Torn write
+            }
+            byte[] record = new byte[length];
+            data.get(record);
+            CRC32 crc = new CRC32();
+            crc.update(record);
+            if ((int) crc.getValue() != checksum) {
+                return start;
+            }
+            try {
+                apply(ByteBuffer.wrap(record));
+            } catch (RuntimeException e) {
+                System.err.println("Error replaying play queue: " + e.getMessage());
+                return start;
+            }
+        }
+        return data.position();
+    }
+
+    private void apply(ByteBuffer record) {
+        byte type = record.get();
+        switch (type) {
+            case RECORD_FRONT:
+            case RECORD_BACK: {
+                int count = record.getInt();
+                List<MediaFile> files = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    byte[] bytes = new byte[record.getInt()];
+                    record.get(bytes);
+                    MediaFile file = new MediaFile(new String(bytes, StandardCharsets.UTF_8));
+                    files.add(trackPool != null ? trackPool.intern(file) : file);
+                }
+                if (type == RECORD_BACK) {
+                    queue.addAll(files);
+                } else {
+                    for (int i = files.size() - 1; i >= 0; i--) {
+                        queue.addFirst(files.get(i));
+                    }
+                }
+                break;
+            }
+            case RECORD_TAKE:
+                queue.pollFirst();
+                break;
+            default:
+                throw new IllegalStateException("Unknown play queue record: " + type);
+        }
+    }
+}
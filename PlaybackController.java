@@ -12,15 +12,18 @@ public class PlaybackController implements IPlaybackController {
     
     private IAudioPlayer audioPlayer;
     private IPlaylistManager playlistManager;
+    private IPlayQueue playQueue;
     private List<IPlaybackListener> listeners;
     private RepeatMode repeatMode;
     private boolean shuffleMode;
+    private ShuffleOrder shuffleOrder; // Only while shuffle mode is on
     private Timer progressTimer;
     private MediaFile currentFile;
     
     public PlaybackController() {
         this.audioPlayer = new AudioPlayer();
         this.playlistManager = new PlaylistManager();
+        this.playQueue = new PlayQueue();
         this.listeners = new ArrayList<>();
         this.repeatMode = RepeatMode.NONE;
         this.shuffleMode = false;
@@ -35,6 +38,7 @@ public class PlaybackController implements IPlaybackController {
     public PlaybackController(IAudioPlayer audioPlayer, IPlaylistManager playlistManager) {
         this.audioPlayer = audioPlayer;
         this.playlistManager = playlistManager;
+        this.playQueue = new PlayQueue();
         this.listeners = new ArrayList<>();
         this.repeatMode = RepeatMode.NONE;
         this.shuffleMode = false;
@@ -66,6 +70,7 @@ public class PlaybackController implements IPlaybackController {
             }
             
             audioPlayer.play();
+            currentFile.setLastPlayed(System.currentTimeMillis());
             notifyPlaybackStarted(currentFile);
             startProgressReporting();
             
@@ -84,10 +89,11 @@ public class PlaybackController implements IPlaybackController {
         currentFile = file;
         
         // Update playlist current index if file is in playlist
-        for (int i = 0; i < playlistManager.size(); i++) {
-            if (file.equals(playlistManager.getFileAt(i))) {
-                playlistManager.setCurrentIndex(i);
-                break;
+        int index = playlistManager.indexOf(file);
+        if (index >= 0) {
+            playlistManager.setCurrentIndex(index);
+            if (shuffleOrder != null) {
+                shuffleOrder.played(index);
             }
         }
         
@@ -126,25 +132,23 @@ public class PlaybackController implements IPlaybackController {
     
     @Override
     public void next() {
+        // Queued files come first; the playlist resumes where it was
+        MediaFile queued = playQueue.poll();
+        if (queued != null) {
+            currentFile = queued;
+            play();
+            return;
+        }
+        
         if (playlistManager.isEmpty()) {
             return;
         }
         
         MediaFile nextFile = null;
         
-        if (shuffleMode) {
-            // In shuffle mode, get a random file
-            if (playlistManager.size() > 1) {
-                int randomIndex;
-                do {
-                    randomIndex = (int) (Math.random() * playlistManager.size());
-                } while (randomIndex == playlistManager.getCurrentIndex() && playlistManager.size() > 1);
-                
-                playlistManager.setCurrentIndex(randomIndex);
-                nextFile = playlistManager.getCurrentFile();
-            } else {
-                nextFile = playlistManager.getCurrentFile();
-            }
+        if (shuffleOrder != null) {
+            // In shuffle mode, take the next track of the shuffle order
+            nextFile = shuffledFile(true);
         } else {
             nextFile = playlistManager.getNextFile();
         }
@@ -160,12 +164,34 @@ public class PlaybackController implements IPlaybackController {
             return;
         }
         
-        MediaFile prevFile = playlistManager.getPreviousFile();
+        MediaFile prevFile = null;
+        if (shuffleOrder != null) {
+            // In shuffle mode, go back through the tracks played; restart the first one
+            prevFile = shuffledFile(false);
+            if (prevFile == null) {
+                prevFile = playlistManager.getCurrentFile();
+            }
+        } else {
+            prevFile = playlistManager.getPreviousFile();
+        }
         if (prevFile != null) {
             loadAndPlay(prevFile);
         }
     }
     
+    /**
+     * Next or previous file of the shuffle order
+     * @return the file, or null if there is none or the playlist changed meanwhile
+     */
+    private MediaFile shuffledFile(boolean forward) {
+        try {
+            int index = forward ? shuffleOrder.next() : shuffleOrder.previous();
+            return index >= 0 ? playlistManager.getFileAt(index) : null;
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+    
     @Override
     public void setVolume(float volume) {
         // Precondition check
@@ -221,6 +247,33 @@ public class PlaybackController implements IPlaybackController {
         return playlistManager;
     }
     
+    @Override
+    public IPlayQueue getPlayQueue() {
+        return playQueue;
+    }
+    
+    @Override
+    public void setPlayQueue(IPlayQueue playQueue) {
+        // Precondition check
+        if (playQueue == null) {
+            throw new IllegalArgumentException("Play queue cannot be null");
+        }
+        this.playQueue = playQueue;
+    }
+    
+    @Override
+    public void setPlaylistManager(IPlaylistManager playlistManager) {
+        // Precondition check
+        if (playlistManager == null) {
+            throw new IllegalArgumentException("Playlist manager cannot be null");
+        }
+        detachShuffleOrder();
+        this.playlistManager = playlistManager;
+        if (shuffleMode) {
+            attachShuffleOrder();
+        }
+    }
+    
     @Override
     public void setRepeatMode(RepeatMode mode) {
         if (mode != null && mode != this.repeatMode) {
@@ -239,8 +292,11 @@ public class PlaybackController implements IPlaybackController {
         if (shuffle != this.shuffleMode) {
             this.shuffleMode = shuffle;
             
+            // The playlist keeps its order; shuffle only changes what plays next
             if (shuffle) {
-                playlistManager.shuffle();
+                attachShuffleOrder();
+            } else {
+                detachShuffleOrder();
             }
             
             notifyShuffleModeChanged(shuffle);
@@ -252,6 +308,18 @@ public class PlaybackController implements IPlaybackController {
         return shuffleMode;
     }
     
+    private void attachShuffleOrder() {
+        shuffleOrder = new SmartShuffleOrder(playlistManager);
+        playlistManager.addPlaylistListener(shuffleOrder);
+    }
+    
+    private void detachShuffleOrder() {
+        if (shuffleOrder != null) {
+            playlistManager.removePlaylistListener(shuffleOrder);
+            shuffleOrder = null;
+        }
+    }
+    
     // Progress reporting methods
     private void startProgressReporting() {
         stopProgressReporting(); // Stop any existing timer
@@ -297,7 +365,10 @@ public class PlaybackController implements IPlaybackController {
             case NONE:
             default:
                 // Move to next track if available
-                if (playlistManager.getCurrentIndex() < playlistManager.size() - 1) {
+                ShuffleOrder order = shuffleOrder;
+                boolean hasNext = !playQueue.isEmpty() || (order != null ? order.hasNext()
+                    : playlistManager.getCurrentIndex() < playlistManager.size() - 1);
+                if (hasNext) {
                     next();
                 } else {
                     stop();
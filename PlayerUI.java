@@ -1,16 +1,31 @@
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
+import java.awt.datatransfer.StringSelection;
+import java.awt.datatransfer.Transferable;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Player User Interface Component
  * Implements IUserInterface and IPlaybackListener
  * Provides Swing-based GUI for the media player
  */
-public class PlayerUI implements IUserInterface, IPlaybackListener {
+public class PlayerUI implements IUserInterface, IPlaybackListener, ILibraryListener, IPlayQueueListener {
+    
+    private static final int THUMBNAIL_SIZE = 40;
+    private static final int ARTWORK_SIZE = 64;
+    private static final long ARTWORK_MEMORY_BUDGET = 16L * 1024 * 1024;
     
     // Main components
     private JFrame mainFrame;
@@ -22,26 +37,55 @@ public class PlayerUI implements IUserInterface, IPlaybackListener {
     private JButton repeatButton, shuffleButton;
     private JSlider volumeSlider, progressSlider;
     private JList<MediaFile> playlistView;
-    private DefaultListModel<MediaFile> playlistModel;
+    private PlaylistListModel playlistModel;
     
     // Display components
     private JLabel currentTimeLabel, totalTimeLabel, statusLabel;
     private JLabel currentTrackLabel, currentArtistLabel;
     private JLabel playlistInfoLabel;
+    private JLabel artworkLabel;
+    private JTextField searchField;
     
     // Menu components
     private JMenuBar menuBar;
     private JMenu fileMenu, playlistMenu, viewMenu;
     private JMenuItem openFileItem, openDirItem, savePlaylistItem, loadPlaylistItem, exitItem;
-    private JMenuItem clearPlaylistItem, shufflePlaylistItem;
+    private JMenuItem openPlaylistTabItem, newPlaylistTabItem, closePlaylistTabItem;
+    private JTabbedPane playlistTabs;
+    private JMenuItem undoItem, redoItem;
+    private JMenuItem clearPlaylistItem, shufflePlaylistItem, revalidatePlaylistItem, findDuplicatesItem;
+    private JMenuItem findSimilarItem, clearQueueItem;
+    private JMenuItem playNextItem, playLaterItem;
+    private JMenu sortMenu;
+    private JMenu smartMenu;
+    private JMenuItem newSmartPlaylistItem, mainPlaylistItem;
     
     // State variables
     private boolean updatingProgress = false;
+    private boolean rebuildingTabs = false;
+    private final IPlaylistManager mainPlaylist;
+    // Rows waiting for a background stat; EDT only
+    private final Set<MediaFile> pendingStats = new LinkedHashSet<>();
+    private final Set<MediaFile> statsInFlight = new HashSet<>();
+    private boolean statBatchScheduled;
+    private final PlaylistRegistry playlistRegistry;
+    private final SmartPlaylistEngine smartPlaylists = new SmartPlaylistEngine();
+    private Timer smartRefreshTimer;
+    private final FingerprintIndex fingerprintIndex = new FingerprintIndex();
+    private final ArtworkCache artworkCache = new ArtworkCache(
+        new File(System.getProperty("user.home"), ".mediaplayer" + File.separator + "artwork"), ARTWORK_MEMORY_BUDGET);
     
-    public PlayerUI(IPlaybackController controller, IFileManager fileManager) {
+    /**
+     * Precondition: the controller's playlist is the main playlist, registered in playlistRegistry
+     */
+    public PlayerUI(IPlaybackController controller, IFileManager fileManager, PlaylistRegistry playlistRegistry) {
         this.controller = controller;
         this.fileManager = fileManager;
+        this.playlistRegistry = playlistRegistry;
+        this.mainPlaylist = controller.getPlaylistManager();
         this.controller.addPlaybackListener(this);
+        this.controller.getPlayQueue().addQueueListener(this);
+        this.fileManager.addLibraryListener(this);
         
         initializeComponents();
         setupEventHandlers();
@@ -78,6 +122,7 @@ public class PlayerUI implements IUserInterface, IPlaybackListener {
         openDirItem = new JMenuItem("Open Directory...");
         savePlaylistItem = new JMenuItem("Save Playlist...");
         loadPlaylistItem = new JMenuItem("Load Playlist...");
+        openPlaylistTabItem = new JMenuItem("Open Playlist in New Tab...");
         exitItem = new JMenuItem("Exit");
         
         fileMenu.add(openFileItem);
@@ -85,19 +130,59 @@ public class PlayerUI implements IUserInterface, IPlaybackListener {
         fileMenu.addSeparator();
         fileMenu.add(savePlaylistItem);
         fileMenu.add(loadPlaylistItem);
+        fileMenu.add(openPlaylistTabItem);
         fileMenu.addSeparator();
         fileMenu.add(exitItem);
         
         // Playlist Menu
         playlistMenu = new JMenu("Playlist");
+        undoItem = new JMenuItem("Undo");
+        undoItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z,
+            Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()));
+        redoItem = new JMenuItem("Redo");
+        redoItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y,
+            Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()));
         clearPlaylistItem = new JMenuItem("Clear Playlist");
         shufflePlaylistItem = new JMenuItem("Shuffle Playlist");
+        revalidatePlaylistItem = new JMenuItem("Check for Missing Files");
+        findDuplicatesItem = new JMenuItem("Find Duplicates...");
+        findSimilarItem = new JMenuItem("Find Similar Tracks...");
+        clearQueueItem = new JMenuItem("Clear Queue");
+        newPlaylistTabItem = new JMenuItem("New Playlist Tab...");
+        closePlaylistTabItem = new JMenuItem("Close Playlist Tab");
+        sortMenu = new JMenu("Sort By");
+        addSortItem("Artist, Album, File Name", SortField.ARTIST, SortField.ALBUM, SortField.FILE_NAME);
+        addSortItem("Album, File Name", SortField.ALBUM, SortField.FILE_NAME);
+        addSortItem("Title", SortField.TITLE);
+        addSortItem("Genre, Artist", SortField.GENRE, SortField.ARTIST);
+        addSortItem("Year, Artist, Album", SortField.YEAR, SortField.ARTIST, SortField.ALBUM);
+        addSortItem("Duration", SortField.DURATION);
+        addSortItem("File Name", SortField.FILE_NAME);
         
+        playlistMenu.add(undoItem);
+        playlistMenu.add(redoItem);
+        playlistMenu.addSeparator();
         playlistMenu.add(clearPlaylistItem);
         playlistMenu.add(shufflePlaylistItem);
+        playlistMenu.add(sortMenu);
+        playlistMenu.add(revalidatePlaylistItem);
+        playlistMenu.add(findDuplicatesItem);
+        playlistMenu.add(findSimilarItem);
+        playlistMenu.addSeparator();
+        playlistMenu.add(clearQueueItem);
+        playlistMenu.addSeparator();
+        playlistMenu.add(newPlaylistTabItem);
+        playlistMenu.add(closePlaylistTabItem);
+        
+        // Smart Playlists Menu
+        smartMenu = new JMenu("Smart Playlists");
+        newSmartPlaylistItem = new JMenuItem("New Smart Playlist...");
+        mainPlaylistItem = new JMenuItem("Main Playlist");
+        rebuildSmartMenu();
         
         menuBar.add(fileMenu);
         menuBar.add(playlistMenu);
+        menuBar.add(smartMenu);
         
         mainFrame.setJMenuBar(menuBar);
     }
@@ -159,6 +244,11 @@ public class PlayerUI implements IUserInterface, IPlaybackListener {
         currentArtistLabel = new JLabel("Unknown Artist");
         trackInfoPanel.add(currentArtistLabel, gbc);
         
+        gbc.gridx = 2; gbc.gridy = 0; gbc.gridheight = 2; gbc.weightx = 0; gbc.fill = GridBagConstraints.NONE;
+        artworkLabel = new JLabel();
+        artworkLabel.setPreferredSize(new Dimension(ARTWORK_SIZE, ARTWORK_SIZE));
+        trackInfoPanel.add(artworkLabel, gbc);
+        
         // Progress panel
         JPanel progressPanel = new JPanel(new BorderLayout());
         progressSlider = new JSlider(0, 100, 0);
@@ -185,13 +275,35 @@ public class PlayerUI implements IUserInterface, IPlaybackListener {
         
         // Playlist info
         playlistInfoLabel = new JLabel("0 tracks, 00:00");
-        playlistPanel.add(playlistInfoLabel, BorderLayout.NORTH);
+        searchField = new JTextField();
+        searchField.setToolTipText("Search, e.g. \"artist:queen title:bohemian\"");
+        // One tab per registered playlist; the tabs only switch the list below
+        playlistTabs = new JTabbedPane(JTabbedPane.TOP, JTabbedPane.SCROLL_TAB_LAYOUT);
+        rebuildPlaylistTabs();
+        JPanel playlistHeaderPanel = new JPanel(new BorderLayout());
+        playlistHeaderPanel.add(playlistTabs, BorderLayout.NORTH);
+        playlistHeaderPanel.add(playlistInfoLabel, BorderLayout.CENTER);
+        playlistHeaderPanel.add(searchField, BorderLayout.SOUTH);
+        playlistPanel.add(playlistHeaderPanel, BorderLayout.NORTH);
         
         // Playlist view
-        playlistModel = new DefaultListModel<>();
+        playlistModel = new PlaylistListModel(controller.getPlaylistManager());
         playlistView = new JList<>(playlistModel);
-        playlistView.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        playlistView.setSelectionMode(ListSelectionModel.SINGLE_INTERVAL_SELECTION);
+        // Dragged rows are moved as one range
+        playlistView.setDragEnabled(true);
+        playlistView.setDropMode(DropMode.INSERT);
+        playlistView.setTransferHandler(new PlaylistTransferHandler());
         playlistView.setCellRenderer(new PlaylistCellRenderer());
+        JPopupMenu playlistPopup = new JPopupMenu();
+        playNextItem = new JMenuItem("Play Next");
+        playLaterItem = new JMenuItem("Add to Queue");
+        playlistPopup.add(playNextItem);
+        playlistPopup.add(playLaterItem);
+        playlistView.setComponentPopupMenu(playlistPopup);
+        // Fixed cell sizes: only visible rows are rendered, so only their artwork is loaded
+        playlistView.setFixedCellHeight(THUMBNAIL_SIZE + 6);
+        playlistView.setFixedCellWidth(200);
         
         JScrollPane scrollPane = new JScrollPane(playlistView);
         scrollPane.setPreferredSize(new Dimension(300, 200));
@@ -211,6 +323,17 @@ public class PlayerUI implements IUserInterface, IPlaybackListener {
         
         mainFrame.add(playlistPanel, BorderLayout.EAST);
         
+        // Search as you type
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) { selectSearchResult(); }
+            @Override
+            public void removeUpdate(DocumentEvent e) { selectSearchResult(); }
+            @Override
+            public void changedUpdate(DocumentEvent e) { selectSearchResult(); }
+        });
+        searchField.addActionListener(e -> playSelected());
+        
         // Playlist control event handlers
         moveUpButton.addActionListener(e -> moveSelectedUp());
         moveDownButton.addActionListener(e -> moveSelectedDown());
@@ -232,10 +355,41 @@ public class PlayerUI implements IUserInterface, IPlaybackListener {
         openDirItem.addActionListener(e -> openDirectory());
         savePlaylistItem.addActionListener(e -> savePlaylist());
         loadPlaylistItem.addActionListener(e -> loadPlaylist());
+        openPlaylistTabItem.addActionListener(e -> openPlaylistTab());
+        newPlaylistTabItem.addActionListener(e -> newPlaylistTab());
+        closePlaylistTabItem.addActionListener(e -> closePlaylistTab());
+        playlistTabs.addChangeListener(e -> {
+            if (rebuildingTabs) {
+                return;
+            }
+            int tab = playlistTabs.getSelectedIndex();
+            IPlaylistManager selected = tab >= 0 ? playlistRegistry.get(playlistTabs.getTitleAt(tab)) : null;
+            if (selected != null && selected != controller.getPlaylistManager()) {
+                showPlaylist(selected);
+            }
+        });
         exitItem.addActionListener(e -> exitApplication());
         
+        undoItem.addActionListener(e -> undoEdit(true));
+        redoItem.addActionListener(e -> undoEdit(false));
         clearPlaylistItem.addActionListener(e -> clearPlaylist());
         shufflePlaylistItem.addActionListener(e -> shufflePlaylist());
+        revalidatePlaylistItem.addActionListener(e -> revalidatePlaylist());
+        findDuplicatesItem.addActionListener(e -> findDuplicates());
+        findSimilarItem.addActionListener(e -> findSimilarTracks());
+        clearQueueItem.addActionListener(e -> controller.getPlayQueue().clear());
+        playNextItem.addActionListener(e -> queueSelected(true));
+        playLaterItem.addActionListener(e -> queueSelected(false));
+        newSmartPlaylistItem.addActionListener(e -> createSmartPlaylist());
+        mainPlaylistItem.addActionListener(e -> showPlaylist(mainPlaylist));
+        
+        // Play-history rules drift as time passes
+        smartRefreshTimer = new Timer(60 * 1000, e -> {
+            if (smartPlaylists.refresh(System.currentTimeMillis()).contains(controller.getPlaylistManager())) {
+                updatePlaylistDisplay();
+            }
+        });
+        smartRefreshTimer.start();
         
         // Control event handlers
         playButton.addActionListener(e -> controller.play());
@@ -265,12 +419,7 @@ public class PlayerUI implements IUserInterface, IPlaybackListener {
             @Override
             public void mouseClicked(MouseEvent e) {
                 if (e.getClickCount() == 2) {
-                    int index = playlistView.getSelectedIndex();
-                    if (index != -1) {
-                        MediaFile selectedFile = playlistModel.getElementAt(index);
-                        controller.getPlaylistManager().setCurrentIndex(index);
-                        controller.loadAndPlay(selectedFile);
-                    }
+                    playSelected();
                 }
             }
         });
@@ -296,7 +445,9 @@ public class PlayerUI implements IUserInterface, IPlaybackListener {
             MediaFile mediaFile = fileManager.openFile(selectedFile.getPath());
             
             if (mediaFile != null) {
-                controller.getPlaylistManager().addFile(mediaFile);
+                mediaFile = playlistRegistry.getTrackPool().intern(mediaFile);
+                mainPlaylist.addFile(mediaFile);
+                smartPlaylists.addFiles(Collections.singletonList(mediaFile));
                 updatePlaylistDisplay();
                 controller.loadAndPlay(mediaFile);
             } else {
@@ -312,11 +463,13 @@ public class PlayerUI implements IUserInterface, IPlaybackListener {
         int result = dirChooser.showOpenDialog(mainFrame);
         if (result == JFileChooser.APPROVE_OPTION) {
             File selectedDir = dirChooser.getSelectedFile();
-            List<MediaFile> files = fileManager.scanDirectory(selectedDir.getPath());
+            List<MediaFile> files = playlistRegistry.getTrackPool().internAll(
+                fileManager.scanDirectory(selectedDir.getPath()));
             
-            for (MediaFile file : files) {
-                controller.getPlaylistManager().addFile(file);
-            }
+            mainPlaylist.addAll(mainPlaylist.size(), files);
+            smartPlaylists.addFiles(files);
+            fileManager.watchDirectory(selectedDir.getPath());
+            fileManager.enrichMetadata(files, this::onFilesEnriched);
             updatePlaylistDisplay();
             showInfo("Added " + files.size() + " files to playlist");
         }
@@ -324,11 +477,21 @@ public class PlayerUI implements IUserInterface, IPlaybackListener {
     
     private void savePlaylist() {
         JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setAcceptAllFileFilterUsed(false);
+        for (PlaylistFormat format : PlaylistFormat.values()) {
+            fileChooser.addChoosableFileFilter(new FileNameExtensionFilter(
+                format.getDisplayName() + " (*." + format.getExtension() + ")", format.getExtension()));
+        }
+        fileChooser.setFileFilter(fileChooser.getChoosableFileFilters()[0]);
         fileChooser.setSelectedFile(new File("playlist.rll"));
         
         int result = fileChooser.showSaveDialog(mainFrame);
         if (result == JFileChooser.APPROVE_OPTION) {
             String filename = fileChooser.getSelectedFile().getPath();
+            // The chosen filter decides the format when no known extension was typed
+            if (!PlaylistFormat.hasKnownExtension(filename)) {
+                filename += "." + ((FileNameExtensionFilter) fileChooser.getFileFilter()).getExtensions()[0];
+            }
             if (controller.getPlaylistManager().save(filename)) {
                 showInfo("Playlist saved successfully");
             } else {
@@ -338,17 +501,150 @@ public class PlayerUI implements IUserInterface, IPlaybackListener {
     }
     
     private void loadPlaylist() {
-        JFileChooser fileChooser = new JFileChooser();
-        int result = fileChooser.showOpenDialog(mainFrame);
-        if (result == JFileChooser.APPROVE_OPTION) {
-            String filename = fileChooser.getSelectedFile().getPath();
-            if (controller.getPlaylistManager().load(filename)) {
-                updatePlaylistDisplay();
+        String filename = choosePlaylistFile();
+        if (filename != null) {
+            loadInBackground(controller.getPlaylistManager(), filename, null);
+        }
+    }
+    
+    /**
+     * Open a saved playlist next to the others, sharing their tracks
+     */
+    private void openPlaylistTab() {
+        String filename = choosePlaylistFile();
+        if (filename == null) {
+            return;
+        }
+        
+        String name = new File(filename).getName();
+        int dot = name.lastIndexOf('.');
+        name = uniquePlaylistName(dot > 0 ? name.substring(0, dot) : name);
+        // Shown right away; the first batch appears as soon as it is decoded
+        PlaylistManager playlist = playlistRegistry.create(name);
+        rebuildPlaylistTabs();
+        showPlaylist(playlist);
+        loadInBackground(playlist, filename, name);
+    }
+    
+    /**
+     * Load a playlist file on a worker thread
+     * The list model moves the playlist's events onto the EDT, so batches
+     * show as they are published.
+     * @param tabName tab to close if loading fails, or null to keep it
+     */
+    private void loadInBackground(final IPlaylistManager playlist, final String filename, final String tabName) {
+        updatePlaybackStatus("Loading playlist...");
+        Thread worker = new Thread(() -> {
+            if (playlist.load(filename)) {
+                SwingUtilities.invokeLater(() -> playlistLoaded(playlist));
                 showInfo("Playlist loaded successfully");
             } else {
+                SwingUtilities.invokeLater(() -> {
+                    if (tabName != null) {
+                        if (controller.getPlaylistManager() == playlist) {
+                            showPlaylist(mainPlaylist);
+                        }
+                        playlistRegistry.remove(tabName);
+                        rebuildPlaylistTabs();
+                    }
+                });
                 showError("Failed to load playlist");
             }
+        }, "PlaylistLoader");
+        worker.setDaemon(true);
+        worker.start();
+    }
+    
+    private void newPlaylistTab() {
+        String name = JOptionPane.showInputDialog(mainFrame, "Playlist name:", "New Playlist",
+            JOptionPane.PLAIN_MESSAGE);
+        if (name == null || name.trim().isEmpty()) {
+            return;
+        }
+        
+        try {
+            PlaylistManager playlist = playlistRegistry.create(name);
+            rebuildPlaylistTabs();
+            showPlaylist(playlist);
+        } catch (IllegalArgumentException e) {
+            showError(e.getMessage());
+        }
+    }
+    
+    private void closePlaylistTab() {
+        IPlaylistManager playlist = controller.getPlaylistManager();
+        String name = playlistRegistry.getName(playlist);
+        if (name == null) {
+            return; // A smart playlist has no tab
+        }
+        if (playlist == mainPlaylist) {
+            showError("The main playlist cannot be closed");
+            return;
+        }
+        
+        showPlaylist(mainPlaylist);
+        playlistRegistry.remove(name);
+        rebuildPlaylistTabs();
+    }
+    
+    private String uniquePlaylistName(String base) {
+        String stem = base.trim().isEmpty() ? "Playlist" : base.trim();
+        String name = stem;
+        for (int i = 2; playlistRegistry.get(name) != null; i++) {
+            name = stem + " (" + i + ")";
+        }
+        return name;
+    }
+    
+    private void rebuildPlaylistTabs() {
+        rebuildingTabs = true;
+        try {
+            playlistTabs.removeAll();
+            for (String name : playlistRegistry.getNames()) {
+                playlistTabs.addTab(name, null);
+            }
+            selectPlaylistTab();
+        } finally {
+            rebuildingTabs = false;
+        }
+    }
+    
+    /**
+     * Select the tab of the shown playlist, or none for a smart playlist
+     */
+    private void selectPlaylistTab() {
+        String name = playlistRegistry.getName(controller.getPlaylistManager());
+        playlistTabs.setSelectedIndex(name != null ? playlistTabs.indexOfTab(name) : -1);
+    }
+    
+    /**
+     * Show the playlist just loaded into the current tab and read its tags
+     */
+    private void playlistLoaded(IPlaylistManager playlist) {
+        List<MediaFile> files = playlist.getAllFiles();
+        smartPlaylists.addFiles(files);
+        fileManager.enrichMetadata(files, this::onFilesEnriched);
+        updatePlaylistDisplay();
+        updatePlaybackStatus(files.size() + " tracks loaded");
+    }
+    
+    /**
+     * Ask for a saved playlist in any supported format
+     * @return the chosen path, or null if cancelled
+     */
+    private String choosePlaylistFile() {
+        JFileChooser fileChooser = new JFileChooser();
+        String[] extensions = new String[PlaylistFormat.values().length];
+        for (PlaylistFormat format : PlaylistFormat.values()) {
+            extensions[format.ordinal()] = format.getExtension();
+            fileChooser.addChoosableFileFilter(new FileNameExtensionFilter(
+                format.getDisplayName() + " (*." + format.getExtension() + ")", format.getExtension()));
         }
+        FileNameExtensionFilter allPlaylists = new FileNameExtensionFilter("All playlists", extensions);
+        fileChooser.addChoosableFileFilter(allPlaylists);
+        fileChooser.setFileFilter(allPlaylists);
+        int result = fileChooser.showOpenDialog(mainFrame);
+        return result == JFileChooser.APPROVE_OPTION ? fileChooser.getSelectedFile().getPath() : null;
     }
     
     private void clearPlaylist() {
@@ -358,38 +654,280 @@ public class PlayerUI implements IUserInterface, IPlaybackListener {
         updateCurrentTrackDisplay(null);
     }
     
+    private void undoEdit(boolean undo) {
+        IPlaylistManager playlist = controller.getPlaylistManager();
+        boolean done = undo ? playlist.undo() : playlist.redo();
+        if (done) {
+            updatePlaylistDisplay();
+        } else {
+            updatePlaybackStatus(undo ? "Nothing to undo" : "Nothing to redo");
+        }
+    }
+    
     private void shufflePlaylist() {
         controller.getPlaylistManager().shuffle();
         updatePlaylistDisplay();
     }
     
-    private void moveSelectedUp() {
-        int index = playlistView.getSelectedIndex();
-        if (index > 0) {
-            MediaFile file = playlistModel.getElementAt(index);
-            if (controller.getPlaylistManager().moveUp(file)) {
-                updatePlaylistDisplay();
-                playlistView.setSelectedIndex(index - 1);
+    /**
+     * Queue the selected rows in one operation, e.g. a whole album
+     */
+    private void queueSelected(boolean next) {
+        int first = playlistView.getMinSelectionIndex();
+        int last = playlistView.getMaxSelectionIndex();
+        if (first == -1) {
+            return;
+        }
+        
+        List<MediaFile> files = controller.getPlaylistManager().getAllFiles();
+        List<MediaFile> selected = files.subList(first, Math.min(last + 1, files.size()));
+        IPlayQueue queue = controller.getPlayQueue();
+        int queued = next ? queue.playNext(selected) : queue.playLater(selected);
+        updatePlaybackStatus(queued + (queued == 1 ? " track" : " tracks") + (next ? " playing next" : " queued"));
+    }
+    
+    private void createSmartPlaylist() {
+        String name = JOptionPane.showInputDialog(mainFrame, "Playlist name:", "New Smart Playlist",
+            JOptionPane.PLAIN_MESSAGE);
+        if (name == null || name.trim().isEmpty()) {
+            return;
+        }
+        
+        String rule = "genre = Jazz AND year > 1990 AND NOT played in 30 days";
+        while (true) {
+            rule = (String) JOptionPane.showInputDialog(mainFrame,
+                "Rule (fields: title, artist, album, genre, format, year, duration; \"played in N days\"):",
+                "New Smart Playlist", JOptionPane.PLAIN_MESSAGE, null, null, rule);
+            if (rule == null) {
+                return;
+            }
+            try {
+                SmartPlaylist playlist = smartPlaylists.createPlaylist(name.trim(), rule);
+                rebuildSmartMenu();
+                showPlaylist(playlist);
+                return;
+            } catch (IllegalArgumentException e) {
+                showError("Invalid rule: " + e.getMessage());
             }
         }
     }
     
-    private void moveSelectedDown() {
-        int index = playlistView.getSelectedIndex();
-        if (index != -1 && index < playlistModel.getSize() - 1) {
-            MediaFile file = playlistModel.getElementAt(index);
-            if (controller.getPlaylistManager().moveDown(file)) {
-                updatePlaylistDisplay();
-                playlistView.setSelectedIndex(index + 1);
+    private void rebuildSmartMenu() {
+        smartMenu.removeAll();
+        smartMenu.add(newSmartPlaylistItem);
+        smartMenu.addSeparator();
+        smartMenu.add(mainPlaylistItem);
+        for (SmartPlaylist playlist : smartPlaylists.getPlaylists()) {
+            JMenuItem item = new JMenuItem(playlist.getName());
+            item.setToolTipText(playlist.getRuleText());
+            item.addActionListener(e -> showPlaylist(playlist));
+            smartMenu.add(item);
+        }
+    }
+    
+    /**
+     * Show a playlist and let playback continue through it
+     */
+    private void showPlaylist(IPlaylistManager playlist) {
+        controller.setPlaylistManager(playlist);
+        selectPlaylistTab();
+        updatePlaylistDisplay();
+        updatePlaybackStatus("Showing " + (playlist instanceof SmartPlaylist
+            ? "smart playlist: " + ((SmartPlaylist) playlist).getName()
+            : "playlist: " + playlistRegistry.getName(playlist)));
+    }
+    
+    private void addSortItem(String label, SortField... fields) {
+        JMenuItem item = new JMenuItem(label);
+        item.addActionListener(e -> sortPlaylist(Arrays.asList(fields)));
+        sortMenu.add(item);
+    }
+    
+    private void sortPlaylist(List<SortField> fields) {
+        controller.getPlaylistManager().sort(fields, true);
+        updatePlaylistDisplay();
+    }
+    
+    private void revalidatePlaylist() {
+        final List<MediaFile> files = controller.getPlaylistManager().getAllFiles();
+        updatePlaybackStatus("Checking " + files.size() + " files...");
+        
+        Thread worker = new Thread(() -> {
+            List<String> paths = new ArrayList<>(files.size());
+            for (MediaFile file : files) {
+                paths.add(file.getFilePath());
+            }
+            
+            List<FileMetadata> metadata = fileManager.getQuickMetadata(paths);
+            int missing = 0;
+            for (int i = 0; i < files.size(); i++) {
+                files.get(i).updateAttributes(metadata.get(i));
+                if (files.get(i).isCorrupted()) {
+                    missing++;
+                }
+            }
+            
+            refreshPlaylistView();
+            updatePlaybackStatus(missing == 0 ? "All files available"
+                : missing + " of " + files.size() + " files are missing");
+        }, "PlaylistRevalidation");
+        worker.setDaemon(true);
+        worker.start();
+    }
+    
+    private void findDuplicates() {
+        final List<MediaFile> files = controller.getPlaylistManager().getAllFiles();
+        final MetadataCache cache = fileManager instanceof FileManager
+            ? ((FileManager) fileManager).getMetadataCache() : new MetadataCache();
+        updatePlaybackStatus("Looking for duplicates in " + files.size() + " files...");
+        
+        Thread worker = new Thread(() -> {
+            try {
+                List<DuplicateGroup> groups = new DuplicateFinder(fileManager, cache).findDuplicates(files);
+                if (groups.isEmpty()) {
+                    updatePlaybackStatus("No duplicates found");
+                    showInfo("No duplicate files found");
+                    return;
+                }
+                
+                long wasted = 0;
+                StringBuilder report = new StringBuilder();
+                for (int i = 0; i < groups.size(); i++) {
+                    DuplicateGroup group = groups.get(i);
+                    wasted += group.getWastedBytes();
+                    if (i < 20) {
+                        report.append(group).append('\n');
+                        for (MediaFile file : group.getFiles()) {
+                            report.append("    ").append(file.getFilePath()).append('\n');
+                        }
+                    }
+                }
+                if (groups.size() > 20) {
+                    report.append("... and ").append(groups.size() - 20).append(" more groups\n");
+                }
+                
+                updatePlaybackStatus(groups.size() + " duplicate groups found");
+                showInfo(String.format("%d duplicate groups, %.1f MB redundant%n%n%s",
+                    groups.size(), wasted / (1024.0 * 1024.0), report));
+            } catch (Exception e) {
+                updatePlaybackStatus("Error");
+                showError("Duplicate search failed: " + e.getMessage());
             }
+        }, "DuplicateFinder");
+        worker.setDaemon(true);
+        worker.start();
+    }
+    
+    private void findSimilarTracks() {
+        final MediaFile selected = playlistView.getSelectedValue();
+        if (selected == null) {
+            showError("Select a track to compare first");
+            return;
         }
+        final List<MediaFile> files = controller.getPlaylistManager().getAllFiles();
+        updatePlaybackStatus("Fingerprinting " + files.size() + " files...");
+        
+        Thread worker = new Thread(() -> {
+            try {
+                // Only files not fingerprinted yet are decoded
+                AcousticFingerprinter fingerprinter = new AcousticFingerprinter();
+                fingerprinter.fingerprintAll(files, fingerprintIndex);
+                
+                int[] fingerprint = fingerprinter.fingerprint(new File(selected.getFilePath()));
+                if (fingerprint == null) {
+                    updatePlaybackStatus("Error");
+                    showError("Could not analyze: " + selected.getTitle());
+                    return;
+                }
+                
+                List<FingerprintIndex.FingerprintMatch> matches =
+                    fingerprintIndex.findSimilar(fingerprint, selected.getFilePath());
+                if (matches.isEmpty()) {
+                    updatePlaybackStatus("No similar tracks found");
+                    showInfo("No tracks sound like " + selected.getTitle());
+                    return;
+                }
+                
+                StringBuilder report = new StringBuilder();
+                for (int i = 0; i < matches.size() && i < 20; i++) {
+                    report.append(matches.get(i)).append('\n');
+                }
+                updatePlaybackStatus(matches.size() + " similar tracks found");
+                showInfo(String.format("Tracks that sound like %s:%n%n%s", selected.getTitle(), report));
+            } catch (Exception e) {
+                updatePlaybackStatus("Error");
+                showError("Similarity search failed: " + e.getMessage());
+            }
+        }, "AcousticFingerprinter");
+        worker.setDaemon(true);
+        worker.start();
     }
     
-    private void removeSelected() {
+    private void playSelected() {
         int index = playlistView.getSelectedIndex();
         if (index != -1) {
-            MediaFile file = playlistModel.getElementAt(index);
-            controller.getPlaylistManager().removeFile(file);
+            MediaFile selectedFile = playlistModel.getElementAt(index);
+            controller.getPlaylistManager().setCurrentIndex(index);
+            controller.loadAndPlay(selectedFile);
+        }
+    }
+    
+    private void selectSearchResult() {
+        IPlaylistManager playlist = controller.getPlaylistManager();
+        String query = searchField.getText();
+        if (!(playlist instanceof PlaylistManager) || query.trim().isEmpty()) {
+            return;
+        }
+        
+        List<MediaFile> results = ((PlaylistManager) playlist).search(query, 1);
+        if (results.isEmpty()) {
+            playlistView.clearSelection();
+            return;
+        }
+        int index = playlist.indexOf(results.get(0));
+        if (index >= 0) {
+            playlistView.setSelectedIndex(index);
+            playlistView.ensureIndexIsVisible(index);
+        }
+    }
+    
+    private void moveSelectedUp() {
+        int first = playlistView.getMinSelectionIndex();
+        int last = playlistView.getMaxSelectionIndex();
+        if (first > 0) {
+            moveRows(first, last + 1, first - 1);
+        }
+    }
+    
+    private void moveSelectedDown() {
+        int first = playlistView.getMinSelectionIndex();
+        int last = playlistView.getMaxSelectionIndex();
+        if (first != -1 && last < playlistModel.getSize() - 1) {
+            moveRows(first, last + 1, last + 2);
+        }
+    }
+    
+    /**
+     * Move rows fromIndex..toIndex-1 before row destination and keep them selected
+     */
+    private boolean moveRows(int fromIndex, int toIndex, int destination) {
+        if (!controller.getPlaylistManager().moveRange(fromIndex, toIndex, destination)) {
+            return false;
+        }
+        // The model repaints the moved rows; only the selection follows them
+        int newStart = destination < fromIndex ? destination : destination - (toIndex - fromIndex);
+        SwingUtilities.invokeLater(() -> {
+            playlistView.setSelectionInterval(newStart, newStart + toIndex - fromIndex - 1);
+            playlistView.ensureIndexIsVisible(newStart);
+        });
+        return true;
+    }
+    
+    private void removeSelected() {
+        int first = playlistView.getMinSelectionIndex();
+        int last = playlistView.getMaxSelectionIndex();
+        if (first != -1) {
+            controller.getPlaylistManager().removeRange(first, last + 1);
             updatePlaylistDisplay();
         }
     }
@@ -405,6 +943,10 @@ public class PlayerUI implements IUserInterface, IPlaybackListener {
     
     private void exitApplication() {
         controller.stop();
+        smartRefreshTimer.stop();
+        fileManager.stopWatching();
+        fileManager.closeLibrary();
+        artworkCache.shutdown();
         if (controller instanceof PlaybackController) {
             ((PlaybackController) controller).dispose();
         }
@@ -431,12 +973,9 @@ public class PlayerUI implements IUserInterface, IPlaybackListener {
     @Override
     public void updatePlaylistDisplay() {
         SwingUtilities.invokeLater(() -> {
-            playlistModel.clear();
+            // Rows come from the playlist's change events; only a switch rebinds the model
             IPlaylistManager playlist = controller.getPlaylistManager();
-            
-            for (int i = 0; i < playlist.size(); i++) {
-                playlistModel.addElement(playlist.getFileAt(i));
-            }
+            playlistModel.setPlaylist(playlist);
             
             // Highlight current track
             int currentIndex = playlist.getCurrentIndex();
@@ -444,18 +983,101 @@ public class PlayerUI implements IUserInterface, IPlaybackListener {
                 playlistView.setSelectedIndex(currentIndex);
             }
             
-            // Update playlist info
-            if (playlist instanceof PlaylistManager) {
-                PlaylistManager pm = (PlaylistManager) playlist;
-                String info = String.format("%d tracks, %s", 
-                    playlist.size(), pm.getFormattedTotalDuration());
-                playlistInfoLabel.setText(info);
-            } else {
-                playlistInfoLabel.setText(playlist.size() + " tracks");
-            }
+            updatePlaylistInfo();
         });
     }
     
+    /**
+     * Read sizes for rows painted before their file was stat'ed
+     * Rows requested during one paint are read together off the EDT.
+     * Called on the EDT only.
+     */
+    private void requestStat(MediaFile file) {
+        if (statsInFlight.contains(file) || !pendingStats.add(file) || statBatchScheduled) {
+            return;
+        }
+        statBatchScheduled = true;
+        SwingUtilities.invokeLater(() -> {
+            final List<MediaFile> files = new ArrayList<>(pendingStats);
+            pendingStats.clear();
+            statBatchScheduled = false;
+            statsInFlight.addAll(files);
+            
+            Thread worker = new Thread(() -> {
+                List<String> paths = new ArrayList<>(files.size());
+                for (MediaFile pending : files) {
+                    paths.add(pending.getFilePath());
+                }
+                try {
+                    List<FileMetadata> metadata = fileManager.getQuickMetadata(paths);
+                    for (int i = 0; i < files.size(); i++) {
+                        files.get(i).updateAttributes(metadata.get(i));
+                    }
+                } catch (Exception e) {
+                    System.err.println("Error reading file sizes: " + e.getMessage());
+                } finally {
+                    SwingUtilities.invokeLater(() -> {
+                        statsInFlight.removeAll(files);
+                        playlistView.repaint();
+                    });
+                }
+            }, "PlaylistRowStat");
+            worker.setDaemon(true);
+            worker.start();
+        });
+    }
+    
+    /**
+     * Repaint playlist rows after background metadata updates
+     * Can be called from any thread
+     */
+    private void refreshPlaylistView() {
+        SwingUtilities.invokeLater(() -> {
+            playlistView.repaint();
+            updatePlaylistInfo();
+        });
+    }
+    
+    /**
+     * Re-index tags read in the background, then repaint
+     */
+    private void onFilesEnriched(List<MediaFile> files) {
+        IPlaylistManager playlist = controller.getPlaylistManager();
+        // Every open playlist shares these instances, so all of them re-index
+        for (PlaylistManager open : playlistRegistry.getPlaylists()) {
+            open.refreshSearchIndex(files);
+        }
+        smartPlaylists.updateFiles(files);
+        if (playlist instanceof SmartPlaylist) {
+            ((SmartPlaylist) playlist).refreshSearchIndex(files);
+            updatePlaylistDisplay(); // Tags may have moved tracks in or out
+        } else {
+            refreshPlaylistView();
+        }
+    }
+    
+    private void updatePlaylistInfo() {
+        IPlaylistManager playlist = controller.getPlaylistManager();
+        if (playlist instanceof PlaylistManager) {
+            PlaylistManager pm = (PlaylistManager) playlist;
+            String info = String.format("%d tracks, %s", 
+                playlist.size(), pm.getFormattedTotalDuration());
+            playlistInfoLabel.setText(info + queueInfo());
+        } else {
+            playlistInfoLabel.setText(playlist.size() + " tracks" + queueInfo());
+        }
+    }
+    
+    private String queueInfo() {
+        int queued = controller.getPlayQueue().size();
+        return queued > 0 ? " (" + queued + " up next)" : "";
+    }
+    
+    @Override
+    public void onQueueChanged(IPlayQueue queue) {
+        SwingUtilities.invokeLater(this::updatePlaylistInfo);
+    }
+    
     @Override
     public void updatePlaybackStatus(String status) {
         SwingUtilities.invokeLater(() -> statusLabel.setText(status));
@@ -485,16 +1107,28 @@ public class PlayerUI implements IUserInterface, IPlaybackListener {
         });
     }
     
+    private void updateArtwork(MediaFile file) {
+        BufferedImage artwork = artworkCache.getThumbnail(file.getFilePath(), ARTWORK_SIZE,
+            () -> SwingUtilities.invokeLater(() -> {
+                if (file.equals(controller.getCurrentFile())) {
+                    updateArtwork(file);
+                }
+            }));
+        artworkLabel.setIcon(artwork != null ? new ImageIcon(artwork) : null);
+    }
+    
     @Override
     public void updateCurrentTrackDisplay(MediaFile file) {
         SwingUtilities.invokeLater(() -> {
             if (file != null) {
                 currentTrackLabel.setText(file.getTitle());
                 currentArtistLabel.setText(file.getArtist());
+                updateArtwork(file);
                 setControlsEnabled(true);
             } else {
                 currentTrackLabel.setText("No track selected");
                 currentArtistLabel.setText("Unknown Artist");
+                artworkLabel.setIcon(null);
                 setControlsEnabled(false);
             }
         });
@@ -563,6 +1197,8 @@ public class PlayerUI implements IUserInterface, IPlaybackListener {
     // IPlaybackListener implementation
     @Override
     public void onPlaybackStarted(MediaFile file) {
+        // Tags are read when playback starts if the background pass has not reached the file yet
+        onFilesEnriched(Collections.singletonList(file));
         updatePlaybackStatus("Playing: " + file.getTitle());
         updateCurrentTrackDisplay(file);
     }
@@ -609,8 +1245,110 @@ public class PlayerUI implements IUserInterface, IPlaybackListener {
         updateShuffleModeDisplay(enabled);
     }
     
+    // ILibraryListener implementation - events arrive on the watcher thread
+    @Override
+    public void onFilesAdded(List<MediaFile> added) {
+        SwingUtilities.invokeLater(() -> {
+            List<MediaFile> files = playlistRegistry.getTrackPool().internAll(added);
+            mainPlaylist.addAll(mainPlaylist.size(), files);
+            smartPlaylists.addFiles(files);
+            fileManager.enrichMetadata(files, this::onFilesEnriched);
+            updatePlaylistDisplay();
+            updatePlaybackStatus(files.size() + " new files added from watched folders");
+        });
+    }
+    
+    @Override
+    public void onFilesChanged(List<MediaFile> changed) {
+        SwingUtilities.invokeLater(() -> {
+            // The playlists hold the pooled instances, not the ones the watcher made
+            List<MediaFile> files = playlistRegistry.getTrackPool().internAll(changed);
+            for (MediaFile file : files) {
+                file.invalidate();
+                fingerprintIndex.remove(file.getFilePath());
+                artworkCache.invalidate(file.getFilePath());
+            }
+            for (PlaylistManager playlist : playlistRegistry.getPlaylists()) {
+                playlist.refreshSearchIndex(files);
+            }
+            smartPlaylists.updateFiles(files);
+            // Tags are read again in the background and re-indexed by onFilesEnriched
+            fileManager.enrichMetadata(files, this::onFilesEnriched);
+            updatePlaylistDisplay();
+        });
+    }
+    
+    @Override
+    public void onFilesRemoved(List<String> filePaths) {
+        SwingUtilities.invokeLater(() -> {
+            List<MediaFile> removed = new ArrayList<>(filePaths.size());
+            for (String path : filePaths) {
+                removed.add(new MediaFile(path));
+                fingerprintIndex.remove(path);
+                artworkCache.invalidate(path);
+            }
+            for (PlaylistManager playlist : playlistRegistry.getPlaylists()) {
+                playlist.removeAll(removed);
+            }
+            smartPlaylists.removeFiles(filePaths);
+            updatePlaylistDisplay();
+            updatePlaybackStatus(filePaths.size() + " files removed from watched folders");
+        });
+    }
+    
+    /**
+     * Reorders the playlist by dragging the selected rows
+     * The whole selection is moved with one moveRange call.
+     */
+    private class PlaylistTransferHandler extends TransferHandler {
+        private static final long serialVersionUID = 1L;
+        
+        private int dragFrom = -1;
+        private int dragTo = -1;
+        
+        @Override
+        public int getSourceActions(JComponent component) {
+            return MOVE;
+        }
+        
+        @Override
+        protected Transferable createTransferable(JComponent component) {
+            dragFrom = playlistView.getMinSelectionIndex();
+            dragTo = playlistView.getMaxSelectionIndex() + 1;
+            return new StringSelection(dragFrom + "-" + dragTo);
+        }
+        
+        @Override
+        public boolean canImport(TransferSupport support) {
+            return support.isDrop() && support.getComponent() == playlistView && dragFrom != -1;
+        }
+        
+        @Override
+        public boolean importData(TransferSupport support) {
+            if (!canImport(support)) {
+                return false;
+            }
+            int destination = ((JList.DropLocation) support.getDropLocation()).getIndex();
+            if (destination > dragFrom && destination < dragTo) {
+                return false; // Dropped onto itself
+            }
+            return moveRows(dragFrom, dragTo, destination);
+        }
+        
+        @Override
+        protected void exportDone(JComponent source, Transferable data, int action) {
+            dragFrom = -1;
+            dragTo = -1;
+        }
+    }
+    
     // Custom cell renderer for playlist
     private class PlaylistCellRenderer extends DefaultListCellRenderer {
+        private static final long serialVersionUID = 1L;
+        
+        private final Icon placeholder = new EmptyIcon(THUMBNAIL_SIZE);
+        private final Runnable repaintList = () -> SwingUtilities.invokeLater(playlistView::repaint);
+        
         @Override
         public Component getListCellRendererComponent(JList<?> list, Object value,
                 int index, boolean isSelected, boolean cellHasFocus) {
@@ -618,8 +1356,20 @@ public class PlayerUI implements IUserInterface, IPlaybackListener {
             
             if (value instanceof MediaFile) {
                 MediaFile file = (MediaFile) value;
+                // Imported and replayed rows have no size yet; stat'ing here would block painting
+                boolean statPending = file.isStatPending();
+                if (statPending) {
+                    requestStat(file);
+                }
                 setText(String.format("<html><b>%s</b><br><small>%s - %s</small></html>",
-                    file.getTitle(), file.getArtist(), file.getFormattedFileSize()));
+                    file.getTitle(), file.getArtist(), statPending ? "\u2026" : file.getFormattedFileSize()));
+                if (!statPending && file.isCorrupted()) {
+                    setForeground(Color.GRAY);
+                }
+                
+                // Never blocks: a miss is loaded in the background and the list repainted
+                BufferedImage thumbnail = artworkCache.getThumbnail(file.getFilePath(), THUMBNAIL_SIZE, repaintList);
+                setIcon(thumbnail != null ? new ImageIcon(thumbnail) : placeholder);
                 
                 // Highlight current playing track
                 if (index == controller.getPlaylistManager().getCurrentIndex()) {
@@ -630,4 +1380,23 @@ public class PlayerUI implements IUserInterface, IPlaybackListener {
             return this;
         }
     }
-}
\ No newline at end of file
+    
+    // Reserves thumbnail space for rows without artwork
+    private static class EmptyIcon implements Icon {
+        private final int size;
+        
+        EmptyIcon(int size) {
+            this.size = size;
+        }
+        
+        @Override
+        public void paintIcon(Component c, Graphics g, int x, int y) {
+        }
+        
+        @Override
+        public int getIconWidth() { return size; }
+        
+        @Override
+        public int getIconHeight() { return size; }
+    }
+}
@@ -0,0 +1,149 @@
+import java.util.Arrays;
+
+/**
+ * Playlist Change Event
+ * Describes one playlist mutation as index ranges so views can update
+ * only the affected rows
+ *
+ *   INSERTED  rows firstIndex..lastIndex were inserted (new positions)
+ *   REMOVED   rows at getIndices() were removed (positions before removal)
+ *   MOVED     rows firstIndex..lastIndex (old positions) now start at destination
+ *   UPDATED   rows firstIndex..lastIndex hold the same files with new metadata
+ *   CHANGED   rows firstIndex..lastIndex were replaced or reordered; when
+ *             lastIndex reaches the end the playlist size may have changed,
+ *             and getSize() tells the size it changed to
+ *
+ * A load appends its batches as INSERTED events. All but the last one
+ * report isLoading(), so listeners that keep their own copy, such as the
+ * journal, can wait for the load to finish.
+ */
+public class PlaylistChangeEvent {
+    
+    public enum Type {
+        INSERTED, REMOVED, MOVED, UPDATED, CHANGED
+    }
+    
+    private final IPlaylistManager source;
+    private final Type type;
+    private final int firstIndex;
+    private final int lastIndex;
+    private final int destination;
+    private final int[] indices;
+    private final int size;
+    private final boolean loading;
+    
+    private PlaylistChangeEvent(IPlaylistManager source, Type type, int firstIndex, int lastIndex,
+                                int destination, int[] indices) {
+        this(source, type, firstIndex, lastIndex, destination, indices, -1, false);
+    }
+    
+    private PlaylistChangeEvent(IPlaylistManager source, Type type, int firstIndex, int lastIndex,
+                                int destination, int[] indices, int size, boolean loading) {
+        this.source = source;
+        this.type = type;
+        this.firstIndex = firstIndex;
+        this.lastIndex = lastIndex;
+        this.destination = destination;
+        this.indices = indices;
+        this.size = size;
+        this.loading = loading;
+    }
+    
+    public static PlaylistChangeEvent inserted(IPlaylistManager source, int firstIndex, int lastIndex) {
+        return new PlaylistChangeEvent(source, Type.INSERTED, firstIndex, lastIndex, -1, null);
+    }
+    
+    public static PlaylistChangeEvent removed(IPlaylistManager source, int firstIndex, int lastIndex) {
+        return new PlaylistChangeEvent(source, Type.REMOVED, firstIndex, lastIndex, -1, null);
+    }
+    
+    /**
+     * Removal of rows that need not be contiguous
+     * @param indices removed positions in ascending order, before removal
+     */
+    public static PlaylistChangeEvent removed(IPlaylistManager source, int[] indices) {
+        return new PlaylistChangeEvent(source, Type.REMOVED, indices[0], indices[indices.length - 1], -1,
+            indices.clone());
+    }
+    
+    public static PlaylistChangeEvent moved(IPlaylistManager source, int firstIndex, int lastIndex, int destination) {
+        return new PlaylistChangeEvent(source, Type.MOVED, firstIndex, lastIndex, destination, null);
+    }
+    
+    public static PlaylistChangeEvent updated(IPlaylistManager source, int firstIndex, int lastIndex) {
+        return new PlaylistChangeEvent(source, Type.UPDATED, firstIndex, lastIndex, -1, null);
+    }
+    
+    /**
+     * Replacement or reordering of rows
+     * @param size playlist size as published with this change
+     */
+    public static PlaylistChangeEvent changed(IPlaylistManager source, int firstIndex, int lastIndex, int size) {
+        return new PlaylistChangeEvent(source, Type.CHANGED, firstIndex, lastIndex, -1, null, size, false);
+    }
+    
+    /**
+     * Same change, marked as a batch of a load that has more batches to come
+     */
+    PlaylistChangeEvent duringLoad() {
+        return new PlaylistChangeEvent(source, type, firstIndex, lastIndex, destination, indices, size, true);
+    }
+    
+    public IPlaylistManager getSource() { return source; }
+    public Type getType() { return type; }
+    public int getFirstIndex() { return firstIndex; }
+    public int getLastIndex() { return lastIndex; }
+    
+    /**
+     * New position of the first moved row; -1 unless MOVED
+     */
+    public int getDestination() { return destination; }
+    
+    /**
+     * Playlist size right after the change; -1 unless CHANGED
+     * Listeners that apply events later should use this rather than the
+     * live size, which may already include changes still on their way.
+     */
+    public int getSize() { return size; }
+    
+    /**
+     * Check whether a load appended these rows and further batches follow
+     */
+    public boolean isLoading() { return loading; }
+    
+    /**
+     * Number of rows inserted, removed, moved or changed
+     */
+    public int getCount() {
+        return indices != null ? indices.length : lastIndex - firstIndex + 1;
+    }
+    
+    /**
+     * Removed positions in ascending order, before removal
+     * Contiguous removals report firstIndex..lastIndex.
+     */
+    public int[] getIndices() {
+        if (indices != null) {
+            return indices.clone();
+        }
+        int[] range = new int[lastIndex - firstIndex + 1];
+        for (int i = 0; i < range.length; i++) {
+            range[i] = firstIndex + i;
+        }
+        return range;
+    }
+    
+    /**
+     * Check whether the affected rows form one contiguous range
+     */
+    public boolean isContiguous() {
+        return indices == null || indices.length == lastIndex - firstIndex + 1;
+    }
+    
+    @Override
+    public String toString() {
+        return type + " " + firstIndex + ".." + lastIndex
+            + (type == Type.MOVED ? " -> " + destination : "")
+            + (indices != null && !isContiguous() ? " " + Arrays.toString(indices) : "");
+    }
+}
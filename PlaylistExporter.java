@@ -0,0 +1,143 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Playlist Exporter Component
+ * Writes playlists as M3U/M3U8 (with #EXTINF), PLS or XSPF for other
+ * tools. Entries are streamed to a buffered writer one at a time, and the
+ * file is written under a temporary name and renamed into place. Paths
+ * are written as absolute paths, or file URIs for XSPF; no file system
+ * access happens for the tracks themselves.
+ */
+public final class PlaylistExporter {
+    private static final String XSPF_NAMESPACE = "http://xspf.org/ns/0/";
+
+    private PlaylistExporter() {
+    }
+
+    /**
+     * Write a playlist
+     * Precondition: file, format and files must not be null, format must not be RLL
+     * Postcondition: file holds every entry in order, or is unchanged on error
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(File file, PlaylistFormat format, List<MediaFile> files) throws IOException {
+        if (file == null || format == null || files == null) {
+            throw new IllegalArgumentException("File, format and files cannot be null");
+        }
+        if (format == PlaylistFormat.RLL) {
+            throw new IllegalArgumentException("Not a text playlist format: " + format);
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp.toPath())) {
+            if (format == PlaylistFormat.XSPF) {
+                writeXspf(out, files);
+            } else {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                if (format == PlaylistFormat.PLS) {
+                    writePls(writer, files);
+                } else {
+                    writeM3u(writer, files);
+                }
+                writer.flush();
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeM3u(Writer writer, List<MediaFile> files) throws IOException {
+        writer.write("#EXTM3U\n");
+        for (MediaFile file : files) {
+            writer.write("#EXTINF:");
+            writer.write(Integer.toString(file.getDuration() > 0 ? file.getDuration() : -1));
+            writer.write(',');
+            writer.write(displayName(file));
+            writer.write('\n');
+            writer.write(file.getFilePath());
+            writer.write('\n');
+        }
+    }
+
+    private static void writePls(Writer writer, List<MediaFile> files) throws IOException {
+        writer.write("[playlist]\n");
+        int number = 0;
+        for (MediaFile file : files) {
+            number++;
+            writer.write("File" + number + "=" + file.getFilePath() + "\n");
+            writer.write("Title" + number + "=" + displayName(file) + "\n");
+            writer.write("Length" + number + "=" + (file.getDuration() > 0 ? file.getDuration() : -1) + "\n");
+        }
+        writer.write("NumberOfEntries=" + number + "\n");
+        writer.write("Version=2\n");
+    }
+
+    private static void writeXspf(OutputStream out, List<MediaFile> files) throws IOException {
+        try {
+            XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeStartElement("playlist");
+            writer.writeDefaultNamespace(XSPF_NAMESPACE);
+            writer.writeAttribute("version", "1");
+            writer.writeStartElement("trackList");
+            for (MediaFile file : files) {
+                writer.writeStartElement("track");
+                writeElement(writer, "location", fileUri(file.getFilePath()));
+                writeElement(writer, "title", file.getTitle());
+                writeElement(writer, "creator", file.getArtist());
+                writeElement(writer, "album", file.getAlbum());
+                if (file.getDuration() > 0) {
+                    writeElement(writer, "duration", Long.toString(file.getDuration() * 1000L));
+                }
+                writer.writeEndElement();
+            }
+            writer.writeEndElement();
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Error writing XSPF playlist: " + e.getMessage(), e);
+        }
+    }
+
+    private static void writeElement(XMLStreamWriter writer, String name, String text) throws XMLStreamException {
+        if (text != null) {
+            writer.writeStartElement(name);
+            writer.writeCharacters(text);
+            writer.writeEndElement();
+        }
+    }
+
+    private static String displayName(MediaFile file) {
+        String artist = file.getArtist();
+        return artist != null && !artist.isEmpty() ? artist + " - " + file.getTitle() : file.getTitle();
+    }
+
+    /**
+     * File URI built from the path alone; File.toURI() would stat every track
+     */
+    private static String fileUri(String path) throws IOException {
+        String absolute = new File(path).getAbsolutePath().replace(File.separatorChar, '/');
+        try {
+            return new URI("file", "", absolute.startsWith("/") ? absolute : "/" + absolute, null).toASCIIString();
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid path: " + path, e);
+        }
+    }
+}
@@ -0,0 +1,327 @@
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Playlist File Component
+ * Binary .rll playlist format:
+ *
+ *   header    magic "RLPL", version, entry count, current index, string
+ *             count, offsets of the string data and the string index
+ *   records   one fixed-width record per entry: string ids of directory,
+ *             file name, title, artist, album and genre, then year,
+ *             duration, file size, last played time and flags; fields
+ *             not yet parsed from the file name or read from disk are
+ *             flagged instead of stored and stay lazy after loading
+ *   strings   UTF-8 bytes of every distinct string, followed by an index
+ *             of (count + 1) start offsets
+ *
+ * Paths are split into directory and name so a folder is stored once.
+ * Files are written through one buffered FileChannel, forced to disk and
+ * renamed into place, and read through a read-only mapping: records are decoded on
+ * request and each string only on first use, so a caller can show the
+ * first entries before the rest are touched.
+ *
+ * Files written by older versions with Java serialization are detected
+ * by isLegacy(); PlaylistManager converts them on load.
+ */
+public class PlaylistFile {
+    private static final int MAGIC = 0x524C504C; // "RLPL"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 40;
+    // [6 string ids][int year][int duration][long size][long lastPlayed][int flags][int unused]
+    private static final int RECORD_SIZE = 6 * 4 + 4 + 4 + 8 + 8 + 4 + 4;
+    private static final int FLAG_ENRICHED = 1;
+    private static final int FLAG_CORRUPTED = 2;
+    private static final int FLAG_STAT_PENDING = 4;
+    private static final int FLAG_NAMES_PENDING = 8;
+    private static final int TEXT_FIELDS = 6;
+    private static final int NO_STRING = -1;
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+    private static final short SERIALIZATION_MAGIC = (short) 0xACED;
+
+    private final ByteBuffer map;
+    private final int size;
+    private final int currentIndex;
+    private final int stringCount;
+    private final int stringData;
+    private final int stringIndex;
+    private final String[] strings;
+
+    private PlaylistFile(ByteBuffer map) throws IOException {
+        this.map = map;
+        if (map.capacity() < HEADER_SIZE || map.getInt(0) != MAGIC) {
+            throw new IOException("Not a playlist file");
+        }
+        if (map.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Unsupported playlist version: " + map.getInt(4));
+        }
+        size = map.getInt(8);
+        currentIndex = map.getInt(12);
+        stringCount = map.getInt(16);
+        long dataOffset = map.getLong(24);
+        long indexOffset = map.getLong(32);
+        if (size < 0 || stringCount < 0 || dataOffset < HEADER_SIZE + (long) size * RECORD_SIZE
+                || indexOffset < dataOffset || indexOffset + (stringCount + 1L) * 4 > map.capacity()) {
+            throw new IOException("Corrupted playlist header");
+        }
+        stringData = (int) dataOffset;
+        stringIndex = (int) indexOffset;
+        strings = new String[stringCount];
+    }
+
+    /**
+     * Map a playlist file for reading
+     * Precondition: file must not be null
+     * @throws IOException if the file cannot be read or is not a playlist
+     */
+    public static PlaylistFile open(File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("File cannot be null");
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Playlist file too large: " + file);
+            }
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new PlaylistFile(map);
+        }
+    }
+
+    /**
+     * Check whether a file was written with Java serialization
+     */
+    public static boolean isLegacy(File file) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readShort() == SERIALIZATION_MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Write a playlist, replacing the file atomically
+     * Precondition: file and files must not be null
+     * Postcondition: no media file is read from disk; unread sizes stay unread;
+     * the file's contents are on disk, though the rename may not be until the
+     * directory is forced
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(File file, List<MediaFile> files, int currentIndex) throws IOException {
+        if (file == null || files == null) {
+            throw new IllegalArgumentException("File and media files cannot be null");
+        }
+
+        // Assign string ids first so records can be written in one pass
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> table = new ArrayList<>();
+        int[] textIds = new int[files.size() * TEXT_FIELDS];
+        for (int i = 0; i < files.size(); i++) {
+            String[] texts = textsOf(files.get(i));
+            for (int field = 0; field < TEXT_FIELDS; field++) {
+                textIds[i * TEXT_FIELDS + field] = intern(texts[field], ids, table);
+            }
+        }
+        ids = null;
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+            channel.position(HEADER_SIZE);
+
+            for (int i = 0; i < files.size(); i++) {
+                MediaFile mediaFile = files.get(i);
+                boolean namesPending = mediaFile.isNamesPending();
+                boolean statPending = mediaFile.isStatPending();
+                int flags = (mediaFile.isEnriched() ? FLAG_ENRICHED : 0)
+                    | (namesPending ? FLAG_NAMES_PENDING : 0)
+                    | (statPending ? FLAG_STAT_PENDING : (mediaFile.isCorrupted() ? FLAG_CORRUPTED : 0));
+
+                ensureSpace(channel, buffer, RECORD_SIZE);
+                for (int field = 0; field < TEXT_FIELDS; field++) {
+                    buffer.putInt(textIds[i * TEXT_FIELDS + field]);
+                }
+                buffer.putInt(namesPending ? 0 : mediaFile.getYear());
+                buffer.putInt(namesPending ? 0 : mediaFile.getDuration());
+                buffer.putLong(statPending ? 0 : mediaFile.getFileSize());
+                buffer.putLong(mediaFile.getLastPlayed());
+                buffer.putInt(flags);
+                buffer.putInt(0);
+            }
+
+            long dataOffset = HEADER_SIZE + (long) files.size() * RECORD_SIZE;
+            int[] starts = new int[table.size() + 1];
+            int position = 0;
+            for (int i = 0; i < table.size(); i++) {
+                byte[] bytes = table.get(i).getBytes(StandardCharsets.UTF_8);
+                starts[i] = position;
+                position += bytes.length;
+                if (position < 0) {
+                    throw new IOException("Playlist strings exceed 2 GB");
+                }
+                for (int written = 0; written < bytes.length; ) {
+                    ensureSpace(channel, buffer, 1);
+                    int chunk = Math.min(buffer.remaining(), bytes.length - written);
+                    buffer.put(bytes, written, chunk);
+                    written += chunk;
+                }
+            }
+            starts[table.size()] = position;
+            for (int start : starts) {
+                ensureSpace(channel, buffer, 4);
+                buffer.putInt(start);
+            }
+            flush(channel, buffer);
+
+            buffer.putInt(MAGIC);
+            buffer.putInt(FORMAT_VERSION);
+            buffer.putInt(files.size());
+            buffer.putInt(currentIndex);
+            buffer.putInt(table.size());
+            buffer.putInt(0);
+            buffer.putLong(dataOffset);
+            buffer.putLong(dataOffset + position);
+            buffer.flip();
+            channel.position(0);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            // On disk before the rename, so a crash cannot leave a renamed but empty file
+            channel.force(true);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Current index saved with the playlist, possibly -1
+     */
+    public int getCurrentIndex() {
+        return currentIndex;
+    }
+
+    /**
+     * Decode one entry
+     * Precondition: 0 <= index < size()
+     * Postcondition: no file system access; nothing is parsed from the file name
+     * @throws IOException if the record points outside the file
+     */
+    public MediaFile get(int index) throws IOException {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Invalid index: " + index);
+        }
+
+        int offset = HEADER_SIZE + index * RECORD_SIZE;
+        String directory = string(map.getInt(offset));
+        String name = string(map.getInt(offset + 4));
+        if (name == null) {
+            throw new IOException("Playlist entry without a file name: " + index);
+        }
+        String path = directory != null ? directory + name : name;
+        int flags = map.getInt(offset + 48);
+
+        FileMetadata attributes = null;
+        if ((flags & FLAG_STAT_PENDING) == 0) {
+            boolean exists = (flags & FLAG_CORRUPTED) == 0;
+            attributes = new FileMetadata(name, null, map.getLong(offset + 32), 0, exists, exists);
+        }
+        MediaFile file;
+        if ((flags & FLAG_NAMES_PENDING) == 0) {
+            // Set directly; the setters would parse the file name first
+            file = MediaFile.restore(path, attributes, string(map.getInt(offset + 8)),
+                string(map.getInt(offset + 12)), string(map.getInt(offset + 16)),
+                string(map.getInt(offset + 20)), map.getInt(offset + 24), map.getInt(offset + 28));
+        } else {
+            file = new MediaFile(path, attributes);
+        }
+        file.setLastPlayed(map.getLong(offset + 40));
+        if ((flags & FLAG_ENRICHED) != 0) {
+            file.markEnriched();
+        }
+        return file;
+    }
+
+    private String string(int id) throws IOException {
+        if (id == NO_STRING) {
+            return null;
+        }
+        if (id < 0 || id >= stringCount) {
+            throw new IOException("Invalid string id: " + id);
+        }
+
+        String text = strings[id];
+        if (text == null) {
+            int start = map.getInt(stringIndex + id * 4);
+            int end = map.getInt(stringIndex + id * 4 + 4);
+            if (start < 0 || end < start || stringData + (long) end > stringIndex) {
+                throw new IOException("Corrupted string table");
+            }
+            byte[] bytes = new byte[end - start];
+            ByteBuffer slice = map.duplicate();
+            slice.position(stringData + start);
+            slice.get(bytes);
+            text = new String(bytes, StandardCharsets.UTF_8);
+            strings[id] = text;
+        }
+        return text;
+    }
+
+    /**
+     * Directory, name, title, artist, album and genre of a file
+     * Fields still to be parsed from the name are left out rather than parsed.
+     */
+    private static String[] textsOf(MediaFile file) {
+        String path = file.getFilePath();
+        int split = Math.max(path.lastIndexOf('/'), path.lastIndexOf(File.separatorChar)) + 1;
+        String directory = split > 0 ? path.substring(0, split) : null;
+        String name = path.substring(split);
+        if (file.isNamesPending()) {
+            return new String[] {directory, name, null, null, null, null};
+        }
+        return new String[] {directory, name, file.getTitle(), file.getArtist(), file.getAlbum(), file.getGenre()};
+    }
+
+    private static int intern(String text, Map<String, Integer> ids, List<String> table) {
+        if (text == null) {
+            return NO_STRING;
+        }
+        Integer id = ids.putIfAbsent(text, table.size());
+        if (id == null) {
+            table.add(text);
+            return table.size() - 1;
+        }
+        return id;
+    }
+
+    private static void ensureSpace(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush(channel, buffer);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,59 @@
+import java.util.Locale;
+
+/**
+ * Enumeration for playlist file formats
+ * Part of Business Type Model for playlist management
+ */
+public enum PlaylistFormat {
+    RLL("Radio Labi-Labi Playlist", "rll"),
+    M3U("M3U Playlist", "m3u"),
+    M3U8("M3U8 Playlist (UTF-8)", "m3u8"),
+    PLS("PLS Playlist", "pls"),
+    XSPF("XSPF Playlist", "xspf");
+    
+    private final String displayName;
+    private final String extension;
+    
+    PlaylistFormat(String displayName, String extension) {
+        this.displayName = displayName;
+        this.extension = extension;
+    }
+    
+    public String getDisplayName() {
+        return displayName;
+    }
+    
+    public String getExtension() {
+        return extension;
+    }
+    
+    @Override
+    public String toString() {
+        return displayName;
+    }
+    
+    /**
+     * Get format from a file name's extension
+     * @param filename file name or path
+     * @return matching format, or RLL if the extension is not a known one
+     */
+    public static PlaylistFormat forFile(String filename) {
+        int dotIndex = filename.lastIndexOf('.');
+        if (dotIndex >= 0) {
+            String extension = filename.substring(dotIndex + 1).toLowerCase(Locale.ROOT);
+            for (PlaylistFormat format : values()) {
+                if (format.extension.equals(extension)) {
+                    return format;
+                }
+            }
+        }
+        return RLL;
+    }
+    
+    /**
+     * Check whether a file name ends with a known playlist extension
+     */
+    public static boolean hasKnownExtension(String filename) {
+        return filename.toLowerCase(Locale.ROOT).endsWith("." + forFile(filename).extension);
+    }
+}
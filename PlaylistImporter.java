@@ -0,0 +1,358 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Playlist Importer Component
+ * Reads M3U/M3U8 (with #EXTINF), PLS and XSPF playlists written by other
+ * tools. Files are parsed line by line, or with StAX for XSPF, and
+ * entries are handed on in batches of at most BATCH_SIZE, so memory use
+ * does not grow with the playlist. Each batch resolves its relative paths
+ * against the playlist's directory in one go before the media files are
+ * created; no file system access happens for the tracks themselves.
+ * Entries that are not local files (e.g. http streams) are skipped.
+ *
+ * M3U8, PLS and XSPF are read as UTF-8. Plain M3U is read as Windows-1252,
+ * its de facto encoding, unless it starts with a UTF-8 byte order mark.
+ * XSPF locations are URIs and are resolved as such, so percent-escapes
+ * are decoded; the other formats hold plain paths.
+ */
+public final class PlaylistImporter {
+    public static final int BATCH_SIZE = 4096;
+
+    private static final Pattern URL_SCHEME = Pattern.compile("^[A-Za-z][A-Za-z0-9+.-]+://.*");
+    private static final Charset LEGACY_CHARSET = Charset.isSupported("windows-1252")
+        ? Charset.forName("windows-1252") : StandardCharsets.ISO_8859_1;
+
+    private PlaylistImporter() {
+    }
+
+    /**
+     * Stream the entries of a playlist file to a consumer
+     * Precondition: file, format and sink must not be null, format must not be RLL
+     * Postcondition: sink received every local entry in file order, in batches
+     * @return number of entries passed to the sink
+     * @throws IOException if the file cannot be read or parsed
+     */
+    public static int read(File file, PlaylistFormat format, Consumer<List<MediaFile>> sink) throws IOException {
+        if (file == null || format == null || sink == null) {
+            throw new IllegalArgumentException("File, format and sink cannot be null");
+        }
+
+        Batch batch = new Batch(file.getAbsoluteFile().getParentFile(), format == PlaylistFormat.XSPF, sink);
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            switch (format) {
+                case M3U:
+                    readM3u(openReader(in, startsWithUtf8Bom(in) ? StandardCharsets.UTF_8 : LEGACY_CHARSET), batch);
+                    break;
+                case M3U8:
+                    readM3u(openReader(in, StandardCharsets.UTF_8), batch);
+                    break;
+                case PLS:
+                    readPls(openReader(in, StandardCharsets.UTF_8), batch);
+                    break;
+                case XSPF:
+                    readXspf(in, batch);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Not a text playlist format: " + format);
+            }
+        }
+        batch.flush();
+        return batch.total;
+    }
+
+    private static BufferedReader openReader(InputStream in, Charset charset) {
+        // Malformed bytes become replacement characters rather than failing the import
+        return new BufferedReader(new InputStreamReader(in, charset));
+    }
+
+    /**
+     * Check for a UTF-8 byte order mark without consuming it
+     * Precondition: in must support mark
+     */
+    private static boolean startsWithUtf8Bom(InputStream in) throws IOException {
+        in.mark(3);
+        boolean bom = in.read() == 0xEF && in.read() == 0xBB && in.read() == 0xBF;
+        in.reset();
+        return bom;
+    }
+
+    private static void readM3u(BufferedReader reader, Batch batch) throws IOException {
+        String artist = null;
+        String title = null;
+        int duration = -1;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = stripBom(line).trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.startsWith("#")) {
+                if (line.regionMatches(true, 0, "#EXTINF:", 0, 8)) {
+                    // #EXTINF:<seconds>,<artist> - <title>
+                    int comma = line.indexOf(',');
+                    duration = parseInt(comma > 0 ? line.substring(8, comma) : line.substring(8));
+                    String display = comma > 0 ? line.substring(comma + 1).trim() : "";
+                    artist = artistOf(display);
+                    title = titleOf(display);
+                }
+                continue;
+            }
+            batch.add(line, artist, title, duration);
+            artist = null;
+            title = null;
+            duration = -1;
+        }
+    }
+
+    private static void readPls(BufferedReader reader, Batch batch) throws IOException {
+        // Entries are FileN/TitleN/LengthN; one entry is kept until its number changes
+        int number = -1;
+        String location = null;
+        String title = null;
+        int duration = -1;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = stripBom(line).trim();
+            int equals = line.indexOf('=');
+            if (equals <= 0 || line.startsWith("[")) {
+                continue;
+            }
+            String key = line.substring(0, equals).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(equals + 1).trim();
+
+            String field;
+            if (key.startsWith("file")) {
+                field = "file";
+            } else if (key.startsWith("title")) {
+                field = "title";
+            } else if (key.startsWith("length")) {
+                field = "length";
+            } else {
+                continue; // NumberOfEntries, Version
+            }
+            int entry = parseInt(key.substring(field.length()));
+            if (entry < 0) {
+                continue;
+            }
+
+            if (entry != number) {
+                if (location != null) {
+                    batch.add(location, artistOf(title), titleOf(title), duration);
+                }
+                number = entry;
+                location = null;
+                title = null;
+                duration = -1;
+            }
+            if (field.equals("file")) {
+                location = value;
+            } else if (field.equals("title")) {
+                title = value;
+            } else {
+                duration = parseInt(value);
+            }
+        }
+        if (location != null) {
+            batch.add(location, artistOf(title), titleOf(title), duration);
+        }
+    }
+
+    private static void readXspf(InputStream in, Batch batch) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        try {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                boolean inTrack = false;
+                String location = null;
+                String artist = null;
+                String title = null;
+                int duration = -1;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String name = reader.getLocalName();
+                        if (name.equals("track")) {
+                            inTrack = true;
+                            location = null;
+                            artist = null;
+                            title = null;
+                            duration = -1;
+                        } else if (inTrack && name.equals("location") && location == null) {
+                            location = reader.getElementText().trim();
+                        } else if (inTrack && name.equals("title")) {
+                            title = reader.getElementText().trim();
+                        } else if (inTrack && name.equals("creator")) {
+                            artist = reader.getElementText().trim();
+                        } else if (inTrack && name.equals("duration")) {
+                            int millis = parseInt(reader.getElementText().trim());
+                            duration = millis >= 0 ? millis / 1000 : -1;
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("track")) {
+                        inTrack = false;
+                        if (location != null) {
+                            batch.add(location, artist, title, duration);
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Invalid XSPF playlist: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Artist of an "Artist - Title" display name, or null
+     */
+    private static String artistOf(String display) {
+        int dash = display != null ? display.indexOf(" - ") : -1;
+        return dash > 0 ? display.substring(0, dash).trim() : null;
+    }
+
+    private static String titleOf(String display) {
+        int dash = display != null ? display.indexOf(" - ") : -1;
+        return dash > 0 ? display.substring(dash + 3).trim() : display;
+    }
+
+    private static String stripBom(String line) {
+        return !line.isEmpty() && line.charAt(0) == '\uFEFF' ? line.substring(1) : line;
+    }
+
+    private static int parseInt(String text) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Entries collected until the next flush
+     */
+    private static class Batch {
+        private final Path base;
+        private final boolean uriLocations;
+        private final Consumer<List<MediaFile>> sink;
+        private final String[] locations = new String[BATCH_SIZE];
+        private final String[] artists = new String[BATCH_SIZE];
+        private final String[] titles = new String[BATCH_SIZE];
+        private final int[] durations = new int[BATCH_SIZE];
+        private int size;
+        private int total;
+
+        Batch(File directory, boolean uriLocations, Consumer<List<MediaFile>> sink) {
+            this.base = directory != null ? directory.toPath() : Paths.get("").toAbsolutePath();
+            this.uriLocations = uriLocations;
+            this.sink = sink;
+        }
+
+        void add(String location, String artist, String title, int duration) {
+            locations[size] = location;
+            artists[size] = artist;
+            titles[size] = title;
+            durations[size] = duration;
+            if (++size == BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (size == 0) {
+                return;
+            }
+
+            List<MediaFile> files = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                String path = resolve(locations[i]);
+                if (path == null) {
+                    continue;
+                }
+                MediaFile file = new MediaFile(path);
+                // Hints from the playlist until the tags are read
+                if (titles[i] != null && !titles[i].isEmpty()) {
+                    file.setTitle(titles[i]);
+                }
+                if (artists[i] != null && !artists[i].isEmpty()) {
+                    file.setArtist(artists[i]);
+                }
+                if (durations[i] > 0) {
+                    file.setDuration(durations[i]);
+                }
+                files.add(file);
+            }
+            size = 0;
+            total += files.size();
+            if (!files.isEmpty()) {
+                sink.accept(files);
+            }
+        }
+
+        /**
+         * Absolute path of a playlist location, or null if it is not a local file
+         */
+        private String resolve(String location) {
+            try {
+                if (uriLocations) {
+                    URI uri = toUri(location);
+                    if (uri != null) {
+                        uri = base.toUri().resolve(uri);
+                        return "file".equalsIgnoreCase(uri.getScheme()) ? Paths.get(uri).toString() : null;
+                    }
+                }
+                if (location.regionMatches(true, 0, "file:", 0, 5)) {
+                    return Paths.get(new URI(location)).toString();
+                }
+                if (URL_SCHEME.matcher(location).matches()) {
+                    return null;
+                }
+                if (File.separatorChar == '/') {
+                    location = location.replace('\\', '/'); // Written on Windows
+                }
+                return base.resolve(location).normalize().toString();
+            } catch (URISyntaxException | IllegalArgumentException e) { // Includes InvalidPathException
+                System.err.println("Error importing playlist entry: " + location + " - " + e.getMessage());
+                return null;
+            }
+        }
+
+        /**
+         * Parse a location as a URI reference
+         * @return the URI, or null if the location is a plain path after all
+         * (unescaped characters, or a Windows drive letter)
+         */
+        private static URI toUri(String location) {
+            try {
+                URI uri = new URI(location);
+                String scheme = uri.getScheme();
+                return scheme != null && scheme.length() == 1 ? null : uri;
+            } catch (URISyntaxException e) {
+                return null;
+            }
+        }
+    }
+}
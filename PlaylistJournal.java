@@ -0,0 +1,614 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Playlist Journal Component
+ * Autosaves a playlist incrementally. Every change event is appended to
+ * a journal as a small record holding just the edit (inserted paths,
+ * removed positions, a moved range), so the cost of saving follows the
+ * size of the edit rather than the playlist. Records are collected in
+ * memory and written by a background thread in groups, one write and
+ * optionally one fsync per group.
+ *
+ * The journal is periodically folded into a snapshot in the .rll format:
+ *
+ *   playlist.GEN.rll       snapshot of generation GEN
+ *   playlist.GEN.journal   edits made after that snapshot
+ *
+ * Compaction runs when the journal outgrows the snapshot, and after edits
+ * that rewrite the whole playlist anyway (sort, shuffle, load), so its
+ * cost is amortized over the edits. The new generation becomes current
+ * once its snapshot has been renamed into place. With fsync the snapshot,
+ * the new journal's header and the directory are forced before the old
+ * generation is deleted. Opening replays the newest readable snapshot and
+ * its journal up to the last intact record; if the newest snapshot cannot
+ * be read, the next older generation is used.
+ *
+ * A failed write is retried with everything it left over, so a full disk
+ * leaves no gap in the journal. The batches of a load are not journaled
+ * one by one; the load's last batch compacts instead.
+ *
+ * Tag updates are not journaled; they reach the snapshot at the next
+ * compaction. The playlist must not be modified concurrently with its
+ * change events, as for any IPlaylistListener.
+ */
+public class PlaylistJournal implements IPlaylistListener, Closeable {
+    public static final long DEFAULT_COMMIT_INTERVAL = 200; // milliseconds
+
+    private static final int MAGIC = 0x524C4A4E; // "RLJN"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final byte RECORD_INSERT = 1;
+    private static final byte RECORD_REMOVE_RANGE = 2;
+    private static final byte RECORD_REMOVE_INDICES = 3;
+    private static final byte RECORD_MOVE = 4;
+    private static final byte RECORD_CURRENT = 5;
+    private static final long MIN_COMPACTION_BYTES = 1 << 20;
+    private static final long SNAPSHOT_BYTES_PER_FILE = 64;
+    private static final long RETRY_INTERVAL = 1000; // milliseconds
+    private static final byte[] NO_RECORDS = new byte[0];
+    private static final String PREFIX = "playlist.";
+    private static final String SNAPSHOT_SUFFIX = ".rll";
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    private final IPlaylistManager playlist;
+    private final File directory;
+    private final long commitInterval;
+    private final boolean fsync;
+    private final Object lock = new Object();
+    private final Thread writer;
+
+    // Guarded by lock
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private Compaction compaction;
+    private long generation;
+    private long journalBytes;
+    private boolean closed;
+
+    // Used by the writer thread only
+    private FileChannel journal;
+    private long writtenGeneration;
+
+    // Used by listener calls only, which the playlist serializes
+    private boolean skippedLoad;
+
+    private PlaylistJournal(IPlaylistManager playlist, File directory, long commitInterval, boolean fsync) {
+        this.playlist = playlist;
+        this.directory = directory;
+        this.commitInterval = commitInterval;
+        this.fsync = fsync;
+        this.writer = new Thread(this::writeLoop, "PlaylistJournal");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Restore a playlist from its autosave directory and keep autosaving it
+     * Precondition: playlist and directory must not be null, commitInterval >= 0
+     * Postcondition: playlist holds the last autosaved state; later changes are journaled
+     * @param commitInterval how long records are collected before a group is written, in milliseconds
+     * @param fsync true to force every group to disk before the next one
+     * @throws IOException if the directory cannot be used
+     */
+    public static PlaylistJournal open(IPlaylistManager playlist, File directory, long commitInterval,
+                                       boolean fsync) throws IOException {
+        if (playlist == null || directory == null) {
+            throw new IllegalArgumentException("Playlist and directory cannot be null");
+        }
+        if (commitInterval < 0) {
+            throw new IllegalArgumentException("Commit interval cannot be negative");
+        }
+
+        Files.createDirectories(directory.toPath());
+        PlaylistJournal journal = new PlaylistJournal(playlist, directory, commitInterval, fsync);
+        journal.recover();
+        playlist.addPlaylistListener(journal);
+        journal.writer.start();
+        return journal;
+    }
+
+    @Override
+    public void onPlaylistChanged(PlaylistChangeEvent event) {
+        if (event.getSource() != playlist) {
+            return;
+        }
+        if (event.isLoading()) {
+            skippedLoad = true; // The rest of the load follows
+            return;
+        }
+        if (skippedLoad) {
+            skippedLoad = false;
+            compact(); // One snapshot covers the whole load and this change
+            return;
+        }
+
+        switch (event.getType()) {
+            case INSERTED:
+                List<String> paths = new ArrayList<>(event.getCount());
+                for (int i = event.getFirstIndex(); i <= event.getLastIndex(); i++) {
+                    paths.add(playlist.getFileAt(i).getFilePath());
+                }
+                append(RECORD_INSERT, out -> {
+                    out.writeInt(event.getFirstIndex());
+                    out.writeInt(paths.size());
+                    for (String path : paths) {
+                        byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+                        out.writeInt(bytes.length);
+                        out.write(bytes);
+                    }
+                });
+                break;
+            case REMOVED:
+                if (event.isContiguous()) {
+                    append(RECORD_REMOVE_RANGE, out -> {
+                        out.writeInt(event.getFirstIndex());
+                        out.writeInt(event.getCount());
+                    });
+                } else {
+                    int[] indices = event.getIndices();
+                    append(RECORD_REMOVE_INDICES, out -> {
+                        out.writeInt(indices.length);
+                        for (int index : indices) {
+                            out.writeInt(index);
+                        }
+                    });
+                }
+                break;
+            case MOVED:
+                append(RECORD_MOVE, out -> {
+                    out.writeInt(event.getFirstIndex());
+                    out.writeInt(event.getCount());
+                    out.writeInt(event.getDestination());
+                });
+                break;
+            case CHANGED:
+                compact(); // The whole list changed; a snapshot costs no more than the record
+                break;
+            default:
+                break; // UPDATED: tags reach the next snapshot
+        }
+    }
+
+    /**
+     * Fold the journal into a new snapshot of the playlist's current state
+     * The snapshot is written in the background.
+     */
+    public void compact() {
+        List<MediaFile> files = playlist.getAllFiles();
+        int currentIndex = playlist.getCurrentIndex();
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            if (compaction != null) {
+                // Not started yet: the newer state replaces it and covers the records since
+                compaction.files = files;
+                compaction.currentIndex = currentIndex;
+            } else {
+                compaction = new Compaction(++generation, pending.toByteArray(), files, currentIndex);
+            }
+            pending.reset();
+            journalBytes = 0;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Write outstanding records and stop journaling
+     * Postcondition: the current position is recorded and every record is on disk
+     */
+    @Override
+    public void close() throws IOException {
+        playlist.removePlaylistListener(this);
+        int currentIndex = playlist.getCurrentIndex();
+        append(RECORD_CURRENT, out -> out.writeInt(currentIndex));
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (journal != null) {
+            journal.force(true);
+            journal.close();
+        }
+    }
+
+    // ---- Recording ----
+
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private void append(byte type, RecordWriter payload) {
+        // [int length][int crc][type][payload]
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(type);
+            payload.write(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Cannot happen in memory
+        }
+        byte[] record = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(record);
+
+        boolean compactNow;
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            writeInt(pending, record.length);
+            writeInt(pending, (int) crc.getValue());
+            pending.write(record, 0, record.length);
+            journalBytes += record.length + 8;
+            compactNow = journalBytes > Math.max(MIN_COMPACTION_BYTES, playlist.size() * SNAPSHOT_BYTES_PER_FILE);
+            lock.notifyAll();
+        }
+        if (compactNow) {
+            compact();
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    // ---- Writer thread ----
+
+    private void writeLoop() {
+        while (true) {
+            Compaction next;
+            byte[] group;
+            boolean stop;
+            synchronized (lock) {
+                while (!closed && pending.size() == 0 && compaction == null) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                stop = closed;
+            }
+            if (!stop && commitInterval > 0) {
+                // Let more records join this group
+                try {
+                    Thread.sleep(commitInterval);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            synchronized (lock) {
+                next = compaction;
+                compaction = null;
+                group = pending.toByteArray();
+                pending.reset();
+                stop = closed;
+            }
+
+            boolean failed = false;
+            try {
+                if (next != null) {
+                    write(next.before);
+                    next.before = NO_RECORDS;
+                    switchGeneration(next);
+                    next = null;
+                }
+                write(group);
+            } catch (IOException e) {
+                System.err.println("Error writing playlist journal: " + e.getMessage());
+                requeue(next, group);
+                failed = true;
+            }
+            if (stop) {
+                return;
+            }
+            if (failed) {
+                try {
+                    Thread.sleep(RETRY_INTERVAL);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Queue again what a failed write left over, keeping the records in order
+     * A compaction queued meanwhile has the newer snapshot and replaces the
+     * failed one; the old journal then needs the unwritten records first.
+     * @param failed compaction that did not complete, or null
+     * @param group records of the failed group
+     */
+    private void requeue(Compaction failed, byte[] group) {
+        if (failed != null) {
+            // Its snapshot may have been renamed into place; the old generation stays current
+            snapshotFile(failed.generation).delete();
+            journalFile(failed.generation).delete();
+        }
+        synchronized (lock) {
+            if (compaction != null) {
+                compaction.before = concat(failed != null ? failed.before : NO_RECORDS, group, compaction.before);
+            } else {
+                compaction = failed; // Its before still holds whatever was not written
+                byte[] later = pending.toByteArray();
+                pending.reset();
+                pending.write(group, 0, group.length);
+                pending.write(later, 0, later.length);
+            }
+        }
+    }
+
+    private static byte[] concat(byte[] first, byte[] second, byte[] third) {
+        byte[] result = new byte[first.length + second.length + third.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        System.arraycopy(third, 0, result, first.length + second.length, third.length);
+        return result;
+    }
+
+    private void write(byte[] records) throws IOException {
+        if (records.length == 0) {
+            return;
+        }
+        long start = journal.position();
+        ByteBuffer buffer = ByteBuffer.wrap(records);
+        try {
+            while (buffer.hasRemaining()) {
+                journal.write(buffer);
+            }
+        } catch (IOException e) {
+            // Cut off the torn record so a retry continues from intact data
+            try {
+                journal.truncate(start);
+                journal.position(start);
+            } catch (IOException ignored) {
+                // Replay stops at the torn record; the retry is lost then
+            }
+            throw e;
+        }
+        if (fsync) {
+            journal.force(false);
+        }
+    }
+
+    private void switchGeneration(Compaction next) throws IOException {
+        PlaylistFile.write(snapshotFile(next.generation), next.files, next.currentIndex);
+        FileChannel previous = journal;
+        journal = createJournal(next.generation);
+        try {
+            previous.close();
+        } catch (IOException e) {
+            System.err.println("Error closing playlist journal: " + e.getMessage());
+        }
+        if (fsync) {
+            // The renamed snapshot and the new journal must be durable before the old ones go
+            forceDirectory();
+        }
+
+        // Best effort: a leftover generation is ignored and removed on the next open
+        snapshotFile(writtenGeneration).delete();
+        journalFile(writtenGeneration).delete();
+        writtenGeneration = next.generation;
+    }
+
+    private FileChannel createJournal(long gen) throws IOException {
+        FileChannel channel = FileChannel.open(journalFile(gen).toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(gen).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        if (fsync) {
+            channel.force(true);
+        }
+        return channel;
+    }
+
+    private void forceDirectory() {
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Directories cannot be opened on every platform; the rename is still atomic there
+        }
+    }
+
+    // ---- Recovery ----
+
+    private void recover() throws IOException {
+        List<Long> snapshots = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                long gen = generationOf(file.getName(), SNAPSHOT_SUFFIX);
+                if (gen >= 0) {
+                    snapshots.add(gen);
+                }
+            }
+        }
+        Collections.sort(snapshots, Collections.reverseOrder());
+
+        // Newest first; an older generation is complete up to the compaction that replaced it
+        long loaded = -1;
+        for (long gen : snapshots) {
+            if (playlist.load(snapshotFile(gen).getPath())) {
+                loaded = gen;
+                break;
+            }
+            System.err.println("Error reading playlist snapshot: " + snapshotFile(gen) + ", trying an older one");
+        }
+        if (!snapshots.isEmpty() && loaded < 0) {
+            throw new IOException("Cannot read playlist snapshot: " + snapshotFile(snapshots.get(0)));
+        }
+
+        generation = Math.max(loaded, 0);
+        writtenGeneration = generation;
+        File journalFile = journalFile(generation);
+        if (journalFile.length() >= HEADER_SIZE) {
+            journal = FileChannel.open(journalFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long end = replay(journal);
+            journal.truncate(end);
+            journal.position(end);
+            journalBytes = end - HEADER_SIZE;
+        } else {
+            // Missing, or created without fsync and lost before its header reached the disk
+            journal = createJournal(generation);
+        }
+
+        // Generations left behind by an interrupted compaction or unreadable
+        if (files != null) {
+            for (File file : files) {
+                long gen = Math.max(generationOf(file.getName(), SNAPSHOT_SUFFIX),
+                    generationOf(file.getName(), JOURNAL_SUFFIX));
+                if (gen >= 0 && gen != generation) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Apply intact records to the playlist
+     * @return offset just past the last intact record
+     */
+    private long replay(FileChannel channel) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate((int) Math.min(channel.size(), Integer.MAX_VALUE));
+        channel.read(data, 0);
+        data.flip();
+        if (data.remaining() < HEADER_SIZE || data.getInt() != MAGIC || data.getInt() != FORMAT_VERSION
+                || data.getLong() != generation) {
+            throw new IOException("Playlist journal does not match its snapshot");
+        }
+
+        while (data.remaining() >= 8) {
+            int start = data.position();
+            int length = data.getInt();
+            int checksum = data.getInt();
+            if (length <= 0 || length > data.remaining()) {
+                return start; // Torn write
+            }
+            byte[] record = new byte[length];
+            data.get(record);
+            CRC32 crc = new CRC32();
+            crc.update(record);
+            if ((int) crc.getValue() != checksum) {
+                return start;
+            }
+            try {
+                apply(ByteBuffer.wrap(record));
+            } catch (RuntimeException e) {
+                System.err.println("Error replaying playlist journal: " + e.getMessage());
+                return start;
+            }
+        }
+        return data.position();
+    }
+
+    private void apply(ByteBuffer record) {
+        byte type = record.get();
+        switch (type) {
+            case RECORD_INSERT: {
+                int index = record.getInt();
+                int count = record.getInt();
+                List<MediaFile> files = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    byte[] bytes = new byte[record.getInt()];
+                    record.get(bytes);
+                    files.add(new MediaFile(new String(bytes, StandardCharsets.UTF_8)));
+                }
+                playlist.addAll(index, files);
+                break;
+            }
+            case RECORD_REMOVE_RANGE: {
+                int first = record.getInt();
+                playlist.removeRange(first, first + record.getInt());
+                break;
+            }
+            case RECORD_REMOVE_INDICES: {
+                int count = record.getInt();
+                List<MediaFile> files = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    files.add(playlist.getFileAt(record.getInt()));
+                }
+                playlist.removeAll(files);
+                break;
+            }
+            case RECORD_MOVE: {
+                int first = record.getInt();
+                int count = record.getInt();
+                int newStart = record.getInt();
+                // moveRange takes the destination before the move
+                playlist.moveRange(first, first + count, newStart < first ? newStart : newStart + count);
+                break;
+            }
+            case RECORD_CURRENT: {
+                int index = record.getInt();
+                if (index >= 0 && index < playlist.size()) {
+                    playlist.setCurrentIndex(index);
+                }
+                break;
+            }
+            default:
+                throw new IllegalStateException("Unknown journal record: " + type);
+        }
+    }
+
+    private File snapshotFile(long gen) {
+        return new File(directory, PREFIX + gen + SNAPSHOT_SUFFIX);
+    }
+
+    private File journalFile(long gen) {
+        return new File(directory, PREFIX + gen + JOURNAL_SUFFIX);
+    }
+
+    private static long generationOf(String name, String suffix) {
+        if (!name.startsWith(PREFIX) || !name.endsWith(suffix)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Snapshot waiting for the writer thread
+     */
+    private static class Compaction {
+        final long generation;
+        byte[] before; // Records of the old generation not yet written
+        List<MediaFile> files;
+        int currentIndex;
+
+        Compaction(long generation, byte[] before, List<MediaFile> files, int currentIndex) {
+            this.generation = generation;
+            this.before = before;
+            this.files = files;
+            this.currentIndex = currentIndex;
+        }
+    }
+}
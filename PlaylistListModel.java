@@ -0,0 +1,155 @@
+import java.util.List;
+import javax.swing.AbstractListModel;
+import javax.swing.SwingUtilities;
+
+/**
+ * Playlist List Model
+ * Swing list model that reads rows straight from an IPlaylistManager
+ * instead of copying them. Each playlist change event becomes one
+ * interval event, so a move or a tag update repaints only the rows it
+ * touched. Events published off the event dispatch thread are replayed
+ * on it; the reported size follows the events, so the list never sees
+ * rows that no event has announced yet.
+ */
+public class PlaylistListModel extends AbstractListModel<MediaFile> implements IPlaylistListener {
+    private static final long serialVersionUID = 1L;
+    // A scattered removal with more separate runs is announced as one block
+    private static final int MAX_REMOVED_RUNS = 64;
+    
+    private IPlaylistManager playlist;
+    private int size;
+    
+    /**
+     * Precondition: playlist must not be null
+     */
+    public PlaylistListModel(IPlaylistManager playlist) {
+        setPlaylist(playlist);
+    }
+    
+    public IPlaylistManager getPlaylist() {
+        return playlist;
+    }
+    
+    /**
+     * Show another playlist
+     * Precondition: playlist must not be null, called on the event dispatch thread
+     * Postcondition: model listens to the new playlist only
+     */
+    public void setPlaylist(IPlaylistManager playlist) {
+        if (playlist == null) {
+            throw new IllegalArgumentException("Playlist cannot be null");
+        }
+        if (playlist == this.playlist) {
+            return;
+        }
+        
+        if (this.playlist != null) {
+            this.playlist.removePlaylistListener(this);
+        }
+        this.playlist = playlist;
+        resize(0);
+        playlist.addPlaylistListener(this);
+        resize(playlist.size());
+    }
+    
+    @Override
+    public int getSize() {
+        return size;
+    }
+    
+    @Override
+    public MediaFile getElementAt(int index) {
+        // One snapshot, so a concurrent removal cannot slip in between check and read
+        List<MediaFile> files = playlist.getAllFiles();
+        // Rows may trail the playlist while events are still queued
+        return index < files.size() ? files.get(index) : null;
+    }
+    
+    @Override
+    public void onPlaylistChanged(PlaylistChangeEvent event) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            apply(event);
+        } else {
+            SwingUtilities.invokeLater(() -> apply(event));
+        }
+    }
+    
+    private void apply(PlaylistChangeEvent event) {
+        if (event.getSource() != playlist) {
+            return; // Queued before the playlist was switched
+        }
+        
+        int first = event.getFirstIndex();
+        int last = event.getLastIndex();
+        switch (event.getType()) {
+            case INSERTED:
+                size += event.getCount();
+                fireIntervalAdded(this, first, last);
+                break;
+            case REMOVED:
+                applyRemoved(event);
+                break;
+            case MOVED:
+                // Only the rows between the old and new place shift
+                int destination = event.getDestination();
+                fireContentsChanged(this, Math.min(first, destination),
+                    Math.max(last, destination + event.getCount() - 1));
+                break;
+            case UPDATED:
+                fireContentsChanged(this, first, last);
+                break;
+            case CHANGED:
+                resize(event.getSize()); // Later events are still queued behind this one
+                if (first < size) {
+                    fireContentsChanged(this, first, Math.min(last, size - 1));
+                }
+                break;
+        }
+    }
+    
+    private void applyRemoved(PlaylistChangeEvent event) {
+        if (event.isContiguous()) {
+            size -= event.getCount();
+            fireIntervalRemoved(this, event.getFirstIndex(), event.getLastIndex());
+            return;
+        }
+        
+        int[] indices = event.getIndices();
+        int runs = 1;
+        for (int i = 1; i < indices.length; i++) {
+            if (indices[i] != indices[i - 1] + 1) {
+                runs++;
+            }
+        }
+        
+        if (runs > MAX_REMOVED_RUNS) {
+            // Drop rows off the end and repaint everything after the first removal
+            size -= indices.length;
+            fireIntervalRemoved(this, size, size + indices.length - 1);
+            if (indices[0] < size) {
+                fireContentsChanged(this, indices[0], size - 1);
+            }
+            return;
+        }
+        
+        // Last run first so earlier positions stay valid
+        int end = indices.length - 1;
+        for (int i = indices.length - 1; i >= 0; i--) {
+            if (i == 0 || indices[i - 1] != indices[i] - 1) {
+                size -= end - i + 1;
+                fireIntervalRemoved(this, indices[i], indices[end]);
+                end = i - 1;
+            }
+        }
+    }
+    
+    private void resize(int newSize) {
+        int oldSize = size;
+        size = newSize;
+        if (newSize < oldSize) {
+            fireIntervalRemoved(this, newSize, oldSize - 1);
+        } else if (newSize > oldSize) {
+            fireIntervalAdded(this, oldSize, newSize - 1);
+        }
+    }
+}
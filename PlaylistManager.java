@@ -1,199 +1,640 @@
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Playlist Manager Component Implementation
  * Implements IPlaylistManager interface with concrete playlist operations
+ * A hash index from file to position makes membership and indexOf
+ * constant-time. Positions are exact below indexedUpTo; a removal only
+ * lowers that mark, and the next lookup beyond it renumbers the tail once.
+ *
+ * The playlist is safe to use from several threads. Contents and current
+ * index live in an immutable snapshot behind a volatile reference:
+ * size(), getFileAt(), getCurrentFile() and getAllFiles() read one
+ * snapshot without locking or copying, and a list returned by
+ * getAllFiles() never changes under its reader. Writers are synchronized
+ * on the manager and publish a new snapshot that shares all untouched
+ * parts of the old one (see PersistentList), then notify listeners while
+ * still holding the lock, so events arrive in order and match the
+ * published contents. Lookups that use the position index are
+ * synchronized as well. Searches only take the search index's own lock,
+ * so they do not queue behind writers; a search that runs while a load
+ * replaces the contents may see the old or the new files.
+ *
+ * Every edit of the contents or order is kept in an undo history as its
+ * change event and the versions before and after it. Consecutive versions
+ * share all but O(log n) nodes, so unlimited undo costs memory in
+ * proportion to the edits rather than the playlist. Undo and redo replay
+ * the inverse or the edit through the ordinary mutators, so listeners get
+ * the same fine-grained events as for any other edit. Loading a playlist
+ * starts a new history. A saved playlist is published as soon as its
+ * first batch is decoded; the rest is appended batch by batch. Loading
+ * takes the lock only to publish, so it can run on a worker thread while
+ * the playlist is shown and edited.
+ *
+ * A playlist created with a TrackPool stores the pool's instance of each
+ * file it adds or loads, so playlists sharing a pool share their tracks.
  */
 public class PlaylistManager implements IPlaylistManager {
-    private List<MediaFile> mediaFiles;
-    private int currentIndex;
+    private static final int LOAD_BATCH_SIZE = 4096; // Entries decoded per published batch
+    
+    private volatile Snapshot snapshot = new Snapshot(PersistentList.<MediaFile>empty(), -1);
+    private final Map<MediaFile, Integer> positions = new HashMap<>();
+    private int indexedUpTo;
     private Random random;
+    private final SearchIndex searchIndex = new SearchIndex();
+    private volatile boolean searchIndexPending; // Built on first search after a load
+    private final PlaylistSorter sorter = new PlaylistSorter();
+    private final List<IPlaylistListener> listeners = new CopyOnWriteArrayList<>();
+    private final Deque<Edit> undoHistory = new ArrayDeque<>();
+    private final Deque<Edit> redoHistory = new ArrayDeque<>();
+    private boolean replaying; // Edits made by undo or redo are not recorded
+    private final TrackPool trackPool;
+    private final Object loadLock = new Object(); // Serializes loads without blocking writers
+    private boolean moreToLoad; // Events are marked isLoading() while set
     
     public PlaylistManager() {
-        mediaFiles = new ArrayList<>();
-        currentIndex = -1;
+        this(null);
+    }
+    
+    /**
+     * Constructor for a playlist that shares its files with other playlists
+     * @param trackPool pool of shared instances, or null to keep the files as given
+     */
+    public PlaylistManager(TrackPool trackPool) {
+        this.trackPool = trackPool;
         random = new Random();
     }
     
+    private MediaFile intern(MediaFile file) {
+        return trackPool != null ? trackPool.intern(file) : file;
+    }
+    
+    /**
+     * Files and current index as of one moment
+     */
+    private static final class Snapshot {
+        final PersistentList<MediaFile> files;
+        final int currentIndex;
+        
+        Snapshot(PersistentList<MediaFile> files, int currentIndex) {
+            this.files = files;
+            this.currentIndex = currentIndex;
+        }
+    }
+    
+    private void publish(PersistentList<MediaFile> files, int currentIndex) {
+        snapshot = new Snapshot(files, currentIndex);
+    }
+    
+    /**
+     * One edit in the undo history: its event and the versions around it
+     */
+    private static final class Edit {
+        final PlaylistChangeEvent event;
+        final PersistentList<MediaFile> before;
+        final PersistentList<MediaFile> after;
+        
+        Edit(PlaylistChangeEvent event, PersistentList<MediaFile> before, PersistentList<MediaFile> after) {
+            this.event = event;
+            this.before = before;
+            this.after = after;
+        }
+    }
+    
+    /**
+     * Remember a published edit; called by writers before notifying
+     */
+    private void record(PersistentList<MediaFile> before, PlaylistChangeEvent event) {
+        if (!replaying) {
+            undoHistory.push(new Edit(event, before, snapshot.files));
+            redoHistory.clear();
+        }
+    }
+    
     @Override
-    public void addFile(MediaFile file) {
+    public synchronized void addFile(MediaFile file) {
         // Precondition check
         if (file == null) {
             throw new IllegalArgumentException("MediaFile cannot be null");
         }
         
         // Avoid duplicates
-        if (!mediaFiles.contains(file)) {
-            mediaFiles.add(file);
+        if (!positions.containsKey(file)) {
+            MediaFile shared = intern(file);
+            Snapshot current = snapshot;
+            int position = current.files.size();
+            positions.put(shared, position);
+            if (indexedUpTo == position) {
+                indexedUpTo++;
+            }
+            addToSearch(shared);
             // Set as current if it's the first file
-            if (mediaFiles.size() == 1) {
-                currentIndex = 0;
+            publish(current.files.plus(shared), position == 0 ? 0 : current.currentIndex);
+            PlaylistChangeEvent event = PlaylistChangeEvent.inserted(this, position, position);
+            record(current.files, event);
+            notifyChanged(event);
+        }
+    }
+    
+    @Override
+    public synchronized int addAll(int index, Collection<MediaFile> files) {
+        // Precondition check
+        if (files == null || files.contains(null)) {
+            throw new IllegalArgumentException("Files cannot be null or contain null");
+        }
+        Snapshot current = snapshot;
+        if (index < 0 || index > current.files.size()) {
+            throw new IndexOutOfBoundsException("Invalid index: " + index);
+        }
+        
+        // Skip files already present, in the playlist or earlier in the batch
+        List<MediaFile> added = new ArrayList<>(files.size());
+        Set<MediaFile> batch = new HashSet<>();
+        boolean pooled = false;
+        for (MediaFile file : files) {
+            if (!positions.containsKey(file) && batch.add(file)) {
+                MediaFile shared = intern(file);
+                pooled |= shared != file;
+                added.add(shared);
             }
         }
+        if (added.isEmpty()) {
+            return 0;
+        }
+        
+        int oldSize = current.files.size();
+        for (int i = 0; i < added.size(); i++) {
+            positions.put(added.get(i), index + i);
+            addToSearch(added.get(i));
+        }
+        int newSize = oldSize + added.size();
+        indexedUpTo = index == oldSize && indexedUpTo == oldSize ? newSize : Math.min(indexedUpTo, index);
+        
+        int currentIndex = current.currentIndex;
+        if (oldSize == 0) {
+            currentIndex = 0;
+        } else if (currentIndex >= index) {
+            currentIndex += added.size();
+        }
+        // Files restored by undo come back as the nodes they were removed as
+        boolean whole = !pooled && added.size() == files.size() && files instanceof PersistentList;
+        publish(current.files.insertAll(index, whole ? files : added), currentIndex);
+        PlaylistChangeEvent event = PlaylistChangeEvent.inserted(this, index, index + added.size() - 1);
+        record(current.files, event);
+        notifyChanged(event);
+        return added.size();
     }
     
     @Override
-    public boolean removeFile(MediaFile file) {
+    public synchronized boolean removeFile(MediaFile file) {
         if (file == null) {
             return false;
         }
         
-        int index = mediaFiles.indexOf(file);
+        int index = indexOf(file);
         if (index == -1) {
             return false;
         }
         
-        mediaFiles.remove(index);
+        Snapshot current = snapshot;
+        PersistentList<MediaFile> files = current.files.without(index, index + 1);
+        positions.remove(file);
+        indexedUpTo = Math.min(indexedUpTo, index);
+        removeFromSearch(file);
         
         // Adjust current index
+        int currentIndex = current.currentIndex;
         if (index < currentIndex) {
             currentIndex--;
         } else if (index == currentIndex) {
-            if (currentIndex >= mediaFiles.size()) {
-                currentIndex = mediaFiles.size() - 1;
+            if (currentIndex >= files.size()) {
+                currentIndex = files.size() - 1;
             }
         }
         
         // Reset index if playlist becomes empty
-        if (mediaFiles.isEmpty()) {
+        if (files.isEmpty()) {
+            currentIndex = -1;
+        }
+        
+        publish(files, currentIndex);
+        PlaylistChangeEvent event = PlaylistChangeEvent.removed(this, index, index);
+        record(current.files, event);
+        notifyChanged(event);
+        return true;
+    }
+    
+    @Override
+    public synchronized int removeAll(Collection<MediaFile> files) {
+        // Precondition check
+        if (files == null) {
+            throw new IllegalArgumentException("Files cannot be null");
+        }
+        
+        Snapshot current = snapshot;
+        int size = current.files.size();
+        boolean[] doomed = new boolean[size];
+        int count = 0;
+        int first = size;
+        for (MediaFile file : files) {
+            int index = indexOf(file);
+            if (index >= 0 && !doomed[index]) {
+                doomed[index] = true;
+                count++;
+                first = Math.min(first, index);
+            }
+        }
+        if (count == 0) {
+            return 0;
+        }
+        
+        // One pass over the tail; positions from the first stale one on are rewritten
+        int[] removed = new int[count];
+        int removedCount = 0;
+        int removedBeforeCurrent = 0;
+        int currentIndex = current.currentIndex;
+        int start = Math.min(first, indexedUpTo);
+        // Fewer removals than leaves: splice the runs kept so they share nodes with the old version
+        boolean splice = count * 32L < size - start;
+        List<MediaFile> kept = splice ? null : new ArrayList<>(size - start - count);
+        PersistentList<MediaFile> remaining = current.files.slice(0, start);
+        int keptFrom = start;
+        int keptCount = 0;
+        Iterator<MediaFile> tail = current.files.slice(start, size).iterator();
+        for (int read = start; read < size; read++) {
+            MediaFile file = tail.next();
+            if (doomed[read]) {
+                if (splice && keptFrom < read) {
+                    remaining = remaining.insertAll(remaining.size(), current.files.slice(keptFrom, read));
+                }
+                keptFrom = read + 1;
+                removed[removedCount++] = read;
+                positions.remove(file);
+                removeFromSearch(file);
+                if (read < currentIndex) {
+                    removedBeforeCurrent++;
+                }
+            } else {
+                positions.put(file, start + keptCount++);
+                if (!splice) {
+                    kept.add(file);
+                }
+            }
+        }
+        if (splice) {
+            remaining = remaining.insertAll(remaining.size(), current.files.slice(keptFrom, size));
+        } else {
+            remaining = remaining.insertAll(start, kept);
+        }
+        indexedUpTo = remaining.size();
+        
+        // Current moves to the next surviving file
+        if (remaining.isEmpty()) {
+            currentIndex = -1;
+        } else if (currentIndex >= 0) {
+            currentIndex = Math.min(currentIndex - removedBeforeCurrent, remaining.size() - 1);
+        }
+        publish(remaining, currentIndex);
+        PlaylistChangeEvent event = PlaylistChangeEvent.removed(this, removed);
+        record(current.files, event);
+        notifyChanged(event);
+        return count;
+    }
+    
+    @Override
+    public synchronized void removeRange(int fromIndex, int toIndex) {
+        // Precondition check
+        Snapshot current = snapshot;
+        if (fromIndex < 0 || toIndex > current.files.size() || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("Invalid range: " + fromIndex + ".." + toIndex);
+        }
+        if (fromIndex == toIndex) {
+            return;
+        }
+        
+        for (MediaFile file : current.files.slice(fromIndex, toIndex)) {
+            positions.remove(file);
+            removeFromSearch(file);
+        }
+        PersistentList<MediaFile> files = current.files.without(fromIndex, toIndex);
+        indexedUpTo = Math.min(indexedUpTo, fromIndex);
+        
+        int currentIndex = current.currentIndex;
+        if (files.isEmpty()) {
             currentIndex = -1;
+        } else if (currentIndex >= toIndex) {
+            currentIndex -= toIndex - fromIndex;
+        } else if (currentIndex >= fromIndex) {
+            currentIndex = Math.min(fromIndex, files.size() - 1);
+        }
+        publish(files, currentIndex);
+        PlaylistChangeEvent event = PlaylistChangeEvent.removed(this, fromIndex, toIndex - 1);
+        record(current.files, event);
+        notifyChanged(event);
+    }
+    
+    @Override
+    public synchronized boolean moveRange(int fromIndex, int toIndex, int destination) {
+        // Precondition check
+        Snapshot current = snapshot;
+        if (fromIndex < 0 || toIndex > current.files.size() || fromIndex >= toIndex) {
+            throw new IndexOutOfBoundsException("Invalid range: " + fromIndex + ".." + toIndex);
+        }
+        if (destination < 0 || destination > current.files.size()
+                || (destination > fromIndex && destination < toIndex)) {
+            throw new IndexOutOfBoundsException("Invalid destination: " + destination);
+        }
+        if (destination == fromIndex || destination == toIndex) {
+            return false;
+        }
+        
+        // Cut the range out and splice it back in; only the rows it passes are renumbered
+        int count = toIndex - fromIndex;
+        int spanStart = Math.min(fromIndex, destination);
+        int spanEnd = Math.max(toIndex, destination);
+        int newStart = destination < fromIndex ? destination : destination - count;
+        PersistentList<MediaFile> files = current.files.without(fromIndex, toIndex)
+            .insertAll(newStart, current.files.slice(fromIndex, toIndex));
+        int i = spanStart;
+        for (MediaFile file : files.slice(spanStart, spanEnd)) {
+            positions.put(file, i++);
         }
         
+        int currentIndex = current.currentIndex;
+        if (currentIndex >= fromIndex && currentIndex < toIndex) {
+            currentIndex += newStart - fromIndex;
+        } else if (currentIndex >= spanStart && currentIndex < spanEnd) {
+            currentIndex += destination < fromIndex ? count : -count;
+        }
+        publish(files, currentIndex);
+        PlaylistChangeEvent event = PlaylistChangeEvent.moved(this, fromIndex, toIndex - 1, newStart);
+        record(current.files, event);
+        notifyChanged(event);
         return true;
     }
     
     @Override
-    public MediaFile getNextFile() {
-        if (mediaFiles.isEmpty()) {
+    public synchronized MediaFile getNextFile() {
+        PersistentList<MediaFile> files = snapshot.files;
+        if (files.isEmpty()) {
             return null;
         }
         
-        currentIndex = (currentIndex + 1) % mediaFiles.size();
-        return mediaFiles.get(currentIndex);
+        int currentIndex = (snapshot.currentIndex + 1) % files.size();
+        publish(files, currentIndex);
+        return files.get(currentIndex);
     }
     
     @Override
-    public MediaFile getPreviousFile() {
-        if (mediaFiles.isEmpty()) {
+    public synchronized MediaFile getPreviousFile() {
+        PersistentList<MediaFile> files = snapshot.files;
+        if (files.isEmpty()) {
             return null;
         }
         
-        currentIndex = (currentIndex - 1 + mediaFiles.size()) % mediaFiles.size();
-        return mediaFiles.get(currentIndex);
+        int currentIndex = (snapshot.currentIndex - 1 + files.size()) % files.size();
+        publish(files, currentIndex);
+        return files.get(currentIndex);
     }
     
     @Override
     public MediaFile getCurrentFile() {
-        if (mediaFiles.isEmpty() || currentIndex < 0 || currentIndex >= mediaFiles.size()) {
+        Snapshot current = snapshot;
+        if (current.currentIndex < 0 || current.currentIndex >= current.files.size()) {
             return null;
         }
-        return mediaFiles.get(currentIndex);
+        return current.files.get(current.currentIndex);
     }
     
     @Override
     public MediaFile getFileAt(int index) {
         // Precondition check
-        if (index < 0 || index >= mediaFiles.size()) {
+        PersistentList<MediaFile> files = snapshot.files;
+        if (index < 0 || index >= files.size()) {
             throw new IndexOutOfBoundsException("Index out of bounds: " + index);
         }
-        return mediaFiles.get(index);
+        return files.get(index);
     }
     
     @Override
-    public boolean moveUp(MediaFile file) {
+    public synchronized boolean moveUp(MediaFile file) {
         if (file == null) {
             return false;
         }
         
-        int index = mediaFiles.indexOf(file);
+        int index = indexOf(file);
         if (index <= 0) {
             return false; // Can't move up first item or non-existent item
         }
         
-        Collections.swap(mediaFiles, index, index - 1);
-        
-        // Adjust current index if needed
-        if (index == currentIndex) {
-            currentIndex--;
-        } else if (index - 1 == currentIndex) {
-            currentIndex++;
-        }
-        
-        return true;
+        return moveRange(index, index + 1, index - 1);
     }
     
     @Override
-    public boolean moveDown(MediaFile file) {
+    public synchronized boolean moveDown(MediaFile file) {
         if (file == null) {
             return false;
         }
         
-        int index = mediaFiles.indexOf(file);
-        if (index == -1 || index >= mediaFiles.size() - 1) {
+        int index = indexOf(file);
+        if (index == -1 || index >= snapshot.files.size() - 1) {
             return false; // Can't move down last item or non-existent item
         }
         
-        Collections.swap(mediaFiles, index, index + 1);
+        return moveRange(index, index + 1, index + 2);
+    }
+    
+    @Override
+    public synchronized int indexOf(MediaFile file) {
+        if (file == null) {
+            return -1;
+        }
         
-        // Adjust current index if needed
-        if (index == currentIndex) {
-            currentIndex++;
-        } else if (index + 1 == currentIndex) {
-            currentIndex--;
+        Integer position = positions.get(file);
+        if (position == null) {
+            return -1;
+        }
+        if (position >= indexedUpTo) {
+            // Renumber everything after the earliest removal
+            PersistentList<MediaFile> files = snapshot.files;
+            int i = indexedUpTo;
+            for (MediaFile stale : files.slice(indexedUpTo, files.size())) {
+                positions.put(stale, i++);
+            }
+            indexedUpTo = files.size();
+            position = positions.get(file);
+        }
+        return position;
+    }
+    
+    /**
+     * Check membership without computing the position
+     * @return true if the playlist contains the file
+     */
+    public synchronized boolean contains(MediaFile file) {
+        return file != null && positions.containsKey(file);
+    }
+    
+    @Override
+    public void addPlaylistListener(IPlaylistListener listener) {
+        // Precondition check
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener cannot be null");
         }
         
-        return true;
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
     }
     
     @Override
-    public void clear() {
-        mediaFiles.clear();
-        currentIndex = -1;
+    public void removePlaylistListener(IPlaylistListener listener) {
+        if (listener != null) {
+            listeners.remove(listener);
+        }
+    }
+    
+    private void addToSearch(MediaFile file) {
+        if (!searchIndexPending) {
+            searchIndex.add(file);
+        }
+    }
+    
+    private void removeFromSearch(MediaFile file) {
+        if (!searchIndexPending) {
+            searchIndex.remove(file);
+        }
+    }
+    
+    /**
+     * Search index, built now if a load deferred it
+     * Takes the playlist lock only for that build.
+     */
+    private SearchIndex searchIndex() {
+        if (searchIndexPending) {
+            synchronized (this) {
+                if (searchIndexPending) {
+                    for (MediaFile file : snapshot.files) {
+                        searchIndex.add(file);
+                    }
+                    searchIndexPending = false;
+                }
+            }
+        }
+        return searchIndex;
+    }
+    
+    /**
+     * Notify listeners of a change that has been published
+     * Called by writers while holding the lock.
+     */
+    protected void notifyChanged(PlaylistChangeEvent event) {
+        if (moreToLoad) {
+            event = event.duringLoad();
+        }
+        for (IPlaylistListener listener : listeners) {
+            try {
+                listener.onPlaylistChanged(event);
+            } catch (Exception e) {
+                System.err.println("Error notifying listener: " + e.getMessage());
+            }
+        }
+    }
+    
+    @Override
+    public synchronized void clear() {
+        PersistentList<MediaFile> old = snapshot.files;
+        int oldSize = old.size();
+        publish(PersistentList.<MediaFile>empty(), -1);
+        positions.clear();
+        indexedUpTo = 0;
+        searchIndex.clear();
+        searchIndexPending = false;
+        sorter.clearCache();
+        if (oldSize > 0) {
+            PlaylistChangeEvent event = PlaylistChangeEvent.removed(this, 0, oldSize - 1);
+            record(old, event);
+            notifyChanged(event);
+        }
     }
     
     @Override
     public int size() {
-        return mediaFiles.size();
+        return snapshot.files.size();
     }
     
     @Override
     public boolean isEmpty() {
-        return mediaFiles.isEmpty();
+        return snapshot.files.isEmpty();
     }
     
     @Override
     public List<MediaFile> getAllFiles() {
-        return new ArrayList<>(mediaFiles); // Return defensive copy
+        return snapshot.files; // Immutable snapshot, no copy needed
     }
     
     @Override
-    public void setCurrentIndex(int index) {
+    public synchronized void setCurrentIndex(int index) {
         // Precondition check
-        if (index < -1 || index >= mediaFiles.size()) {
+        PersistentList<MediaFile> files = snapshot.files;
+        if (index < -1 || index >= files.size()) {
             throw new IndexOutOfBoundsException("Invalid index: " + index);
         }
-        this.currentIndex = index;
+        publish(files, index);
     }
     
     @Override
     public int getCurrentIndex() {
-        return currentIndex;
+        return snapshot.currentIndex;
     }
     
     @Override
-    public void shuffle() {
-        if (mediaFiles.size() <= 1) {
+    public synchronized void shuffle() {
+        Snapshot current = snapshot;
+        if (current.files.size() <= 1) {
             return;
         }
         
         MediaFile currentFile = getCurrentFile();
-        Collections.shuffle(mediaFiles, random);
+        List<MediaFile> shuffled = new ArrayList<>(current.files);
+        Collections.shuffle(shuffled, random);
+        indexedUpTo = 0;
         
         // Update current index to maintain current file if possible
-        if (currentFile != null) {
-            currentIndex = mediaFiles.indexOf(currentFile);
+        publish(PersistentList.of(shuffled), currentFile != null ? shuffled.indexOf(currentFile) : current.currentIndex);
+        PlaylistChangeEvent event = PlaylistChangeEvent.changed(this, 0, shuffled.size() - 1, shuffled.size());
+        record(current.files, event);
+        notifyChanged(event);
+    }
+    
+    @Override
+    public synchronized void sort(List<SortField> fields, boolean ascending) {
+        // Precondition check
+        if (fields == null || fields.isEmpty()) {
+            throw new IllegalArgumentException("Sort fields cannot be null or empty");
+        }
+        Snapshot current = snapshot;
+        if (current.files.size() <= 1) {
+            return;
+        }
+        
+        Object[] unsorted = current.files.toArray();
+        int[] order = sorter.sort(current.files, fields, ascending);
+        List<MediaFile> sorted = new ArrayList<>(order.length);
+        int sortedCurrent = -1;
+        for (int i = 0; i < order.length; i++) {
+            sorted.add((MediaFile) unsorted[order[i]]);
+            if (order[i] == current.currentIndex) {
+                sortedCurrent = i;
+            }
         }
+        publish(PersistentList.of(sorted), sortedCurrent);
+        indexedUpTo = 0;
+        PlaylistChangeEvent event = PlaylistChangeEvent.changed(this, 0, sorted.size() - 1, sorted.size());
+        record(current.files, event);
+        notifyChanged(event);
     }
     
     @Override
@@ -203,9 +644,15 @@ public class PlaylistManager implements IPlaylistManager {
             throw new IllegalArgumentException("Filename cannot be null or empty");
         }
         
-        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(filename))) {
-            out.writeObject(mediaFiles);
-            out.writeInt(currentIndex);
+        // Written from one snapshot; writers are not held up
+        Snapshot current = snapshot;
+        try {
+            PlaylistFormat format = PlaylistFormat.forFile(filename);
+            if (format == PlaylistFormat.RLL) {
+                PlaylistFile.write(new File(filename), current.files, current.currentIndex);
+            } else {
+                PlaylistExporter.write(new File(filename), format, current.files);
+            }
             return true;
         } catch (IOException e) {
             System.err.println("Error saving playlist: " + e.getMessage());
@@ -214,38 +661,324 @@ public class PlaylistManager implements IPlaylistManager {
     }
     
     @Override
-    @SuppressWarnings("unchecked")
     public boolean load(String filename) {
         // Precondition check
         if (filename == null || filename.trim().isEmpty()) {
             throw new IllegalArgumentException("Filename cannot be null or empty");
         }
         
-        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(filename))) {
-            mediaFiles = (List<MediaFile>) in.readObject();
-            currentIndex = in.readInt();
-            
-            // Validate loaded data
-            if (currentIndex >= mediaFiles.size()) {
-                currentIndex = mediaFiles.size() - 1;
+        synchronized (loadLock) {
+            File file = new File(filename);
+            PlaylistFormat format = PlaylistFormat.forFile(filename);
+            if (format != PlaylistFormat.RLL) {
+                return importFile(file, format);
             }
-            if (mediaFiles.isEmpty()) {
-                currentIndex = -1;
+            if (PlaylistFile.isLegacy(file)) {
+                return migrate(file);
             }
-            
+            try {
+                PlaylistFile playlist = PlaylistFile.open(file);
+                int loadedIndex = playlist.getCurrentIndex();
+                // Publish the first window, then decode and append the rest in batches
+                int window = Math.min(playlist.size(), LOAD_BATCH_SIZE);
+                List<MediaFile> first = decode(playlist, 0, window);
+                synchronized (this) {
+                    replaceContents(first, loadedIndex < window ? loadedIndex : -1);
+                }
+                MediaFile loadedCurrent = null;
+                try {
+                    for (int start = window; start < playlist.size(); start += LOAD_BATCH_SIZE) {
+                        List<MediaFile> batch = decode(playlist, start, Math.min(playlist.size(), start + LOAD_BATCH_SIZE));
+                        if (loadedIndex >= start && loadedIndex < start + batch.size()) {
+                            loadedCurrent = batch.get(loadedIndex - start);
+                        }
+                        appendLoaded(batch, start + LOAD_BATCH_SIZE < playlist.size());
+                    }
+                } finally {
+                    clearHistory();
+                }
+                if (loadedCurrent != null) {
+                    // Looked up again: edits made during the load may have moved it
+                    synchronized (this) {
+                        int index = indexOf(loadedCurrent);
+                        if (index != -1) {
+                            publish(snapshot.files, index);
+                        }
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                System.err.println("Error loading playlist: " + e.getMessage());
+                return false;
+            }
+        }
+    }
+    
+    /**
+     * Append a batch read by a load
+     * @param more true if further batches of the same load follow
+     */
+    private synchronized void appendLoaded(List<MediaFile> batch, boolean more) {
+        moreToLoad = more;
+        try {
+            addAll(snapshot.files.size(), batch);
+        } finally {
+            moreToLoad = false;
+        }
+    }
+    
+    private static List<MediaFile> decode(PlaylistFile playlist, int fromIndex, int toIndex) throws IOException {
+        List<MediaFile> batch = new ArrayList<>(toIndex - fromIndex);
+        for (int i = fromIndex; i < toIndex; i++) {
+            batch.add(playlist.get(i));
+        }
+        return batch;
+    }
+    
+    /**
+     * Stream a playlist written by another tool into this one, batch by batch
+     * On a parse error the entries read so far are kept.
+     */
+    private boolean importFile(File file, PlaylistFormat format) {
+        if (!file.isFile()) {
+            System.err.println("Error loading playlist: " + file + " not found");
+            return false;
+        }
+        
+        synchronized (this) {
+            clear();
+            searchIndexPending = true; // Index once at the end rather than per batch
+        }
+        // Each batch is held back until the next arrives, so the last one is known
+        List<List<MediaFile>> held = new ArrayList<>(1);
+        try {
+            PlaylistImporter.read(file, format, batch -> {
+                if (!batch.isEmpty()) {
+                    if (!held.isEmpty()) {
+                        appendLoaded(held.remove(0), true);
+                    }
+                    held.add(batch);
+                }
+            });
             return true;
-        } catch (IOException | ClassNotFoundException e) {
+        } catch (IOException e) {
             System.err.println("Error loading playlist: " + e.getMessage());
             return false;
+        } finally {
+            if (!held.isEmpty()) {
+                appendLoaded(held.remove(0), false);
+            }
+            synchronized (this) {
+                searchIndexPending = searchIndexPending && !snapshot.files.isEmpty();
+                clearHistory();
+            }
         }
     }
     
+    /**
+     * Load a playlist saved with Java serialization and rewrite it in the current format
+     * The conversion is one-way; older versions cannot read the rewritten file.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean migrate(File file) {
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(file))) {
+            List<MediaFile> loaded = (List<MediaFile>) in.readObject();
+            int loadedIndex = in.readInt();
+            synchronized (this) {
+                replaceContents(loaded, loadedIndex);
+            }
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            System.err.println("Error loading playlist: " + e.getMessage());
+            return false;
+        }
+        
+        Snapshot current = snapshot;
+        try {
+            PlaylistFile.write(file, current.files, current.currentIndex);
+        } catch (IOException e) {
+            System.err.println("Error converting playlist: " + e.getMessage());
+        }
+        return true;
+    }
+    
+    private void replaceContents(List<MediaFile> loaded, int loadedIndex) {
+        int oldSize = snapshot.files.size();
+        List<MediaFile> unique = new ArrayList<>(loaded.size());
+        positions.clear();
+        for (MediaFile file : loaded) {
+            MediaFile shared = intern(file);
+            if (positions.putIfAbsent(shared, unique.size()) == null) {
+                unique.add(shared);
+            }
+        }
+        indexedUpTo = unique.size();
+        searchIndex.clear();
+        searchIndexPending = !unique.isEmpty();
+        
+        // Validate loaded data
+        int currentIndex = loadedIndex;
+        if (currentIndex >= unique.size()) {
+            currentIndex = unique.size() - 1;
+        }
+        if (unique.isEmpty()) {
+            currentIndex = -1;
+        }
+        publish(PersistentList.of(unique), currentIndex);
+        clearHistory();
+        
+        int changed = Math.max(oldSize, unique.size());
+        if (changed > 0) {
+            notifyChanged(PlaylistChangeEvent.changed(this, 0, changed - 1, unique.size()));
+        }
+    }
+    
+    @Override
+    public synchronized boolean undo() {
+        Edit edit = undoHistory.poll();
+        if (edit == null) {
+            return false;
+        }
+        if (replay(edit, true)) {
+            redoHistory.push(edit);
+        }
+        return true;
+    }
+    
+    @Override
+    public synchronized boolean redo() {
+        Edit edit = redoHistory.poll();
+        if (edit == null) {
+            return false;
+        }
+        if (replay(edit, false)) {
+            undoHistory.push(edit);
+        }
+        return true;
+    }
+    
+    @Override
+    public synchronized boolean canUndo() {
+        return !undoHistory.isEmpty();
+    }
+    
+    @Override
+    public synchronized boolean canRedo() {
+        return !redoHistory.isEmpty();
+    }
+    
+    @Override
+    public synchronized void clearHistory() {
+        undoHistory.clear();
+        redoHistory.clear();
+    }
+    
+    /**
+     * Run edits that do not come from the user, e.g. a smart playlist's rule, without recording them
+     * Postcondition: if the edits changed the contents, the history is dropped,
+     * as the positions it holds no longer describe the playlist
+     */
+    synchronized void editUnrecorded(Runnable edits) {
+        PersistentList<MediaFile> before = snapshot.files;
+        replaying = true;
+        try {
+            edits.run();
+        } finally {
+            replaying = false;
+        }
+        if (snapshot.files != before) {
+            clearHistory();
+        }
+    }
+    
+    /**
+     * Undo or redo one edit through the ordinary mutators
+     * @return false if the result did not match the recorded version, in
+     * which case the history is dropped
+     */
+    private boolean replay(Edit edit, boolean undo) {
+        PlaylistChangeEvent event = edit.event;
+        int first = event.getFirstIndex();
+        int last = event.getLastIndex();
+        int count = event.getCount();
+        PersistentList<MediaFile> target = undo ? edit.before : edit.after;
+        replaying = true;
+        try {
+            switch (event.getType()) {
+                case INSERTED:
+                    if (undo) {
+                        removeRange(first, last + 1);
+                    } else {
+                        addAll(first, edit.after.slice(first, last + 1));
+                    }
+                    break;
+                case REMOVED:
+                    if (undo) {
+                        // Put each run back in ascending order, so each lands at its old position
+                        int[] indices = event.getIndices();
+                        int run = 0;
+                        for (int i = 1; i <= indices.length; i++) {
+                            if (i == indices.length || indices[i] != indices[i - 1] + 1) {
+                                addAll(indices[run], edit.before.slice(indices[run], indices[i - 1] + 1));
+                                run = i;
+                            }
+                        }
+                    } else if (event.isContiguous()) {
+                        removeRange(first, last + 1);
+                    } else {
+                        List<MediaFile> removed = new ArrayList<>(count);
+                        for (int index : event.getIndices()) {
+                            removed.add(edit.before.get(index));
+                        }
+                        removeAll(removed);
+                    }
+                    break;
+                case MOVED:
+                    int newStart = event.getDestination();
+                    if (undo) {
+                        moveRange(newStart, newStart + count, newStart > first ? first : first + count);
+                    } else {
+                        moveRange(first, last + 1, newStart > first ? newStart + count : newStart);
+                    }
+                    break;
+                default:
+                    // Shuffle or sort: the same files in another order
+                    reorder(target);
+                    break;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            System.err.println("Error replaying playlist edit: " + e.getMessage());
+        } finally {
+            replaying = false;
+        }
+        
+        if (snapshot.files.size() != target.size()) {
+            // E.g. a smart playlist's rule no longer admits a restored file
+            clearHistory();
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Publish the same files in another order, keeping the current file current
+     */
+    private void reorder(PersistentList<MediaFile> files) {
+        Snapshot current = snapshot;
+        if (files.size() != current.files.size()) {
+            return;
+        }
+        MediaFile currentFile = getCurrentFile();
+        indexedUpTo = 0;
+        publish(files, currentFile != null ? files.indexOf(currentFile) : current.currentIndex);
+        notifyChanged(PlaylistChangeEvent.changed(this, 0, files.size() - 1, files.size()));
+    }
+    
     /**
      * Get total duration of all files in playlist
      * @return total duration in seconds
      */
     public int getTotalDuration() {
-        return mediaFiles.stream().mapToInt(MediaFile::getDuration).sum();
+        return snapshot.files.stream().mapToInt(MediaFile::getDuration).sum();
     }
     
     /**
@@ -267,6 +1000,8 @@ public class PlaylistManager implements IPlaylistManager {
     
     /**
      * Find files by artist
+     * Matches artists with a word starting with each word of the given text,
+     * or else artists within a typo or two of it.
      * @param artist artist name to search for
      * @return list of matching files
      */
@@ -274,21 +1009,15 @@ public class PlaylistManager implements IPlaylistManager {
         if (artist == null || artist.trim().isEmpty()) {
             return new ArrayList<>();
         }
-        
-        List<MediaFile> result = new ArrayList<>();
-        String searchArtist = artist.toLowerCase().trim();
-        
-        for (MediaFile file : mediaFiles) {
-            if (file.getArtist().toLowerCase().contains(searchArtist)) {
-                result.add(file);
-            }
-        }
-        
-        return result;
+        List<MediaFile> result = searchIndex().search(SearchIndex.Field.ARTIST, artist, Integer.MAX_VALUE);
+        return result.isEmpty()
+            ? searchIndex().fuzzySearch(SearchIndex.Field.ARTIST, artist, Integer.MAX_VALUE) : result;
     }
     
     /**
      * Find files by title
+     * Matches titles with a word starting with each word of the given text,
+     * or else titles within a typo or two of it.
      * @param title title to search for
      * @return list of matching files
      */
@@ -296,17 +1025,44 @@ public class PlaylistManager implements IPlaylistManager {
         if (title == null || title.trim().isEmpty()) {
             return new ArrayList<>();
         }
-        
-        List<MediaFile> result = new ArrayList<>();
-        String searchTitle = title.toLowerCase().trim();
-        
-        for (MediaFile file : mediaFiles) {
-            if (file.getTitle().toLowerCase().contains(searchTitle)) {
-                result.add(file);
+        List<MediaFile> result = searchIndex().search(SearchIndex.Field.TITLE, title, Integer.MAX_VALUE);
+        return result.isEmpty()
+            ? searchIndex().fuzzySearch(SearchIndex.Field.TITLE, title, Integer.MAX_VALUE) : result;
+    }
+    
+    /**
+     * Re-index files whose tags changed and publish one UPDATED event
+     * @param files files to re-index; files not in the playlist are ignored
+     */
+    public synchronized void refreshSearchIndex(Collection<MediaFile> files) {
+        int first = Integer.MAX_VALUE;
+        int last = -1;
+        for (MediaFile file : files) {
+            if (!searchIndexPending) {
+                searchIndex.update(file);
+            }
+            int index = indexOf(file);
+            if (index >= 0) {
+                first = Math.min(first, index);
+                last = Math.max(last, index);
             }
         }
-        
-        return result;
+        if (last >= 0) {
+            notifyChanged(PlaylistChangeEvent.updated(this, first, last));
+        }
+    }
+    
+    /**
+     * Search title, artist and album
+     * Words may be restricted to a field, e.g. "artist:queen title:bohemian".
+     * Falls back to a typo-tolerant search when nothing matches exactly.
+     * @param query query text
+     * @param limit maximum number of results
+     * @return list of matching files
+     */
+    public List<MediaFile> search(String query, int limit) {
+        List<MediaFile> result = searchIndex().search(query, limit);
+        return result.isEmpty() ? searchIndex().fuzzySearch(query, limit) : result;
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,145 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Playlist Registry Component
+ * Named playlists open side by side. Every playlist created here shares
+ * the registry's TrackPool, so a track that appears in several playlists
+ * is held once and each entry costs one reference in its playlist.
+ * Names are unique and kept in the order the playlists were created.
+ *
+ * Thread-safe.
+ */
+public class PlaylistRegistry {
+    private final TrackPool trackPool;
+    private final Map<String, PlaylistManager> playlists = new LinkedHashMap<>();
+
+    public PlaylistRegistry() {
+        this(new TrackPool());
+    }
+
+    /**
+     * Constructor sharing tracks with a pool used elsewhere, e.g. by the library
+     * Precondition: trackPool must not be null
+     */
+    public PlaylistRegistry(TrackPool trackPool) {
+        if (trackPool == null) {
+            throw new IllegalArgumentException("Track pool cannot be null");
+        }
+        this.trackPool = trackPool;
+    }
+
+    /**
+     * Create an empty playlist
+     * Precondition: name must not be null, empty or already in use
+     * Postcondition: playlist is registered under the trimmed name
+     */
+    public synchronized PlaylistManager create(String name) {
+        String key = checkName(name);
+        PlaylistManager playlist = new PlaylistManager(trackPool);
+        playlists.put(key, playlist);
+        return playlist;
+    }
+
+    /**
+     * Create a playlist holding the contents of a saved playlist file
+     * The file is read without holding the registry's lock. To show the
+     * playlist while it loads, create() it and load it on a worker thread.
+     * Precondition: name must not be null, empty or already in use
+     * @return the new playlist, or null if the file could not be loaded
+     */
+    public PlaylistManager open(String name, String filename) {
+        synchronized (this) {
+            checkName(name);
+        }
+        PlaylistManager playlist = new PlaylistManager(trackPool);
+        if (!playlist.load(filename)) {
+            return null;
+        }
+        synchronized (this) {
+            playlists.put(checkName(name), playlist); // Taken meanwhile: fails like create()
+        }
+        return playlist;
+    }
+
+    public synchronized PlaylistManager get(String name) {
+        return name != null ? playlists.get(name.trim()) : null;
+    }
+
+    /**
+     * Find the name a playlist is registered under
+     * @return the name, or null if the playlist is not in this registry
+     */
+    public synchronized String getName(IPlaylistManager playlist) {
+        for (Map.Entry<String, PlaylistManager> entry : playlists.entrySet()) {
+            if (entry.getValue() == playlist) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the playlist names in creation order
+     * Postcondition: returns a copy
+     */
+    public synchronized List<String> getNames() {
+        return new ArrayList<>(playlists.keySet());
+    }
+
+    /**
+     * Get the playlists in creation order
+     * Postcondition: returns a copy
+     */
+    public synchronized List<PlaylistManager> getPlaylists() {
+        return new ArrayList<>(playlists.values());
+    }
+
+    /**
+     * Close a playlist; tracks no other playlist uses leave the pool
+     * @return true if a playlist had that name
+     */
+    public synchronized boolean remove(String name) {
+        return name != null && playlists.remove(name.trim()) != null;
+    }
+
+    /**
+     * Rename a playlist, keeping its place in the order
+     * Precondition: newName must not be null, empty or already in use
+     * @return false if no playlist had the old name
+     */
+    public synchronized boolean rename(String oldName, String newName) {
+        if (get(oldName) == null) {
+            return false;
+        }
+        String key = checkName(newName);
+        Map<String, PlaylistManager> renamed = new LinkedHashMap<>();
+        for (Map.Entry<String, PlaylistManager> entry : playlists.entrySet()) {
+            renamed.put(entry.getKey().equals(oldName.trim()) ? key : entry.getKey(), entry.getValue());
+        }
+        playlists.clear();
+        playlists.putAll(renamed);
+        return true;
+    }
+
+    public synchronized int size() {
+        return playlists.size();
+    }
+
+    public TrackPool getTrackPool() {
+        return trackPool;
+    }
+
+    private String checkName(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            throw new IllegalArgumentException("Name cannot be null or empty");
+        }
+        String key = name.trim();
+        if (playlists.containsKey(key)) {
+            throw new IllegalArgumentException("Playlist already exists: " + key);
+        }
+        return key;
+    }
+}
@@ -0,0 +1,175 @@
+import java.io.File;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Playlist Sorter Component
+ * Orders tracks by several fields using locale-aware collation without
+ * calling the Collator per comparison. Every distinct text gets a
+ * CollationKey once; the keys are kept in collation order and each text
+ * is mapped to its rank, so later sorts only look ranks up and merge in
+ * texts not seen before. Tracks are then sorted as a permutation of
+ * indexes, one stable primitive sort per field from the last field to the
+ * first, with Arrays.parallelSort splitting large playlists across cores.
+ * Tracks with equal keys keep their current order.
+ *
+ * Not thread-safe.
+ */
+public class PlaylistSorter {
+    private static final int MAX_CACHED_TEXTS = 1 << 20;
+
+    private final Collator collator;
+    private final ThreadLocal<Collator> collators;
+
+    // Known texts in collation order; equal-collating texts share a rank
+    private CollationKey[] sortedKeys = new CollationKey[0];
+    private final Map<String, Integer> ranks = new HashMap<>();
+
+    public PlaylistSorter() {
+        collator = Collator.getInstance();
+        collator.setStrength(Collator.SECONDARY); // Ignore case, not accents
+        collators = ThreadLocal.withInitial(() -> (Collator) collator.clone());
+    }
+
+    /**
+     * Compute sorted order of files
+     * Precondition: files and fields must not be null, fields not empty
+     * Postcondition: files is unchanged
+     * @param ascending false to reverse every field
+     * @return permutation: position i of the sorted list holds files.get(result[i])
+     */
+    public int[] sort(List<MediaFile> files, List<SortField> fields, boolean ascending) {
+        if (files == null || fields == null || fields.isEmpty()) {
+            throw new IllegalArgumentException("Files and sort fields cannot be null or empty");
+        }
+
+        int size = files.size();
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+
+        // Least significant field first; each pass keeps the order of ties
+        long[] keyed = new long[size];
+        for (int f = fields.size() - 1; f >= 0; f--) {
+            SortField field = fields.get(f);
+            int[] fieldRanks = field.isText() ? rankText(files, field) : rankNumber(files, field);
+            for (int i = 0; i < size; i++) {
+                int rank = fieldRanks[order[i]];
+                keyed[i] = (long) (ascending ? rank : -rank) << 32 | i;
+            }
+            Arrays.parallelSort(keyed);
+
+            int[] sorted = new int[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = order[(int) keyed[i]];
+            }
+            order = sorted;
+        }
+        return order;
+    }
+
+    /**
+     * Forget cached collation ranks
+     */
+    public void clearCache() {
+        sortedKeys = new CollationKey[0];
+        ranks.clear();
+    }
+
+    /**
+     * Collation rank of each file's text
+     */
+    private int[] rankText(List<MediaFile> files, SortField field) {
+        int size = files.size();
+        int[] result = new int[size];
+        String[] unknownTexts = null;
+        Map<String, Boolean> unknown = null;
+        for (int i = 0; i < size; i++) {
+            String text = textOf(files.get(i), field);
+            Integer rank = ranks.get(text);
+            if (rank != null) {
+                result[i] = rank;
+            } else {
+                if (unknown == null) {
+                    unknown = new HashMap<>();
+                    unknownTexts = new String[size];
+                }
+                unknown.put(text, Boolean.TRUE);
+                unknownTexts[i] = text;
+            }
+        }
+        if (unknown == null) {
+            return result;
+        }
+        if (!ranks.isEmpty() && ranks.size() + unknown.size() > MAX_CACHED_TEXTS) {
+            clearCache(); // Start over with only this playlist's texts
+            return rankText(files, field);
+        }
+
+        learn(unknown.keySet().toArray(new String[0]));
+        for (int i = 0; i < size; i++) {
+            if (unknownTexts[i] != null) {
+                result[i] = ranks.get(unknownTexts[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Merge new texts into the collation order and renumber ranks
+     */
+    private void learn(String[] texts) {
+        // Key creation dominates; spread it over the cores
+        CollationKey[] added = new CollationKey[texts.length];
+        IntStream.range(0, texts.length).parallel()
+            .forEach(i -> added[i] = collators.get().getCollationKey(texts[i]));
+        Arrays.parallelSort(added);
+
+        CollationKey[] merged = new CollationKey[sortedKeys.length + added.length];
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < merged.length; i++) {
+            if (b >= added.length || (a < sortedKeys.length && sortedKeys[a].compareTo(added[b]) <= 0)) {
+                merged[i] = sortedKeys[a++];
+            } else {
+                merged[i] = added[b++];
+            }
+        }
+
+        int rank = 0;
+        for (int i = 0; i < merged.length; i++) {
+            if (i > 0 && merged[i].compareTo(merged[i - 1]) != 0) {
+                rank++;
+            }
+            ranks.put(merged[i].getSourceString(), rank);
+        }
+        sortedKeys = merged;
+    }
+
+    private static int[] rankNumber(List<MediaFile> files, SortField field) {
+        int[] result = new int[files.size()];
+        for (int i = 0; i < result.length; i++) {
+            MediaFile file = files.get(i);
+            result[i] = field == SortField.YEAR ? file.getYear() : file.getDuration();
+        }
+        return result;
+    }
+
+    private static String textOf(MediaFile file, SortField field) {
+        String text;
+        switch (field) {
+            case TITLE: text = file.getTitle(); break;
+            case ARTIST: text = file.getArtist(); break;
+            case ALBUM: text = file.getAlbum(); break;
+            case GENRE: text = file.getGenre(); break;
+            default: text = new File(file.getFilePath()).getName(); break;
+        }
+        return text != null ? text : "";
+    }
+}
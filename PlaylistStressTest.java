@@ -0,0 +1,236 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Playlist Stress Test
+ * Runs writer, reader and search threads against one PlaylistManager and
+ * checks the guarantees its class comment makes:
+ *   - events arrive in order and match the published contents
+ *   - a list from getAllFiles() never changes and holds no duplicates
+ *   - the position index agrees with the contents once writers stop
+ *   - searches run alongside writers and only return files that were added
+ *
+ * Run next to run.sh, optionally with a duration in seconds:
+ *   javac -cp ".:lib/*" *.java
+ *   java -cp ".:lib/*" PlaylistStressTest 10
+ * Exits with status 1 on the first violation.
+ */
+public class PlaylistStressTest {
+    private static final int WRITERS = 3;
+    private static final int READERS = 3;
+    private static final int SEARCHERS = 2;
+
+    private final PlaylistManager playlist = new PlaylistManager();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private int eventSize; // Size implied by the events seen so far; listeners run under the lock
+    private long deadline;
+
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        if (seconds <= 0) {
+            throw new IllegalArgumentException("Duration must be positive");
+        }
+        PlaylistStressTest test = new PlaylistStressTest();
+        if (!test.run(seconds * 1000L)) {
+            System.exit(1);
+        }
+    }
+
+    private boolean run(long durationMillis) throws InterruptedException {
+        playlist.addPlaylistListener(event -> {
+            switch (event.getType()) {
+                case INSERTED:
+                    eventSize += event.getCount();
+                    break;
+                case REMOVED:
+                    eventSize -= event.getCount();
+                    break;
+                case CHANGED:
+                    eventSize = playlist.size();
+                    break;
+                default:
+                    break;
+            }
+            if (eventSize != playlist.size()) {
+                fail(new AssertionError("Events imply size " + eventSize + " but playlist has " + playlist.size()));
+            }
+        });
+
+        deadline = System.currentTimeMillis() + durationMillis;
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < WRITERS; i++) {
+            final long seed = i;
+            threads.add(new Thread(() -> write(new Random(seed)), "Writer-" + i));
+        }
+        for (int i = 0; i < READERS; i++) {
+            threads.add(new Thread(this::read, "Reader-" + i));
+        }
+        for (int i = 0; i < SEARCHERS; i++) {
+            final long seed = 100 + i;
+            threads.add(new Thread(() -> search(new Random(seed)), "Searcher-" + i));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        if (failure.get() == null) {
+            checkPositions();
+        }
+        if (failure.get() != null) {
+            System.err.println("FAILED: " + failure.get());
+            failure.get().printStackTrace();
+            return false;
+        }
+        System.out.println("OK: " + writes.get() + " writes, " + reads.get() + " snapshot reads, "
+            + searches.get() + " searches, final size " + playlist.size());
+        return true;
+    }
+
+    private void write(Random random) {
+        try {
+            while (running()) {
+                int size = playlist.size();
+                int operation = random.nextInt(9);
+                try {
+                    if (operation < 2 || size < 20) {
+                        List<MediaFile> batch = new ArrayList<>();
+                        for (int i = random.nextInt(20); i >= 0; i--) {
+                            batch.add(newTrack());
+                        }
+                        playlist.addAll(random.nextInt(size + 1), batch);
+                    } else if (operation == 2) {
+                        int from = random.nextInt(size);
+                        playlist.removeRange(from, Math.min(size, from + random.nextInt(10)));
+                    } else if (operation == 3) {
+                        int from = random.nextInt(size);
+                        int to = Math.min(size, from + 1 + random.nextInt(10));
+                        int destination = random.nextInt(size + 1);
+                        if (destination <= from || destination >= to) {
+                            playlist.moveRange(from, to, destination);
+                        }
+                    } else if (operation == 4) {
+                        List<MediaFile> files = playlist.getAllFiles();
+                        List<MediaFile> removed = new ArrayList<>();
+                        for (int i = 0; i < 5; i++) {
+                            removed.add(files.get(random.nextInt(files.size())));
+                        }
+                        playlist.removeAll(removed);
+                    } else if (operation == 5) {
+                        playlist.getNextFile();
+                    } else if (operation == 6) {
+                        playlist.setCurrentIndex(random.nextInt(size));
+                    } else if (operation == 7 && random.nextInt(50) == 0) {
+                        playlist.shuffle();
+                    } else if (operation == 8) {
+                        playlist.indexOf(playlist.getFileAt(random.nextInt(size)));
+                    }
+                    writes.incrementAndGet();
+                } catch (IndexOutOfBoundsException e) {
+                    // Size was read before another writer shrank the playlist
+                }
+            }
+        } catch (Throwable t) {
+            fail(t);
+        }
+    }
+
+    private void read() {
+        try {
+            while (running()) {
+                List<MediaFile> files = playlist.getAllFiles();
+                int size = files.size();
+                Set<MediaFile> seen = new HashSet<>();
+                int count = 0;
+                for (MediaFile file : files) {
+                    if (file == null || !seen.add(file)) {
+                        throw new AssertionError("Null or duplicate entry in a snapshot");
+                    }
+                    count++;
+                }
+                if (count != size || files.size() != size) {
+                    throw new AssertionError("Snapshot changed while it was read");
+                }
+                if (playlist.getCurrentIndex() < -1) {
+                    throw new AssertionError("Invalid current index " + playlist.getCurrentIndex());
+                }
+                reads.incrementAndGet();
+            }
+        } catch (Throwable t) {
+            fail(t);
+        }
+    }
+
+    private void search(Random random) {
+        try {
+            while (running()) {
+                int issued = Math.max(1, nextId.get());
+                String word = "track" + random.nextInt(issued);
+                checkResults(playlist.search(word, 20));
+                checkResults(playlist.findByArtist("artist" + random.nextInt(100)));
+                checkResults(playlist.findByTitle(word));
+                searches.incrementAndGet();
+            }
+        } catch (Throwable t) {
+            fail(t);
+        }
+    }
+
+    private void checkResults(List<MediaFile> results) {
+        int issued = nextId.get();
+        for (MediaFile file : results) {
+            String name = file.getFilePath();
+            int id = Integer.parseInt(name.substring(name.lastIndexOf('k') + 1, name.lastIndexOf('.')));
+            if (id < 1 || id > issued) {
+                throw new AssertionError("Search returned a file that was never added: " + name);
+            }
+        }
+    }
+
+    /**
+     * With writers stopped, indexOf must agree with the contents
+     */
+    private void checkPositions() {
+        List<MediaFile> files = playlist.getAllFiles();
+        for (int i = 0; i < files.size(); i++) {
+            if (playlist.indexOf(files.get(i)) != i) {
+                fail(new AssertionError("indexOf disagrees with the contents at " + i));
+                return;
+            }
+        }
+        for (MediaFile file : playlist.search("track", Integer.MAX_VALUE)) {
+            if (!playlist.contains(file)) {
+                fail(new AssertionError("Search index still holds a removed file: " + file.getFilePath()));
+                return;
+            }
+        }
+    }
+
+    private MediaFile newTrack() {
+        int id = nextId.incrementAndGet();
+        MediaFile file = new MediaFile("/stress/artist" + (id % 100) + " - track" + id + ".mp3");
+        file.setArtist("artist" + (id % 100));
+        file.setTitle("track" + id);
+        return file;
+    }
+
+    private boolean running() {
+        return failure.get() == null && System.currentTimeMillis() < deadline;
+    }
+
+    private void fail(Throwable t) {
+        failure.compareAndSet(null, t);
+    }
+}
@@ -0,0 +1,578 @@
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Search Index Component
+ * Inverted index over title, artist and album of media files. Field text
+ * is normalized once when a file is added (accents folded, lower case,
+ * split into words) and every word points to a posting list of documents.
+ * Query words match as prefixes, so the index answers search-as-you-type.
+ *
+ * A query is driven by its most selective word: only that word's postings
+ * are enumerated and the other words are checked against the stored
+ * normalized text, without allocating per candidate; a per-document bit
+ * signature of word beginnings rejects most candidates before the text is
+ * touched. The distinct words also feed a trigram index, which maps
+ * misspelled query words to the closest indexed words. Removed files are
+ * tombstoned and the postings rebuilt once enough of them pile up.
+ */
+public class SearchIndex {
+    /**
+     * Searchable fields; a query word is restricted to one with "field:word"
+     */
+    public enum Field {
+        TITLE, ARTIST, ALBUM;
+
+        static Field parse(String name) {
+            for (Field field : values()) {
+                if (field.name().equalsIgnoreCase(name)) {
+                    return field;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final Field[] FIELDS = Field.values();
+    private static final int ALL_FIELDS = (1 << FIELDS.length) - 1;
+    private static final int MIN_REBUILD_SIZE = 1024;
+    private static final int MAX_FUZZY_WORDS = 4;
+    private static final int MAX_FUZZY_CANDIDATES = 64;
+
+    private final List<MediaFile> documents = new ArrayList<>();
+    private final Map<MediaFile, Integer> documentIds = new HashMap<>();
+    private final List<List<String>> fieldTexts = new ArrayList<>();
+    private long[][] signatures = new long[FIELDS.length][16];
+    private long[] documentSignatures = new long[16];
+    private final List<TreeMap<String, IntList>> postings = new ArrayList<>();
+    private final Map<String, String> sharedTexts = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    private int deletedCount;
+
+    // Distinct words of all fields, for typo-tolerant lookups
+    private final TrigramIndex vocabulary = new TrigramIndex();
+
+    // Reused between queries to skip candidates found through several words
+    private final BitSet seen = new BitSet();
+    private final IntList seenIds = new IntList();
+    private final byte[][] fuzzyScores = new byte[MAX_FUZZY_WORDS][];
+    private final IntList[] fuzzyTouched = new IntList[MAX_FUZZY_WORDS];
+
+    public SearchIndex() {
+        for (int i = 0; i < FIELDS.length; i++) {
+            fieldTexts.add(new ArrayList<>());
+            postings.add(new TreeMap<>());
+        }
+        for (int k = 0; k < MAX_FUZZY_WORDS; k++) {
+            fuzzyTouched[k] = new IntList();
+        }
+    }
+
+    /**
+     * Add a file to the index
+     * Precondition: file must not be null
+     * Postcondition: file is found by its title, artist and album words
+     */
+    public synchronized void add(MediaFile file) {
+        if (file == null) {
+            throw new IllegalArgumentException("MediaFile cannot be null");
+        }
+        if (documentIds.containsKey(file)) {
+            return;
+        }
+
+        int id = documents.size();
+        documents.add(file);
+        documentIds.put(file, id);
+        indexFields(id, file);
+        if (id == documentSignatures.length) {
+            documentSignatures = Arrays.copyOf(documentSignatures, id * 2);
+        }
+        for (int f = 0; f < FIELDS.length; f++) {
+            documentSignatures[id] |= signatures[f][id];
+        }
+    }
+
+    /**
+     * Remove a file from the index
+     * @return true if the file was indexed
+     */
+    public synchronized boolean remove(MediaFile file) {
+        Integer id = file == null ? null : documentIds.remove(file);
+        if (id == null) {
+            return false;
+        }
+
+        documents.set(id, null);
+        deleted.set(id);
+        deletedCount++;
+        if (deletedCount >= MIN_REBUILD_SIZE && deletedCount * 4 > documents.size()) {
+            rebuild();
+        }
+        return true;
+    }
+
+    /**
+     * Re-index a file whose tags changed, e.g. after they were read in the background
+     */
+    public synchronized void update(MediaFile file) {
+        if (remove(file)) {
+            add(file);
+        }
+    }
+
+    public synchronized void clear() {
+        documents.clear();
+        documentIds.clear();
+        for (int i = 0; i < FIELDS.length; i++) {
+            fieldTexts.get(i).clear();
+            signatures[i] = new long[16];
+            postings.get(i).clear();
+        }
+        documentSignatures = new long[16];
+        sharedTexts.clear();
+        vocabulary.clear();
+        deleted.clear();
+        deletedCount = 0;
+    }
+
+    public synchronized int size() {
+        return documentIds.size();
+    }
+
+    /**
+     * Search with a query such as "love" or "artist:beat title:let it"
+     * Every word must match the start of a word in its field (any field when unqualified).
+     * @param query query text
+     * @param limit maximum number of results
+     * @return matching files in index order
+     */
+    public synchronized List<MediaFile> search(String query, int limit) {
+        List<MediaFile> results = new ArrayList<>();
+        if (query == null || limit <= 0) {
+            return results;
+        }
+
+        List<String> words = new ArrayList<>();
+        IntList masks = new IntList();
+        parseQuery(query, words, masks);
+        if (words.isEmpty()) {
+            return results;
+        }
+
+        // Drive the query with the word that has the fewest postings
+        int driver = 0;
+        long driverCost = Long.MAX_VALUE;
+        for (int i = 0; i < words.size() && driverCost > 0; i++) {
+            long cost = estimateCost(words.get(i), masks.get(i), driverCost);
+            if (cost < driverCost) {
+                driver = i;
+                driverCost = cost;
+            }
+        }
+
+        long required = 0;
+        for (String word : words) {
+            required |= wordSignature(word);
+        }
+
+        try {
+            String driverWord = words.get(driver);
+            for (int f = 0; f < FIELDS.length && results.size() < limit; f++) {
+                if ((masks.get(driver) & (1 << f)) == 0) {
+                    continue;
+                }
+                for (IntList list : prefixRange(f, driverWord).values()) {
+                    for (int i = 0; i < list.size() && results.size() < limit; i++) {
+                        int id = list.get(i);
+                        if (deleted.get(id) || seen.get(id)) {
+                            continue;
+                        }
+                        seen.set(id);
+                        seenIds.add(id);
+                        if (matchesAll(id, words, required, masks, driver)) {
+                            results.add(documents.get(id));
+                        }
+                    }
+                }
+            }
+        } finally {
+            for (int i = 0; i < seenIds.size(); i++) {
+                seen.clear(seenIds.get(i));
+            }
+            seenIds.clear();
+        }
+        return results;
+    }
+
+    /**
+     * Search a single field
+     */
+    public List<MediaFile> search(Field field, String text, int limit) {
+        if (field == null || text == null) {
+            return new ArrayList<>();
+        }
+        return search(fieldQuery(field, text), limit);
+    }
+
+    /**
+     * Search tolerating typos: every query word matches whole words within
+     * one edit (two for words longer than five letters)
+     * @param query query text, same syntax as search
+     * @param limit maximum number of results
+     * @return matching files, closest matches first
+     */
+    public synchronized List<MediaFile> fuzzySearch(String query, int limit) {
+        List<MediaFile> results = new ArrayList<>();
+        if (query == null || limit <= 0) {
+            return results;
+        }
+
+        List<String> words = new ArrayList<>();
+        IntList masks = new IntList();
+        parseQuery(query, words, masks);
+        int wordCount = Math.min(words.size(), MAX_FUZZY_WORDS);
+        if (wordCount == 0) {
+            return results;
+        }
+        ensureFuzzyScratch(wordCount);
+
+        try {
+            // Best distance + 1 per document and query word, 0 when not matched
+            int driver = -1;
+            IntList termIds = new IntList();
+            IntList termDistances = new IntList();
+            for (int k = 0; k < wordCount; k++) {
+                String word = words.get(k);
+                termIds.clear();
+                termDistances.clear();
+                vocabulary.findSimilar(word, maxEdits(word), MAX_FUZZY_CANDIDATES, termIds, termDistances);
+                if (wordCount == 1) {
+                    // Terms arrive closest first, so the first documents found are the best
+                    collectPostings(termIds, masks.get(0), limit, results);
+                    return results;
+                }
+
+                for (int t = 0; t < termIds.size(); t++) {
+                    String term = vocabulary.get(termIds.get(t));
+                    byte score = (byte) (termDistances.get(t) + 1);
+                    for (int f = 0; f < FIELDS.length; f++) {
+                        IntList list = (masks.get(k) & (1 << f)) != 0 ? postings.get(f).get(term) : null;
+                        for (int i = 0; list != null && i < list.size(); i++) {
+                            int id = list.get(i);
+                            byte current = fuzzyScores[k][id];
+                            if (!deleted.get(id) && (current == 0 || score < current)) {
+                                if (current == 0) {
+                                    fuzzyTouched[k].add(id);
+                                }
+                                fuzzyScores[k][id] = score;
+                            }
+                        }
+                    }
+                }
+                if (fuzzyTouched[k].isEmpty()) {
+                    return results;
+                }
+                if (driver < 0 || fuzzyTouched[k].size() < fuzzyTouched[driver].size()) {
+                    driver = k;
+                }
+            }
+
+            // Documents matching every word, ranked by total distance
+            IntList candidates = fuzzyTouched[driver];
+            long[] ranked = new long[candidates.size()];
+            int rankedCount = 0;
+            for (int i = 0; i < candidates.size(); i++) {
+                int id = candidates.get(i);
+                int total = 0;
+                for (int k = 0; k < wordCount && total >= 0; k++) {
+                    int score = fuzzyScores[k][id];
+                    total = score == 0 ? -1 : total + score - 1;
+                }
+                if (total >= 0) {
+                    ranked[rankedCount++] = (long) total << 32 | id;
+                }
+            }
+            Arrays.sort(ranked, 0, rankedCount);
+            for (int i = 0; i < rankedCount && i < limit; i++) {
+                results.add(documents.get((int) ranked[i]));
+            }
+            return results;
+        } finally {
+            for (int k = 0; k < wordCount; k++) {
+                for (int i = 0; i < fuzzyTouched[k].size(); i++) {
+                    fuzzyScores[k][fuzzyTouched[k].get(i)] = 0;
+                }
+                fuzzyTouched[k].clear();
+            }
+        }
+    }
+
+    /**
+     * Search a single field tolerating typos
+     */
+    public List<MediaFile> fuzzySearch(Field field, String text, int limit) {
+        if (field == null || text == null) {
+            return new ArrayList<>();
+        }
+        return fuzzySearch(fieldQuery(field, text), limit);
+    }
+
+    /**
+     * Normalize text for indexing: fold accents, lower case, words separated by single spaces
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+
+        boolean ascii = true;
+        for (int i = 0; i < text.length() && ascii; i++) {
+            ascii = text.charAt(i) < 0x80;
+        }
+        String folded = ascii ? text : Normalizer.normalize(text, Normalizer.Form.NFD);
+
+        StringBuilder sb = new StringBuilder(folded.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < folded.length(); i++) {
+            char c = folded.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue; // Accent split off by NFD
+            }
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace && sb.length() > 0) {
+                    sb.append(' ');
+                }
+                pendingSpace = false;
+                sb.append(Character.toLowerCase(c));
+            } else {
+                pendingSpace = true;
+            }
+        }
+        return sb.toString();
+    }
+
+    private void indexFields(int id, MediaFile file) {
+        String[] values = {file.getTitle(), file.getArtist(), file.getAlbum()};
+        for (int f = 0; f < FIELDS.length; f++) {
+            // Artist and album text repeats across tracks, keep one copy
+            String text = FIELDS[f] == Field.TITLE ? normalize(values[f]) : share(normalize(values[f]));
+            fieldTexts.get(f).add(text);
+            if (id == signatures[f].length) {
+                signatures[f] = Arrays.copyOf(signatures[f], id * 2);
+            }
+            signatures[f][id] = signature(text);
+            if (text.isEmpty()) {
+                continue;
+            }
+
+            TreeMap<String, IntList> fieldPostings = postings.get(f);
+            String[] words = text.split(" ");
+            for (int w = 0; w < words.length; w++) {
+                if (!containsWord(words, w)) {
+                    IntList list = fieldPostings.get(words[w]);
+                    if (list == null) {
+                        list = new IntList();
+                        fieldPostings.put(words[w], list);
+                        vocabulary.add(words[w]);
+                    }
+                    list.add(id);
+                }
+            }
+        }
+    }
+
+    private void rebuild() {
+        List<MediaFile> live = new ArrayList<>(documentIds.size());
+        for (MediaFile file : documents) {
+            if (file != null) {
+                live.add(file);
+            }
+        }
+        clear();
+        for (MediaFile file : live) {
+            add(file);
+        }
+    }
+
+    private void collectPostings(IntList termIds, int mask, int limit, List<MediaFile> results) {
+        try {
+            for (int t = 0; t < termIds.size() && results.size() < limit; t++) {
+                String term = vocabulary.get(termIds.get(t));
+                for (int f = 0; f < FIELDS.length && results.size() < limit; f++) {
+                    IntList list = (mask & (1 << f)) != 0 ? postings.get(f).get(term) : null;
+                    for (int i = 0; list != null && i < list.size() && results.size() < limit; i++) {
+                        int id = list.get(i);
+                        if (!deleted.get(id) && !seen.get(id)) {
+                            seen.set(id);
+                            seenIds.add(id);
+                            results.add(documents.get(id));
+                        }
+                    }
+                }
+            }
+        } finally {
+            for (int i = 0; i < seenIds.size(); i++) {
+                seen.clear(seenIds.get(i));
+            }
+            seenIds.clear();
+        }
+    }
+
+    private static String fieldQuery(Field field, String text) {
+        StringBuilder query = new StringBuilder();
+        for (String word : normalize(text).split(" ")) {
+            if (!word.isEmpty()) {
+                query.append(field.name()).append(':').append(word).append(' ');
+            }
+        }
+        return query.toString();
+    }
+
+    private static int maxEdits(String word) {
+        return word.length() <= 2 ? 0 : word.length() <= 5 ? 1 : 2;
+    }
+
+    private void ensureFuzzyScratch(int wordCount) {
+        for (int k = 0; k < wordCount; k++) {
+            if (fuzzyScores[k] == null || fuzzyScores[k].length < documents.size()) {
+                fuzzyScores[k] = new byte[Math.max(documents.size(), 16)];
+            }
+        }
+    }
+
+    private void parseQuery(String query, List<String> words, IntList masks) {
+        for (String part : query.trim().split("\\s+")) {
+            int mask = ALL_FIELDS;
+            int colon = part.indexOf(':');
+            if (colon > 0) {
+                Field field = Field.parse(part.substring(0, colon));
+                if (field != null) {
+                    mask = 1 << field.ordinal();
+                    part = part.substring(colon + 1);
+                }
+            }
+
+            String normalized = normalize(part);
+            if (normalized.isEmpty()) {
+                continue;
+            }
+            for (String word : normalized.split(" ")) {
+                words.add(word);
+                masks.add(mask);
+            }
+        }
+    }
+
+    private long estimateCost(String word, int mask, long limit) {
+        long cost = 0;
+        for (int f = 0; f < FIELDS.length && cost < limit; f++) {
+            if ((mask & (1 << f)) == 0) {
+                continue;
+            }
+            for (IntList list : prefixRange(f, word).values()) {
+                cost += list.size();
+                if (cost >= limit) {
+                    break; // Already worse than the best driver
+                }
+            }
+        }
+        return cost;
+    }
+
+    private NavigableMap<String, IntList> prefixRange(int field, String prefix) {
+        return postings.get(field).subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    private boolean matchesAll(int id, List<String> words, long required, IntList masks, int skip) {
+        if ((documentSignatures[id] & required) != required) {
+            return false; // Some word begins no word of the document at all
+        }
+        for (int i = 0; i < words.size(); i++) {
+            if (i == skip) {
+                continue;
+            }
+            String word = words.get(i);
+            long wordRequired = wordSignature(word);
+            boolean matched = false;
+            for (int f = 0; f < FIELDS.length && !matched; f++) {
+                if ((masks.get(i) & (1 << f)) != 0 && (signatures[f][id] & wordRequired) == wordRequired) {
+                    matched = containsWordPrefix(fieldTexts.get(f).get(id), word);
+                }
+            }
+            if (!matched) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Bits for the first letter (low half) and first two letters (high half) of every word
+     */
+    private static long signature(String text) {
+        long signature = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (i == 0 || text.charAt(i - 1) == ' ') {
+                char next = i + 1 < text.length() ? text.charAt(i + 1) : ' ';
+                signature |= wordSignature(text.charAt(i), next);
+            }
+        }
+        return signature;
+    }
+
+    private static long wordSignature(String word) {
+        return word.length() == 1 ? 1L << bucket(word.charAt(0)) : wordSignature(word.charAt(0), word.charAt(1));
+    }
+
+    private static long wordSignature(char first, char second) {
+        long pair = second == ' ' ? 0 : 1L << (32 + ((bucket(first) * 31 + bucket(second)) & 31));
+        return 1L << bucket(first) | pair;
+    }
+
+    private static int bucket(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a';
+        }
+        return c >= '0' && c <= '9' ? 26 : 27 + c % 5;
+    }
+
+    /**
+     * Check whether a word of normalized text starts with the given prefix
+     */
+    private static boolean containsWordPrefix(String text, String prefix) {
+        int from = 0;
+        while (from + prefix.length() <= text.length()) {
+            if (text.startsWith(prefix, from)) {
+                return true;
+            }
+            int space = text.indexOf(' ', from);
+            if (space < 0) {
+                return false;
+            }
+            from = space + 1;
+        }
+        return false;
+    }
+
+    private static boolean containsWord(String[] words, int index) {
+        for (int i = 0; i < index; i++) {
+            if (words[i].equals(words[index])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String share(String text) {
+        String shared = sharedTexts.putIfAbsent(text, text);
+        return shared != null ? shared : text;
+    }
+}
@@ -0,0 +1,303 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Shuffle Order Component
+ * Random play order over a playlist, kept apart from the playlist so its
+ * own order is never touched. The order is a permutation of positions
+ * stored in an int array and dealt lazily with an incremental
+ * Fisher-Yates shuffle:
+ *
+ *   order[0, dealt)       tracks played this round, in play order
+ *   order[dealt, size)    tracks not yet played, in no particular order
+ *   cursor                position of the current track in order
+ *
+ * next() moves the cursor forward, drawing one random track from the
+ * undealt part once the history is used up; previous() walks the history
+ * back. Both are O(1), and every track plays once per round. slot[] is
+ * the inverse permutation, so a track chosen by hand is found in O(1).
+ *
+ * The order follows the playlist through its change events: inserted
+ * tracks join the undealt part, removed tracks leave it and moved tracks
+ * are renumbered, each in one pass over the arrays without reshuffling.
+ * Sorting, shuffling or reloading the playlist starts a new round.
+ *
+ * Subclasses choose which unplayed track comes next by overriding
+ * pick(), and follow the playlist through roundStarted(), renumbered()
+ * and inserted().
+ */
+public class ShuffleOrder implements IPlaylistListener {
+    private final IPlaylistManager playlist;
+    private final Random random;
+    private int[] order = new int[0];
+    private int[] slot = new int[0];
+    private int size;
+    private int dealt;
+    private int cursor = -1;
+
+    /**
+     * Precondition: playlist must not be null
+     * Postcondition: a new round starts at the playlist's current track
+     */
+    public ShuffleOrder(IPlaylistManager playlist) {
+        this(playlist, new Random());
+    }
+
+    /**
+     * Constructor with a given random source for repeatable orders
+     */
+    public ShuffleOrder(IPlaylistManager playlist, Random random) {
+        if (playlist == null || random == null) {
+            throw new IllegalArgumentException("Playlist and random cannot be null");
+        }
+        this.playlist = playlist;
+        this.random = random;
+        reset(playlist.getCurrentIndex());
+    }
+
+    /**
+     * Start a new round
+     * @param start index of the track that opens the round, or -1 for none
+     */
+    public synchronized void reset(int start) {
+        size = playlist.size();
+        if (order.length < size) {
+            order = new int[size];
+            slot = new int[size];
+        }
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+            slot[i] = i;
+        }
+        dealt = 0;
+        cursor = -1;
+        if (start >= 0 && start < size) {
+            deal(start);
+        }
+        roundStarted();
+    }
+
+    /**
+     * Advance to the next track, starting a new round after the last one
+     * @return playlist index of the next track, or -1 if the playlist is empty
+     */
+    public synchronized int next() {
+        if (size == 0) {
+            return -1;
+        }
+        if (cursor + 1 < dealt) {
+            return order[++cursor];
+        }
+        int previous = cursor >= 0 ? order[cursor] : -1;
+        if (dealt == size) {
+            // Round over; the track just played becomes unplayed again
+            dealt = 0;
+            cursor = -1;
+            roundStarted();
+        }
+        int track = pick(previous);
+        deal(track);
+        return track;
+    }
+
+    /**
+     * Step back through the tracks played this round
+     * @return playlist index of the previous track, or -1 at the start of the round
+     */
+    public synchronized int previous() {
+        return cursor > 0 ? order[--cursor] : -1;
+    }
+
+    /**
+     * Check whether this round has tracks after the current one
+     */
+    public synchronized boolean hasNext() {
+        return cursor + 1 < size;
+    }
+
+    /**
+     * Make a track the current one, e.g. when the user picks it
+     * A track already played this round moves the cursor back into the
+     * history; any other track is dealt next.
+     */
+    public synchronized void played(int index) {
+        if (index < 0 || index >= size) {
+            return;
+        }
+        if (slot[index] < dealt) {
+            cursor = slot[index];
+        } else {
+            deal(index);
+        }
+    }
+
+    /**
+     * Choose the next track among those not played this round
+     * Called with the lock held. The default draws uniformly at random,
+     * except that a new round does not open with the track just played.
+     * Precondition: at least one track is unplayed
+     * @param previous track played before this pick, or -1
+     * @return index of an unplayed track
+     */
+    protected int pick(int previous) {
+        int end = size;
+        if (previous >= 0 && !isDealt(previous) && size - dealt > 1) {
+            swap(slot[previous], size - 1);
+            end--;
+        }
+        return order[dealt + random.nextInt(end - dealt)];
+    }
+    
+    /**
+     * Called when a round starts, after the opening track (if any) is dealt
+     */
+    protected void roundStarted() {
+    }
+    
+    /**
+     * Called after tracks moved or were removed from the playlist
+     * @param map old index to new index, or -1 for a removed track
+     */
+    protected void renumbered(IntUnaryOperator map) {
+    }
+    
+    /**
+     * Called after tracks were inserted; they are unplayed this round
+     */
+    protected void inserted(int first, int count) {
+    }
+    
+    /**
+     * Check whether a track was played this round
+     */
+    protected final boolean isDealt(int track) {
+        return slot[track] < dealt;
+    }
+    
+    /**
+     * Number of tracks the order currently covers
+     */
+    protected final int size() {
+        return size;
+    }
+    
+    protected final IPlaylistManager getPlaylist() {
+        return playlist;
+    }
+    
+    protected final Random getRandom() {
+        return random;
+    }
+    
+    /**
+     * Place an undealt track right after the dealt ones and make it current
+     */
+    private void deal(int track) {
+        swap(dealt, slot[track]);
+        cursor = dealt++;
+    }
+
+    private void swap(int i, int j) {
+        int a = order[i];
+        int b = order[j];
+        order[i] = b;
+        order[j] = a;
+        slot[b] = i;
+        slot[a] = j;
+    }
+
+    @Override
+    public synchronized void onPlaylistChanged(PlaylistChangeEvent event) {
+        int first = event.getFirstIndex();
+        int count = event.getCount();
+        switch (event.getType()) {
+            case INSERTED:
+                ensureCapacity(size + count);
+                renumber(track -> track >= first ? track + count : track);
+                append(first, count);
+                break;
+            case REMOVED:
+                int[] indices = event.getIndices();
+                renumber(track -> {
+                    int found = Arrays.binarySearch(indices, track);
+                    return found >= 0 ? -1 : track - (-found - 1); // Less tracks removed before it
+                });
+                break;
+            case MOVED:
+                int end = first + count;
+                int newStart = event.getDestination();
+                renumber(track -> {
+                    if (track >= first && track < end) {
+                        return track - first + newStart;
+                    } else if (newStart < first && track >= newStart && track < first) {
+                        return track + count;
+                    } else if (newStart > first && track >= end && track < newStart + count) {
+                        return track - count;
+                    }
+                    return track;
+                });
+                break;
+            case UPDATED:
+                break;
+            case CHANGED:
+            default:
+                reset(playlist.getCurrentIndex());
+                return;
+        }
+        if (size != playlist.size()) {
+            // Events raced with a reset; start over rather than drift
+            reset(playlist.getCurrentIndex());
+        }
+    }
+
+    /**
+     * Apply new track numbers in one pass, dropping removed tracks
+     */
+    private void renumber(IntUnaryOperator map) {
+        int write = 0;
+        int dealtBefore = dealt;
+        int cursorBefore = cursor;
+        for (int read = 0; read < size; read++) {
+            int track = map.applyAsInt(order[read]);
+            if (track < 0) {
+                if (read < dealtBefore) {
+                    dealt--;
+                }
+                if (read <= cursorBefore) {
+                    cursor--;
+                }
+                continue;
+            }
+            order[write++] = track;
+        }
+        size = write;
+        rebuildSlots();
+        renumbered(map);
+    }
+
+    /**
+     * New tracks join the undealt part and can still play this round
+     */
+    private void append(int first, int count) {
+        for (int i = 0; i < count; i++) {
+            order[size + i] = first + i;
+        }
+        size += count;
+        rebuildSlots();
+        inserted(first, count);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (order.length < capacity) {
+            order = Arrays.copyOf(order, Math.max(capacity, order.length * 3 / 2));
+            slot = new int[order.length];
+        }
+    }
+
+    private void rebuildSlots() {
+        for (int i = 0; i < size; i++) {
+            slot[order[i]] = i;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Smart Playlist Component
+ * A playlist whose content is defined by a rule. Membership is kept up to
+ * date by SmartPlaylistEngine as library tracks change; otherwise it is an
+ * ordinary IPlaylistManager that PlaybackController can play, sort and
+ * shuffle.
+ */
+public class SmartPlaylist extends PlaylistManager {
+    private final String name;
+    private final String ruleText;
+    private final ITrackPredicate rule;
+
+    SmartPlaylist(String name, String ruleText, ITrackPredicate rule) {
+        this.name = name;
+        this.ruleText = ruleText;
+        this.rule = rule;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getRuleText() {
+        return ruleText;
+    }
+
+    public ITrackPredicate getRule() {
+        return rule;
+    }
+
+    /**
+     * Check whether a track currently belongs to the playlist
+     */
+    public boolean contains(String filePath) {
+        return contains(new MediaFile(filePath));
+    }
+
+    /**
+     * Add a file if it satisfies the rule
+     * Postcondition: files not matching the rule are ignored
+     */
+    @Override
+    public void addFile(MediaFile file) {
+        if (file == null) {
+            throw new IllegalArgumentException("MediaFile cannot be null");
+        }
+        if (rule.test(file, System.currentTimeMillis())) {
+            super.addFile(file);
+        }
+    }
+
+    /**
+     * Insert the files that satisfy the rule
+     */
+    @Override
+    public int addAll(int index, Collection<MediaFile> files) {
+        if (files == null) {
+            throw new IllegalArgumentException("Files cannot be null");
+        }
+        long now = System.currentTimeMillis();
+        List<MediaFile> matching = new ArrayList<>();
+        for (MediaFile file : files) {
+            if (file != null && rule.test(file, now)) {
+                matching.add(file);
+            }
+        }
+        return super.addAll(index, matching);
+    }
+
+    /**
+     * Content comes from the rule; saved playlists cannot be loaded into it
+     */
+    @Override
+    public boolean load(String filename) {
+        System.err.println("Error loading playlist: smart playlist '" + name + "' is defined by its rule");
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * Record the rule results for a batch of tracks
+     * Matching tracks are appended in one insertion and failing ones removed
+     * in one removal. Rule-driven changes are not recorded for undo.
+     * Precondition: matching and failing must not be null
+     * @return true if membership changed
+     */
+    boolean applyAll(Collection<MediaFile> matching, Collection<MediaFile> failing) {
+        int[] changed = new int[1];
+        editUnrecorded(() -> {
+            if (!matching.isEmpty()) {
+                changed[0] += super.addAll(size(), matching);
+            }
+            if (!failing.isEmpty()) {
+                changed[0] += super.removeAll(failing);
+            }
+        });
+        return changed[0] > 0;
+    }
+}
@@ -0,0 +1,260 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Smart Playlist Engine Component
+ * Keeps smart playlists in step with the library incrementally. A new
+ * playlist evaluates its rule over the library once; afterwards only the
+ * tracks named in an event are evaluated, and for changed tracks only the
+ * rules that read a changed field. Changes are detected by comparing a
+ * small per-track fingerprint of field hashes, so callers need not say
+ * what changed. Rules about play history also change as time passes:
+ * refresh() re-evaluates just the tracks whose last play left a rule's
+ * time window since the previous refresh.
+ *
+ * Thread-safe; listeners of the playlists must not call back into the engine.
+ */
+public class SmartPlaylistEngine {
+    private static final int[] FIELDS = {
+        ITrackPredicate.FIELD_TITLE, ITrackPredicate.FIELD_ARTIST, ITrackPredicate.FIELD_ALBUM,
+        ITrackPredicate.FIELD_GENRE, ITrackPredicate.FIELD_FORMAT, ITrackPredicate.FIELD_YEAR,
+        ITrackPredicate.FIELD_DURATION, ITrackPredicate.FIELD_LAST_PLAYED
+    };
+
+    private final Map<String, MediaFile> library = new HashMap<>();
+    private final Map<String, int[]> fieldHashes = new HashMap<>();
+    private final TreeMap<Long, Set<String>> byLastPlayed = new TreeMap<>();
+    private final List<SmartPlaylist> playlists = new ArrayList<>();
+    private final Set<Long> timeWindows = new TreeSet<>();
+    private long lastRefresh = System.currentTimeMillis();
+
+    /**
+     * Create a smart playlist from rule text
+     * Precondition: name and rule must not be null or empty
+     * Postcondition: playlist holds every library track matching the rule
+     * @throws IllegalArgumentException if the rule does not parse
+     */
+    public synchronized SmartPlaylist createPlaylist(String name, String rule) {
+        if (name == null || name.trim().isEmpty()) {
+            throw new IllegalArgumentException("Name cannot be null or empty");
+        }
+
+        SmartPlaylist playlist = new SmartPlaylist(name, rule, TrackPredicates.parse(rule));
+        long now = System.currentTimeMillis();
+        List<MediaFile> matching = new ArrayList<>();
+        for (MediaFile file : library.values()) {
+            if (playlist.getRule().test(file, now)) {
+                matching.add(file);
+            }
+        }
+        playlist.applyAll(matching, Collections.<MediaFile>emptyList());
+        playlists.add(playlist);
+        playlist.getRule().collectTimeWindows(timeWindows);
+        return playlist;
+    }
+
+    public synchronized boolean removePlaylist(SmartPlaylist playlist) {
+        if (!playlists.remove(playlist)) {
+            return false;
+        }
+        timeWindows.clear();
+        for (SmartPlaylist remaining : playlists) {
+            remaining.getRule().collectTimeWindows(timeWindows);
+        }
+        return true;
+    }
+
+    public synchronized List<SmartPlaylist> getPlaylists() {
+        return new ArrayList<>(playlists);
+    }
+
+    /**
+     * Add tracks to the library, or update them if already known
+     * Precondition: files must not be null
+     */
+    public synchronized void addFiles(Collection<MediaFile> files) {
+        updateFiles(files);
+    }
+
+    /**
+     * Re-evaluate tracks whose metadata or play history may have changed
+     * Unknown tracks are added to the library.
+     * Precondition: files must not be null
+     */
+    public synchronized void updateFiles(Collection<MediaFile> files) {
+        if (files == null) {
+            throw new IllegalArgumentException("Files cannot be null");
+        }
+
+        long now = System.currentTimeMillis();
+        Results results = new Results();
+        for (MediaFile file : files) {
+            String path = file.getFilePath();
+            int[] hashes = hashFields(file);
+            int[] previous = fieldHashes.put(path, hashes);
+            MediaFile known = library.put(path, file);
+            if (known != null) {
+                untrackLastPlayed(path, knownLastPlayed(known, previous));
+            }
+            trackLastPlayed(path, file.getLastPlayed());
+
+            int changed = previous == null ? ~0 : changedFields(previous, hashes);
+            if (changed == 0) {
+                continue;
+            }
+            for (SmartPlaylist playlist : playlists) {
+                if ((playlist.getRule().getFields() & changed) != 0) {
+                    results.put(playlist, file, playlist.getRule().test(file, now));
+                }
+            }
+        }
+        results.apply();
+    }
+
+    /**
+     * Remove tracks from the library and every smart playlist
+     * Precondition: filePaths must not be null
+     */
+    public synchronized void removeFiles(Collection<String> filePaths) {
+        if (filePaths == null) {
+            throw new IllegalArgumentException("File paths cannot be null");
+        }
+
+        Results results = new Results();
+        for (String path : filePaths) {
+            MediaFile file = library.remove(path);
+            if (file == null) {
+                continue;
+            }
+            untrackLastPlayed(path, knownLastPlayed(file, fieldHashes.remove(path)));
+            for (SmartPlaylist playlist : playlists) {
+                results.put(playlist, file, false);
+            }
+        }
+        results.apply();
+    }
+
+    /**
+     * Re-evaluate play-history rules for the passage of time
+     * Only tracks whose last play crossed a rule's window since the
+     * previous refresh are tested.
+     * @param now current time in milliseconds
+     * @return playlists whose content changed
+     */
+    public synchronized List<SmartPlaylist> refresh(long now) {
+        if (now <= lastRefresh || timeWindows.isEmpty()) {
+            lastRefresh = Math.max(lastRefresh, now);
+            return Collections.emptyList();
+        }
+
+        Set<String> crossed = new HashSet<>();
+        for (long window : timeWindows) {
+            for (Set<String> paths : byLastPlayed.subMap(lastRefresh - window, false, now - window, true).values()) {
+                crossed.addAll(paths);
+            }
+        }
+        lastRefresh = now;
+
+        Results results = new Results();
+        for (String path : crossed) {
+            MediaFile file = library.get(path);
+            for (SmartPlaylist playlist : playlists) {
+                if ((playlist.getRule().getFields() & ITrackPredicate.FIELD_LAST_PLAYED) != 0) {
+                    results.put(playlist, file, playlist.getRule().test(file, now));
+                }
+            }
+        }
+        return results.apply();
+    }
+
+    public synchronized int getLibrarySize() {
+        return library.size();
+    }
+
+    /**
+     * Rule results gathered per playlist, so each playlist changes once per call
+     */
+    private static final class Results {
+        private final Map<SmartPlaylist, Map<MediaFile, Boolean>> byPlaylist = new LinkedHashMap<>();
+
+        void put(SmartPlaylist playlist, MediaFile file, boolean matches) {
+            // A track named twice keeps its last result
+            byPlaylist.computeIfAbsent(playlist, k -> new LinkedHashMap<>()).put(file, matches);
+        }
+
+        /**
+         * @return playlists whose content changed
+         */
+        List<SmartPlaylist> apply() {
+            List<SmartPlaylist> changed = new ArrayList<>();
+            for (Map.Entry<SmartPlaylist, Map<MediaFile, Boolean>> entry : byPlaylist.entrySet()) {
+                List<MediaFile> matching = new ArrayList<>();
+                List<MediaFile> failing = new ArrayList<>();
+                for (Map.Entry<MediaFile, Boolean> result : entry.getValue().entrySet()) {
+                    (result.getValue() ? matching : failing).add(result.getKey());
+                }
+                if (entry.getKey().applyAll(matching, failing)) {
+                    changed.add(entry.getKey());
+                }
+            }
+            return changed;
+        }
+    }
+
+    private void trackLastPlayed(String path, long lastPlayed) {
+        if (lastPlayed > 0) {
+            byLastPlayed.computeIfAbsent(lastPlayed, k -> new HashSet<>()).add(path);
+        }
+    }
+
+    private void untrackLastPlayed(String path, long lastPlayed) {
+        Set<String> paths = byLastPlayed.get(lastPlayed);
+        if (paths != null && paths.remove(path) && paths.isEmpty()) {
+            byLastPlayed.remove(lastPlayed);
+        }
+    }
+
+    /**
+     * Last-played time as it was indexed; the object may have been updated in place since
+     */
+    private static long knownLastPlayed(MediaFile file, int[] hashes) {
+        return hashes != null ? ((long) hashes[FIELDS.length] << 32) | (hashes[FIELDS.length + 1] & 0xFFFFFFFFL)
+            : file.getLastPlayed();
+    }
+
+    private static int[] hashFields(MediaFile file) {
+        long lastPlayed = file.getLastPlayed();
+        return new int[] {
+            Objects.hashCode(file.getTitle()),
+            Objects.hashCode(file.getArtist()),
+            Objects.hashCode(file.getAlbum()),
+            Objects.hashCode(file.getGenre()),
+            Objects.hashCode(file.getFormat()),
+            file.getYear(),
+            file.getDuration(),
+            Long.hashCode(lastPlayed),
+            (int) (lastPlayed >>> 32),
+            (int) lastPlayed
+        };
+    }
+
+    private static int changedFields(int[] previous, int[] current) {
+        int changed = 0;
+        for (int i = 0; i < FIELDS.length; i++) {
+            if (previous[i] != current[i]) {
+                changed |= FIELDS[i];
+            }
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,279 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Smart Shuffle Order Component
+ * Shuffle order that spreads each artist's tracks over the round instead
+ * of letting chance put them back to back. Tracks are grouped by artist,
+ * or by folder when the artist is unknown (including MediaFile's
+ * "Unknown Artist" placeholder). A group with c unplayed tracks
+ * is due every 1/c of the round from a random start, with a little
+ * jitter, so large and small artists alike are spread evenly; groups sit
+ * in a priority queue ordered by when they are next due. A pick takes the
+ * group due first (skipping the artist of the track before while another
+ * is waiting) and a random track from it, preferring another album than
+ * the group's previous pick. A pick is O(log g) for g groups; grouping is one
+ * pass over the playlist per round.
+ */
+public class SmartShuffleOrder extends ShuffleOrder {
+    // Variation of the gap between two picks of one group, as a fraction of the gap
+    private static final double JITTER = 0.2;
+    // Random tries to find a track from another album than the last one
+    private static final int ALBUM_TRIES = 3;
+
+    // Set in roundStarted(), which the superclass constructor already calls
+    private Map<String, Group> groups;
+    private PriorityQueue<Group> due;
+    private double clock;
+    private int lastTrack;
+    private Group lastGroup;
+
+    /**
+     * Precondition: playlist must not be null
+     * Postcondition: a new round starts at the playlist's current track
+     */
+    public SmartShuffleOrder(IPlaylistManager playlist) {
+        super(playlist);
+    }
+
+    /**
+     * Constructor with a given random source for repeatable orders
+     */
+    public SmartShuffleOrder(IPlaylistManager playlist, Random random) {
+        super(playlist, random);
+    }
+
+    @Override
+    protected void roundStarted() {
+        groups = new HashMap<>();
+        due = new PriorityQueue<>((a, b) -> Double.compare(a.due, b.due));
+        clock = 0;
+        lastTrack = -1;
+        lastGroup = null;
+
+        // Walk one snapshot rather than looking every track up by index
+        List<MediaFile> files = getPlaylist().getAllFiles();
+        int size = Math.min(files.size(), size());
+        Iterator<MediaFile> iterator = files.iterator();
+        for (int track = 0; track < size; track++) {
+            MediaFile file = iterator.next();
+            if (!isDealt(track)) {
+                groupOf(file).add(track, albumOf(file));
+            }
+        }
+        Random random = getRandom();
+        for (Group group : groups.values()) {
+            group.gap = 1.0 / group.size;
+            group.due = random.nextDouble() * group.gap;
+            group.queued = true;
+            due.add(group);
+        }
+    }
+
+    @Override
+    protected int pick(int previous) {
+        Group recent = lastGroup;
+        if (previous != lastTrack) {
+            // Picked by hand or left over from the last round
+            recent = previous >= 0 ? groups.get(groupKey(getPlaylist().getFileAt(previous))) : null;
+        }
+        while (true) {
+            Group group = poll();
+            if (group == null) {
+                return super.pick(previous); // Not reached while groups follow the playlist
+            }
+            if (group == recent) {
+                // Same artist as the track before; take the next group due instead
+                Group other = poll();
+                if (other != null) {
+                    due.add(group);
+                    group = other;
+                }
+            }
+
+            int track = take(group, previous);
+            if (track >= 0) {
+                clock = group.due;
+                group.due += group.gap * (1 + JITTER * (getRandom().nextDouble() * 2 - 1));
+            }
+            if (group.size > 0) {
+                due.add(group);
+            } else {
+                group.queued = false;
+            }
+            if (track >= 0) {
+                lastTrack = track;
+                lastGroup = group;
+                return track;
+            }
+        }
+    }
+
+    /**
+     * Group due first that still has tracks, taken off the queue
+     */
+    private Group poll() {
+        Group group = due.poll();
+        while (group != null && group.size == 0) {
+            group.queued = false;
+            group = due.poll();
+        }
+        return group;
+    }
+
+    /**
+     * Remove and return a random unplayed track of a group, preferably from
+     * another album than its last pick and other than avoid
+     * Tracks played meanwhile by hand are dropped on the way.
+     * @return track index, or -1 if the group had no unplayed track left
+     */
+    private int take(Group group, int avoid) {
+        Random random = getRandom();
+        int position = -1;
+        for (int i = 0; i < ALBUM_TRIES && group.size > 0; i++) {
+            position = random.nextInt(group.size);
+            int track = group.tracks[position];
+            if (isDealt(track)) {
+                group.remove(position);
+                position = -1;
+                i--;
+                continue;
+            }
+            boolean repeat = group.albums[position] != 0 && group.albums[position] == group.lastAlbum;
+            if ((track != avoid && !repeat) || group.size == 1) {
+                break;
+            }
+        }
+        if (position < 0) {
+            return -1;
+        }
+        if (group.tracks[position] == avoid && group.size > 1) {
+            position = (position + 1) % group.size;
+            if (isDealt(group.tracks[position])) {
+                return take(group, -1);
+            }
+        }
+
+        int track = group.tracks[position];
+        group.lastAlbum = group.albums[position];
+        group.remove(position);
+        return track;
+    }
+
+    @Override
+    protected void renumbered(IntUnaryOperator map) {
+        lastTrack = lastTrack >= 0 ? map.applyAsInt(lastTrack) : -1;
+        for (Group group : groups.values()) {
+            int write = 0;
+            for (int i = 0; i < group.size; i++) {
+                int track = map.applyAsInt(group.tracks[i]);
+                if (track >= 0) {
+                    group.albums[write] = group.albums[i];
+                    group.tracks[write++] = track;
+                }
+            }
+            group.size = write;
+        }
+    }
+
+    @Override
+    protected void inserted(int first, int count) {
+        IPlaylistManager playlist = getPlaylist();
+        List<Group> grown = new ArrayList<>();
+        for (int track = first; track < first + count; track++) {
+            MediaFile file = playlist.getFileAt(track);
+            Group group = groupOf(file);
+            if (group.size == 0) {
+                grown.add(group);
+            }
+            group.add(track, albumOf(file));
+        }
+        // Groups with nothing left to play come back from the current point of the round
+        for (Group group : grown) {
+            if (!group.queued) {
+                group.gap = 1.0 / group.size;
+                group.due = clock + getRandom().nextDouble() * group.gap;
+                group.queued = true;
+                due.add(group);
+            }
+        }
+    }
+
+    private Group groupOf(MediaFile file) {
+        String key = groupKey(file);
+        Group group = groups.get(key);
+        if (group == null) {
+            group = new Group();
+            groups.put(key, group);
+        }
+        return group;
+    }
+
+    /**
+     * Artist in lower case, or the folder for files without an artist
+     */
+    private static String groupKey(MediaFile file) {
+        String artist = known(file.getArtist(), MediaFile.UNKNOWN_ARTIST);
+        if (artist != null) {
+            return "a:" + artist.toLowerCase(Locale.ROOT);
+        }
+        String path = file.getFilePath();
+        int split = Math.max(path.lastIndexOf('/'), path.lastIndexOf(File.separatorChar));
+        return "d:" + path.substring(0, Math.max(split, 0));
+    }
+
+    /**
+     * Album compared by hash, so picks need not look tracks up
+     */
+    private static int albumOf(MediaFile file) {
+        String album = known(file.getAlbum(), MediaFile.UNKNOWN_ALBUM);
+        return album != null ? album.toLowerCase(Locale.ROOT).hashCode() : 0;
+    }
+    
+    /**
+     * Trimmed tag value, or null if it is empty or the placeholder for a missing tag
+     */
+    private static String known(String value, String placeholder) {
+        if (value == null || value.trim().isEmpty() || value.trim().equalsIgnoreCase(placeholder)) {
+            return null;
+        }
+        return value.trim();
+    }
+
+    /**
+     * Unplayed tracks of one artist, their albums and when the artist is next due
+     */
+    private static class Group {
+        int[] tracks = new int[4];
+        int[] albums = new int[4];
+        int size;
+        double gap;
+        double due;
+        boolean queued;
+        int lastAlbum;
+
+        void add(int track, int album) {
+            if (size == tracks.length) {
+                tracks = Arrays.copyOf(tracks, size * 2);
+                albums = Arrays.copyOf(albums, size * 2);
+            }
+            albums[size] = album;
+            tracks[size++] = track;
+        }
+
+        void remove(int position) {
+            size--;
+            tracks[position] = tracks[size];
+            albums[position] = albums[size];
+        }
+    }
+}
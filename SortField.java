@@ -0,0 +1,36 @@
+/**
+ * Enumeration for playlist sort fields
+ * Part of Business Type Model for playlist management
+ */
+public enum SortField {
+    TITLE("Title"),
+    ARTIST("Artist"),
+    ALBUM("Album"),
+    GENRE("Genre"),
+    YEAR("Year"),
+    DURATION("Duration"),
+    FILE_NAME("File Name");
+    
+    private final String displayName;
+    
+    SortField(String displayName) {
+        this.displayName = displayName;
+    }
+    
+    public String getDisplayName() {
+        return displayName;
+    }
+    
+    @Override
+    public String toString() {
+        return displayName;
+    }
+    
+    /**
+     * Check whether the field holds text compared by collation
+     * @return true for text fields, false for numeric ones
+     */
+    public boolean isText() {
+        return this != YEAR && this != DURATION;
+    }
+}
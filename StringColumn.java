@@ -0,0 +1,140 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * String Column
+ * Stores one mostly-unique string per row (e.g. track titles) as UTF-8
+ * bytes in a single shared byte array instead of one String object each.
+ * Every row costs a 4-byte offset plus a 1-2 byte length prefix and the
+ * encoded bytes. Replacing a value appends the new bytes; call compact()
+ * after many updates to reclaim the old ones.
+ */
+public class StringColumn {
+    private byte[] data;
+    private int dataSize;
+    private int[] offsets;
+    private int rows;
+
+    public StringColumn(int initialRows) {
+        int capacity = Math.max(initialRows, 16);
+        data = new byte[capacity * 16];
+        offsets = new int[capacity];
+        dataSize = 0;
+        rows = 0;
+    }
+
+    /**
+     * Append a value as a new row
+     * @return index of the new row
+     */
+    public int add(String value) {
+        if (rows == offsets.length) {
+            offsets = Arrays.copyOf(offsets, rows * 2);
+        }
+        offsets[rows] = append(encode(value));
+        return rows++;
+    }
+
+    /**
+     * Replace the value of an existing row
+     * Precondition: row must be valid (0 <= row < size)
+     */
+    public void set(int row, String value) {
+        checkRow(row);
+        offsets[row] = append(encode(value));
+    }
+
+    /**
+     * Decode the value of a row
+     * Precondition: row must be valid (0 <= row < size)
+     */
+    public String get(int row) {
+        checkRow(row);
+        int offset = offsets[row];
+        int length = data[offset] & 0x7F;
+        if ((data[offset] & 0x80) != 0) {
+            length |= (data[offset + 1] & 0xFF) << 7;
+            offset += 2;
+        } else {
+            offset += 1;
+        }
+        return new String(data, offset, length, StandardCharsets.UTF_8);
+    }
+
+    public int size() {
+        return rows;
+    }
+
+    /**
+     * Drop bytes orphaned by set() and trim spare capacity
+     */
+    public void compact() {
+        byte[] compacted = new byte[Math.max(liveBytes(), 16)];
+        int position = 0;
+        for (int row = 0; row < rows; row++) {
+            int length = entryLength(offsets[row]);
+            System.arraycopy(data, offsets[row], compacted, position, length);
+            offsets[row] = position;
+            position += length;
+        }
+        data = compacted;
+        dataSize = position;
+        offsets = Arrays.copyOf(offsets, Math.max(rows, 16));
+    }
+
+    /**
+     * Approximate heap used by this column's arrays
+     * @return size in bytes
+     */
+    public long getHeapUsage() {
+        return 16L + data.length + 16L + 4L * offsets.length;
+    }
+
+    private int liveBytes() {
+        int total = 0;
+        for (int row = 0; row < rows; row++) {
+            total += entryLength(offsets[row]);
+        }
+        return total;
+    }
+
+    private int entryLength(int offset) {
+        int length = data[offset] & 0x7F;
+        if ((data[offset] & 0x80) != 0) {
+            return 2 + (length | (data[offset + 1] & 0xFF) << 7);
+        }
+        return 1 + length;
+    }
+
+    private byte[] encode(String value) {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        if (bytes.length >= 1 << 15) {
+            throw new IllegalArgumentException("Value too long for string column: " + bytes.length + " bytes");
+        }
+        return bytes;
+    }
+
+    private int append(byte[] bytes) {
+        int needed = dataSize + bytes.length + 2;
+        if (needed > data.length) {
+            data = Arrays.copyOf(data, Math.max(needed, data.length * 2));
+        }
+
+        int offset = dataSize;
+        if (bytes.length < 0x80) {
+            data[dataSize++] = (byte) bytes.length;
+        } else {
+            data[dataSize++] = (byte) (0x80 | (bytes.length & 0x7F));
+            data[dataSize++] = (byte) (bytes.length >>> 7);
+        }
+        System.arraycopy(bytes, 0, data, dataSize, bytes.length);
+        dataSize += bytes.length;
+        return offset;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= rows) {
+            throw new IndexOutOfBoundsException("Invalid row: " + row);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * String Dictionary
+ * Maps repeated strings (artist, album, genre, format) to compact int ids,
+ * so each distinct value is stored once no matter how many tracks use it.
+ * Not thread-safe; callers synchronize externally like LibraryStore does.
+ */
+public class StringDictionary {
+    private final Map<String, Integer> ids;
+    private String[] values;
+    private int size;
+
+    public StringDictionary() {
+        ids = new HashMap<>();
+        values = new String[16];
+        size = 0;
+    }
+
+    /**
+     * Get id for value, adding it to the dictionary if new
+     * Precondition: value must not be null
+     * Postcondition: get(returned id) equals value
+     */
+    public int intern(String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Value cannot be null");
+        }
+
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size] = value;
+        ids.put(value, size);
+        return size++;
+    }
+
+    /**
+     * Get id of an existing value
+     * @return id or -1 if the value is not in the dictionary
+     */
+    public int lookup(String value) {
+        Integer id = value != null ? ids.get(value) : null;
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Get value for id
+     * Precondition: id must be valid (0 <= id < size)
+     */
+    public String get(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("Invalid dictionary id: " + id);
+        }
+        return values[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Approximate heap used by the dictionary
+     * @return size in bytes
+     */
+    public long getHeapUsage() {
+        // Per value: map entry, table slot and boxed id, plus the string itself
+        long bytes = 16L + 4L * values.length;
+        for (int id = 0; id < size; id++) {
+            bytes += 32 + 8 + 16 + 40 + values[id].length();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,81 @@
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.WeakHashMap;
+
+/**
+ * Track Pool Component
+ * One MediaFile instance per path, shared by every playlist that uses the
+ * pool. Playlists loaded from overlapping files hold references to the
+ * same instances, so memory grows with the unique tracks rather than the
+ * playlist entries, and tags read through one playlist show in all of
+ * them. Instances are held weakly: a track that no playlist or library
+ * refers to any more leaves the pool.
+ *
+ * A pool created for a LibraryStore hands out the store's views for paths
+ * in the library, so those entries hold no per-track strings of their own.
+ *
+ * Thread-safe.
+ */
+public class TrackPool {
+    private final WeakHashMap<MediaFile, WeakReference<MediaFile>> tracks = new WeakHashMap<>();
+    private final LibraryStore library;
+
+    public TrackPool() {
+        this(null);
+    }
+
+    /**
+     * Create a pool that prefers the views of a library store
+     * @param library store whose tracks are shared, or null for none
+     */
+    public TrackPool(LibraryStore library) {
+        this.library = library;
+    }
+
+    /**
+     * Get the shared instance for a file's path
+     * Precondition: file must not be null
+     * Postcondition: returns the instance pooled first for that path; if
+     * the path was not pooled yet, that is the library's view of it or else
+     * file itself
+     */
+    public synchronized MediaFile intern(MediaFile file) {
+        if (file == null) {
+            throw new IllegalArgumentException("MediaFile cannot be null");
+        }
+
+        WeakReference<MediaFile> reference = tracks.get(file);
+        MediaFile shared = reference != null ? reference.get() : null;
+        if (shared == null) {
+            int trackId = library != null ? library.indexOf(file) : -1;
+            shared = trackId != -1 ? library.get(trackId) : file;
+            tracks.put(shared, new WeakReference<>(shared));
+        }
+        return shared;
+    }
+
+    /**
+     * Get the shared instances for a batch of files, in the same order
+     * Precondition: files must not be null or contain null
+     */
+    public synchronized List<MediaFile> internAll(Collection<MediaFile> files) {
+        if (files == null) {
+            throw new IllegalArgumentException("Files cannot be null");
+        }
+
+        List<MediaFile> shared = new ArrayList<>(files.size());
+        for (MediaFile file : files) {
+            shared.add(intern(file));
+        }
+        return shared;
+    }
+
+    /**
+     * Number of distinct tracks pooled, including ones not yet collected
+     */
+    public synchronized int size() {
+        return tracks.size();
+    }
+}
@@ -0,0 +1,92 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Track Pool Restore Check
+ * Autosaves a playlist and a play queue, restores both into a fresh
+ * PlaylistRegistry and checks that restored tracks are the registry's
+ * pooled instances:
+ *   - every file the playlist journal restores is the pool's instance
+ *   - every file the play queue restores is the playlist's instance
+ * Metadata found later for one of them then reaches both.
+ *
+ * Run next to run.sh:
+ *   javac -cp ".:lib/*" *.java
+ *   java -cp ".:lib/*" TrackPoolRestoreCheck
+ * Exits with status 1 if a restored track is a separate instance.
+ */
+public class TrackPoolRestoreCheck {
+    private static final int TRACKS = 100;
+
+    public static void main(String[] args) throws IOException {
+        File directory = Files.createTempDirectory("poolcheck").toFile();
+        try {
+            if (!run(directory)) {
+                System.exit(1);
+            }
+        } finally {
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            directory.delete();
+        }
+    }
+
+    private static boolean run(File directory) throws IOException {
+        File queueFile = new File(directory, "queue.log");
+
+        // Save: a playlist with some edits, and part of it queued
+        PlaylistRegistry saved = new PlaylistRegistry();
+        PlaylistManager savedPlaylist = saved.create("Main");
+        PlaylistJournal journal = PlaylistJournal.open(savedPlaylist, directory, 0, true);
+        PlayQueue queue = PlayQueue.open(queueFile, saved.getTrackPool());
+        List<MediaFile> tracks = new ArrayList<>();
+        for (int i = 0; i < TRACKS; i++) {
+            tracks.add(new MediaFile("/pool/check/track" + i + ".mp3"));
+        }
+        savedPlaylist.addAll(0, tracks);
+        savedPlaylist.removeRange(0, 3);
+        queue.playLater(savedPlaylist.getAllFiles().subList(10, 20));
+        journal.close();
+        queue.close();
+
+        // Restore into a registry with an empty pool
+        PlaylistRegistry restored = new PlaylistRegistry();
+        PlaylistManager playlist = restored.create("Main");
+        journal = PlaylistJournal.open(playlist, directory, 0, true);
+        queue = PlayQueue.open(queueFile, restored.getTrackPool());
+        try {
+            if (playlist.size() != TRACKS - 3 || queue.size() != 10) {
+                System.err.println("FAILED: restored " + playlist.size() + " tracks and " + queue.size()
+                    + " queued, expected " + (TRACKS - 3) + " and 10");
+                return false;
+            }
+            for (MediaFile file : playlist.getAllFiles()) {
+                if (restored.getTrackPool().intern(new MediaFile(file.getFilePath())) != file) {
+                    System.err.println("FAILED: journal restored a separate instance of " + file.getFilePath());
+                    return false;
+                }
+            }
+            for (MediaFile file : queue.getAll()) {
+                int index = playlist.indexOf(file);
+                if (index < 0 || playlist.getFileAt(index) != file) {
+                    System.err.println("FAILED: queue restored a separate instance of " + file.getFilePath());
+                    return false;
+                }
+            }
+        } finally {
+            journal.close();
+            queue.close();
+        }
+
+        System.out.println("OK: " + playlist.size() + " journal tracks and " + queue.size()
+            + " queued tracks are pooled instances");
+        return true;
+    }
+}
@@ -0,0 +1,423 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Track Predicates Component
+ * Builds ITrackPredicate trees, either directly or by compiling rule text
+ * such as
+ *
+ *   genre = Jazz AND year > 1990 AND NOT played in 30 days
+ *   (artist ~ "miles" OR artist = Coltrane) AND duration >= 300
+ *
+ * Text fields: title, artist, album, genre, format; compared with =, !=
+ * or ~ (contains), ignoring case. Numeric fields: year, duration (seconds);
+ * compared with =, !=, <, <=, >, >=. "played in N days" (or "within")
+ * matches tracks played during the last N days. AND binds tighter than OR;
+ * values may be quoted and otherwise run up to the next AND, OR or ")".
+ */
+public final class TrackPredicates {
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private TrackPredicates() {
+    }
+
+    /**
+     * Compile rule text into a predicate tree
+     * Precondition: rule must not be null or empty
+     * @throws IllegalArgumentException describing the first syntax error
+     */
+    public static ITrackPredicate parse(String rule) {
+        if (rule == null || rule.trim().isEmpty()) {
+            throw new IllegalArgumentException("Rule cannot be null or empty");
+        }
+        Parser parser = new Parser(rule);
+        ITrackPredicate predicate = parser.parseOr();
+        if (parser.peek() != null) {
+            throw new IllegalArgumentException("Unexpected '" + parser.peek() + "' in rule");
+        }
+        return predicate;
+    }
+
+    public static ITrackPredicate and(ITrackPredicate... operands) {
+        return new Junction(true, operands);
+    }
+
+    public static ITrackPredicate or(ITrackPredicate... operands) {
+        return new Junction(false, operands);
+    }
+
+    public static ITrackPredicate not(ITrackPredicate operand) {
+        if (operand == null) {
+            throw new IllegalArgumentException("Operand cannot be null");
+        }
+        return new Not(operand);
+    }
+
+    /**
+     * Compare a text field, ignoring case
+     * @param field one of FIELD_TITLE, FIELD_ARTIST, FIELD_ALBUM, FIELD_GENRE, FIELD_FORMAT
+     * @param operator "=", "!=" or "~" (contains)
+     */
+    public static ITrackPredicate text(int field, String operator, String value) {
+        if (value == null || !(operator.equals("=") || operator.equals("!=") || operator.equals("~"))) {
+            throw new IllegalArgumentException("Invalid text comparison: " + operator + " " + value);
+        }
+        if ((field & (ITrackPredicate.FIELD_TITLE | ITrackPredicate.FIELD_ARTIST | ITrackPredicate.FIELD_ALBUM
+                | ITrackPredicate.FIELD_GENRE | ITrackPredicate.FIELD_FORMAT)) == 0 || Integer.bitCount(field) != 1) {
+            throw new IllegalArgumentException("Not a text field: " + field);
+        }
+        return new TextComparison(field, operator, value);
+    }
+
+    /**
+     * Compare a numeric field
+     * @param field FIELD_YEAR or FIELD_DURATION
+     * @param operator "=", "!=", "<", "<=", ">" or ">="
+     */
+    public static ITrackPredicate number(int field, String operator, long value) {
+        if (field != ITrackPredicate.FIELD_YEAR && field != ITrackPredicate.FIELD_DURATION) {
+            throw new IllegalArgumentException("Not a numeric field: " + field);
+        }
+        switch (operator) {
+            case "=": case "!=": case "<": case "<=": case ">": case ">=":
+                return new NumberComparison(field, operator, value);
+            default:
+                throw new IllegalArgumentException("Invalid operator: " + operator);
+        }
+    }
+
+    /**
+     * Match tracks played during the last days
+     * Precondition: days must be positive
+     */
+    public static ITrackPredicate playedWithin(int days) {
+        if (days <= 0) {
+            throw new IllegalArgumentException("Days must be positive");
+        }
+        return new PlayedWithin(days * DAY_MILLIS);
+    }
+
+    private static class Junction implements ITrackPredicate {
+        private final boolean all;
+        private final ITrackPredicate[] operands;
+        private final int fields;
+
+        Junction(boolean all, ITrackPredicate[] operands) {
+            if (operands == null || operands.length == 0) {
+                throw new IllegalArgumentException("Operands cannot be null or empty");
+            }
+            this.all = all;
+            this.operands = operands.clone();
+            int combined = 0;
+            for (ITrackPredicate operand : this.operands) {
+                combined |= operand.getFields();
+            }
+            this.fields = combined;
+        }
+
+        @Override
+        public boolean test(MediaFile file, long now) {
+            for (ITrackPredicate operand : operands) {
+                if (operand.test(file, now) != all) {
+                    return !all;
+                }
+            }
+            return all;
+        }
+
+        @Override
+        public int getFields() {
+            return fields;
+        }
+
+        @Override
+        public void collectTimeWindows(Collection<Long> windows) {
+            for (ITrackPredicate operand : operands) {
+                operand.collectTimeWindows(windows);
+            }
+        }
+    }
+
+    private static class Not implements ITrackPredicate {
+        private final ITrackPredicate operand;
+
+        Not(ITrackPredicate operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public boolean test(MediaFile file, long now) {
+            return !operand.test(file, now);
+        }
+
+        @Override
+        public int getFields() {
+            return operand.getFields();
+        }
+
+        @Override
+        public void collectTimeWindows(Collection<Long> windows) {
+            operand.collectTimeWindows(windows);
+        }
+    }
+
+    private static class TextComparison implements ITrackPredicate {
+        private final int field;
+        private final String operator;
+        private final String value;
+
+        TextComparison(int field, String operator, String value) {
+            this.field = field;
+            this.operator = operator;
+            this.value = value.toLowerCase(Locale.ROOT);
+        }
+
+        @Override
+        public boolean test(MediaFile file, long now) {
+            String text;
+            switch (field) {
+                case FIELD_TITLE: text = file.getTitle(); break;
+                case FIELD_ARTIST: text = file.getArtist(); break;
+                case FIELD_ALBUM: text = file.getAlbum(); break;
+                case FIELD_GENRE: text = file.getGenre(); break;
+                default: text = file.getFormat(); break;
+            }
+            text = text == null ? "" : text.toLowerCase(Locale.ROOT);
+            switch (operator) {
+                case "=": return text.equals(value);
+                case "!=": return !text.equals(value);
+                default: return text.contains(value);
+            }
+        }
+
+        @Override
+        public int getFields() {
+            return field;
+        }
+
+        @Override
+        public void collectTimeWindows(Collection<Long> windows) {
+        }
+    }
+
+    private static class NumberComparison implements ITrackPredicate {
+        private final int field;
+        private final String operator;
+        private final long value;
+
+        NumberComparison(int field, String operator, long value) {
+            this.field = field;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        @Override
+        public boolean test(MediaFile file, long now) {
+            long number = field == FIELD_YEAR ? file.getYear() : file.getDuration();
+            switch (operator) {
+                case "=": return number == value;
+                case "!=": return number != value;
+                case "<": return number < value;
+                case "<=": return number <= value;
+                case ">": return number > value;
+                default: return number >= value;
+            }
+        }
+
+        @Override
+        public int getFields() {
+            return field;
+        }
+
+        @Override
+        public void collectTimeWindows(Collection<Long> windows) {
+        }
+    }
+
+    private static class PlayedWithin implements ITrackPredicate {
+        private final long window;
+
+        PlayedWithin(long window) {
+            this.window = window;
+        }
+
+        @Override
+        public boolean test(MediaFile file, long now) {
+            long lastPlayed = file.getLastPlayed();
+            return lastPlayed > 0 && now - lastPlayed < window;
+        }
+
+        @Override
+        public int getFields() {
+            return FIELD_LAST_PLAYED;
+        }
+
+        @Override
+        public void collectTimeWindows(Collection<Long> windows) {
+            windows.add(window);
+        }
+    }
+
+    /**
+     * Recursive descent parser over a token list
+     */
+    private static class Parser {
+        private final List<String> tokens = new ArrayList<>();
+        private int position;
+
+        Parser(String rule) {
+            tokenize(rule);
+        }
+
+        ITrackPredicate parseOr() {
+            List<ITrackPredicate> operands = new ArrayList<>();
+            operands.add(parseAnd());
+            while (isKeyword(peek(), "OR")) {
+                position++;
+                operands.add(parseAnd());
+            }
+            return operands.size() == 1 ? operands.get(0) : or(operands.toArray(new ITrackPredicate[0]));
+        }
+
+        private ITrackPredicate parseAnd() {
+            List<ITrackPredicate> operands = new ArrayList<>();
+            operands.add(parseUnary());
+            while (isKeyword(peek(), "AND")) {
+                position++;
+                operands.add(parseUnary());
+            }
+            return operands.size() == 1 ? operands.get(0) : and(operands.toArray(new ITrackPredicate[0]));
+        }
+
+        private ITrackPredicate parseUnary() {
+            String token = next("condition");
+            if (isKeyword(token, "NOT")) {
+                return not(parseUnary());
+            }
+            if (token.equals("(")) {
+                ITrackPredicate inner = parseOr();
+                expect(")");
+                return inner;
+            }
+            if (isKeyword(token, "PLAYED")) {
+                String preposition = next("'in'");
+                if (!isKeyword(preposition, "IN") && !isKeyword(preposition, "WITHIN")) {
+                    throw new IllegalArgumentException("Expected 'in' after 'played'");
+                }
+                if (isKeyword(peek(), "THE")) {
+                    position++;
+                }
+                if (isKeyword(peek(), "LAST")) {
+                    position++;
+                }
+                int days = (int) parseNumber(next("number of days"));
+                String unit = next("'days'");
+                if (!isKeyword(unit, "DAYS") && !isKeyword(unit, "DAY")) {
+                    throw new IllegalArgumentException("Expected 'days' after " + days);
+                }
+                return playedWithin(days);
+            }
+            return parseComparison(token);
+        }
+
+        private ITrackPredicate parseComparison(String fieldName) {
+            String operator = next("operator");
+            if (isKeyword(operator, "CONTAINS")) {
+                operator = "~";
+            }
+            switch (fieldName.toLowerCase(Locale.ROOT)) {
+                case "title": return text(ITrackPredicate.FIELD_TITLE, operator, parseValue());
+                case "artist": return text(ITrackPredicate.FIELD_ARTIST, operator, parseValue());
+                case "album": return text(ITrackPredicate.FIELD_ALBUM, operator, parseValue());
+                case "genre": return text(ITrackPredicate.FIELD_GENRE, operator, parseValue());
+                case "format": return text(ITrackPredicate.FIELD_FORMAT, operator, parseValue());
+                case "year": return number(ITrackPredicate.FIELD_YEAR, operator, parseNumber(next("year")));
+                case "duration": return number(ITrackPredicate.FIELD_DURATION, operator,
+                    parseNumber(next("duration")));
+                default:
+                    throw new IllegalArgumentException("Unknown field: " + fieldName);
+            }
+        }
+
+        /**
+         * Quoted string, or bare words up to AND, OR or ")"
+         */
+        private String parseValue() {
+            String token = next("value");
+            if (token.startsWith("\"")) {
+                return token.substring(1);
+            }
+            StringBuilder value = new StringBuilder(token);
+            while (peek() != null && !peek().equals(")") && !isKeyword(peek(), "AND") && !isKeyword(peek(), "OR")) {
+                value.append(' ').append(tokens.get(position++));
+            }
+            return value.toString();
+        }
+
+        private long parseNumber(String token) {
+            try {
+                return Long.parseLong(token);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Expected a number but found '" + token + "'");
+            }
+        }
+
+        String peek() {
+            return position < tokens.size() ? tokens.get(position) : null;
+        }
+
+        private String next(String expected) {
+            if (position >= tokens.size()) {
+                throw new IllegalArgumentException("Rule ends where " + expected + " was expected");
+            }
+            return tokens.get(position++);
+        }
+
+        private void expect(String token) {
+            if (!token.equals(next("'" + token + "'"))) {
+                throw new IllegalArgumentException("Expected '" + token + "'");
+            }
+        }
+
+        private static boolean isKeyword(String token, String keyword) {
+            return token != null && !token.startsWith("\"") && token.equalsIgnoreCase(keyword);
+        }
+
+        /**
+         * Split into words, operators, parentheses and quoted strings
+         * A quoted string is kept with its opening quote to tell it from keywords
+         */
+        private void tokenize(String rule) {
+            int i = 0;
+            while (i < rule.length()) {
+                char c = rule.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '(' || c == ')' || c == '~' || c == '=') {
+                    tokens.add(String.valueOf(c));
+                    i++;
+                } else if (c == '!' || c == '<' || c == '>') {
+                    boolean withEquals = i + 1 < rule.length() && rule.charAt(i + 1) == '=';
+                    tokens.add(withEquals ? c + "=" : String.valueOf(c));
+                    i += withEquals ? 2 : 1;
+                } else if (c == '"') {
+                    int end = rule.indexOf('"', i + 1);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("Unterminated quote in rule");
+                    }
+                    tokens.add(rule.substring(i, end));
+                    i = end + 1;
+                } else {
+                    int start = i;
+                    while (i < rule.length() && !Character.isWhitespace(rule.charAt(i))
+                            && "()~=!<>\"".indexOf(rule.charAt(i)) < 0) {
+                        i++;
+                    }
+                    tokens.add(rule.substring(start, i));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Trigram Index Component
+ * Finds terms within a small edit distance of a misspelled term. Every
+ * term is split into padded three-letter grams; candidates are ranked by
+ * the number of grams they share with the query and only the best ranked
+ * ones are verified with a bounded edit distance, so a lookup touches a
+ * handful of posting lists rather than the whole vocabulary.
+ */
+public class TrigramIndex {
+    private final List<String> terms = new ArrayList<>();
+    private final Map<String, Integer> termIds = new HashMap<>();
+    private final Map<Integer, IntList> postings = new HashMap<>();
+
+    // Reused between lookups
+    private int[] counts = new int[16];
+    private final IntList touched = new IntList();
+    private int[] previousRow = new int[16];
+    private int[] currentRow = new int[16];
+    private int[] transposeRow = new int[16];
+
+    /**
+     * Add a term
+     * Precondition: term must not be null or empty
+     * @return id of the term (existing id if already present)
+     */
+    public int add(String term) {
+        if (term == null || term.isEmpty()) {
+            throw new IllegalArgumentException("Term cannot be null or empty");
+        }
+
+        Integer existing = termIds.get(term);
+        if (existing != null) {
+            return existing;
+        }
+
+        int id = terms.size();
+        terms.add(term);
+        termIds.put(term, id);
+        String padded = pad(term);
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            int gram = gram(padded, i);
+            IntList list = postings.computeIfAbsent(gram, k -> new IntList());
+            if (list.isEmpty() || list.get(list.size() - 1) != id) {
+                list.add(id);
+            }
+        }
+        return id;
+    }
+
+    public String get(int id) {
+        return terms.get(id);
+    }
+
+    public int size() {
+        return terms.size();
+    }
+
+    public void clear() {
+        terms.clear();
+        termIds.clear();
+        postings.clear();
+        counts = new int[16];
+    }
+
+    /**
+     * Find terms within maxDistance edits (insert, delete, substitute, swap adjacent)
+     * Precondition: term must not be null, maxDistance >= 0
+     * Postcondition: ids and distances hold the matches, closest first
+     * @param maxCandidates number of best ranked candidates to verify
+     */
+    public void findSimilar(String term, int maxDistance, int maxCandidates, IntList ids, IntList distances) {
+        if (term == null || maxDistance < 0) {
+            throw new IllegalArgumentException("Invalid term or distance");
+        }
+        if (term.isEmpty()) {
+            return;
+        }
+        if (counts.length < terms.size()) {
+            counts = new int[Math.max(terms.size(), counts.length * 2)];
+        }
+
+        // Count shared grams per term
+        String padded = pad(term);
+        int gramCount = padded.length() - 2;
+        for (int i = 0; i < gramCount; i++) {
+            IntList list = postings.get(gram(padded, i));
+            if (list == null) {
+                continue;
+            }
+            for (int j = 0; j < list.size(); j++) {
+                int id = list.get(j);
+                if (counts[id]++ == 0) {
+                    touched.add(id);
+                }
+            }
+        }
+
+        // Every edit destroys at most three grams
+        int required = Math.max(1, gramCount - 3 * maxDistance);
+        long[] ranked = new long[touched.size()];
+        int rankedCount = 0;
+        for (int i = 0; i < touched.size(); i++) {
+            int id = touched.get(i);
+            int count = counts[id];
+            counts[id] = 0;
+            if (count >= required && Math.abs(terms.get(id).length() - term.length()) <= maxDistance) {
+                ranked[rankedCount++] = (long) -count << 32 | id; // Most shared grams first
+            }
+        }
+        touched.clear();
+        Arrays.sort(ranked, 0, rankedCount);
+
+        long[] verified = new long[Math.min(rankedCount, maxCandidates)];
+        int verifiedCount = 0;
+        for (int i = 0; i < rankedCount && i < maxCandidates; i++) {
+            int id = (int) ranked[i];
+            int distance = distance(term, terms.get(id), maxDistance);
+            if (distance <= maxDistance) {
+                verified[verifiedCount++] = (long) distance << 32 | id;
+            }
+        }
+        Arrays.sort(verified, 0, verifiedCount);
+        for (int i = 0; i < verifiedCount; i++) {
+            ids.add((int) verified[i]);
+            distances.add((int) (verified[i] >>> 32));
+        }
+    }
+
+    /**
+     * Optimal string alignment distance, giving up once it exceeds max
+     * @return distance, or max + 1 when larger than max
+     */
+    int distance(String a, String b, int max) {
+        int n = b.length();
+        if (previousRow.length <= n) {
+            previousRow = new int[n + 1];
+            currentRow = new int[n + 1];
+            transposeRow = new int[n + 1];
+        }
+        for (int j = 0; j <= n; j++) {
+            previousRow[j] = j;
+        }
+
+        for (int i = 1; i <= a.length(); i++) {
+            currentRow[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= n; j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(Math.min(previousRow[j] + 1, currentRow[j - 1] + 1), previousRow[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    value = Math.min(value, transposeRow[j - 2] + 1);
+                }
+                currentRow[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+
+            int[] oldest = transposeRow;
+            transposeRow = previousRow;
+            previousRow = currentRow;
+            currentRow = oldest;
+        }
+        return Math.min(previousRow[n], max + 1);
+    }
+
+    private static String pad(String term) {
+        return "  " + term + " ";
+    }
+
+    private static int gram(String text, int offset) {
+        return (text.charAt(offset) & 0x3FF) << 20 | (text.charAt(offset + 1) & 0x3FF) << 10
+            | (text.charAt(offset + 2) & 0x3FF);
+    }
+}